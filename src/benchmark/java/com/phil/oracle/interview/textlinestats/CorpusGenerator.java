@@ -0,0 +1,216 @@
+package com.phil.oracle.interview.textlinestats;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.SplittableRandom;
+
+/**
+ * Generates a synthetic text corpus of any size for the benchmarks (see ThroughputBenchmark) - the same seed and
+ * settings always give the same bytes, so results are comparable across runs and machines
+ * Controlled are the line length distribution (see LineLengths), the share of non-ASCII words (Latin with accents,
+ * Cyrillic, Greek, CJK and emoji - 2, 3 and 4-byte UTF-8 sequences) and the word density, i.e. the share of tokens which
+ * are words rather than numbers or punctuation. Words are drawn from a fixed vocabulary with Zipf-like frequencies,
+ * as in natural text, so vocabulary-sized statistics behave realistically too
+ *
+ * @author Phil
+ */
+public final class CorpusGenerator {
+    static final long DEFAULT_SEED = 20180313;
+    static final int VOCABULARY_SIZE = 50000;
+    private static final int WRITE_BUFFER_BYTES = 1024 * 1024;
+    private static final String[] PUNCTUATION = {",", ".", ";", ":", "!", "?", "--", "(", ")", "\"", "'"};
+    // code point ranges of the non-ASCII alphabets: accented Latin, Cyrillic, Greek, CJK, emoji
+    private static final int[][] ALPHABETS = {{0xE0, 0xF6}, {0x430, 0x44F}, {0x3B1, 0x3C9}, {0x4E00, 0x4FFF},
+            {0x1F600, 0x1F64F}};
+
+    /**
+     * How line lengths (in chars) are distributed around the mean
+     */
+    enum LineLengths {
+        FIXED, UNIFORM,     // between 0 and twice the mean
+        LOGNORMAL           // a long tail of long lines, as in prose and logs
+    }
+
+    private final LineLengths lineLengths;
+    private final int meanLineChars, maxLineChars;
+    private final double unicodeRatio, wordDensity, emptyLineRatio;
+    private final long seed;
+    private final String[] vocabulary = new String[VOCABULARY_SIZE];
+
+    /**
+     * @param lineLengths    - distribution of the line lengths
+     * @param meanLineChars  - mean line length, in chars
+     * @param maxLineChars   - longest line, in chars
+     * @param unicodeRatio   - share of non-ASCII words in the vocabulary, between 0 and 1
+     * @param wordDensity    - share of tokens which are words (the rest are numbers and punctuation), between 0 and 1
+     * @param emptyLineRatio - share of empty lines, between 0 and 1
+     * @param seed           - of the pseudo-random numbers, the same one gives the same corpus
+     */
+    CorpusGenerator(LineLengths lineLengths, int meanLineChars, int maxLineChars, double unicodeRatio,
+                    double wordDensity, double emptyLineRatio, long seed) {
+        if (meanLineChars < 1 || maxLineChars < meanLineChars) {
+            throw new UnsupportedOperationException("Mean line length has to be between 1 and the maximum!");
+        }
+        if (!isRatio(unicodeRatio) || !isRatio(wordDensity) || !isRatio(emptyLineRatio)) {
+            throw new UnsupportedOperationException("Unicode ratio, word density and empty line ratio are between 0 and 1!");
+        }
+        this.lineLengths = lineLengths;
+        this.meanLineChars = meanLineChars;
+        this.maxLineChars = maxLineChars;
+        this.unicodeRatio = unicodeRatio;
+        this.wordDensity = wordDensity;
+        this.emptyLineRatio = emptyLineRatio;
+        this.seed = seed;
+        SplittableRandom random = new SplittableRandom(seed);
+        for (int i = 0; i < vocabulary.length; i++) {
+            vocabulary[i] = newWord(random, random.nextDouble() < unicodeRatio);
+        }
+    }
+
+    /**
+     * Prose-like defaults: log-normal lines of 80 chars on average, 10% non-ASCII words, 85% words
+     */
+    CorpusGenerator() {
+        this(LineLengths.LOGNORMAL, 80, 64 * 1024, 0.1, 0.85, 0.05, DEFAULT_SEED);
+    }
+
+    /**
+     * @param args - [file to write] [size, e.g. 2g, 512m or 100k] [optional --lines=fixed|uniform|lognormal:mean chars]
+     *             [optional --unicode=share of non-ASCII words] [optional --words=share of tokens which are words]
+     *             [optional --seed=number]
+     */
+    public static void main(String[] args) {
+        CommandLineArgs commandLine = CommandLineArgs.parse(args);
+        if (commandLine.positionalCount() < 2) {
+            System.out.println("Command-line: java " + CorpusGenerator.class.getName() + " [file to write] " +
+                    "[size, e.g. 2g, 512m or 100k] [optional --lines=fixed|uniform|lognormal:mean line chars " +
+                    "(default lognormal:80)] [optional --unicode=share of non-ASCII words (default 0.1)] " +
+                    "[optional --words=share of tokens which are words (default 0.85)] " +
+                    "[optional --seed=number (default " + DEFAULT_SEED + ")]");
+            return;
+        }
+        try {
+            CorpusGenerator generator = fromOptions(commandLine);
+            File file = new File(commandLine.getPositional(0));
+            long start = System.nanoTime();
+            long lineCount = generator.generate(file, parseSize(commandLine.getPositional(1)));
+            System.out.println("Generated " + file.length() + " bytes, " + lineCount + " lines into '" + file + "' in "
+                    + (System.nanoTime() - start) / 1000000 + "ms");
+        } catch (UnsupportedOperationException | IllegalArgumentException e) {
+            System.out.println("ERROR - " + e.getMessage());
+        } catch (IOException e) {
+            System.out.println("ERROR - Couldn't write the corpus: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return - a generator with the --lines, --unicode, --words and --seed options of the command-line, or defaults
+     */
+    static CorpusGenerator fromOptions(CommandLineArgs commandLine) {
+        String[] lines = commandLine.getOption("lines", "lognormal:80").split(":", 2);
+        int meanLineChars = lines.length > 1 ? Integer.parseInt(lines[1]) : 80;
+        return new CorpusGenerator(LineLengths.valueOf(lines[0].toUpperCase()), meanLineChars,
+                Math.max(meanLineChars, 64 * 1024), Double.parseDouble(commandLine.getOption("unicode", "0.1")),
+                Double.parseDouble(commandLine.getOption("words", "0.85")), 0.05,
+                Long.parseLong(commandLine.getOption("seed", String.valueOf(DEFAULT_SEED))));
+    }
+
+    /**
+     * @param size - a number of bytes, with an optional k, m or g suffix
+     */
+    static long parseSize(String size) {
+        String digits = size.toLowerCase();
+        long unit = 1;
+        if (digits.endsWith("k") || digits.endsWith("m") || digits.endsWith("g")) {
+            unit = 1L << (10 * ("kmg".indexOf(digits.charAt(digits.length() - 1)) + 1));
+            digits = digits.substring(0, digits.length() - 1);
+        }
+        return Long.parseLong(digits) * unit;
+    }
+
+    /**
+     * @param file        - the corpus file to write, overwritten if it exists
+     * @param targetBytes - size of the corpus, give or take the last line
+     * @return - number of lines written
+     */
+    long generate(File file, long targetBytes) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file), WRITE_BUFFER_BYTES)) {
+            return generate(out, targetBytes);
+        }
+    }
+
+    /**
+     * @return - number of lines written, every one terminated by '\n'
+     */
+    long generate(OutputStream out, long targetBytes) throws IOException {
+        SplittableRandom random = new SplittableRandom(seed ^ 0x5DEECE66DL);   // not the vocabulary's sequence
+        StringBuilder line = new StringBuilder(maxLineChars + 32);
+        long bytes = 0, lineCount = 0;
+        while (bytes < targetBytes) {
+            line.setLength(0);
+            if (random.nextDouble() >= emptyLineRatio) {
+                int length = nextLineLength(random);
+                while (line.length() < length) {
+                    if (line.length() > 0) {
+                        line.append(' ');
+                    }
+                    line.append(nextToken(random));
+                }
+            }
+            byte[] lineBytes = line.append('\n').toString().getBytes(StandardCharsets.UTF_8);
+            out.write(lineBytes);
+            bytes += lineBytes.length;
+            lineCount++;
+        }
+        return lineCount;
+    }
+
+    private int nextLineLength(SplittableRandom random) {
+        double length;
+        switch (lineLengths) {
+            case FIXED:
+                length = meanLineChars;
+                break;
+            case UNIFORM:
+                length = random.nextInt(2 * meanLineChars + 1);
+                break;
+            default:
+                // sigma of 0.75: the median is ~75% of the mean, and 1 line in ~1000 is over 10 times the median
+                double sigma = 0.75, mu = Math.log(meanLineChars) - sigma * sigma / 2;
+                length = Math.exp(mu + sigma * nextGaussian(random));
+        }
+        return (int) Math.max(1, Math.min(maxLineChars, length));
+    }
+
+    private String nextToken(SplittableRandom random) {
+        if (random.nextDouble() < wordDensity) {
+            // Zipf-like: the n-th most frequent word is drawn ~1/n as often as the first one
+            return vocabulary[(int) Math.pow(VOCABULARY_SIZE, random.nextDouble()) - 1];
+        }
+        return random.nextBoolean() ? PUNCTUATION[random.nextInt(PUNCTUATION.length)]
+                : String.valueOf(random.nextInt(100000));
+    }
+
+    private static String newWord(SplittableRandom random, boolean unicode) {
+        int length = 1 + random.nextInt(3) + random.nextInt(10) / 2;   // 1 to 7 letters, mostly 2 to 5
+        int[] alphabet = unicode ? ALPHABETS[random.nextInt(ALPHABETS.length)] : new int[]{'a', 'z'};
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            word.appendCodePoint(alphabet[0] + random.nextInt(alphabet[1] - alphabet[0] + 1));
+        }
+        return word.toString();
+    }
+
+    // Box-Muller, SplittableRandom has no nextGaussian in Java 8
+    private static double nextGaussian(SplittableRandom random) {
+        return Math.sqrt(-2 * Math.log(1 - random.nextDouble())) * Math.cos(2 * Math.PI * random.nextDouble());
+    }
+
+    private static boolean isRatio(double ratio) {
+        return ratio >= 0 && ratio <= 1;
+    }
+}
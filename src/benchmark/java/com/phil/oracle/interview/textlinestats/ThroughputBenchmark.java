@@ -0,0 +1,305 @@
+package com.phil.oracle.interview.textlinestats;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+/**
+ * End-to-end throughput benchmark: runs TextFileStatsGenerator over a corpus (see CorpusGenerator) across thread
+ * counts, batch sizes, buffer sizes and I/O modes, and reports MB/s, lines/s and peak RSS of each configuration, then
+ * the scaling curve over the thread counts. Every configuration gets a warm-up run, then the best of a few measured runs
+ * counts (the least disturbed one)
+ * Thresholds catch regressions: the run fails (exit status 1) if any configuration is slower than --min-mbps, or the
+ * scaling efficiency at the most threads is below --min-efficiency
+ *
+ * @author Phil
+ */
+public final class ThroughputBenchmark {
+    static final int DEFAULT_RUNS = 3;
+    static final long MAX_MILLIS_PER_RUN = 10 * 60 * 1000;
+    private static final String PROC_STATUS = "/proc/self/status";
+    private static final String PROC_CLEAR_REFS = "/proc/self/clear_refs";
+
+    private final String corpusFileName;
+    private final long corpusBytes;
+    private final int runs;
+
+    ThroughputBenchmark(String corpusFileName, int runs) {
+        if (runs < 1) {
+            throw new UnsupportedOperationException("At least one measured run is needed!");
+        }
+        this.corpusFileName = corpusFileName;
+        this.corpusBytes = new File(corpusFileName).length();
+        this.runs = runs;
+    }
+
+    /**
+     * @param args - [corpus file, generated if it doesn't exist] [optional --size=of the corpus to generate (default 1g)
+     *             and the other CorpusGenerator options] [optional --threads=comma-separated consumer thread counts]
+     *             [optional --batches=comma-separated batch sizes] [optional --buffers=comma-separated buffer sizes]
+     *             [optional --io=comma-separated I/O modes, buffered and/or direct] [optional --runs=measured runs]
+     *             [optional --min-mbps=slowest acceptable throughput] [optional --min-efficiency=lowest acceptable
+     *             scaling efficiency at the most threads, between 0 and 1]
+     */
+    public static void main(String[] args) {
+        CommandLineArgs commandLine = CommandLineArgs.parse(args);
+        if (commandLine.positionalCount() < 1) {
+            System.out.println("Command-line: java " + ThroughputBenchmark.class.getName() + " [corpus file, generated " +
+                    "if it doesn't exist] [optional --size=corpus size to generate (default 1g)] " +
+                    "[optional --threads=1,2,4,...] [optional --batches=" + TextFileStatsGenerator.DEFAULT_BATCH_SIZE +
+                    ",...] [optional --buffers=" + TextFileStatsGenerator.DEFAULT_BUFFER_SIZE + ",...] " +
+                    "[optional --io=" + DirectIo.BUFFERED + "," + DirectIo.DIRECT + "] " +
+                    "[optional --runs=measured runs per configuration (default " + DEFAULT_RUNS + ")] " +
+                    "[optional --min-mbps=threshold] [optional --min-efficiency=threshold, e.g. 0.6]");
+            return;
+        }
+        List<Result> results;
+        double minMbps, minEfficiency;
+        try {
+            String corpusFileName = commandLine.getPositional(0);
+            if (!new File(corpusFileName).isFile()) {
+                long lineCount = CorpusGenerator.fromOptions(commandLine).generate(new File(corpusFileName),
+                        CorpusGenerator.parseSize(commandLine.getOption("size", "1g")));
+                System.out.println("Generated a corpus of " + lineCount + " lines into '" + corpusFileName + "'");
+            }
+            minMbps = Double.parseDouble(commandLine.getOption("min-mbps", "0"));
+            minEfficiency = Double.parseDouble(commandLine.getOption("min-efficiency", "0"));
+            ThroughputBenchmark benchmark = new ThroughputBenchmark(corpusFileName,
+                    Integer.parseInt(commandLine.getOption("runs", String.valueOf(DEFAULT_RUNS))));
+            results = benchmark.run(
+                    parseInts(commandLine.getOption("threads", defaultThreadCounts())),
+                    parseInts(commandLine.getOption("batches", String.valueOf(TextFileStatsGenerator.DEFAULT_BATCH_SIZE))),
+                    parseInts(commandLine.getOption("buffers", String.valueOf(TextFileStatsGenerator.DEFAULT_BUFFER_SIZE))),
+                    Arrays.asList(commandLine.getOption("io", DirectIo.BUFFERED).split(",")));
+        } catch (UnsupportedOperationException | IllegalArgumentException e) {
+            System.out.println("ERROR - " + e.getMessage());
+            return;
+        } catch (IOException e) {
+            System.out.println("ERROR - Couldn't write the corpus: " + e.getMessage());
+            return;
+        }
+        printScalingCurves(results);
+        List<String> regressions = checkThresholds(results, minMbps, minEfficiency);
+        regressions.forEach(regression -> System.out.println("REGRESSION - " + regression));
+        if (!regressions.isEmpty()) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Runs every combination of the settings, and prints out the result of each as it's done
+     *
+     * @return - the results, by I/O mode, buffer size, batch size and thread count
+     */
+    List<Result> run(List<Integer> threadCounts, List<Integer> batchSizes, List<Integer> bufferSizes,
+                     List<String> ioModes) {
+        System.out.println(String.format("%-9s %8s %6s %7s %10s %12s %10s", "io", "buffer", "batch", "threads", "MB/s",
+                "lines/s", "peak RSS"));
+        List<Result> results = new ArrayList<>();
+        for (String ioMode : ioModes) {
+            boolean directIo = DirectIo.parseMode(ioMode);
+            for (int bufferSize : bufferSizes) {
+                for (int batchSize : batchSizes) {
+                    for (int threadCount : threadCounts) {
+                        Result result = run(directIo, bufferSize, batchSize, threadCount);
+                        System.out.println(String.format("%-9s %8d %6d %7d %10.1f %12.0f %10s", ioMode, bufferSize,
+                                batchSize, threadCount, result.getMbPerSecond(), result.getLinesPerSecond(),
+                                result.peakRssBytes < 0 ? "n/a" : result.peakRssBytes / (1024 * 1024) + "MB"));
+                        results.add(result);
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * @return - the best of the measured runs of a configuration, after a warm-up run
+     */
+    Result run(boolean directIo, int bufferSize, int batchSize, int threadCount) {
+        ExecutorService producerExecutor = Executors.newFixedThreadPool(1);
+        ExecutorService consumerExecutor = Executors.newFixedThreadPool(threadCount);
+        try {
+            runOnce(directIo, bufferSize, batchSize, threadCount, producerExecutor, consumerExecutor);   // warm-up
+            resetPeakRss();
+            Result best = null;
+            for (int i = 0; i < runs; i++) {
+                Result result = runOnce(directIo, bufferSize, batchSize, threadCount, producerExecutor, consumerExecutor);
+                best = best == null || result.millis < best.millis ? result : best;
+            }
+            return new Result(directIo, bufferSize, batchSize, threadCount, best.millis, best.lineCount, readPeakRss());
+        } finally {
+            producerExecutor.shutdownNow();
+            consumerExecutor.shutdownNow();
+        }
+    }
+
+    private Result runOnce(boolean directIo, int bufferSize, int batchSize, int threadCount,
+                           ExecutorService producerExecutor, ExecutorService consumerExecutor) {
+        TextFileStatsGenerator app = new TextFileStatsGenerator();
+        app.setDirectIo(directIo);
+        app.initialize(corpusFileName, bufferSize, batchSize, threadCount);
+        long millis = Math.max(1, app.run(MAX_MILLIS_PER_RUN, producerExecutor, consumerExecutor));
+        Map<?, ?> lines = (Map<?, ?>) app.getStatistics().get("LineAccumulator");
+        return new Result(directIo, bufferSize, batchSize, threadCount, millis,
+                lines == null ? -1 : ((Number) lines.get("totalLineCount")).longValue(), -1);
+    }
+
+    /**
+     * Prints out throughput per thread count of every other setting, with the speedup and efficiency relative to the
+     * fewest threads
+     */
+    static void printScalingCurves(List<Result> results) {
+        for (List<Result> curve : scalingCurves(results)) {
+            Result first = curve.get(0);
+            System.out.println("\nScaling curve - io " + (first.directIo ? DirectIo.DIRECT : DirectIo.BUFFERED)
+                    + ", buffer " + first.bufferSize + ", batch " + first.batchSize + ":");
+            for (Result result : curve) {
+                System.out.println(String.format("%4d threads %10.1f MB/s  x%.2f  %3.0f%% efficiency %s",
+                        result.threadCount, result.getMbPerSecond(), result.getSpeedup(first),
+                        result.getEfficiency(first) * 100, bar(result.getMbPerSecond() / maxMbPerSecond(curve))));
+            }
+        }
+    }
+
+    /**
+     * @return - a description of every result below the thresholds, empty if there are none
+     */
+    static List<String> checkThresholds(List<Result> results, double minMbps, double minEfficiency) {
+        List<String> regressions = new ArrayList<>();
+        for (Result result : results) {
+            if (result.getMbPerSecond() < minMbps) {
+                regressions.add(result + ": " + String.format("%.1f", result.getMbPerSecond()) + " MB/s is below "
+                        + minMbps);
+            }
+        }
+        for (List<Result> curve : scalingCurves(results)) {
+            Result first = curve.get(0), last = curve.get(curve.size() - 1);
+            if (curve.size() > 1 && last.getEfficiency(first) < minEfficiency) {
+                regressions.add(last + ": scaling efficiency " + String.format("%.2f", last.getEfficiency(first))
+                        + " is below " + minEfficiency);
+            }
+        }
+        return regressions;
+    }
+
+    /**
+     * @return - the results grouped by every setting but the thread count, each ordered by thread count
+     */
+    private static List<List<Result>> scalingCurves(List<Result> results) {
+        return new ArrayList<>(results.stream().collect(Collectors.groupingBy(
+                r -> r.directIo + "/" + r.bufferSize + "/" + r.batchSize, LinkedHashMap::new,
+                Collectors.collectingAndThen(Collectors.toList(), curve -> {
+                    curve.sort((a, b) -> Integer.compare(a.threadCount, b.threadCount));
+                    return curve;
+                }))).values());
+    }
+
+    private static double maxMbPerSecond(List<Result> curve) {
+        return curve.stream().mapToDouble(Result::getMbPerSecond).max().orElse(1);
+    }
+
+    private static String bar(double fraction) {
+        char[] bar = new char[(int) Math.round(fraction * 40)];
+        Arrays.fill(bar, '#');
+        return new String(bar);
+    }
+
+    /**
+     * Resets the peak RSS of the process (Linux 4.0+), so that it's the peak of the runs from here on
+     */
+    private static void resetPeakRss() {
+        try {
+            Files.write(Paths.get(PROC_CLEAR_REFS), "5".getBytes(StandardCharsets.US_ASCII));
+        } catch (IOException | RuntimeException e) {
+            // the peak so far it is then
+        }
+    }
+
+    /**
+     * @return - peak resident set size of the process in bytes (VmHWM), -1 where there's no /proc
+     */
+    private static long readPeakRss() {
+        try {
+            for (String line : Files.readAllLines(Paths.get(PROC_STATUS), StandardCharsets.US_ASCII)) {
+                if (line.startsWith("VmHWM:")) {
+                    return Long.parseLong(line.replaceAll("\\D", "")) * 1024;   // in kB
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // not Linux
+        }
+        return -1;
+    }
+
+    private static String defaultThreadCounts() {
+        List<String> threadCounts = new ArrayList<>();
+        for (int threads = 1; threads < TextFileStatsGenerator.DEFAULT_CONSUMER_THREAD_COUNT; threads *= 2) {
+            threadCounts.add(String.valueOf(threads));
+        }
+        threadCounts.add(String.valueOf(TextFileStatsGenerator.DEFAULT_CONSUMER_THREAD_COUNT));
+        return String.join(",", threadCounts);
+    }
+
+    private static List<Integer> parseInts(String values) {
+        return Arrays.stream(values.split(",")).map(String::trim).map(Integer::valueOf).collect(Collectors.toList());
+    }
+
+    /**
+     * The best run of a configuration
+     */
+    final class Result {
+        private final boolean directIo;
+        private final int bufferSize, batchSize, threadCount;
+        private final long millis, lineCount, peakRssBytes;
+
+        private Result(boolean directIo, int bufferSize, int batchSize, int threadCount, long millis, long lineCount,
+                       long peakRssBytes) {
+            this.directIo = directIo;
+            this.bufferSize = bufferSize;
+            this.batchSize = batchSize;
+            this.threadCount = threadCount;
+            this.millis = millis;
+            this.lineCount = lineCount;
+            this.peakRssBytes = peakRssBytes;
+        }
+
+        double getMbPerSecond() {
+            return corpusBytes / (1024.0 * 1024) / (millis / 1000.0);
+        }
+
+        double getLinesPerSecond() {
+            return lineCount / (millis / 1000.0);
+        }
+
+        /**
+         * @param baseline - the same configuration with fewer threads
+         */
+        double getSpeedup(Result baseline) {
+            return (double) baseline.millis / millis;
+        }
+
+        /**
+         * @return - speedup per added thread, 1 for perfectly linear scaling
+         */
+        double getEfficiency(Result baseline) {
+            return getSpeedup(baseline) * baseline.threadCount / threadCount;
+        }
+
+        @Override
+        public String toString() {
+            return (directIo ? DirectIo.DIRECT : DirectIo.BUFFERED) + " io, buffer " + bufferSize + ", batch " + batchSize
+                    + ", " + threadCount + " threads";
+        }
+    }
+}
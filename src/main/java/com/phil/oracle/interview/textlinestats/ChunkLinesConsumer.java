@@ -0,0 +1,221 @@
+package com.phil.oracle.interview.textlinestats;
+
+import com.phil.oracle.interview.textlinestats.framework.Accumulator;
+import com.phil.oracle.interview.textlinestats.framework.BlockingBuffer;
+import com.phil.oracle.interview.textlinestats.framework.Consumer;
+import com.phil.oracle.interview.textlinestats.framework.FlowTracer;
+import com.phil.oracle.interview.textlinestats.kernel.Utf8LineReader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Takes raw UTF-8 chunks from the Buffer (see RawChunkProducer), splits and decodes their lines, and feeds them in
+ * batches to all Accumulators in the list - so the decoding is spread over all the consumer threads
+ * The lines between the first and the last '\n' of a chunk are its own. The bytes before the first one (the head) and
+ * after the last one (the tail) are parts of lines straddling chunks: they are stitched together in sequence order,
+ * the tail of a chunk with the head of the next one (see LineStitcher), by whichever thread completes the pair
+ * Lines end at '\n', '\r' or "\r\n", the same as in TextLinesProducer
+ *
+ * @author Phil
+ */
+class ChunkLinesConsumer implements Consumer<RawChunk> {
+    private static final FlowTracer TRACER = FlowTracer.get();
+
+    private final BlockingBuffer<RawChunk> buffer;
+    private final List<? extends Accumulator<String[]>> accumulators;
+    private final int threadCount;
+    private final int batchSize;
+    private final LineStitcher stitcher = new LineStitcher();
+
+    // stateful field(s)
+    private final AtomicInteger finishedThreadCount = new AtomicInteger(0);
+    private final AtomicLong malformedInputCount = new AtomicLong(0);
+
+    /**
+     * @param batchSize - how many lines to feed to the accumulators at a time
+     */
+    ChunkLinesConsumer(BlockingBuffer<RawChunk> buffer, List<? extends Accumulator<String[]>> accumulators, int threadCount,
+                       int batchSize) {
+        if (batchSize <= 0) {
+            throw new UnsupportedOperationException("Items batch size has to be greater than zero!");
+        }
+        this.buffer = buffer;
+        this.accumulators = accumulators;
+        this.threadCount = threadCount;
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    @Override
+    public BlockingBuffer<RawChunk> getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * @return - number of chunks consumed - the last thread out also feeds the last line, if it wasn't terminated
+     */
+    @Override
+    public long consumeFromBuffer(BlockingBuffer<RawChunk> buffer) throws InterruptedException {
+        long chunkCount = 0;
+        for (RawChunk chunk = buffer.take(); chunk != null; chunk = buffer.take()) {
+            consumeChunk(chunk);
+            chunkCount++;
+        }
+        if (finishedThreadCount.incrementAndGet() == threadCount) {
+            accumulate(decode(stitcher.finish()));
+        }
+        return chunkCount;
+    }
+
+    /**
+     * @return - number of malformed byte sequences in the input, replaced by U+FFFD
+     */
+    long getMalformedInputCount() {
+        return malformedInputCount.get();
+    }
+
+    private void consumeChunk(RawChunk chunk) {
+        byte[] bytes = chunk.getBytes();
+        int length = chunk.getLength();
+        int first = indexOfLineFeed(bytes, 0, length);
+        if (first < 0) {    // all of it is the middle of a line
+            accumulate(decode(stitcher.add(chunk.getSequence(), Arrays.copyOf(bytes, length), null)));
+            return;
+        }
+        int last = lastIndexOfLineFeed(bytes, length);
+        Utf8LineReader reader = new Utf8LineReader(bytes, first + 1, last - first);
+        List<String> lines = new ArrayList<>(batchSize);
+        for (String line = readLine(reader); line != null; line = readLine(reader)) {
+            lines.add(line);
+            if (lines.size() == batchSize) {
+                accumulate(lines);
+                lines.clear();
+            }
+        }
+        malformedInputCount.addAndGet(reader.getMalformedCount());
+        accumulate(lines);
+        accumulate(decode(stitcher.add(chunk.getSequence(), Arrays.copyOf(bytes, first),
+                Arrays.copyOfRange(bytes, last + 1, length))));
+    }
+
+    /**
+     * @param pieces - the bytes of complete lines stitched together, each without its '\n'
+     * @return - the lines decoded - a piece may hold several of them, if '\r' ends lines
+     */
+    private List<String> decode(List<byte[]> pieces) {
+        List<String> lines = new ArrayList<>();
+        for (byte[] piece : pieces) {
+            if (piece.length == 0) {
+                lines.add("");  // an empty line
+                continue;
+            }
+            Utf8LineReader reader = new Utf8LineReader(piece, 0, piece.length);
+            for (String line = readLine(reader); line != null; line = readLine(reader)) {
+                lines.add(line);
+            }
+            malformedInputCount.addAndGet(reader.getMalformedCount());
+        }
+        return lines;
+    }
+
+    private void accumulate(List<String> lines) {
+        if (lines.isEmpty()) {
+            return;
+        }
+        String[] batch = lines.toArray(new String[0]);
+        FlowTracer.Span consumed = TRACER.beginBatchConsumed(this);
+        for (Accumulator<String[]> accumulator : accumulators) {
+            FlowTracer.Span accumulated = TRACER.beginAccumulate(accumulator);
+            accumulator.accumulate(batch);
+            accumulated.end(batch.length);
+        }
+        consumed.end(batch.length);
+    }
+
+    private static String readLine(Utf8LineReader reader) {
+        try {
+            return reader.readLine();
+        } catch (IOException e) {
+            throw new IllegalStateException("Can't happen, the bytes are in memory", e);
+        }
+    }
+
+    private static int indexOfLineFeed(byte[] bytes, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (bytes[i] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int lastIndexOfLineFeed(byte[] bytes, int length) {
+        for (int i = length - 1; i >= 0; i--) {
+            if (bytes[i] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Puts the lines straddling chunks back together: takes the head and tail of every chunk, in any order, and
+     * stitches them in sequence order - a line runs from the tail of a chunk, through any chunks without a '\n' at all,
+     * to the head of the next chunk with one. Only the pieces of chunks out of order are held on to
+     * Thread-safe
+     */
+    static final class LineStitcher {
+        private final Map<Long, byte[][]> pending = new HashMap<>();   // head and tail of chunks ahead of the next one
+        private final ByteArrayOutputStream carry = new ByteArrayOutputStream();    // the line being stitched
+        private long nextSequence;
+
+        /**
+         * @param sequence - the chunk's sequence number
+         * @param head     - the bytes before its first '\n', or all of its bytes if it has none
+         * @param tail     - the bytes after its last '\n', or null if it has none
+         * @return - the lines completed, each without its '\n' (possibly none, if the chunk is out of order)
+         */
+        synchronized List<byte[]> add(long sequence, byte[] head, byte[] tail) {
+            pending.put(sequence, new byte[][]{head, tail});
+            List<byte[]> lines = new ArrayList<>();
+            for (byte[][] pieces = pending.remove(nextSequence); pieces != null; pieces = pending.remove(nextSequence)) {
+                carry.write(pieces[0], 0, pieces[0].length);
+                if (pieces[1] != null) {
+                    lines.add(carry.toByteArray());
+                    carry.reset();
+                    carry.write(pieces[1], 0, pieces[1].length);
+                }
+                nextSequence++;
+            }
+            return lines;
+        }
+
+        /**
+         * @return - the last line, if the input doesn't end with a '\n' (none otherwise) - once every chunk is in
+         */
+        synchronized List<byte[]> finish() {
+            if (!pending.isEmpty()) {
+                throw new IllegalStateException("Chunk " + nextSequence + " is missing, " + pending.size()
+                        + " chunks after it can't be stitched!");
+            }
+            List<byte[]> lines = new ArrayList<>();
+            if (carry.size() > 0) {
+                lines.add(carry.toByteArray());
+                carry.reset();
+            }
+            return lines;
+        }
+    }
+}
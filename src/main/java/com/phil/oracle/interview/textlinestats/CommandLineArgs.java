@@ -0,0 +1,74 @@
+package com.phil.oracle.interview.textlinestats;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Splits the command-line into positional arguments and '--name=value' (or '--name') options
+ *
+ * @author Phil
+ */
+final class CommandLineArgs {
+    private static final String OPTION_PREFIX = "--";
+
+    private final List<String> positional = new ArrayList<>();
+    private final Map<String, String> options = new LinkedHashMap<>();
+
+    private CommandLineArgs() {
+    }
+
+    /**
+     * @param args - the command-line
+     * @return - parsed arguments, in their original order
+     */
+    static CommandLineArgs parse(String[] args) {
+        CommandLineArgs parsed = new CommandLineArgs();
+        for (String arg : args) {
+            if (arg.startsWith(OPTION_PREFIX) && arg.length() > OPTION_PREFIX.length()) {
+                int equals = arg.indexOf('=');
+                if (equals > 0) {
+                    parsed.options.put(arg.substring(OPTION_PREFIX.length(), equals), arg.substring(equals + 1));
+                } else {
+                    parsed.options.put(arg.substring(OPTION_PREFIX.length()), "");
+                }
+            } else {
+                parsed.positional.add(arg);
+            }
+        }
+        return parsed;
+    }
+
+    /**
+     * @return - number of positional arguments
+     */
+    int positionalCount() {
+        return positional.size();
+    }
+
+    /**
+     * @param index - zero-based, not counting any options
+     * @return - the positional argument
+     */
+    String getPositional(int index) {
+        return positional.get(index);
+    }
+
+    /**
+     * @param name - option name without the '--' prefix
+     * @return - whether the option is on the command-line
+     */
+    boolean hasOption(String name) {
+        return options.containsKey(name);
+    }
+
+    /**
+     * @param name         - option name without the '--' prefix
+     * @param defaultValue - returned if the option is missing
+     * @return - the option's value (empty for a plain '--name' flag)
+     */
+    String getOption(String name, String defaultValue) {
+        return options.getOrDefault(name, defaultValue);
+    }
+}
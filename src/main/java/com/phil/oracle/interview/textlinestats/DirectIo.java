@@ -0,0 +1,71 @@
+package com.phil.oracle.interview.textlinestats;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ * Direct I/O input of files on disk (O_DIRECT), bypassing the page cache: a one-shot scan of a huge file then doesn't
+ * evict the hot pages of everything else running on the box, see --io=direct
+ * The reader (DirectFileInputStream) needs JDK 10+ APIs - ExtendedOpenOption.DIRECT, the file store's block size and
+ * aligned buffers - so it lives in the multi-release path (META-INF/versions/16) and is loaded reflectively. Where it's
+ * not there, or the file system doesn't do direct I/O (e.g. tmpfs on older kernels), files are read as usual
+ *
+ * @author Phil
+ */
+final class DirectIo {
+    static final String IO_OPTION = "io";
+    static final String DIRECT = "direct";
+    static final String BUFFERED = "buffered";
+
+    // only present in the multi-release jar (META-INF/versions/16), hence loaded reflectively
+    private static final String READER_CLASS = "com.phil.oracle.interview.textlinestats.DirectFileInputStream";
+
+    private DirectIo() {/* No instantiation or extension for utility class */ }
+
+    /**
+     * @param textFileName - a file on disk
+     * @param start        - the first byte to read
+     * @param end          - just past the last byte to read, -1 for the end of the file
+     * @return - a direct I/O stream of the bytes, or null if direct I/O can't be used here (a warning is printed out)
+     */
+    static InputStream open(String textFileName, long start, long end) {
+        try {
+            InputStream in = (InputStream) Class.forName(READER_CLASS).getConstructor(String.class, long.class, long.class)
+                    .newInstance(textFileName, start, end);
+            System.out.println("File '" + textFileName + "' found on disk, reading it with direct I/O");
+            return in;
+        } catch (InvocationTargetException e) {   // IOException, UnsupportedOperationException
+            System.out.println("WARNING - Direct I/O isn't supported for '" + textFileName + "' ("
+                    + e.getCause().getMessage() + "), reading it through the page cache");
+        } catch (ReflectiveOperationException | LinkageError e) {
+            System.out.println("WARNING - Direct I/O needs Java 16+, reading '" + textFileName + "' through the page cache");
+        }
+        return null;
+    }
+
+    /**
+     * @return - whether direct I/O streams can be opened on this JVM at all (the file system may still not support it)
+     */
+    static boolean isAvailable() {
+        try {
+            Class.forName(READER_CLASS);
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * @param mode - direct or buffered
+     * @return - whether it's direct
+     */
+    static boolean parseMode(String mode) {
+        if (mode.equalsIgnoreCase(DIRECT)) {
+            return true;
+        } else if (mode.equalsIgnoreCase(BUFFERED)) {
+            return false;
+        }
+        throw new UnsupportedOperationException("Unknown I/O mode '" + mode + "'!");
+    }
+}
@@ -0,0 +1,92 @@
+package com.phil.oracle.interview.textlinestats;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Minimal JSON writer for statistics output - maps, collections, strings, numbers, booleans and nulls
+ * Not worth a library dependency for this little program
+ *
+ * @author Phil
+ */
+final class Json {
+
+    private Json() {/* No instantiation or extension for utility class */ }
+
+    /**
+     * @param value - the value to render
+     * @return - JSON text of the value
+     */
+    static String toJson(Object value) {
+        StringBuilder json = new StringBuilder();
+        append(json, value);
+        return json.toString();
+    }
+
+    private static void append(StringBuilder json, Object value) {
+        if (value == null) {
+            json.append("null");
+        } else if (value instanceof Map) {
+            json.append('{');
+            Iterator<? extends Map.Entry<?, ?>> entries = ((Map<?, ?>) value).entrySet().iterator();
+            while (entries.hasNext()) {
+                Map.Entry<?, ?> entry = entries.next();
+                appendString(json, String.valueOf(entry.getKey()));
+                json.append(':');
+                append(json, entry.getValue());
+                if (entries.hasNext()) {
+                    json.append(',');
+                }
+            }
+            json.append('}');
+        } else if (value instanceof Collection) {
+            json.append('[');
+            Iterator<?> items = ((Collection<?>) value).iterator();
+            while (items.hasNext()) {
+                append(json, items.next());
+                if (items.hasNext()) {
+                    json.append(',');
+                }
+            }
+            json.append(']');
+        } else if (value instanceof Double && !Double.isFinite((Double) value)) {
+            json.append("null");   // JSON has no NaN or Infinity
+        } else if (value instanceof Number || value instanceof Boolean) {
+            json.append(value);
+        } else {
+            appendString(json, value.toString());
+        }
+    }
+
+    private static void appendString(StringBuilder json, String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char ch = value.charAt(i);
+            switch (ch) {
+                case '"':
+                    json.append("\\\"");
+                    break;
+                case '\\':
+                    json.append("\\\\");
+                    break;
+                case '\n':
+                    json.append("\\n");
+                    break;
+                case '\r':
+                    json.append("\\r");
+                    break;
+                case '\t':
+                    json.append("\\t");
+                    break;
+                default:
+                    if (ch < 0x20) {
+                        json.append(String.format("\\u%04x", (int) ch));
+                    } else {
+                        json.append(ch);
+                    }
+            }
+        }
+        json.append('"');
+    }
+}
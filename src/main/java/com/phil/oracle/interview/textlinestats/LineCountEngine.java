@@ -0,0 +1,99 @@
+package com.phil.oracle.interview.textlinestats;
+
+import com.phil.oracle.interview.textlinestats.kernel.TextKernel;
+import com.phil.oracle.interview.textlinestats.kernel.TextKernels;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 'wc -l' - counts lines straight off the bytes when line count is the only statistic needed: no decoding, no line
+ * Strings, no batches, no threads. Disk files are memory-mapped, classpath files are streamed
+ * A line is terminated by '\n', '\r' or "\r\n" (same as the line readers), and a non-empty last line needs no terminator
+ *
+ * @author Phil
+ */
+public class LineCountEngine {
+    private static final long MAPPED_CHUNK_BYTES = 1L << 30;  // a mapping can't exceed 2GB, map a GB at a time
+    private static final int STREAM_CHUNK_BYTES = 64 * 1024;
+
+    private final TextKernel kernel;
+
+    public LineCountEngine() {
+        this(TextKernels.get());
+    }
+
+    /**
+     * @param kernel - the kernel to count line breaks with
+     */
+    public LineCountEngine(TextKernel kernel) {
+        this.kernel = kernel;
+    }
+
+    /**
+     * @param textFileName - name of file in classpath or absolute path/name on disk (disk first, as the producer does)
+     * @return - the number of lines
+     * @throws IOException - if the file can't be found or read
+     */
+    public long countLines(String textFileName) throws IOException {
+        File file = new File(textFileName);
+        if (file.isFile()) {
+            return countLines(file);
+        }
+        InputStream inputStream = getClass().getClassLoader().getResourceAsStream(textFileName);
+        if (inputStream == null) {
+            throw new FileNotFoundException("Couldn't find the file '" + textFileName + "' anywhere!");
+        }
+        try (InputStream in = inputStream) {
+            return countLines(in);
+        }
+    }
+
+    private long countLines(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size(), lineBreakCount = 0;
+            byte lastByte = '\n';
+            for (long position = 0; position < size; position += MAPPED_CHUNK_BYTES) {
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                        Math.min(MAPPED_CHUNK_BYTES, size - position));
+                lineBreakCount += countLineBreaks(mapped, lastByte);
+                lastByte = mapped.get(mapped.limit() - 1);
+            }
+            return lineCount(lineBreakCount, lastByte);
+        }
+    }
+
+    // package-private for testing "\r\n" across chunks, which mapped files only have past a GB
+    long countLines(InputStream in) throws IOException {
+        byte[] chunk = new byte[STREAM_CHUNK_BYTES];
+        long lineBreakCount = 0;
+        byte lastByte = '\n';
+        for (int read; (read = in.read(chunk)) != -1; ) {
+            if (read > 0) {
+                lineBreakCount += countLineBreaks(ByteBuffer.wrap(chunk, 0, read), lastByte);
+                lastByte = chunk[read - 1];
+            }
+        }
+        return lineCount(lineBreakCount, lastByte);
+    }
+
+    /**
+     * @param chunk    - the next chunk of the input, not empty
+     * @param lastByte - the last byte of the previous chunk
+     * @return - the line breaks in the chunk, less a "\r\n" split between the two chunks (already counted at the '\r')
+     */
+    private long countLineBreaks(ByteBuffer chunk, byte lastByte) {
+        long lineBreakCount = kernel.countLineBreaks(chunk);
+        return lastByte == '\r' && chunk.get(chunk.position()) == '\n' ? lineBreakCount - 1 : lineBreakCount;
+    }
+
+    private static long lineCount(long lineBreakCount, byte lastByte) {
+        return lastByte == '\n' || lastByte == '\r' ? lineBreakCount : lineBreakCount + 1;
+    }
+}
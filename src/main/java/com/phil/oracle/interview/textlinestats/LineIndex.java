@@ -0,0 +1,296 @@
+package com.phil.oracle.interview.textlinestats;
+
+import com.phil.oracle.interview.textlinestats.kernel.TimestampParser;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Sparse line-offset index of a file on disk, in a sidecar file next to it: the byte offset of every blockLines-th line,
+ * and the earliest and latest timestamp minute of each block of lines (if the lines were read with a timestamp pattern,
+ * see TimestampParser). Written by the producer as it reads the file, so it costs no extra pass
+ * Later runs can then seek to a range of lines or minutes instead of reading the file from the start (see
+ * getLineRange and getTimeRange), and coordinator mode splits the file at block starts (see alignToBlock)
+ * Line numbers are zero-based, and lines are terminated by '\n' (a '\r' before it doesn't matter, a lone '\r' doesn't
+ * end a line here) - the same as byte ranges of the producer, which only start after a '\n'
+ *
+ * Format: "TLSI" magic, version (short), indexed file size and last modified time (long each - an index which doesn't
+ * match them is stale), block lines (int), line count (long), timestamp pattern (UTF, empty for none), block count (int),
+ * then per block its offset, min minute and max minute (long each, TimestampParser.NO_TIMESTAMP if it has no timestamps)
+ *
+ * @author Phil
+ */
+final class LineIndex {
+    static final String INDEX_OPTION = "index";
+    static final String LINES_OPTION = "lines";
+    static final String TIME_OPTION = "time";
+    static final String FILE_SUFFIX = ".tlsi";
+    static final int DEFAULT_BLOCK_LINES = 64 * 1024;
+    static final byte[] MAGIC = {'T', 'L', 'S', 'I'};
+    static final short VERSION = 1;
+    private static final int IO_BUFFER_BYTES = 64 * 1024;
+
+    private final long fileSize, lastModified;
+    private final int blockLines;
+    private final long lineCount;
+    private final String timestampPattern;
+    private final long[] offsets, minMinutes, maxMinutes;
+
+    private LineIndex(long fileSize, long lastModified, int blockLines, long lineCount, String timestampPattern,
+                      long[] offsets, long[] minMinutes, long[] maxMinutes) {
+        this.fileSize = fileSize;
+        this.lastModified = lastModified;
+        this.blockLines = blockLines;
+        this.lineCount = lineCount;
+        this.timestampPattern = timestampPattern;
+        this.offsets = offsets;
+        this.minMinutes = minMinutes;
+        this.maxMinutes = maxMinutes;
+    }
+
+    /**
+     * @return - the sidecar index file of a text file
+     */
+    static File indexFileOf(String textFileName) {
+        return new File(textFileName + FILE_SUFFIX);
+    }
+
+    /**
+     * @param textFileName - a file on disk
+     * @return - its index
+     * @throws IOException - if there's no index, or it's stale (the file changed since), or it can't be read
+     */
+    static LineIndex read(String textFileName) throws IOException {
+        File file = new File(textFileName), indexFile = indexFileOf(textFileName);
+        if (!indexFile.isFile()) {
+            throw new IOException("No line index for '" + textFileName + "' - create one with --" + INDEX_OPTION);
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile), IO_BUFFER_BYTES))) {
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new IOException("'" + indexFile + "' is not a line index");
+            }
+            short version = in.readShort();
+            if (version != VERSION) {
+                throw new IOException("'" + indexFile + "' is a version " + version + " line index, only version "
+                        + VERSION + " is supported");
+            }
+            long fileSize = in.readLong(), lastModified = in.readLong();
+            if (fileSize != file.length() || lastModified != file.lastModified()) {
+                throw new IOException("The line index of '" + textFileName + "' is stale - recreate it with --" + INDEX_OPTION);
+            }
+            int blockLines = in.readInt();
+            long lineCount = in.readLong();
+            String timestampPattern = in.readUTF();
+            int blockCount = in.readInt();
+            long[] offsets = new long[blockCount], minMinutes = new long[blockCount], maxMinutes = new long[blockCount];
+            for (int block = 0; block < blockCount; block++) {
+                offsets[block] = in.readLong();
+                minMinutes[block] = in.readLong();
+                maxMinutes[block] = in.readLong();
+            }
+            return new LineIndex(fileSize, lastModified, blockLines, lineCount,
+                    timestampPattern.isEmpty() ? null : timestampPattern, offsets, minMinutes, maxMinutes);
+        }
+    }
+
+    /**
+     * @param textFileName - a file on disk
+     * @return - its index, or null if there's no current one
+     */
+    static LineIndex readIfCurrent(String textFileName) {
+        try {
+            return read(textFileName);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @param textFileName - the indexed file, on disk - the index goes into its sidecar file
+     */
+    void write(String textFileName) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(indexFileOf(textFileName)), IO_BUFFER_BYTES))) {
+            out.write(MAGIC);
+            out.writeShort(VERSION);
+            out.writeLong(fileSize);
+            out.writeLong(lastModified);
+            out.writeInt(blockLines);
+            out.writeLong(lineCount);
+            out.writeUTF(timestampPattern == null ? "" : timestampPattern);
+            out.writeInt(offsets.length);
+            for (int block = 0; block < offsets.length; block++) {
+                out.writeLong(offsets[block]);
+                out.writeLong(minMinutes[block]);
+                out.writeLong(maxMinutes[block]);
+            }
+        }
+    }
+
+    /**
+     * @param firstLine - the first line of the range, zero-based
+     * @param endLine   - just past the last line of the range
+     * @return - the byte range [start, end) of the lines - the block start is looked up, the lines after it scanned
+     */
+    long[] getLineRange(String textFileName, long firstLine, long endLine) throws IOException {
+        if (firstLine < 0 || endLine < firstLine) {
+            throw new UnsupportedOperationException("Invalid line range " + firstLine + "-" + endLine + "!");
+        }
+        try (FileChannel channel = new RandomAccessFile(textFileName, "r").getChannel()) {
+            return new long[]{getLineOffset(channel, firstLine), getLineOffset(channel, endLine)};
+        }
+    }
+
+    /**
+     * Timestamps are expected to be (roughly) ascending, as in a log: the range runs from the first block with
+     * timestamps within the minutes to the last one, so it may include a few lines on either side
+     *
+     * @param fromMinute - the first minute of the range (minutes since the epoch, see TimestampParser)
+     * @param endMinute  - just past the last minute of the range
+     * @return - the byte range [start, end) of the blocks, empty if none has timestamps within the minutes
+     */
+    long[] getTimeRange(long fromMinute, long endMinute) {
+        if (timestampPattern == null) {
+            throw new UnsupportedOperationException("The line index has no timestamps - recreate it with --"
+                    + INDEX_OPTION + " and --" + TextFileStatsGenerator.TIMESTAMPS_OPTION);
+        }
+        int first = -1, last = -1;
+        for (int block = 0; block < offsets.length; block++) {
+            if (minMinutes[block] != TimestampParser.NO_TIMESTAMP && minMinutes[block] < endMinute
+                    && maxMinutes[block] >= fromMinute) {
+                first = first < 0 ? block : first;
+                last = block;
+            }
+        }
+        if (first < 0) {
+            return new long[]{0, 0};
+        }
+        return new long[]{offsets[first], last + 1 < offsets.length ? offsets[last + 1] : fileSize};
+    }
+
+    /**
+     * @param position - any byte position in the file
+     * @return - the start of the first block at or after the position, the file size if there's none
+     */
+    long alignToBlock(long position) {
+        int block = Arrays.binarySearch(offsets, position);
+        block = block >= 0 ? block : -block - 1;
+        return block < offsets.length ? offsets[block] : fileSize;
+    }
+
+    int getBlockLines() {
+        return blockLines;
+    }
+
+    long getLineCount() {
+        return lineCount;
+    }
+
+    int getBlockCount() {
+        return offsets.length;
+    }
+
+    /**
+     * @return - the timestamp pattern the minutes were parsed with, null if there are none
+     */
+    String getTimestampPattern() {
+        return timestampPattern;
+    }
+
+    /**
+     * @return - byte offset of the line, the file size if it's past the last line
+     */
+    private long getLineOffset(FileChannel channel, long line) throws IOException {
+        if (line >= lineCount) {
+            return fileSize;
+        }
+        int block = (int) (line / blockLines);
+        long offset = offsets[block];
+        ByteBuffer bytes = ByteBuffer.allocate(8192);
+        for (long toSkip = line - (long) block * blockLines; toSkip > 0; ) {
+            bytes.clear();
+            int read = channel.read(bytes, offset);
+            if (read < 0) {
+                return fileSize;
+            }
+            for (int i = 0; i < read && toSkip > 0; i++) {
+                offset++;
+                toSkip -= bytes.get(i) == '\n' ? 1 : 0;
+            }
+        }
+        return offset;
+    }
+
+    /**
+     * Builds the index of a file as it's read, line by line
+     */
+    static final class Builder {
+        private final int blockLines;
+        private final TimestampParser timestampParser;
+        private long[] offsets = new long[16], minMinutes = new long[16], maxMinutes = new long[16];
+        private int blockCount;
+        private long lineCount;
+
+        /**
+         * @param blockLines       - lines per block, at least one
+         * @param timestampPattern - pattern of the timestamps starting the lines, for per-block minutes, null for none
+         */
+        Builder(int blockLines, String timestampPattern) {
+            if (blockLines < 1) {
+                throw new UnsupportedOperationException("Index blocks need at least one line!");
+            }
+            this.blockLines = blockLines;
+            this.timestampParser = timestampPattern == null ? null : new TimestampParser(timestampPattern);
+        }
+
+        /**
+         * @param offset          - byte offset of the line's start in the file
+         * @param line            - the line
+         * @param followsLineFeed - whether the line starts the file or follows a '\n' - one following a lone '\r' is
+         *                        indexed as part of the line before it, see Utf8LineReader.isLineFollowingLineFeed
+         */
+        void addLine(long offset, String line, boolean followsLineFeed) {
+            if ((followsLineFeed || blockCount == 0) && lineCount++ % blockLines == 0) {
+                if (blockCount == offsets.length) {
+                    offsets = Arrays.copyOf(offsets, blockCount * 2);
+                    minMinutes = Arrays.copyOf(minMinutes, blockCount * 2);
+                    maxMinutes = Arrays.copyOf(maxMinutes, blockCount * 2);
+                }
+                offsets[blockCount] = offset;
+                minMinutes[blockCount] = maxMinutes[blockCount] = TimestampParser.NO_TIMESTAMP;
+                blockCount++;
+            }
+            long minute = timestampParser == null ? TimestampParser.NO_TIMESTAMP : timestampParser.parseMinute(line);
+            if (minute != TimestampParser.NO_TIMESTAMP) {
+                int block = blockCount - 1;
+                if (minMinutes[block] == TimestampParser.NO_TIMESTAMP || minute < minMinutes[block]) {
+                    minMinutes[block] = minute;
+                }
+                if (maxMinutes[block] == TimestampParser.NO_TIMESTAMP || minute > maxMinutes[block]) {
+                    maxMinutes[block] = minute;
+                }
+            }
+        }
+
+        /**
+         * @param file - the file that was read, to tell whether the index is stale later on
+         */
+        LineIndex build(File file) {
+            return new LineIndex(file.length(), file.lastModified(), blockLines, lineCount,
+                    timestampParser == null ? null : timestampParser.getPattern(), Arrays.copyOf(offsets, blockCount),
+                    Arrays.copyOf(minMinutes, blockCount), Arrays.copyOf(maxMinutes, blockCount));
+        }
+    }
+}
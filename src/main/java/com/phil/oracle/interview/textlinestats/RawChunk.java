@@ -0,0 +1,37 @@
+package com.phil.oracle.interview.textlinestats;
+
+/**
+ * A chunk of raw input bytes, as read - lines aren't split, so the first and last line of a chunk may straddle its
+ * neighbours (see ChunkLinesConsumer). The sequence number tells where in the input the chunk is
+ * Not modified once put into the buffer, and therefore safe to hand over between threads
+ *
+ * @author Phil
+ */
+final class RawChunk {
+    private final long sequence;
+    private final byte[] bytes;
+    private final int length;
+
+    /**
+     * @param sequence - 0 for the first chunk of the input, then 1, 2...
+     * @param bytes    - the bytes of the chunk, from the start of the array
+     * @param length   - number of bytes in the chunk
+     */
+    RawChunk(long sequence, byte[] bytes, int length) {
+        this.sequence = sequence;
+        this.bytes = bytes;
+        this.length = length;
+    }
+
+    long getSequence() {
+        return sequence;
+    }
+
+    byte[] getBytes() {
+        return bytes;
+    }
+
+    int getLength() {
+        return length;
+    }
+}
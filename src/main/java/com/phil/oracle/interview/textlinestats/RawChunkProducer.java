@@ -0,0 +1,80 @@
+package com.phil.oracle.interview.textlinestats;
+
+import com.phil.oracle.interview.textlinestats.framework.AbstractProducer;
+import com.phil.oracle.interview.textlinestats.framework.BlockingBuffer;
+import com.phil.oracle.interview.textlinestats.framework.Consumer;
+import com.phil.oracle.interview.textlinestats.framework.FlowTracer;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads the input in large chunks of raw bytes and puts them into the buffer as they are - no decoding, no line
+ * splitting, which the consumer threads do instead (see ChunkLinesConsumer)
+ * Meant for streams (see TextLinesProducer.isStream): they can't be split into byte ranges, so a single thread has to
+ * read them, and reading is all it does
+ *
+ * @author Phil
+ */
+class RawChunkProducer extends AbstractProducer<RawChunk> {
+    static final int DEFAULT_CHUNK_BYTES = 1024 * 1024;
+    private static final FlowTracer TRACER = FlowTracer.get();
+
+    private final String textFileName;
+    private final int chunkBytes;
+
+    /**
+     * @param textFileName - the file name to read, "-" for standard input, decompressed if it's a ".gz" file
+     * @param chunkBytes   - size of the chunks (the last one may be smaller)
+     */
+    RawChunkProducer(String textFileName, int chunkBytes, Consumer<RawChunk> consumer) {
+        super(1, consumer);     // a stream can only be read by a single thread
+        if (chunkBytes <= 0) {
+            throw new UnsupportedOperationException("Chunk size has to be greater than zero!");
+        }
+        this.textFileName = textFileName;
+        this.chunkBytes = chunkBytes;
+    }
+
+    /**
+     * Streams chunks of the input to the buffer
+     *
+     * @return number of chunks streamed to the buffer
+     */
+    @Override
+    public long produceToBuffer(BlockingBuffer<RawChunk> buffer) throws InterruptedException {
+        long chunkCount = 0;
+        try (InputStream in = TextLinesProducer.openInput(textFileName)) {
+            if (in == null) {
+                return 0;
+            }
+            while (true) {
+                FlowTracer.Span produced = TRACER.beginBatchProduced(this);
+                byte[] bytes = new byte[chunkBytes];
+                int length = readFully(in, bytes);
+                if (length == 0) {
+                    break;
+                }
+                buffer.put(new RawChunk(chunkCount++, bytes, length));
+                produced.end(1);
+                if (length < bytes.length) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("ERROR - Couldn't read '" + textFileName + "' any further: " + e.getMessage());
+        }
+        return chunkCount;
+    }
+
+    /**
+     * @return - number of bytes read, less than the array's length only at the end of the input
+     */
+    private static int readFully(InputStream in, byte[] bytes) throws IOException {
+        int length = 0;
+        for (int read; length < bytes.length && (read = in.read(bytes, length, bytes.length - length)) >= 0; ) {
+            length += read;
+        }
+        return length;
+    }
+}
@@ -0,0 +1,332 @@
+package com.phil.oracle.interview.textlinestats;
+
+import com.phil.oracle.interview.textlinestats.framework.MergeableAccumulator;
+import com.phil.oracle.interview.textlinestats.framework.ReorderBuffer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+/**
+ * Coordinator mode: splits a file on disk into byte ranges, and farms them out to worker JVMs on the same machine
+ * (see ScaleOutWorker), each with its own heap and GC. Workers ship back the state of their accumulators per range,
+ * which gets merged here (see MergeableAccumulator)
+ * A range fails if its worker dies, disconnects, times out or reports an error: it goes back into the queue for any
+ * (re-launched) worker to retry, up to MAX_ATTEMPTS times. A range's state is only merged once it arrived in full
+ *
+ * @author Phil
+ */
+final class ScaleOutCoordinator {
+    static final String WORKERS_OPTION = "workers";
+    static final long MIN_RANGE_BYTES = 16 * 1024 * 1024;
+    static final int RANGES_PER_WORKER = 4;   // more ranges than workers, for balancing and cheaper retries
+    static final int MAX_ATTEMPTS = 3;
+    static final int CONNECT_TIMEOUT_MILLIS = 30000;
+
+    /**
+     * Starts a worker which connects to the given localhost port, and serves tasks (see ScaleOutWorker.serve)
+     */
+    @FunctionalInterface
+    interface WorkerLauncher {
+        /**
+         * @param port - the localhost port the worker should connect to
+         * @return - closing it stops the worker
+         */
+        Closeable launch(int port) throws IOException;
+    }
+
+    /**
+     * Launches workers as JVMs with the same classpath, logging their output to a temporary file
+     */
+    static final class ProcessLauncher implements WorkerLauncher {
+        private File logFile;
+
+        @Override
+        public synchronized Closeable launch(int port) throws IOException {
+            if (logFile == null) {
+                logFile = File.createTempFile("textlinestats-workers", ".log");
+                System.out.println("Worker output goes to " + logFile);
+            }
+            String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+            Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                    TextFileStatsGenerator.class.getName(), "--" + ScaleOutWorker.WORKER_OPTION + "=" + port)
+                    .redirectErrorStream(true).redirectOutput(ProcessBuilder.Redirect.appendTo(logFile)).start();
+            return process::destroyForcibly;
+        }
+    }
+
+    private final int workerCount;
+    private final int batchSize;
+    private final int workerConsumerThreadCount;
+    private final WorkerLauncher launcher;
+    private final long minRangeBytes;
+
+    /**
+     * @param workerCount               - number of workers to run at a time
+     * @param batchSize                 - lines per batch, in the workers
+     * @param workerConsumerThreadCount - consumer threads per worker
+     * @param launcher                  - starts the workers
+     */
+    ScaleOutCoordinator(int workerCount, int batchSize, int workerConsumerThreadCount, WorkerLauncher launcher) {
+        this(workerCount, batchSize, workerConsumerThreadCount, launcher, MIN_RANGE_BYTES);
+    }
+
+    /**
+     * @param minRangeBytes - smallest range worth shipping to a worker (MIN_RANGE_BYTES, unless testing)
+     */
+    ScaleOutCoordinator(int workerCount, int batchSize, int workerConsumerThreadCount, WorkerLauncher launcher,
+                        long minRangeBytes) {
+        if (workerCount < 1) {
+            throw new UnsupportedOperationException("At least one worker is needed!");
+        }
+        this.workerCount = workerCount;
+        this.batchSize = batchSize;
+        this.workerConsumerThreadCount = workerConsumerThreadCount;
+        this.launcher = launcher;
+        this.minRangeBytes = minRangeBytes;
+    }
+
+    /**
+     * @param textFileName   - a file on disk (or in classpath, which can't be split: it becomes a single range)
+     * @param statistics     - the statistics to compute
+     * @param maxMillisToRun - maximum milliseconds for the whole run
+     * @return - accumulators of the statistics, with the state of all ranges merged in
+     * @throws IllegalStateException - if a range failed MAX_ATTEMPTS times, or time ran out
+     */
+    List<MergeableAccumulator<String[]>> run(String textFileName, Set<Statistic> statistics, long maxMillisToRun)
+            throws IOException {
+        List<MergeableAccumulator<String[]>> accumulators = statistics.stream().map(Statistic::newAccumulator)
+                .collect(Collectors.toList());
+        List<Range> ranges = split(textFileName);
+        BlockingQueue<Range> queue = new LinkedBlockingQueue<>(ranges);
+        AtomicInteger pendingCount = new AtomicInteger(ranges.size());
+        AtomicReference<String> failure = new AtomicReference<>();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxMillisToRun);
+        String statisticNames = statistics.stream().map(Statistic::name).collect(Collectors.joining(","));
+        // the states get merged in range order, as if the file had been read in one go (see Accumulator.isOrderSensitive)
+        ReorderBuffer<byte[][]> merger = new ReorderBuffer<>(ranges.size(), states -> {
+            try {
+                merge(accumulators, states);
+            } catch (IOException e) {
+                failure.compareAndSet(null, "Couldn't merge the state of a range of '" + textFileName + "': " + e);
+            }
+        });
+
+        int slotCount = Math.min(workerCount, ranges.size());
+        ExecutorService slots = Executors.newFixedThreadPool(slotCount);
+        for (int i = 0; i < slotCount; i++) {
+            slots.execute(() -> runSlot(textFileName, statisticNames, merger, accumulators.size(), queue, pendingCount,
+                    failure, deadline));
+        }
+        slots.shutdown();
+        try {
+            slots.awaitTermination(maxMillisToRun + CONNECT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            slots.shutdownNow();
+        }
+        if (failure.get() != null) {
+            throw new IllegalStateException(failure.get());
+        }
+        if (pendingCount.get() > 0) {
+            throw new IllegalStateException(pendingCount.get() + " of " + ranges.size() + " ranges didn't complete in time");
+        }
+        return accumulators;
+    }
+
+    /**
+     * @return - about RANGES_PER_WORKER byte ranges per worker, at least minRangeBytes each - split at line index blocks
+     * if the file has a current index (see LineIndex), so that workers don't have to look for line starts
+     */
+    List<Range> split(String textFileName) throws IOException {
+        List<Range> ranges = new ArrayList<>();
+        File file = new File(textFileName);
+        if (!file.isFile()) {
+            if (!TextLinesProducer.isReadable(textFileName)) {
+                throw new FileNotFoundException("Couldn't find the file '" + textFileName + "' anywhere!");
+            }
+            ranges.add(new Range(0, 0, -1));  // the whole classpath file
+            return ranges;
+        }
+        long size = file.length();
+        long rangeSize = Math.max(minRangeBytes, size / ((long) workerCount * RANGES_PER_WORKER) + 1);
+        LineIndex index = LineIndex.readIfCurrent(textFileName);
+        for (long start = 0, end; start < size || ranges.isEmpty(); start = end) {
+            end = Math.min(size, start + rangeSize);
+            end = index != null ? index.alignToBlock(end) : end;
+            ranges.add(new Range(ranges.size(), start, end));
+        }
+        return ranges;
+    }
+
+    /**
+     * Keeps one worker busy with ranges from the queue until there are none left, re-launching it after failures
+     */
+    private void runSlot(String textFileName, String statisticNames, ReorderBuffer<byte[][]> merger,
+                         int accumulatorCount, BlockingQueue<Range> queue, AtomicInteger pendingCount,
+                         AtomicReference<String> failure, long deadline) {
+        WorkerConnection worker = null;
+        try {
+            while (pendingCount.get() > 0 && failure.get() == null && System.nanoTime() < deadline) {
+                Range range = queue.poll(100, TimeUnit.MILLISECONDS);  // others might still fail theirs
+                if (range == null) {
+                    continue;
+                }
+                long millisLeft = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                try {
+                    if (worker == null) {
+                        worker = new WorkerConnection(launcher);
+                    }
+                    byte[][] states = worker.process(textFileName, range, statisticNames, batchSize,
+                            workerConsumerThreadCount, millisLeft, accumulatorCount);
+                    merger.add(range.index, Collections.singletonList(states));
+                    pendingCount.decrementAndGet();
+                } catch (IOException e) {
+                    System.out.println("Range " + range + " of '" + textFileName + "' failed (attempt " + (range.attempts + 1)
+                            + " of " + MAX_ATTEMPTS + "): " + e);
+                    if (worker != null) {
+                        worker.close();
+                        worker = null;
+                    }
+                    if (++range.attempts >= MAX_ATTEMPTS) {
+                        failure.compareAndSet(null, "Range " + range + " of '" + textFileName + "' failed "
+                                + MAX_ATTEMPTS + " times, last error: " + e);
+                    } else {
+                        queue.add(range);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (worker != null) {
+                worker.shutdown();
+            }
+        }
+    }
+
+    // one range at a time, see ReorderBuffer
+    private static void merge(List<MergeableAccumulator<String[]>> accumulators, byte[][] states) throws IOException {
+        for (int i = 0; i < states.length; i++) {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(states[i]));
+            accumulators.get(i).mergeState(in);
+        }
+    }
+
+    /**
+     * A byte range of the input, and how many times it failed so far
+     */
+    static final class Range {
+        final int index;    // in the file, from 0
+        final long start, end;
+        int attempts;
+
+        Range(int index, long start, long end) {
+            this.index = index;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public String toString() {
+            return end < 0 ? "all" : start + "-" + end;
+        }
+    }
+
+    /**
+     * A launched worker, connected
+     */
+    private static final class WorkerConnection {
+        private final Closeable worker;
+        private final Socket socket;
+        private final DataInputStream in;
+        private final DataOutputStream out;
+
+        private WorkerConnection(WorkerLauncher launcher) throws IOException {
+            try (ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+                serverSocket.setSoTimeout(CONNECT_TIMEOUT_MILLIS);
+                worker = launcher.launch(serverSocket.getLocalPort());
+                try {
+                    socket = serverSocket.accept();
+                } catch (IOException e) {
+                    worker.close();
+                    throw e;
+                }
+            }
+            socket.setTcpNoDelay(true);
+            in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        }
+
+        /**
+         * @return - the state of every accumulator, as sent by the worker
+         */
+        private byte[][] process(String textFileName, Range range, String statisticNames, int batchSize,
+                                 int consumerThreadCount, long maxMillisToRun, int accumulatorCount) throws IOException {
+            socket.setSoTimeout((int) Math.min(Integer.MAX_VALUE, maxMillisToRun + CONNECT_TIMEOUT_MILLIS));
+            out.writeByte(ScaleOutWorker.TASK);
+            out.writeUTF(textFileName);
+            out.writeLong(range.start);
+            out.writeLong(range.end);
+            out.writeUTF(statisticNames);
+            out.writeInt(batchSize);
+            out.writeInt(consumerThreadCount);
+            out.writeLong(maxMillisToRun);
+            out.flush();
+            if (in.readByte() != ScaleOutWorker.OK) {
+                throw new IOException("Worker error: " + in.readUTF());
+            }
+            byte[][] states = new byte[accumulatorCount][];
+            for (int i = 0; i < accumulatorCount; i++) {
+                states[i] = new byte[in.readInt()];
+                in.readFully(states[i]);
+            }
+            return states;
+        }
+
+        private void shutdown() {
+            try {
+                out.writeByte(ScaleOutWorker.SHUTDOWN);
+                out.flush();
+            } catch (IOException e) {
+                // it's going away anyway
+            }
+            close();
+        }
+
+        private void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // nothing to do
+            }
+            try {
+                worker.close();
+            } catch (IOException e) {
+                // nothing to do
+            }
+        }
+    }
+}
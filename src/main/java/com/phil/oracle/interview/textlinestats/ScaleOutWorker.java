@@ -0,0 +1,101 @@
+package com.phil.oracle.interview.textlinestats;
+
+import com.phil.oracle.interview.textlinestats.framework.BlockingBuffer;
+import com.phil.oracle.interview.textlinestats.framework.MergeableAccumulator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The worker side of coordinator mode: connects back to its ScaleOutCoordinator over a localhost socket, then runs the
+ * usual producer/consumer flow over every byte range it gets sent, and ships back the state of the accumulators
+ * Started as its own JVM (see ScaleOutCoordinator.ProcessLauncher), with the --worker=port option
+ *
+ * @author Phil
+ */
+final class ScaleOutWorker {
+    static final String WORKER_OPTION = "worker";
+
+    // protocol: the coordinator sends TASK (+ task) or SHUTDOWN, the worker answers OK (+ states) or FAILED (+ message)
+    static final byte SHUTDOWN = 0, TASK = 1;
+    static final byte FAILED = 0, OK = 1;
+
+    private ScaleOutWorker() {/* No instantiation or extension for utility class */ }
+
+    /**
+     * Serves tasks until the coordinator says so, or goes away
+     *
+     * @param port - the coordinator's localhost port for this worker
+     */
+    static void serve(int port) throws IOException {
+        ExecutorService producerExecutor = Executors.newSingleThreadExecutor();
+        ExecutorService consumerExecutor = Executors.newCachedThreadPool();
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            socket.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            while (in.readByte() == TASK) {
+                String fileName = in.readUTF();
+                long rangeStart = in.readLong(), rangeEnd = in.readLong();
+                String statistics = in.readUTF();
+                int batchSize = in.readInt(), consumerThreadCount = in.readInt();
+                long maxMillisToRun = in.readLong();
+                try {
+                    byte[][] states = runTask(fileName, rangeStart, rangeEnd, statistics, batchSize, consumerThreadCount,
+                            maxMillisToRun, producerExecutor, consumerExecutor);
+                    out.writeByte(OK);
+                    for (byte[] state : states) {
+                        out.writeInt(state.length);
+                        out.write(state);
+                    }
+                } catch (RuntimeException e) {
+                    out.writeByte(FAILED);
+                    out.writeUTF(String.valueOf(e.getMessage()));
+                }
+                out.flush();
+            }
+        } catch (EOFException e) {
+            // the coordinator went away, nothing left to do
+        } finally {
+            producerExecutor.shutdownNow();
+            consumerExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * @return - the state of every accumulator, in Statistic order
+     */
+    private static byte[][] runTask(String fileName, long rangeStart, long rangeEnd, String statistics, int batchSize,
+                                    int consumerThreadCount, long maxMillisToRun, ExecutorService producerExecutor,
+                                    ExecutorService consumerExecutor) {
+        TextFileStatsGenerator app = new TextFileStatsGenerator();
+        app.setStatistics(Statistic.parse(statistics));
+        app.setRange(rangeStart, rangeEnd);
+        app.initialize(fileName, BlockingBuffer.instance(TextFileStatsGenerator.DEFAULT_BUFFER_SIZE), batchSize,
+                consumerThreadCount);
+        if (app.run(maxMillisToRun, producerExecutor, consumerExecutor) >= maxMillisToRun) {
+            throw new IllegalStateException("Timed out after " + maxMillisToRun + "ms");
+        }
+        byte[][] states = new byte[app.getAccumulators().size()][];
+        for (int i = 0; i < states.length; i++) {
+            MergeableAccumulator<?> accumulator = app.getAccumulators().get(i);
+            ByteArrayOutputStream state = new ByteArrayOutputStream();
+            try (DataOutputStream stateOut = new DataOutputStream(state)) {
+                accumulator.writeState(stateOut);
+            } catch (IOException e) {
+                throw new IllegalStateException("Couldn't write the state of " + accumulator.getClass().getSimpleName(), e);
+            }
+            states[i] = state.toByteArray();
+        }
+        return states;
+    }
+}
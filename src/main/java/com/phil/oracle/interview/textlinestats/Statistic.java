@@ -0,0 +1,206 @@
+package com.phil.oracle.interview.textlinestats;
+
+import com.phil.oracle.interview.textlinestats.accumulator.DistinctLineAccumulator;
+import com.phil.oracle.interview.textlinestats.accumulator.FrequencyAccumulator;
+import com.phil.oracle.interview.textlinestats.accumulator.LetterAccumulator;
+import com.phil.oracle.interview.textlinestats.accumulator.LinePositionAccumulator;
+import com.phil.oracle.interview.textlinestats.accumulator.LineAccumulator;
+import com.phil.oracle.interview.textlinestats.accumulator.NGramAccumulator;
+import com.phil.oracle.interview.textlinestats.accumulator.SlidingWindowAccumulator;
+import com.phil.oracle.interview.textlinestats.accumulator.TokenBatchAdapter;
+import com.phil.oracle.interview.textlinestats.accumulator.VocabularyAccumulator;
+import com.phil.oracle.interview.textlinestats.accumulator.WordAccumulator;
+import com.phil.oracle.interview.textlinestats.accumulator.WordLengthAccumulator;
+import com.phil.oracle.interview.textlinestats.accumulator.WordShapeAccumulator;
+import com.phil.oracle.interview.textlinestats.framework.MergeableAccumulator;
+import com.phil.oracle.interview.textlinestats.token.TokenBatch;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The statistics that can be selected for a run - only the accumulators of the selected ones participate in the flow
+ *
+ * @author Phil
+ */
+public enum Statistic {
+    WORDS {
+        @Override
+        MergeableAccumulator<String[]> newAccumulator() {
+            return new WordAccumulator();
+        }
+
+        @Override
+        boolean acceptsLineFragments() {
+            return true;
+        }
+    },
+    LINES {
+        @Override
+        MergeableAccumulator<String[]> newAccumulator() {
+            return new LineAccumulator();
+        }
+
+        @Override
+        boolean acceptsLineFragments() {
+            return true;
+        }
+    },
+    LETTERS {
+        @Override
+        MergeableAccumulator<String[]> newAccumulator() {
+            return new LetterAccumulator();
+        }
+
+        @Override
+        boolean acceptsLineFragments() {
+            return true;
+        }
+    },
+    NGRAMS(false) {    // word bigrams - the top 10 of them
+        @Override
+        MergeableAccumulator<String[]> newAccumulator() {
+            return new NGramAccumulator(2, NGramAccumulator.Mode.WORDS, 10);
+        }
+    },
+    VOCABULARY(false) {    // distinct words, and the top 10 of them
+        @Override
+        MergeableAccumulator<String[]> newAccumulator() {
+            return new VocabularyAccumulator(10);
+        }
+
+        @Override
+        boolean acceptsLineFragments() {
+            return true;
+        }
+    },
+    WORD_FREQUENCIES(false) {   // exact, in bounded memory (spills to disk), the top 10
+        @Override
+        MergeableAccumulator<String[]> newAccumulator() {
+            return new FrequencyAccumulator(FrequencyAccumulator.Unit.WORDS, 10);
+        }
+
+        @Override
+        boolean acceptsLineFragments() {
+            return true;
+        }
+    },
+    LINE_FREQUENCIES(false) {   // same for whole lines, e.g. repeated log messages
+        @Override
+        MergeableAccumulator<String[]> newAccumulator() {
+            return new FrequencyAccumulator(FrequencyAccumulator.Unit.LINES, 10);
+        }
+    },
+    DISTINCT_LINES(false) {   // the dedup ratio and the top 10 duplicated lines, from line hashes in memory
+        @Override
+        MergeableAccumulator<String[]> newAccumulator() {
+            return new DistinctLineAccumulator(10);
+        }
+    },
+    WINDOW(false) {   // line/word/letter counts and the top 10 words over the last 5 minutes, e.g. of a stream
+        @Override
+        MergeableAccumulator<String[]> newAccumulator() {
+            return new SlidingWindowAccumulator(10);
+        }
+    },
+    WORD_LENGTHS(false) {   // average and longest word length
+        @Override
+        MergeableAccumulator<String[]> newAccumulator() {
+            return new WordLengthAccumulator();
+        }
+    },
+    WORD_SHAPES(false) {   // word counts by letter case, e.g. capitalized or all upper case
+        @Override
+        MergeableAccumulator<String[]> newAccumulator() {
+            return new WordShapeAccumulator();
+        }
+    },
+    POSITIONS(false) {   // runs of repeated lines, gaps between ERROR lines, first/last lines of the top 10 words - in order
+        @Override
+        MergeableAccumulator<String[]> newAccumulator() {
+            return new LinePositionAccumulator(LinePositionAccumulator.DEFAULT_MARKER, 10);
+        }
+
+        @Override
+        boolean isOrderSensitive() {
+            return true;
+        }
+    };
+
+    private final boolean selectedByDefault;
+
+    Statistic() {
+        this(true);
+    }
+
+    Statistic(boolean selectedByDefault) {
+        this.selectedByDefault = selectedByDefault;
+    }
+
+    /**
+     * @return - the statistics computed unless selected otherwise, i.e. all but the expensive ones
+     */
+    public static Set<Statistic> defaults() {
+        Set<Statistic> defaults = EnumSet.noneOf(Statistic.class);
+        for (Statistic statistic : values()) {
+            if (statistic.selectedByDefault) {
+                defaults.add(statistic);
+            }
+        }
+        return defaults;
+    }
+
+    /**
+     * @return - a new accumulator computing this statistic
+     */
+    abstract MergeableAccumulator<String[]> newAccumulator();
+
+    /**
+     * @return - whether the accumulator needs the lines in order (see Accumulator.isOrderSensitive)
+     */
+    boolean isOrderSensitive() {
+        return false;
+    }
+
+    /**
+     * @return - whether the accumulator(s) come out the same from long lines read in fragments (see LineFragments), as
+     * the word-level ones do - they join up words cut between fragments (see WordTokenizer.tokenize(String[], int,
+     * TokenSink))
+     */
+    boolean acceptsLineFragments() {
+        return false;
+    }
+
+    /**
+     * Statistics with accumulators of their own for token batches override this - the line-level accumulators get
+     * adapted, and take the words of the batches as they are if they're TokenBatchAccumulators
+     *
+     * @return - new accumulator(s) computing this statistic downstream of a TokenizerStage
+     */
+    List<MergeableAccumulator<TokenBatch>> newTokenAccumulators() {
+        return Collections.singletonList(new TokenBatchAdapter<>(newAccumulator()));
+    }
+
+    /**
+     * @param names - comma-separated statistic names, case-insensitive, e.g. "lines,words"
+     * @return - the selected statistics
+     */
+    public static Set<Statistic> parse(String names) {
+        Set<Statistic> statistics = EnumSet.noneOf(Statistic.class);
+        for (String name : names.split(",")) {
+            if (!name.trim().isEmpty()) {
+                try {
+                    statistics.add(valueOf(name.trim().toUpperCase()));
+                } catch (IllegalArgumentException e) {
+                    throw new UnsupportedOperationException("Unknown statistic '" + name.trim() + "'!");
+                }
+            }
+        }
+        if (statistics.isEmpty()) {
+            throw new UnsupportedOperationException("At least one statistic has to be selected!");
+        }
+        return statistics;
+    }
+}
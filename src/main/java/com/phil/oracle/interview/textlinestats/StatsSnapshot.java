@@ -0,0 +1,231 @@
+package com.phil.oracle.interview.textlinestats;
+
+import com.phil.oracle.interview.textlinestats.framework.MergeableAccumulator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * The accumulated state of a run, in a binary file - e.g. one snapshot per daily log file, merged into weekly
+ * and monthly totals later on without reading the log files again (see MergeableAccumulator)
+ *
+ * Format (version 4): "TLSS" magic, version (short), pipeline mode (boolean), statistic names (int count + UTF each),
+ * patterns (int count + UTF-8 length and bytes each, since version 2), column delimiter (char, 0 for none) and names
+ * (int count + UTF each, since version 3), timestamp pattern (UTF, empty for none, since version 4),
+ * source file names (int count + UTF each), then for every accumulator: its class name (UTF) followed by its state
+ * Snapshots can only be merged with snapshots of the same statistics, patterns, columns and timestamps in the same
+ * (pipeline or not) mode, as they decide which accumulators there are
+ *
+ * @author Phil
+ */
+final class StatsSnapshot {
+    static final String SNAPSHOT_OPTION = "snapshot";
+    static final String MERGE_COMMAND = "merge";
+    static final byte[] MAGIC = {'T', 'L', 'S', 'S'};
+    static final short VERSION = 4;
+    private static final int IO_BUFFER_BYTES = 64 * 1024;
+
+    private final Set<Statistic> statistics;
+    private final boolean pipeline;
+    private final List<String> patterns;
+    private final char columnDelimiter;
+    private final List<String> columnNames;
+    private final String timestampPattern;
+    private final List<? extends MergeableAccumulator<?>> accumulators;
+    private final List<String> sources;
+
+    /**
+     * @param statistics       - the statistics of the run
+     * @param pipeline         - whether the run was in pipeline mode, i.e. its accumulators are the token-level ones
+     * @param patterns         - the patterns counted by the run, if any
+     * @param columnDelimiter  - the field delimiter of the run's column statistics, 0 if there were none
+     * @param columnNames      - the column names of the run's column statistics, if any
+     * @param timestampPattern - the timestamp pattern of the run's per-minute counts, null if there were none
+     * @param accumulators     - the accumulators of the run
+     * @param sources          - the input file name(s)
+     */
+    StatsSnapshot(Set<Statistic> statistics, boolean pipeline, List<String> patterns, char columnDelimiter,
+                  List<String> columnNames, String timestampPattern,
+                  List<? extends MergeableAccumulator<?>> accumulators,
+                  List<String> sources) {
+        this.statistics = statistics;
+        this.pipeline = pipeline;
+        this.patterns = patterns;
+        this.columnDelimiter = columnDelimiter;
+        this.columnNames = columnNames;
+        this.timestampPattern = timestampPattern;
+        this.accumulators = accumulators;
+        this.sources = sources;
+    }
+
+    /**
+     * @param file - where to write the snapshot (overwritten if it exists)
+     */
+    void write(File file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), IO_BUFFER_BYTES))) {
+            out.write(MAGIC);
+            out.writeShort(VERSION);
+            out.writeBoolean(pipeline);
+            out.writeInt(statistics.size());
+            for (Statistic statistic : statistics) {
+                out.writeUTF(statistic.name());
+            }
+            out.writeInt(patterns.size());
+            for (String pattern : patterns) {
+                byte[] bytes = pattern.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+            out.writeChar(columnDelimiter);
+            out.writeInt(columnNames.size());
+            for (String name : columnNames) {
+                out.writeUTF(name);
+            }
+            out.writeUTF(timestampPattern == null ? "" : timestampPattern);
+            out.writeInt(sources.size());
+            for (String source : sources) {
+                out.writeUTF(source);
+            }
+            for (MergeableAccumulator<?> accumulator : accumulators) {
+                out.writeUTF(accumulator.getClass().getName());
+                accumulator.writeState(out);
+            }
+        }
+    }
+
+    /**
+     * Merges any number of snapshots into a new one - only the snapshot files get read
+     *
+     * @param files - snapshot files, at least one
+     * @return - the merged snapshot, with the sources of all of them
+     * @throws IOException                   - if a file can't be read, or isn't a snapshot of a supported version
+     * @throws UnsupportedOperationException - if the snapshots are of different statistics or modes
+     */
+    static StatsSnapshot merge(List<File> files) throws IOException {
+        StatsSnapshot merged = null;
+        for (File file : files) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), IO_BUFFER_BYTES))) {
+                byte[] magic = new byte[MAGIC.length];
+                in.readFully(magic);
+                if (!Arrays.equals(magic, MAGIC)) {
+                    throw new IOException("'" + file + "' is not a stats snapshot");
+                }
+                short version = in.readShort();
+                if (version < 1 || version > VERSION) {
+                    throw new IOException("'" + file + "' is a version " + version + " snapshot, only versions 1 to "
+                            + VERSION + " are supported");
+                }
+                boolean pipeline = in.readBoolean();
+                Set<Statistic> statistics = EnumSet.noneOf(Statistic.class);
+                for (int i = in.readInt(); i > 0; i--) {
+                    statistics.add(readStatistic(in, file));
+                }
+                List<String> patterns = new ArrayList<>();
+                for (int i = version >= 2 ? in.readInt() : 0; i > 0; i--) {
+                    byte[] bytes = new byte[in.readInt()];
+                    in.readFully(bytes);
+                    patterns.add(new String(bytes, StandardCharsets.UTF_8));
+                }
+                char columnDelimiter = version >= 3 ? in.readChar() : 0;
+                List<String> columnNames = new ArrayList<>();
+                for (int i = version >= 3 ? in.readInt() : 0; i > 0; i--) {
+                    columnNames.add(in.readUTF());
+                }
+                String timestampPattern = version >= 4 ? in.readUTF() : "";
+                timestampPattern = timestampPattern.isEmpty() ? null : timestampPattern;
+                if (merged == null) {
+                    merged = new StatsSnapshot(statistics, pipeline, patterns, columnDelimiter, columnNames, timestampPattern,
+                            TextFileStatsGenerator.newAccumulators(statistics, pipeline, patterns, columnDelimiter,
+                                    columnNames, timestampPattern), new ArrayList<>());
+                } else if (!merged.statistics.equals(statistics) || merged.pipeline != pipeline) {
+                    throw new UnsupportedOperationException("'" + file + "' has statistics " + statistics
+                            + (pipeline ? " (pipeline mode)" : "") + ", expected " + merged.statistics
+                            + (merged.pipeline ? " (pipeline mode)" : ""));
+                } else if (!merged.patterns.equals(patterns)) {
+                    throw new UnsupportedOperationException("'" + file + "' has " + patterns.size()
+                            + " patterns which differ from the " + merged.patterns.size() + " expected");
+                } else if (merged.columnDelimiter != columnDelimiter || !merged.columnNames.equals(columnNames)) {
+                    throw new UnsupportedOperationException("'" + file + "' has columns " + columnNames
+                            + " delimited by '" + columnDelimiter + "', expected " + merged.columnNames
+                            + " delimited by '" + merged.columnDelimiter + "'");
+                } else if (!Objects.equals(merged.timestampPattern, timestampPattern)) {
+                    throw new UnsupportedOperationException("'" + file + "' has timestamps '" + timestampPattern
+                            + "', expected '" + merged.timestampPattern + "'");
+                }
+                for (int i = in.readInt(); i > 0; i--) {
+                    merged.sources.add(in.readUTF());
+                }
+                for (MergeableAccumulator<?> accumulator : merged.accumulators) {
+                    String className = in.readUTF();
+                    if (!className.equals(accumulator.getClass().getName())) {
+                        throw new IOException("'" + file + "' has state of " + className + " where "
+                                + accumulator.getClass().getName() + " was expected");
+                    }
+                    accumulator.mergeState(in);
+                }
+            }
+        }
+        if (merged == null) {
+            throw new UnsupportedOperationException("At least one snapshot is needed!");
+        }
+        return merged;
+    }
+
+    private static Statistic readStatistic(DataInputStream in, File file) throws IOException {
+        String name = in.readUTF();
+        try {
+            return Statistic.valueOf(name);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("'" + file + "' has an unknown statistic '" + name + "'");
+        }
+    }
+
+    Set<Statistic> getStatistics() {
+        return statistics;
+    }
+
+    boolean isPipeline() {
+        return pipeline;
+    }
+
+    List<String> getPatterns() {
+        return patterns;
+    }
+
+    char getColumnDelimiter() {
+        return columnDelimiter;
+    }
+
+    List<String> getColumnNames() {
+        return columnNames;
+    }
+
+    String getTimestampPattern() {
+        return timestampPattern;
+    }
+
+    List<? extends MergeableAccumulator<?>> getAccumulators() {
+        return accumulators;
+    }
+
+    /**
+     * @return - the input file name(s) the snapshot's state was accumulated from
+     */
+    List<String> getSources() {
+        return Collections.unmodifiableList(sources);
+    }
+}
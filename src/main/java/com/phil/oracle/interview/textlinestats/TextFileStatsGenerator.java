@@ -1,14 +1,35 @@
 package com.phil.oracle.interview.textlinestats;
 
+import com.phil.oracle.interview.textlinestats.accumulator.ColumnAccumulator;
 import com.phil.oracle.interview.textlinestats.accumulator.LetterAccumulator;
-import com.phil.oracle.interview.textlinestats.accumulator.LineAccumulator;
-import com.phil.oracle.interview.textlinestats.accumulator.WordAccumulator;
+import com.phil.oracle.interview.textlinestats.accumulator.PatternAccumulator;
+import com.phil.oracle.interview.textlinestats.accumulator.TimeBucketAccumulator;
+import com.phil.oracle.interview.textlinestats.accumulator.TokenBatchAdapter;
+import com.phil.oracle.interview.textlinestats.accumulator.WordCounter;
 import com.phil.oracle.interview.textlinestats.framework.*;
+import com.phil.oracle.interview.textlinestats.kernel.FieldSplitter;
+import com.phil.oracle.interview.textlinestats.kernel.LineFragments;
+import com.phil.oracle.interview.textlinestats.kernel.TimestampParser;
+import com.phil.oracle.interview.textlinestats.token.TokenBatch;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
-import java.util.Arrays;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 /**
  * The main application - generates statistics from a text file
@@ -19,31 +40,126 @@ public final class TextFileStatsGenerator {
 
     // ideally all configuration exist in separate configuration artifacts (Spring, properties, etc.)
     static final int DEFAULT_BUFFER_SIZE = 1000000;
-    private static final int DEFAULT_BATCH_SIZE = 1000;
-    private static final int DEFAULT_CONSUMER_THREAD_COUNT = Runtime.getRuntime().availableProcessors();
-    private static final int DEFAULT_MAX_SECONDS_TO_RUN = 30;
+    static final int DEFAULT_BATCH_SIZE = 1000;
+    static final int DEFAULT_CONSUMER_THREAD_COUNT = Runtime.getRuntime().availableProcessors();
+    static final int DEFAULT_MAX_SECONDS_TO_RUN = 30;
+    // inputs up to this size are processed inline on the calling thread, see initializeInline
+    static final long INLINE_THRESHOLD_BYTES = 256 * 1024;
+    static final String STATS_OPTION = "stats";
+    static final String PIPELINE_OPTION = "pipeline";
+    static final String FAN_OUT_OPTION = "fan-out";
+    static final String FRAGMENTS_OPTION = "fragments";
+    static final String PATTERNS_OPTION = "patterns";
+    static final String COLUMNS_OPTION = "columns";
+    static final String HEADER_OPTION = "header";
+    static final String TIMESTAMPS_OPTION = "timestamps";
+    static final String CHARSET_OPTION = "charset";
+    static final int DEFAULT_TOKENIZER_THREAD_COUNT = Math.max(1, DEFAULT_CONSUMER_THREAD_COUNT / 2);
+    // raw chunks of a stream buffered per consumer thread, see initializeChunks
+    static final int CHUNKS_PER_CONSUMER = 4;
 
-    private List<Accumulator<String[]>> accumulators;
-    private Consumer<String[]> consumer;
-    private Producer<String[]> producer;
+    private List<? extends MergeableAccumulator<?>> accumulators;
+    private Consumer<?> consumer;          // of lines, or of raw chunks when reading a stream (see initializeChunks)
+    private Consumer<TokenBatch> tokenConsumer;  // set in pipeline mode only, downstream of the (TokenizerStage) consumer
+    private int tokenizerThreadCount;            // pipeline mode is off unless set
+    private int fanOutThreadCount;               // fan-out mode is off unless set, see FanOutConsumer
+    private long rangeStart, rangeEnd = -1;      // byte range of the input to read, see setRange
+    private Producer<?> producer;
+    private boolean inline;     // run the producer and consumer on the calling thread, one after the other
+    private Set<Statistic> statistics = Statistic.defaults();
+    private String lineCountOnlyFileName;   // set when the LineCountEngine does all the work, see initialize
+    private long engineLineCount = -1;
+    private String textFileName;
+    private String snapshotFileName;        // where to write the accumulated state after the run, if anywhere
+    private List<String> patterns = Collections.emptyList();   // to count the occurrences of, see PatternAccumulator
+    private char columnDelimiter;           // per-column statistics of delimited lines if set, see ColumnAccumulator
+    private List<String> columnNames = Collections.emptyList();
+    private String timestampPattern;        // per-minute and per-hour counts of log lines if set, see TimeBucketAccumulator
+    private Charset charset = StandardCharsets.UTF_8;   // of the input, rather than the platform default
+    private int indexBlockLines;            // write a line index of the input as it's read if set, see LineIndex
+    private boolean directIo;               // read the input bypassing the page cache if set, see DirectIo
+    private int maxLineChars;               // read longer lines in fragments if set, see LineFragments
 
     /**
      * Main entry point
-     * @param args - [name of file in classpath or absolute path/name on disk] [optional maximum seconds to run]
+     * @param args - [name of file in classpath or absolute path/name on disk, "-" for standard input, decompressed
+     *             if it ends with .gz] [optional maximum seconds to run]
+     *             [optional --stats=comma-separated Statistic names (default words,lines,letters)]
+     *             [optional --pipeline[=tokenizer threads] to tokenize lines once in a separate stage]
+     *             [optional --fan-out[=threads] to give every accumulator threads of its own (see FanOutConsumer)]
+     *             [optional --workers=N to split the file across N worker JVMs (see ScaleOutCoordinator)]
+     *             [optional --snapshot=file to write the accumulated state to (see StatsSnapshot)]
+     *             [optional --patterns=file of patterns to count, one per line (see PatternAccumulator)]
+     *             [optional --columns=tsv|csv|delimiter char for per-column statistics (see ColumnAccumulator)
+     *             [optional --header, if the first line has the column names]]
+     *             [optional --timestamps=pattern of the timestamps starting log lines, for per-minute and per-hour
+     *             counts (see TimeBucketAccumulator)]
+     *             [optional --charset=charset of the input (default UTF-8)]
+     *             [optional --index[=lines per block] to write a line index of the file as it's read (see LineIndex)]
+     *             [optional --lines=first-last line numbers (1-based, inclusive) or --time=from..to minutes
+     *             ("yyyy-MM-dd HH:mm", either may be left out), to read those lines only - with a line index]
+     *             [optional --io=direct to read the file bypassing the page cache (see DirectIo), or buffered (default)]
+     *             [optional --fragments[=max chars] to read longer lines in fragments, in bounded memory (see
+     *             LineFragments) - word, line and letter statistics only]
+     *             or merge [snapshot files] [optional --snapshot=file] to combine snapshots without rescanning
+     *             or --server [optional port] to run as a local daemon (see TextFileStatsServer)
      */
     public static void main(String[] args) {
-        if (args.length < 1) {
-            System.out.println("Command-line: java -jar textlinestats.jar [classpath filename or disk file] " +
-                    "[optional max runtime duration in seconds (default " + DEFAULT_MAX_SECONDS_TO_RUN + ")]\n" +
-                    "Examples: 'java -jar textlinestats.jar war_and_peace.txt' or 'java -jar textlinestats.jar c:/giant.log 300'");
+        CommandLineArgs commandLine = CommandLineArgs.parse(args);
+        if (commandLine.hasOption(ScaleOutWorker.WORKER_OPTION)) {
+            runWorker(commandLine.getOption(ScaleOutWorker.WORKER_OPTION, ""));
             return;
         }
-        String fileName = args[0];
+        if (commandLine.hasOption(TextFileStatsServer.SERVER_OPTION)) {
+            startServer(commandLine);
+            return;
+        }
+        if (commandLine.positionalCount() < 1) {
+            System.out.println("Command-line: java -jar textlinestats.jar [classpath filename or disk file, " +
+                    "- for standard input, gzipped if it ends with " + TextLinesProducer.GZIP_SUFFIX + "] " +
+                    "[optional max runtime duration in seconds (default " + DEFAULT_MAX_SECONDS_TO_RUN + ")] " +
+                    "[optional --" + STATS_OPTION + "=any of " + EnumSet.allOf(Statistic.class).toString().toLowerCase()
+                    + " (default words,lines,letters)] " +
+                    "[optional --" + PIPELINE_OPTION + "[=tokenizer threads (default " + DEFAULT_TOKENIZER_THREAD_COUNT + ")]] " +
+                    "[optional --" + FAN_OUT_OPTION + "[=accumulator threads (default " + DEFAULT_CONSUMER_THREAD_COUNT +
+                    ")] to give every accumulator threads of its own, sized by how long it takes] " +
+                    "[optional --" + ScaleOutCoordinator.WORKERS_OPTION + "=number of worker JVMs to split the file across] " +
+                    "[optional --" + StatsSnapshot.SNAPSHOT_OPTION + "=file to save the accumulated state to] " +
+                    "[optional --" + PATTERNS_OPTION + "=file of patterns to count occurrences of, one per line] " +
+                    "[optional --" + COLUMNS_OPTION + "=tsv|csv|delimiter char for per-column statistics " +
+                    "[optional --" + HEADER_OPTION + " if the first line has the column names]] " +
+                    "[optional --" + TIMESTAMPS_OPTION + "=\"yyyy-MM-dd HH:mm:ss\" or any fixed-width pattern of " +
+                    "the timestamps starting log lines, for per-minute and per-hour counts] " +
+                    "[optional --" + CHARSET_OPTION + "=charset of the input, e.g. ISO-8859-1 (default UTF-8)] " +
+                    "[optional --" + LineIndex.INDEX_OPTION + "[=lines per block (default " + LineIndex.DEFAULT_BLOCK_LINES +
+                    ")] to write a sparse line index of the file as it's read] " +
+                    "[optional --" + LineIndex.LINES_OPTION + "=first-last line numbers, or --" + LineIndex.TIME_OPTION +
+                    "=\"yyyy-MM-dd HH:mm..yyyy-MM-dd HH:mm\" minutes (either end optional), to read only those " +
+                    "lines, via the line index] " +
+                    "[optional --" + DirectIo.IO_OPTION + "=" + DirectIo.DIRECT + " to read the file bypassing the " +
+                    "page cache (Java 16+), or " + DirectIo.BUFFERED + " (default)] " +
+                    "[optional --" + FRAGMENTS_OPTION + "[=max chars (default " + LineFragments.DEFAULT_MAX_CHARS +
+                    ")] to read longer lines in fragments, e.g. minified JSON - word, line and letter statistics only]\n" +
+                    "Examples: 'java -jar textlinestats.jar war_and_peace.txt' or 'java -jar textlinestats.jar c:/giant.log 300'" +
+                    " or 'java -jar textlinestats.jar c:/giant.log --" + STATS_OPTION + "=lines'" +
+                    " or 'gunzip -c giant.log.gz | java -jar textlinestats.jar -'\n" +
+                    "Daemon mode: java -jar textlinestats.jar --" + TextFileStatsServer.SERVER_OPTION +
+                    " [optional localhost port (default " + TextFileStatsServer.DEFAULT_PORT + ")]" +
+                    ", then GET http://localhost:port/stats?file=c:/giant.log\n" +
+                    "Merge mode: java -jar textlinestats.jar " + StatsSnapshot.MERGE_COMMAND + " [snapshot files] " +
+                    "[optional --" + StatsSnapshot.SNAPSHOT_OPTION + "=file to save the merged state to]");
+            return;
+        }
+        if (commandLine.getPositional(0).equals(StatsSnapshot.MERGE_COMMAND)) {
+            runMerge(commandLine);
+            return;
+        }
+        String fileName = commandLine.getPositional(0);
 
         int maxSecondsToRun = DEFAULT_MAX_SECONDS_TO_RUN;
-        if(args.length > 1) {
+        if(commandLine.positionalCount() > 1) {
             try {
-                maxSecondsToRun = Integer.valueOf(args[1]);
+                maxSecondsToRun = Integer.valueOf(commandLine.getPositional(1));
             } catch (NumberFormatException e) {
                 System.out.println("The second parameter is expected to be an integer between 1 and " + Integer.MAX_VALUE);
                 System.out.println("Continuing run with maximum runtime duration set to " + maxSecondsToRun + " seconds");
@@ -52,27 +168,448 @@ public final class TextFileStatsGenerator {
 
         // we could initialize the rest of the configuration in a similar fashion...let's default for now
         TextFileStatsGenerator app = new TextFileStatsGenerator();
+        if (commandLine.hasOption(STATS_OPTION)) {
+            try {
+                app.setStatistics(Statistic.parse(commandLine.getOption(STATS_OPTION, "")));
+            } catch (UnsupportedOperationException e) {
+                System.out.println(e.getMessage() + " Expected a comma-separated list of " + EnumSet.allOf(Statistic.class));
+                return;
+            }
+        }
+        if (commandLine.hasOption(PIPELINE_OPTION)) {
+            String threads = commandLine.getOption(PIPELINE_OPTION, "");
+            try {
+                app.setTokenizerThreadCount(threads.isEmpty() ? DEFAULT_TOKENIZER_THREAD_COUNT : Integer.valueOf(threads));
+            } catch (NumberFormatException e) {
+                System.out.println("The --" + PIPELINE_OPTION + " option is expected to be a thread count, e.g. --"
+                        + PIPELINE_OPTION + "=" + DEFAULT_TOKENIZER_THREAD_COUNT);
+                return;
+            }
+        }
+        if (commandLine.hasOption(FAN_OUT_OPTION)) {
+            if (commandLine.hasOption(PIPELINE_OPTION)) {
+                System.out.println("ERROR - The --" + FAN_OUT_OPTION + " and --" + PIPELINE_OPTION + " options can't be combined");
+                return;
+            }
+            String threads = commandLine.getOption(FAN_OUT_OPTION, "");
+            try {
+                app.setFanOutThreadCount(threads.isEmpty() ? DEFAULT_CONSUMER_THREAD_COUNT : Integer.valueOf(threads));
+            } catch (NumberFormatException e) {
+                System.out.println("The --" + FAN_OUT_OPTION + " option is expected to be a thread count, e.g. --"
+                        + FAN_OUT_OPTION + "=" + DEFAULT_CONSUMER_THREAD_COUNT);
+                return;
+            }
+        }
+        if (commandLine.hasOption(StatsSnapshot.SNAPSHOT_OPTION)) {
+            app.setSnapshotFileName(commandLine.getOption(StatsSnapshot.SNAPSHOT_OPTION, ""));
+        }
+        if (commandLine.hasOption(PATTERNS_OPTION)) {
+            String patternsFileName = commandLine.getOption(PATTERNS_OPTION, "");
+            try {
+                List<String> patterns = PatternAccumulator.readPatterns(patternsFileName);
+                if (patterns.isEmpty()) {
+                    System.out.println("ERROR - No patterns in '" + patternsFileName + "'");
+                    return;
+                }
+                app.setPatterns(patterns);
+            } catch (IOException e) {
+                System.out.println("ERROR - Couldn't read the patterns from '" + patternsFileName + "': " + e.getMessage());
+                return;
+            }
+        }
+        if (commandLine.hasOption(CHARSET_OPTION)) {
+            String charsetName = commandLine.getOption(CHARSET_OPTION, "");
+            try {
+                app.setCharset(Charset.forName(charsetName));
+            } catch (IllegalArgumentException e) {   // IllegalCharsetNameException, UnsupportedCharsetException
+                System.out.println("ERROR - Unsupported charset '" + charsetName + "'");
+                return;
+            }
+        }
+        if (commandLine.hasOption(COLUMNS_OPTION)) {
+            String delimiter = commandLine.getOption(COLUMNS_OPTION, "");
+            try {
+                app.setColumns(parseDelimiter(delimiter), commandLine.hasOption(HEADER_OPTION)
+                        ? app.readHeader(fileName, parseDelimiter(delimiter)) : Collections.emptyList());
+            } catch (UnsupportedOperationException e) {
+                System.out.println(e.getMessage() + " Expected --" + COLUMNS_OPTION + "=tsv, csv or a single character");
+                return;
+            } catch (IOException e) {
+                System.out.println("ERROR - Couldn't read the header line of '" + fileName + "': " + e.getMessage());
+                return;
+            }
+        }
+        if (commandLine.hasOption(TIMESTAMPS_OPTION)) {
+            try {
+                app.setTimestampPattern(commandLine.getOption(TIMESTAMPS_OPTION, ""));
+            } catch (UnsupportedOperationException e) {
+                System.out.println(e.getMessage());
+                return;
+            }
+        }
+        if (!applyIndexOptions(app, fileName, commandLine)) {
+            return;
+        }
+        if (commandLine.hasOption(DirectIo.IO_OPTION)) {
+            try {
+                app.setDirectIo(DirectIo.parseMode(commandLine.getOption(DirectIo.IO_OPTION, "")));
+            } catch (UnsupportedOperationException e) {
+                System.out.println(e.getMessage() + " Expected --" + DirectIo.IO_OPTION + "=" + DirectIo.DIRECT
+                        + " or " + DirectIo.BUFFERED);
+                return;
+            }
+            if (app.directIo && (!new File(fileName).isFile() || TextLinesProducer.isStream(fileName))) {
+                System.out.println("ERROR - Only uncompressed files on disk can be read with direct I/O");
+                return;
+            }
+        }
+        if (commandLine.hasOption(FRAGMENTS_OPTION) && !applyFragmentsOption(app, commandLine)) {
+            return;
+        }
+        if (commandLine.hasOption(ScaleOutCoordinator.WORKERS_OPTION)) {
+            try {
+                app.runScaleOut(fileName, Integer.valueOf(commandLine.getOption(ScaleOutCoordinator.WORKERS_OPTION, "")),
+                        maxSecondsToRun);
+            } catch (NumberFormatException e) {
+                System.out.println("The --" + ScaleOutCoordinator.WORKERS_OPTION + " option is expected to be a number of workers");
+            } catch (UnsupportedOperationException e) {
+                System.out.println(e.getMessage());
+            }
+            return;
+        }
         app.initialize(fileName, DEFAULT_BUFFER_SIZE, DEFAULT_BATCH_SIZE, DEFAULT_CONSUMER_THREAD_COUNT) ;
         app.run(maxSecondsToRun);
     }
 
+    private static void runWorker(String port) {
+        try {
+            ScaleOutWorker.serve(Integer.valueOf(port));
+        } catch (NumberFormatException | IOException e) {
+            System.out.println("ERROR - Worker couldn't serve the coordinator on port " + port + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Sets up reading long lines in fragments, if the statistics and options allow for it
+     *
+     * @return - whether the option is valid (if not, the error has been printed out)
+     */
+    private static boolean applyFragmentsOption(TextFileStatsGenerator app, CommandLineArgs commandLine) {
+        String maxChars = commandLine.getOption(FRAGMENTS_OPTION, "");
+        try {
+            app.setMaxLineChars(maxChars.isEmpty() ? LineFragments.DEFAULT_MAX_CHARS : Integer.valueOf(maxChars));
+        } catch (NumberFormatException e) {
+            System.out.println("The --" + FRAGMENTS_OPTION + " option is expected to be a number of chars, e.g. --"
+                    + FRAGMENTS_OPTION + "=" + LineFragments.DEFAULT_MAX_CHARS);
+            return false;
+        } catch (UnsupportedOperationException e) {
+            System.out.println(e.getMessage());
+            return false;
+        }
+        if (commandLine.hasOption(ScaleOutCoordinator.WORKERS_OPTION)) {
+            System.out.println("ERROR - The --" + FRAGMENTS_OPTION + " and --" + ScaleOutCoordinator.WORKERS_OPTION
+                    + " options can't be combined");
+            return false;
+        }
+        if (!app.charset.equals(StandardCharsets.UTF_8) || !app.patterns.isEmpty() || app.columnDelimiter != 0
+                || app.timestampPattern != null || !app.statistics.stream().allMatch(Statistic::acceptsLineFragments)) {
+            System.out.println("ERROR - Lines can only be read in fragments from UTF-8 input, for the "
+                    + EnumSet.allOf(Statistic.class).stream().filter(Statistic::acceptsLineFragments)
+                    .map(s -> s.name().toLowerCase()).collect(Collectors.joining(",")) + " statistics");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Sets up writing a line index, or reading a range of lines or minutes via one
+     *
+     * @return - whether the options are valid (if not, the error has been printed out)
+     */
+    private static boolean applyIndexOptions(TextFileStatsGenerator app, String fileName, CommandLineArgs commandLine) {
+        boolean lines = commandLine.hasOption(LineIndex.LINES_OPTION), time = commandLine.hasOption(LineIndex.TIME_OPTION);
+        if (commandLine.hasOption(LineIndex.INDEX_OPTION)) {
+            String blockLines = commandLine.getOption(LineIndex.INDEX_OPTION, "");
+            try {
+                app.setIndexBlockLines(blockLines.isEmpty() ? LineIndex.DEFAULT_BLOCK_LINES : Integer.valueOf(blockLines));
+            } catch (NumberFormatException e) {
+                System.out.println("The --" + LineIndex.INDEX_OPTION + " option is expected to be a number of lines per block");
+                return false;
+            }
+            if (lines || time || commandLine.hasOption(HEADER_OPTION)) {
+                System.out.println("ERROR - Only whole files can be indexed");
+                return false;
+            }
+        }
+        if (!lines && !time) {
+            return true;
+        }
+        String range = commandLine.getOption(lines ? LineIndex.LINES_OPTION : LineIndex.TIME_OPTION, "");
+        try {
+            LineIndex index = LineIndex.read(fileName);
+            long[] byteRange;
+            if (lines) {
+                String[] firstLast = range.split("-", 2);
+                long first = Long.parseLong(firstLast[0].trim()), last = Long.parseLong(firstLast[1].trim());
+                byteRange = index.getLineRange(fileName, first - 1, last);
+            } else {
+                String[] fromTo = range.split("\\.\\.", 2);
+                byteRange = index.getTimeRange(
+                        fromTo[0].trim().isEmpty() ? Long.MIN_VALUE : TimestampParser.parseMinuteLabel(fromTo[0].trim()),
+                        fromTo[1].trim().isEmpty() ? Long.MAX_VALUE : TimestampParser.parseMinuteLabel(fromTo[1].trim()) + 1);
+            }
+            System.out.println("Reading bytes " + byteRange[0] + "-" + byteRange[1] + " of '" + fileName + "' only");
+            app.setRange(byteRange[0], byteRange[1]);
+            return true;
+        } catch (IOException e) {
+            System.out.println("ERROR - " + e.getMessage());
+        } catch (RuntimeException e) {   // ArrayIndexOutOfBoundsException, NumberFormatException, DateTimeParseException
+            System.out.println("ERROR - Invalid range '" + range + "', expected --" + LineIndex.LINES_OPTION
+                    + "=first-last (e.g. 10000001-20000000) or --" + LineIndex.TIME_OPTION
+                    + "=\"yyyy-MM-dd HH:mm..yyyy-MM-dd HH:mm\": " + e.getMessage());
+        }
+        return false;
+    }
+
+    /**
+     * @param name - tsv, csv, or the delimiter itself
+     * @return - the field delimiter
+     */
+    static char parseDelimiter(String name) {
+        switch (name.toLowerCase()) {
+            case "tsv":
+                return '\t';
+            case "csv":
+                return ',';
+            default:
+                if (name.length() != 1 || name.charAt(0) == FieldSplitter.QUOTE) {
+                    throw new UnsupportedOperationException("Invalid column delimiter '" + name + "'!");
+                }
+                return name.charAt(0);
+        }
+    }
+
+    private static void runMerge(CommandLineArgs commandLine) {
+        final long start = System.currentTimeMillis();
+        List<File> files = new ArrayList<>();
+        for (int i = 1; i < commandLine.positionalCount(); i++) {
+            files.add(new File(commandLine.getPositional(i)));
+        }
+        TextFileStatsGenerator app = new TextFileStatsGenerator();
+        app.setSnapshotFileName(commandLine.getOption(StatsSnapshot.SNAPSHOT_OPTION, null));
+        try {
+            app.merge(files);
+        } catch (IOException | UnsupportedOperationException e) {
+            System.out.println("ERROR - " + e.getMessage());
+            return;
+        }
+        System.out.println("\nWall clock total time elapsed: " + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    private static void startServer(CommandLineArgs commandLine) {
+        int port = TextFileStatsServer.DEFAULT_PORT;
+        if (commandLine.positionalCount() > 0) {
+            try {
+                port = Integer.valueOf(commandLine.getPositional(0));
+            } catch (NumberFormatException e) {
+                System.out.println("The parameter after --" + TextFileStatsServer.SERVER_OPTION
+                        + " is expected to be a port number between 0 and 65535");
+                System.out.println("Continuing with port set to " + port);
+            }
+        }
+        try {
+            TextFileStatsServer server = new TextFileStatsServer(port, DEFAULT_BATCH_SIZE, DEFAULT_CONSUMER_THREAD_COUNT,
+                    DEFAULT_MAX_SECONDS_TO_RUN);
+            server.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+        } catch (IOException e) {
+            System.out.println("ERROR - Couldn't start the server on port " + port + ": " + e.getMessage());
+        }
+    }
+
     /**
      * Initializes everything we will need
      * Ideally bean creation and wiring would be managed in an IOC container, e.g. Spring
+     * If line count is the only statistic needed (no patterns, columns, timestamps or snapshot), the LineCountEngine does
+     * it all - by counting line break bytes, so the input isn't decoded (and malformed input isn't counted) - unless it's
+     * to be read with direct I/O, which only the producer does
+     * Streams (standard input, gzipped files) are read in raw chunks, split into lines by the consumers, if they can be
+     * (see initializeChunks) - and line by line by the producer otherwise
+     */
+    void initialize(String textFileName, int bufferSize, int batchSize, int consumerThreadCount) {
+        boolean stream = TextLinesProducer.isStream(textFileName);
+        if (statistics.equals(EnumSet.of(Statistic.LINES)) && snapshotFileName == null && patterns.isEmpty()
+                && columnDelimiter == 0 && timestampPattern == null && TextLinesProducer.isLineSplittable(charset)
+                && indexBlockLines == 0 && rangeEnd < 0 && !stream && !directIo) {
+            lineCountOnlyFileName = textFileName;
+            setAccumulators(Collections.emptyList());
+        } else if (stream && charset.equals(StandardCharsets.UTF_8) && tokenizerThreadCount == 0
+                && fanOutThreadCount == 0 && consumerThreadCount > 1 && maxLineChars == 0   // chunks hold whole lines
+                && statistics.stream().noneMatch(Statistic::isOrderSensitive)) {   // chunks don't keep the lines in order
+            initializeChunks(textFileName, batchSize, consumerThreadCount);
+        } else if (fanOutThreadCount > 0 || !initializeInline(textFileName, batchSize)) {
+            initialize(textFileName, BlockingBuffer.instance(bufferSize), batchSize, consumerThreadCount);
+        }
+    }
+
+    /**
+     * Checks the input size up front, and if the input is small enough, initializes everything to run it inline:
+     * a single consumer, and a buffer just big enough to hold the whole input (the producer runs to completion first)
+     * Not with lines read in fragments: every fragment ends a batch, so there's no telling how many batches there are
+     *
+     * @return - whether the input is small enough (and everything got initialized), false otherwise
+     */
+    boolean initializeInline(String textFileName, int batchSize) {
+        long inputSize = TextLinesProducer.getInputSize(textFileName);
+        if (inputSize < 0 || inputSize > INLINE_THRESHOLD_BYTES || maxLineChars > 0) {
+            return false;
+        }
+        // there can't be more lines than bytes + 1, and the producer always puts a last (possibly empty) batch
+        int maxBatches = (int) ((inputSize + 1) / batchSize) + 2;
+        initialize(textFileName, BlockingBuffer.instance(maxBatches), batchSize, 1);
+        inline = true;
+        return true;
+    }
+
+    /**
+     * Initializes everything we will need, on top of an existing (empty) buffer
+     */
+    void initialize(String textFileName, BlockingBuffer<String[]> buffer, int batchSize, int consumerThreadCount) {
+        this.textFileName = textFileName;
+        if (tokenizerThreadCount > 0) {
+            initializePipeline(textFileName, buffer, batchSize, consumerThreadCount);
+            return;
+        }
+        // initialize the Accumulators of the selected statistics - add any new ones to the Statistic enum
+        List<MergeableAccumulator<String[]>> lineAccumulators = statistics.stream().map(Statistic::newAccumulator)
+                .collect(Collectors.toList());
+        lineAccumulators.addAll(newOptionAccumulators(patterns, columnDelimiter, columnNames, timestampPattern));
+        setAccumulators(lineAccumulators);
+
+        // initialize the consumer - in fan-out mode, with at least a thread per accumulator
+        Consumer<String[]> linesConsumer = fanOutThreadCount > 0
+                ? new FanOutConsumer<>(buffer, lineAccumulators, Math.max(fanOutThreadCount, lineAccumulators.size()))
+                : new TextLinesConsumer(buffer, lineAccumulators, consumerThreadCount);
+        setConsumer(linesConsumer);
+
+        // initialize the producer
+        setProducer(newProducer(textFileName, batchSize, linesConsumer));
+    }
+
+    /**
+     * Initializes a stream to be read in raw chunks (see RawChunkProducer), and split into lines and decoded by the
+     * consumer threads (see ChunkLinesConsumer) - a stream can't be split into byte ranges, so the decoding would
+     * otherwise all be on the single producer thread
      */
-    private void initialize(String textFileName, int bufferSize, int batchSize, int consumerThreadCount) {
-        // initialize any new Accumulators participating in the workflow here
-        final WordAccumulator wordAccumulator = new WordAccumulator();
-        final LineAccumulator lineAccumulator = new LineAccumulator();
-        final LetterAccumulator letterAccumulator = new LetterAccumulator();
-        // Ensure any new Accumulators are in the list here if they are to participate in the flow
-        setAccumulators(Arrays.asList(wordAccumulator, lineAccumulator, letterAccumulator));
+    private void initializeChunks(String textFileName, int batchSize, int consumerThreadCount) {
+        this.textFileName = textFileName;
+        List<MergeableAccumulator<String[]>> lineAccumulators = statistics.stream().map(Statistic::newAccumulator)
+                .collect(Collectors.toList());
+        lineAccumulators.addAll(newOptionAccumulators(patterns, columnDelimiter, columnNames, timestampPattern));
+        setAccumulators(lineAccumulators);
 
-        // initialize the consumer
-        setConsumer(new TextLinesConsumer(BlockingBuffer.instance(bufferSize), accumulators, consumerThreadCount));
+        ChunkLinesConsumer chunksConsumer = new ChunkLinesConsumer(
+                BlockingBuffer.instance(consumerThreadCount * CHUNKS_PER_CONSUMER), lineAccumulators,
+                consumerThreadCount, batchSize);
+        setConsumer(chunksConsumer);
+        setProducer(new RawChunkProducer(textFileName, RawChunkProducer.DEFAULT_CHUNK_BYTES, chunksConsumer));
+    }
+
+    /**
+     * Initializes a 3-stage pipeline: producer -> TokenizerStage -> TokenBatchConsumer, where the word-level accumulators
+     * share the tokens of every batch, and the line-level ones get the lines via a TokenBatchAdapter
+     * The token buffer gets the same capacity as the line buffer
+     */
+    private void initializePipeline(String textFileName, BlockingBuffer<String[]> buffer, int batchSize,
+                                    int consumerThreadCount) {
+        List<MergeableAccumulator<TokenBatch>> tokenAccumulators = new ArrayList<>();
+        statistics.forEach(s -> tokenAccumulators.addAll(s.newTokenAccumulators()));
+        newOptionAccumulators(patterns, columnDelimiter, columnNames, timestampPattern).forEach(a -> tokenAccumulators.add(new TokenBatchAdapter<>(a)));
+        setAccumulators(tokenAccumulators);
+
+        // initialize the stages, downstream first
+        tokenConsumer = new TokenBatchConsumer(BlockingBuffer.instance(buffer.capacity()), tokenAccumulators,
+                consumerThreadCount);
+        TokenizerStage tokenizerStage = new TokenizerStage(buffer, tokenizerThreadCount, tokenConsumer);
+        if (tokenAccumulators.stream().anyMatch(Accumulator::isOrderSensitive)) {
+            tokenizerStage.preserveOrder();
+        }
+        setConsumer(tokenizerStage);
 
         // initialize the producer
-        setProducer(new TextLinesProducer(textFileName, batchSize, consumer));
+        setProducer(newProducer(textFileName, batchSize, tokenizerStage));
+    }
+
+    private TextLinesProducer newProducer(String textFileName, int batchSize, Consumer<String[]> consumer) {
+        TextLinesProducer producer = new TextLinesProducer(textFileName, batchSize, consumer, rangeStart, rangeEnd, charset);
+        if (indexBlockLines > 0) {
+            producer.setIndex(indexBlockLines, timestampPattern);
+        }
+        producer.setDirectIo(directIo);
+        producer.setMaxLineChars(maxLineChars);
+        return producer;
+    }
+
+    /**
+     * @return - the accumulators of the options rather than the statistics: patterns, columns and timestamps, if set
+     */
+    private static List<MergeableAccumulator<String[]>> newOptionAccumulators(List<String> patterns, char columnDelimiter,
+                                                                              List<String> columnNames,
+                                                                              String timestampPattern) {
+        List<MergeableAccumulator<String[]>> accumulators = new ArrayList<>();
+        if (!patterns.isEmpty()) {
+            accumulators.add(new PatternAccumulator(patterns));
+        }
+        if (columnDelimiter != 0) {
+            accumulators.add(new ColumnAccumulator(columnDelimiter, columnNames));
+        }
+        if (timestampPattern != null) {
+            accumulators.add(new TimeBucketAccumulator(timestampPattern));
+        }
+        return accumulators;
+    }
+
+    /**
+     * @return - new accumulators for the statistics and options, the same ones initialize would create in that mode
+     */
+    static List<? extends MergeableAccumulator<?>> newAccumulators(Set<Statistic> statistics, boolean pipeline,
+                                                                   List<String> patterns, char columnDelimiter,
+                                                                   List<String> columnNames, String timestampPattern) {
+        List<MergeableAccumulator<?>> accumulators = new ArrayList<>();
+        List<MergeableAccumulator<String[]>> optionAccumulators = newOptionAccumulators(patterns, columnDelimiter, columnNames,
+                timestampPattern);
+        if (pipeline) {
+            statistics.forEach(s -> accumulators.addAll(s.newTokenAccumulators()));
+            optionAccumulators.forEach(a -> accumulators.add(new TokenBatchAdapter<>(a)));
+        } else {
+            statistics.forEach(s -> accumulators.add(s.newAccumulator()));
+            accumulators.addAll(optionAccumulators);
+        }
+        return accumulators;
+    }
+
+    /**
+     * Reads the column names off the first line of the file, and restricts the input to the lines after it (see setRange)
+     *
+     * @param textFileName - a file on disk - a header line can't be skipped in classpath files
+     * @return - the column names
+     */
+    List<String> readHeader(String textFileName, char delimiter) throws IOException {
+        File file = new File(textFileName);
+        if (!file.isFile() || TextLinesProducer.isStream(textFileName)) {
+            throw new IOException("Header lines can only be read from (uncompressed) files on disk");
+        }
+        String header;
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), charset)) {
+            header = reader.readLine();
+        }
+        List<String> names = new ArrayList<>();
+        if (header != null) {
+            new FieldSplitter(delimiter).split(header, (column, start, end, quoted) ->
+                    names.add(FieldSplitter.unquote(header, start, end, quoted)));
+        }
+        setRange(1, file.length());  // the lines starting after the first byte, i.e. all but the first one
+        return names;
     }
 
     /**
@@ -82,56 +619,349 @@ public final class TextFileStatsGenerator {
     void run(int maxSecondsToRun) {
         final long start = System.currentTimeMillis();  // to capture wall clock elapsed time for the run
         final long maxMillisToRun = ((long)maxSecondsToRun) * 1000;
-        AsyncFlowOrchestrator.runProducerConsumer(maxMillisToRun, producer, consumer);
+        if (lineCountOnlyFileName != null) {
+            runLineCountEngine();
+        } else if (inline) {
+            AsyncFlowOrchestrator.runInline(producer, getStages());
+        } else if (tokenConsumer != null) {
+            AsyncFlowOrchestrator.runPipeline(maxMillisToRun, producer, getStages());
+        } else {
+            AsyncFlowOrchestrator.runProducerConsumer(maxMillisToRun, producer, consumer);
+        }
+        summarize();
+        writeSnapshot(tokenConsumer != null);
+        System.out.println("\nWall clock total time elapsed: " + (System.currentTimeMillis() - start) + "ms");
+    }
 
+    /**
+     * Runs in coordinator mode: the input gets split into byte ranges, processed by worker JVMs (see ScaleOutCoordinator)
+     *
+     * @param workerCount - number of worker processes
+     */
+    void runScaleOut(String textFileName, int workerCount, int maxSecondsToRun) {
+        if (!patterns.isEmpty() || columnDelimiter != 0 || timestampPattern != null) {
+            throw new UnsupportedOperationException("Patterns, columns and timestamps aren't supported in coordinator mode (yet)");
+        } else if (!charset.equals(StandardCharsets.UTF_8)) {
+            throw new UnsupportedOperationException("Workers only read UTF-8 (for now)");
+        } else if (TextLinesProducer.isStream(textFileName)) {
+            throw new UnsupportedOperationException("Standard input and gzipped files can't be split across workers");
+        }
+        final long start = System.currentTimeMillis();
+        ScaleOutCoordinator coordinator = new ScaleOutCoordinator(workerCount, DEFAULT_BATCH_SIZE,
+                Math.max(1, DEFAULT_CONSUMER_THREAD_COUNT / workerCount), new ScaleOutCoordinator.ProcessLauncher());
+        try {
+            setAccumulators(coordinator.run(textFileName, statistics, ((long) maxSecondsToRun) * 1000));
+        } catch (IOException | IllegalStateException e) {
+            System.out.println("ERROR - " + e.getMessage());
+            return;
+        }
+        this.textFileName = textFileName;
+        summarize();
+        writeSnapshot(false);
+        System.out.println("\nWall clock total time elapsed: " + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    /**
+     * Merges snapshots (see StatsSnapshot) and outputs the summarized statistics, as if the inputs had been run together
+     * The merged snapshot gets written too, if a snapshot file name was set
+     *
+     * @param snapshotFiles - the snapshots to merge, at least one
+     */
+    void merge(List<File> snapshotFiles) throws IOException {
+        StatsSnapshot merged = StatsSnapshot.merge(snapshotFiles);
+        setStatistics(merged.getStatistics());
+        setPatterns(merged.getPatterns());
+        setColumns(merged.getColumnDelimiter(), merged.getColumnNames());
+        this.timestampPattern = merged.getTimestampPattern();
+        setAccumulators(merged.getAccumulators());
+        System.out.println("Merged " + snapshotFiles.size() + " snapshot(s) of " + merged.getSources());
+        summarize();
+        if (snapshotFileName != null) {
+            merged.write(new File(snapshotFileName));
+            System.out.println("\nMerged snapshot written to " + snapshotFileName);
+        }
+    }
+
+    /**
+     * Writes the accumulated state to the snapshot file, if one was set
+     *
+     * @param pipeline - whether the accumulators are the pipeline mode ones
+     */
+    private void writeSnapshot(boolean pipeline) {
+        if (snapshotFileName == null) {
+            return;
+        }
+        try {
+            new StatsSnapshot(statistics, pipeline, patterns, columnDelimiter, columnNames, timestampPattern, accumulators,
+                    Collections.singletonList(textFileName))
+                    .write(new File(snapshotFileName));
+            System.out.println("\nSnapshot written to " + snapshotFileName);
+        } catch (IOException | UnsupportedOperationException e) {
+            System.out.println("ERROR - Couldn't write the snapshot to " + snapshotFileName + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Outputs the summarized statistics
+     */
+    private void summarize() {
         // output the summarized statistics for each accumulator
         accumulators.forEach(Accumulator::summarize);
 
         // I decided not to implement LetterPerWordAccumulator since we already computed everything needed for this stat
-        outputAverageLettersPerWord();
+        if (findAccumulator(WordCounter.class) != null && findAccumulator(LetterAccumulator.class) != null) {
+            outputAverageLettersPerWord();
+        }
+        long malformedInputCount = getMalformedInputCount();
+        if (malformedInputCount > 0) {
+            System.out.println("\nWARNING - " + malformedInputCount + " malformed " + charset
+                    + " byte sequence(s) in the input, replaced by U+FFFD");
+        }
+    }
 
-        System.out.println("\nWall clock total time elapsed: " + (System.currentTimeMillis() - start) + "ms");
+    /**
+     * @return - number of malformed byte sequences in the input (see TextLinesProducer and ChunkLinesConsumer), 0 if
+     * unknown
+     */
+    private long getMalformedInputCount() {
+        if (consumer instanceof ChunkLinesConsumer) {
+            return ((ChunkLinesConsumer) consumer).getMalformedInputCount();
+        }
+        return producer instanceof TextLinesProducer ? ((TextLinesProducer) producer).getMalformedInputCount() : 0;
+    }
+
+    private void runLineCountEngine() {
+        long start = System.nanoTime();
+        try {
+            engineLineCount = new LineCountEngine().countLines(lineCountOnlyFileName);
+            System.out.println("\n" + LineCountEngine.class.getSimpleName() + ": Total Run Time = "
+                    + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms");
+            System.out.println(LineCountEngine.class.getSimpleName() + ": Total Line Count = " + engineLineCount);
+        } catch (IOException e) {
+            System.out.println("ERROR - " + e.getMessage());
+        }
+    }
+
+    /**
+     * Same as run(), but on long-lived thread pools (see TextFileStatsServer) and without any summary output
+     *
+     * @return - total milliseconds taken for the run
+     */
+    long run(long maxMillisToRun, ExecutorService producerExecutor, ExecutorService consumerExecutor) {
+        if (inline) {
+            return AsyncFlowOrchestrator.runInline(producer, getStages());
+        }
+        return AsyncFlowOrchestrator.runProducerConsumer(maxMillisToRun, producer, consumer, producerExecutor, consumerExecutor);
+    }
+
+    /**
+     * @return - statistics of every accumulator keyed by its class name, plus the average letters per word, and the
+     * number of malformed byte sequences in the input if there were any
+     */
+    Map<String, Object> getStatistics() {
+        Map<String, Object> results = new LinkedHashMap<>();
+        accumulators.forEach(a -> results.put(unwrap(a).getClass().getSimpleName(), a.getStatistics()));
+        if (engineLineCount >= 0) {
+            results.put(LineCountEngine.class.getSimpleName(), Collections.singletonMap("totalLineCount", engineLineCount));
+        }
+        BigDecimal avg = getAverageLettersPerWord();
+        if (avg != null) {
+            results.put("averageLettersPerWord", avg);
+        }
+        if (getMalformedInputCount() > 0) {
+            results.put("malformedInputCount", getMalformedInputCount());
+        }
+        return results;
     }
 
     private void outputAverageLettersPerWord() {
         System.out.println("\nLetterPerWordAccumulator is redundant: we already computed total word and letter counts");
-        long wordCount = getWordAccumulator().getTotalWordCount();
-        long letterCount = getLetterAccumulator().getTotalLetterCount();
-        if (wordCount != 0) {
-            String avg = String.valueOf(BigDecimal.valueOf(letterCount).divide(BigDecimal.valueOf(wordCount), 1, RoundingMode.HALF_UP));
-            System.out.println("Total letter count " + letterCount + " / total word count " + wordCount + " = "
+        BigDecimal avg = getAverageLettersPerWord();
+        if (avg != null) {
+            System.out.println("Total letter count " + findAccumulator(LetterAccumulator.class).getTotalLetterCount()
+                    + " / total word count " + findAccumulator(WordCounter.class).getTotalWordCount() + " = "
                     + avg + " average letters per word");
         }
     }
 
-    void setProducer(Producer<String[]> producer) {
+    /**
+     * @return - total letters / total words, or null if there were no words (or they weren't counted)
+     */
+    private BigDecimal getAverageLettersPerWord() {
+        WordCounter wordAccumulator = findAccumulator(WordCounter.class);
+        LetterAccumulator letterAccumulator = findAccumulator(LetterAccumulator.class);
+        if (wordAccumulator == null || letterAccumulator == null) {
+            return null;
+        }
+        long wordCount = wordAccumulator.getTotalWordCount();
+        long letterCount = letterAccumulator.getTotalLetterCount();
+        if (wordCount == 0) {
+            return null;
+        }
+        return BigDecimal.valueOf(letterCount).divide(BigDecimal.valueOf(wordCount), 1, RoundingMode.HALF_UP);
+    }
+
+    void setProducer(Producer<?> producer) {
         this.producer = producer;
     }
 
-    void setConsumer(Consumer<String[]> consumer) {
+    void setConsumer(Consumer<?> consumer) {
         this.consumer = consumer;
     }
 
-    void setAccumulators(List<Accumulator<String[]>> accumulators) {
+    void setAccumulators(List<? extends MergeableAccumulator<?>> accumulators) {
         this.accumulators = accumulators;
     }
 
-    // TODO clean this up
-    private WordAccumulator getWordAccumulator() {
-        for(Accumulator a : accumulators) {
-            if(a instanceof  WordAccumulator) {
-                return (WordAccumulator)a;
-            }
+    /**
+     * @return - the participating accumulators, e.g. to ship their state after a run (see ScaleOutWorker)
+     */
+    List<? extends MergeableAccumulator<?>> getAccumulators() {
+        return accumulators;
+    }
+
+    /**
+     * @param patterns - patterns to count the occurrences of, on top of the statistics (see PatternAccumulator)
+     */
+    void setPatterns(List<String> patterns) {
+        this.patterns = patterns;
+    }
+
+    /**
+     * @param columnDelimiter - field delimiter for per-column statistics (see ColumnAccumulator), 0 for none
+     * @param columnNames     - the column names, if known
+     */
+    void setColumns(char columnDelimiter, List<String> columnNames) {
+        this.columnDelimiter = columnDelimiter;
+        this.columnNames = columnNames;
+    }
+
+    /**
+     * @param timestampPattern - fixed-width DateTimeFormatter pattern of the timestamps starting the lines of a log file,
+     *                         for per-minute and per-hour counts (see TimeBucketAccumulator)
+     */
+    void setTimestampPattern(String timestampPattern) {
+        new TimestampParser(timestampPattern);   // fail fast on an invalid pattern
+        this.timestampPattern = timestampPattern;
+    }
+
+    /**
+     * @param indexBlockLines - lines per block of the line index to write as the input is read, 0 for none (see LineIndex)
+     */
+    void setIndexBlockLines(int indexBlockLines) {
+        if (indexBlockLines < 0) {
+            throw new UnsupportedOperationException("Index blocks need at least one line!");
         }
-        throw new IllegalStateException("Missing WordAccumulator!");
+        this.indexBlockLines = indexBlockLines;
     }
 
-    private LetterAccumulator getLetterAccumulator() {
-        for(Accumulator a : accumulators) {
-            if(a instanceof LetterAccumulator) {
-                return (LetterAccumulator)a;
+    /**
+     * @param directIo - whether to read the input bypassing the page cache (see DirectIo) - to be called before initialize
+     */
+    void setDirectIo(boolean directIo) {
+        this.directIo = directIo;
+    }
+
+    /**
+     * Reads lines longer than the limit in fragments (see LineFragments) - only the statistics that accept them should
+     * be selected (see Statistic.acceptsLineFragments), and none of the options. To be called before initialize
+     *
+     * @param maxLineChars - number of chars a fragment is cut at, at least one
+     */
+    void setMaxLineChars(int maxLineChars) {
+        if (maxLineChars < 1) {
+            throw new UnsupportedOperationException("Line fragments need at least one char!");
+        }
+        this.maxLineChars = maxLineChars;
+    }
+
+    /**
+     * @param charset - of the input - to be called before initialize
+     */
+    void setCharset(Charset charset) {
+        this.charset = charset;
+    }
+
+    /**
+     * @param snapshotFileName - where to write the accumulated state after the run (see StatsSnapshot), null for nowhere
+     */
+    void setSnapshotFileName(String snapshotFileName) {
+        this.snapshotFileName = snapshotFileName;
+    }
+
+    /**
+     * Restricts the input to the lines starting within a byte range of a file on disk - to be called before initialize
+     *
+     * @param rangeStart - the first byte of the range
+     * @param rangeEnd   - just past the last byte of the range, or -1 for all of the input
+     */
+    void setRange(long rangeStart, long rangeEnd) {
+        this.rangeStart = rangeStart;
+        this.rangeEnd = rangeEnd;
+    }
+
+    /**
+     * Turns pipeline mode on - to be called before initialize
+     *
+     * @param tokenizerThreadCount - number of TokenizerStage threads, at least one
+     */
+    void setTokenizerThreadCount(int tokenizerThreadCount) {
+        if (tokenizerThreadCount < 1) {
+            throw new UnsupportedOperationException("At least one tokenizer thread is needed!");
+        }
+        this.tokenizerThreadCount = tokenizerThreadCount;
+    }
+
+    /**
+     * Turns fan-out mode on (see FanOutConsumer), instead of every consumer thread feeding every accumulator - to be
+     * called before initialize
+     *
+     * @param fanOutThreadCount - number of threads to spread over the accumulators, each gets one at least anyway
+     */
+    void setFanOutThreadCount(int fanOutThreadCount) {
+        if (fanOutThreadCount < 1) {
+            throw new UnsupportedOperationException("At least one accumulator thread is needed!");
+        }
+        this.fanOutThreadCount = fanOutThreadCount;
+    }
+
+    /**
+     * @return - the consumer, followed by the token consumer in pipeline mode
+     */
+    private Consumer<?>[] getStages() {
+        return tokenConsumer != null ? new Consumer<?>[]{consumer, tokenConsumer} : new Consumer<?>[]{consumer};
+    }
+
+    /**
+     * Selects the statistics to compute - to be called before initialize
+     *
+     * @param statistics - at least one statistic
+     */
+    void setStatistics(Set<Statistic> statistics) {
+        if (statistics.isEmpty()) {
+            throw new UnsupportedOperationException("At least one statistic has to be selected!");
+        }
+        this.statistics = EnumSet.copyOf(statistics);
+    }
+
+    /**
+     * @param accumulatorClass - the type of accumulator (or interface implemented by one) to look for
+     * @return - the first participating accumulator of that type, adapted or not, or null if there isn't one
+     */
+    private <A> A findAccumulator(Class<A> accumulatorClass) {
+        for (Accumulator<?> accumulator : accumulators) {
+            Object a = unwrap(accumulator);
+            if (accumulatorClass.isInstance(a)) {
+                return accumulatorClass.cast(a);
             }
         }
-        throw new IllegalStateException("Missing LetterAccumulator!");
+        return null;
+    }
+
+    /**
+     * @return - the adapted accumulator if this one is a TokenBatchAdapter, the accumulator itself otherwise
+     */
+    private static Object unwrap(Accumulator<?> accumulator) {
+        return accumulator instanceof TokenBatchAdapter ? ((TokenBatchAdapter<?>) accumulator).getDelegate() : accumulator;
     }
 }
@@ -0,0 +1,183 @@
+package com.phil.oracle.interview.textlinestats;
+
+import com.phil.oracle.interview.textlinestats.framework.BlockingBuffer;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Daemon mode - a localhost HTTP server analyzing files on request, so the JVM startup, JIT warm-up, thread pools and
+ * buffer are paid for once instead of once per file
+ *
+ * GET /stats?file=a.log&file=b.log, or POST /stats with one file name per line, returns a JSON array with an object
+ * per file. Jobs are run one at a time (they all share the same thread pools and buffer)
+ *
+ * @author Phil
+ */
+public class TextFileStatsServer {
+    static final String SERVER_OPTION = "server";
+    static final int DEFAULT_PORT = 8089;
+    static final String STATS_PATH = "/stats";
+    private static final int BUFFER_SIZE = TextFileStatsGenerator.DEFAULT_BUFFER_SIZE;
+
+    private final HttpServer httpServer;
+    private final int batchSize;
+    private final int consumerThreadCount;
+    private final long maxMillisPerJob;
+
+    // reused by every job
+    private final BlockingBuffer<String[]> buffer = BlockingBuffer.instance(BUFFER_SIZE);
+    private final ExecutorService producerExecutor = Executors.newFixedThreadPool(1);  // the producer is single-threaded
+    private final ExecutorService consumerExecutor;
+
+    /**
+     * @param port                - localhost port to listen on (0 for any free port)
+     * @param batchSize           - text lines per buffer item
+     * @param consumerThreadCount - consumer threads per job
+     * @param maxSecondsPerJob    - maximum seconds to run a single file for
+     * @throws IOException - if the port can't be bound
+     */
+    public TextFileStatsServer(int port, int batchSize, int consumerThreadCount, int maxSecondsPerJob) throws IOException {
+        this.batchSize = batchSize;
+        this.consumerThreadCount = consumerThreadCount;
+        this.maxMillisPerJob = TimeUnit.SECONDS.toMillis(maxSecondsPerJob);
+        this.consumerExecutor = Executors.newFixedThreadPool(consumerThreadCount);
+        // loopback only - this is a local convenience, not a network service
+        this.httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        this.httpServer.createContext(STATS_PATH, this::handleStats);
+    }
+
+    /**
+     * Starts listening (non-blocking - requests are served on the server's own dispatcher thread)
+     */
+    public void start() {
+        httpServer.start();
+        System.out.println(getClass().getSimpleName() + ": Listening on http://localhost:" + getPort() + STATS_PATH);
+    }
+
+    /**
+     * Stops listening and shuts down the thread pools
+     */
+    public void stop() {
+        httpServer.stop(0);
+        producerExecutor.shutdownNow();
+        consumerExecutor.shutdownNow();
+        System.out.println(getClass().getSimpleName() + ": Stopped");
+    }
+
+    /**
+     * @return - the port the server is bound to
+     */
+    public int getPort() {
+        return httpServer.getAddress().getPort();
+    }
+
+    /**
+     * Analyzes a single file on the shared thread pools and buffer
+     *
+     * @param fileName - name of file in classpath or absolute path/name on disk
+     * @return - the file's statistics, or an error - flagged as timed out if the statistics are of part of the file
+     */
+    synchronized Map<String, Object> analyze(String fileName) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("file", fileName);
+        if (!TextLinesProducer.isReadable(fileName)) {
+            result.put("error", "Couldn't find the file anywhere");
+            return result;
+        }
+        TextFileStatsGenerator app = new TextFileStatsGenerator();
+        boolean inline = app.initializeInline(fileName, batchSize);   // small files don't need the pools at all
+        if (!inline) {
+            buffer.clear();  // in case the previous job timed out - its tasks are done with it by now
+            app.initialize(fileName, buffer, batchSize, consumerThreadCount);
+        }
+        long elapsedMillis = app.run(maxMillisPerJob, producerExecutor, consumerExecutor);
+        result.put("elapsedMillis", elapsedMillis);
+        if (!inline && elapsedMillis >= maxMillisPerJob) {   // inline runs aren't cut short
+            result.put("timedOut", true);
+        }
+        result.put("statistics", app.getStatistics());
+        return result;
+    }
+
+    private void handleStats(HttpExchange exchange) throws IOException {
+        try {
+            List<String> fileNames;
+            if ("GET".equals(exchange.getRequestMethod())) {
+                fileNames = parseFileParameters(exchange.getRequestURI().getRawQuery());
+            } else if ("POST".equals(exchange.getRequestMethod())) {
+                fileNames = readLines(exchange);
+            } else {
+                respond(exchange, 405, "{\"error\":\"Only GET and POST are supported\"}");
+                return;
+            }
+            if (fileNames.isEmpty()) {
+                respond(exchange, 400, "{\"error\":\"No files to analyze\"}");
+                return;
+            }
+
+            List<Map<String, Object>> results = new ArrayList<>(fileNames.size());
+            try {
+                fileNames.forEach(fileName -> results.add(analyze(fileName)));
+            } catch (RuntimeException e) {  // a failed run (see AsyncFlowOrchestrator), the daemon carries on
+                System.out.println("ERROR - " + e.getMessage());
+                respond(exchange, 500, Json.toJson(Collections.singletonMap("error", String.valueOf(e.getMessage()))));
+                return;
+            }
+            respond(exchange, 200, Json.toJson(results));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static List<String> parseFileParameters(String query) throws UnsupportedEncodingException {
+        List<String> fileNames = new ArrayList<>();
+        if (query != null) {
+            for (String parameter : query.split("&")) {
+                int equals = parameter.indexOf('=');
+                if (equals > 0 && "file".equals(parameter.substring(0, equals))) {
+                    fileNames.add(URLDecoder.decode(parameter.substring(equals + 1), StandardCharsets.UTF_8.name()));
+                }
+            }
+        }
+        return fileNames;
+    }
+
+    private static List<String> readLines(HttpExchange exchange) throws IOException {
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8))) {
+            for (String line; (line = reader.readLine()) != null; ) {
+                if (!line.trim().isEmpty()) {
+                    lines.add(line.trim());
+                }
+            }
+        }
+        return lines;
+    }
+
+    private static void respond(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
@@ -13,14 +13,7 @@ import java.util.List;
  */
 public class TextLinesConsumer extends AbstractAccumulatingConsumer<String[]> {
 
-    static final String[] STOP_SIGNAL = new String[0];
-
-    public TextLinesConsumer(BlockingBuffer<String[]> buffer, List<Accumulator<String[]>> accumulators, int threadCount) {
+    public TextLinesConsumer(BlockingBuffer<String[]> buffer, List<? extends Accumulator<String[]>> accumulators, int threadCount) {
         super(buffer, accumulators, threadCount);
     }
-
-    @Override
-    public String[] getStopSignal() {
-        return STOP_SIGNAL;
-    }
 }
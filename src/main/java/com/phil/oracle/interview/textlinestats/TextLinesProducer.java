@@ -3,30 +3,95 @@ package com.phil.oracle.interview.textlinestats;
 import com.phil.oracle.interview.textlinestats.framework.AbstractProducer;
 import com.phil.oracle.interview.textlinestats.framework.BlockingBuffer;
 import com.phil.oracle.interview.textlinestats.framework.Consumer;
+import com.phil.oracle.interview.textlinestats.framework.FlowTracer;
+import com.phil.oracle.interview.textlinestats.kernel.LineFragments;
+import com.phil.oracle.interview.textlinestats.kernel.Utf8LineReader;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.InputStream;
-import java.util.Scanner;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
 
 /**
  * Reads lines of text from a file and puts them into a buffer. String arrays are used for batching.
+ * The charset is explicit (UTF-8 unless told otherwise), so that a file gives the same results on any host
+ * UTF-8 is decoded by Utf8LineReader, which counts malformed input - other charsets by the JDK decoder (which replaces
+ * malformed input without counting it)
+ * Besides files, it reads standard input (file name "-") and gzip-compressed files (".gz"), as streams - from the start
+ * to the end, no byte ranges (see isStream)
+ * Lines longer than a limit can be read in fragments, so that memory stays bounded however long a line is (see
+ * setMaxLineChars)
  *
  * @author Phil
  */
 public class TextLinesProducer extends AbstractProducer<String[]> {
+    static final String STDIN_FILE_NAME = "-";
+    static final String GZIP_SUFFIX = ".gz";
+    private static final int GZIP_BUFFER_BYTES = 64 * 1024;
+    private static final FlowTracer TRACER = FlowTracer.get();
 
     private final String textFileName;       // the file name to read
     private final int itemsBatchSize;        // how many text lines to batch up into each array put into the buffer
+    private final long rangeStart, rangeEnd; // byte range of the file to read lines from, see the range constructor
+    private final Charset charset;
+
+    private LineIndex.Builder indexBuilder;  // to write a line index of the file as it's read, if set
+    private boolean directIo;                // read the file bypassing the page cache, see DirectIo
+    private int maxLineChars;                // read longer lines in fragments if set, see setMaxLineChars
+
+    // stateful field(s)
+    private volatile long malformedInputCount;
 
     public TextLinesProducer(String textFileName, int itemsBatchSize, Consumer<String[]> consumer) {
+        this(textFileName, itemsBatchSize, consumer, 0, -1);
+    }
+
+    public TextLinesProducer(String textFileName, int itemsBatchSize, Consumer<String[]> consumer, long rangeStart,
+                             long rangeEnd) {
+        this(textFileName, itemsBatchSize, consumer, rangeStart, rangeEnd, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads the lines starting within a byte range of a file on disk, so that a file split into adjacent ranges gets
+     * read exactly once, line by line, across all of them (a line belongs to the range its first byte is in)
+     * Only lines terminated by '\n' are considered for splitting, e.g. a file with '\r' line endings is not splittable
+     *
+     * @param rangeStart - the first byte of the range
+     * @param rangeEnd   - just past the last byte of the range, or -1 for the whole file (classpath files have to be)
+     * @param charset    - of the file - ranges need one where '\n' is a single byte (see isLineSplittable)
+     */
+    public TextLinesProducer(String textFileName, int itemsBatchSize, Consumer<String[]> consumer, long rangeStart,
+                             long rangeEnd, Charset charset) {
         super(1, consumer);     // this file-streaming producer is always single-threaded
         if(itemsBatchSize <= 0) {
             throw new UnsupportedOperationException("Items batch size has to be greater than zero!");
         }
+        if (rangeStart < 0 || (rangeEnd >= 0 && rangeEnd < rangeStart)) {
+            throw new UnsupportedOperationException("Invalid byte range " + rangeStart + "-" + rangeEnd + "!");
+        }
+        if ((rangeStart > 0 || rangeEnd >= 0) && !isLineSplittable(charset)) {
+            throw new UnsupportedOperationException("Files in " + charset + " can't be read in byte ranges!");
+        }
+        if ((rangeStart > 0 || rangeEnd >= 0) && isStream(textFileName)) {
+            throw new UnsupportedOperationException("'" + textFileName + "' is a stream, it can't be read in byte ranges!");
+        }
         this.textFileName = textFileName;
         this.itemsBatchSize = itemsBatchSize;
+        this.rangeStart = rangeStart;
+        this.rangeEnd = rangeEnd;
+        this.charset = charset;
     }
 
     /**
@@ -41,35 +106,282 @@ public class TextLinesProducer extends AbstractProducer<String[]> {
         InputStream inputStream = getInputFileStream();
 
         if (inputStream != null) {
-            String[] batchItem = new String[itemsBatchSize];
+            int batchLength = maxLineChars > 0 ? itemsBatchSize + 2 : itemsBatchSize;   // room for fragment markers
+            String[] batchItem = new String[batchLength];
             int itemIndex = 0;
-            // performance might be better with BufferedReader...not the focus area for this exercise
-            Scanner scanner = new Scanner(inputStream);
-            while (scanner.hasNextLine()) {
-                String line = scanner.nextLine();
-                lineCount++;
-                if (itemIndex < itemsBatchSize) {
-                    batchItem[itemIndex] = line;
-                    itemIndex++;
-                } else {
-                    buffer.put(batchItem);
-                    batchItem = new String[itemsBatchSize];
-                    batchItem[0] = line;
-                    itemIndex = 1;
+            LineReader reader = newLineReader(inputStream);
+            boolean lineContinued = false;
+            FlowTracer.Span produced = TRACER.beginBatchProduced(this);
+            for (String line = readLine(reader); line != null; line = readLine(reader)) {
+                if (!lineContinued) {   // the first (or only) fragment of a line
+                    lineCount++;
+                    if (indexBuilder != null) {
+                        Utf8LineReader lineReader = ((Utf8Lines) reader).reader;
+                        indexBuilder.addLine(lineReader.getLineStart(), line, lineReader.isLineFollowingLineFeed());
+                    }
                 }
+                if (itemIndex >= itemsBatchSize) {
+                    buffer.put(itemIndex == batchLength ? batchItem : Arrays.copyOf(batchItem, itemIndex));
+                    produced.end(itemIndex);
+                    produced = TRACER.beginBatchProduced(this);
+                    batchItem = new String[batchLength];
+                    itemIndex = 0;
+                }
+                if (maxLineChars > 0 && ((Utf8Lines) reader).reader.isWordWithLetterContinued()) {
+                    batchItem[itemIndex++] = LineFragments.REST_OF_WORD;   // first in its batch, see below
+                }
+                batchItem[itemIndex++] = line;
+                lineContinued = maxLineChars > 0 && ((Utf8Lines) reader).reader.isLineContinued();
+                if (lineContinued) {    // the batch ends here, so that the fragments of a line don't pile up in one
+                    batchItem[itemIndex++] = ((Utf8Lines) reader).reader.isLineContinuedInWord()
+                            ? LineFragments.CONTINUED_IN_WORD : LineFragments.CONTINUED;
+                    buffer.put(Arrays.copyOf(batchItem, itemIndex));
+                    produced.end(itemIndex);
+                    produced = TRACER.beginBatchProduced(this);
+                    itemIndex = 0;
+                }
+            }
+            closeQuietly(reader);    // long-lived processes (see ScaleOutWorker) would run out of file handles otherwise
+            if (reader instanceof Utf8Lines) {
+                malformedInputCount = ((Utf8Lines) reader).reader.getMalformedCount();
             }
+            writeIndex();
             // put the remainder
-            String[] last = new String[itemIndex];
-            System.arraycopy(batchItem, 0, last, 0, itemIndex);
-            buffer.put(last);
+            buffer.put(Arrays.copyOf(batchItem, itemIndex));
+            produced.end(itemIndex);
         }
         return lineCount;
     }
 
+    /**
+     * Writes a line index of the file as it's read, into its sidecar file (see LineIndex) - to be called before running
+     *
+     * @param blockLines       - lines per index block
+     * @param timestampPattern - pattern of the timestamps starting the lines, for the minutes of every block, or null
+     */
+    public void setIndex(int blockLines, String timestampPattern) {
+        if (rangeStart > 0 || rangeEnd >= 0 || !charset.equals(StandardCharsets.UTF_8) || !new File(textFileName).isFile()
+                || isStream(textFileName)) {
+            throw new UnsupportedOperationException("Only whole UTF-8 files on disk can be indexed!");
+        }
+        this.indexBuilder = new LineIndex.Builder(blockLines, timestampPattern);
+    }
+
+    /**
+     * Reads the file with direct I/O, bypassing the page cache (see DirectIo) - or through it as usual, with a warning,
+     * where direct I/O isn't available. To be called before running
+     */
+    public void setDirectIo(boolean directIo) {
+        if (directIo && (!new File(textFileName).isFile() || isStream(textFileName))) {
+            throw new UnsupportedOperationException("Only uncompressed files on disk can be read with direct I/O!");
+        }
+        this.directIo = directIo;
+    }
+
+    /**
+     * Reads lines longer than the limit in fragments, each followed by a LineFragments marker unless it's the last of
+     * its line, and ending its batch - so that only the accumulators that handle fragments should get them (see
+     * LineFragments). To be called before running
+     *
+     * @param maxLineChars - number of chars a fragment is cut at, 0 to read every line whole
+     */
+    public void setMaxLineChars(int maxLineChars) {
+        if (maxLineChars > 0 && !charset.equals(StandardCharsets.UTF_8)) {
+            throw new UnsupportedOperationException("Only UTF-8 input can be read in line fragments!");
+        }
+        if (maxLineChars < 0) {
+            throw new UnsupportedOperationException("The line length limit can't be negative!");
+        }
+        this.maxLineChars = maxLineChars;
+    }
+
+    private void writeIndex() {
+        if (indexBuilder == null) {
+            return;
+        }
+        LineIndex index = indexBuilder.build(new File(textFileName));
+        try {
+            index.write(textFileName);
+            System.out.println("Line index of '" + textFileName + "' written: " + index.getBlockCount() + " blocks of "
+                    + index.getBlockLines() + " lines");
+        } catch (IOException e) {
+            System.out.println("ERROR - Couldn't write the line index of '" + textFileName + "': " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return - number of malformed byte sequences in the input, replaced by U+FFFD - known for UTF-8 input only
+     */
+    public long getMalformedInputCount() {
+        return malformedInputCount;
+    }
+
+    /**
+     * @param charset - a charset
+     * @return - whether '\n' is the single byte 0x0A in the charset, and no other char's bytes contain it, as in UTF-8
+     * and ISO-8859-x (not in UTF-16) - what splitting files into byte ranges, and counting lines by bytes, rely on
+     */
+    static boolean isLineSplittable(Charset charset) {
+        return charset.equals(StandardCharsets.UTF_8) || charset.equals(StandardCharsets.US_ASCII)
+                || charset.equals(StandardCharsets.ISO_8859_1) || charset.name().startsWith("ISO-8859-")
+                || charset.name().startsWith("windows-125");
+    }
+
+    /**
+     * @param textFileName - the file name
+     * @return - whether it's standard input or a compressed file, i.e. can only be read from the start to the end as a
+     * stream of bytes - no byte ranges, no line index, no line counting by bytes
+     */
+    static boolean isStream(String textFileName) {
+        return textFileName.equals(STDIN_FILE_NAME) || textFileName.endsWith(GZIP_SUFFIX);
+    }
+
+    /**
+     * @param textFileName - the file name to look for
+     * @return - whether the file exists on disk or in classpath, same lookup order as the producer itself (standard
+     * input always does)
+     */
+    static boolean isReadable(String textFileName) {
+        return textFileName.equals(STDIN_FILE_NAME) || new File(textFileName).isFile()
+                || TextLinesProducer.class.getClassLoader().getResource(textFileName) != null;
+    }
+
+    /**
+     * @param textFileName - the file name to look for
+     * @return - size of the file in bytes, on disk or in classpath (same lookup order as the producer), -1 if unknown
+     * (as it is for streams)
+     */
+    static long getInputSize(String textFileName) {
+        if (isStream(textFileName)) {
+            return -1;
+        }
+        File file = new File(textFileName);
+        if (file.isFile()) {
+            return file.length();
+        }
+        URL resource = TextLinesProducer.class.getClassLoader().getResource(textFileName);
+        if (resource != null) {
+            try {
+                return resource.openConnection().getContentLengthLong();
+            } catch (IOException e) {
+                return -1;  // we'll find out for sure when we try to read it
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param channel  - the file
+     * @param position - any byte position in the file
+     * @return - start of the first line starting at or after the position (the file size if there is none)
+     */
+    static long alignToLineStart(FileChannel channel, long position) throws IOException {
+        if (position <= 0) {
+            return 0;
+        }
+        long size = channel.size();
+        ByteBuffer bytes = ByteBuffer.allocate(8192);
+        for (long offset = position - 1; offset < size; ) {  // a line starts right after a newline
+            bytes.clear();
+            int read = channel.read(bytes, offset);
+            for (int i = 0; i < read; i++) {
+                if (bytes.get(i) == '\n') {
+                    return offset + i + 1;
+                }
+            }
+            offset += Math.max(read, 0);
+        }
+        return size;
+    }
+
+    /**
+     * Where the lines come from - Utf8LineReader, or a BufferedReader for other charsets
+     */
+    private interface LineReader {
+        String readLine() throws IOException;
+
+        void close() throws IOException;
+    }
+
+    private static final class Utf8Lines implements LineReader {
+        private final Utf8LineReader reader;
+
+        private Utf8Lines(InputStream inputStream) {
+            this.reader = new Utf8LineReader(inputStream);
+        }
+
+        @Override
+        public String readLine() throws IOException {
+            return reader.readLine();
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+
+    private LineReader newLineReader(InputStream inputStream) {
+        if (charset.equals(StandardCharsets.UTF_8)) {
+            Utf8Lines lines = new Utf8Lines(inputStream);
+            lines.reader.setMaxLineChars(maxLineChars);
+            return lines;
+        }
+        BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, charset));
+        return new LineReader() {
+            @Override
+            public String readLine() throws IOException {
+                return reader.readLine();
+            }
+
+            @Override
+            public void close() throws IOException {
+                reader.close();
+            }
+        };
+    }
+
+    /**
+     * @return - the next line, or null at the end of the input or if it can't be read any further
+     */
+    private String readLine(LineReader reader) {
+        try {
+            return reader.readLine();
+        } catch (IOException e) {
+            System.out.println("ERROR - Couldn't read '" + textFileName + "' any further: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static void closeQuietly(LineReader reader) {
+        try {
+            reader.close();
+        } catch (IOException e) {
+            // nothing more to read anyway
+        }
+    }
+
     /**
      * @return an InputStream to the input file, covering disk as well as classpath
      */
     private InputStream getInputFileStream() {
+        if (rangeEnd >= 0) {
+            return getRangeStream();
+        }
+        InputStream direct = directIo ? DirectIo.open(textFileName, 0, -1) : null;
+        return direct != null ? direct : openInput(textFileName);
+    }
+
+    /**
+     * @param textFileName - the file name, "-" for standard input
+     * @return an InputStream to the whole input, covering disk as well as classpath, decompressed if it's a ".gz" file
+     * - or null if it can't be found
+     */
+    static InputStream openInput(String textFileName) {
+        if (textFileName.equals(STDIN_FILE_NAME)) {
+            System.out.println("Reading standard input");
+            return System.in;
+        }
         InputStream rv;
 
         try {
@@ -78,14 +390,70 @@ public class TextLinesProducer extends AbstractProducer<String[]> {
             System.out.println("File '" + textFileName + "' found on disk");
         } catch (FileNotFoundException e) {
             // look in classpath
-            rv = getClass().getClassLoader().getResourceAsStream(textFileName);
+            rv = TextLinesProducer.class.getClassLoader().getResourceAsStream(textFileName);
             if (rv != null) {
                 System.out.println("File '" + textFileName + "' found in classpath");
             } else {
                 System.out.println("ERROR - Couldn't find the file '" + textFileName + "' anywhere!");
             }
         }
+        if (rv != null && textFileName.endsWith(GZIP_SUFFIX)) {
+            try {
+                return new GZIPInputStream(rv, GZIP_BUFFER_BYTES);
+            } catch (IOException e) {
+                System.out.println("ERROR - '" + textFileName + "' isn't gzip-compressed: " + e.getMessage());
+                try {
+                    rv.close();
+                } catch (IOException closing) {
+                    // it's no use anyway
+                }
+                return null;
+            }
+        }
         return rv;
     }
 
+    /**
+     * @return an InputStream over the lines starting within the byte range of the file on disk, null if it can't be read
+     */
+    private InputStream getRangeStream() {
+        try {
+            FileChannel channel = new RandomAccessFile(textFileName, "r").getChannel();
+            long start = alignToLineStart(channel, rangeStart), end = alignToLineStart(channel, rangeEnd);
+            InputStream direct = directIo ? DirectIo.open(textFileName, start, end) : null;
+            if (direct != null) {
+                channel.close();
+                return direct;
+            }
+            channel.position(start);
+            InputStream channelStream = Channels.newInputStream(channel);
+            return new InputStream() {  // stops at the end of the range
+                private long remaining = end - start;
+
+                @Override
+                public int read() throws IOException {
+                    return remaining-- > 0 ? channelStream.read() : -1;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    if (remaining <= 0) {
+                        return -1;
+                    }
+                    int read = channelStream.read(b, off, (int) Math.min(len, remaining));
+                    remaining -= Math.max(read, 0);
+                    return read;
+                }
+
+                @Override
+                public void close() throws IOException {
+                    channel.close();
+                }
+            };
+        } catch (IOException e) {
+            System.out.println("ERROR - Couldn't read bytes " + rangeStart + "-" + rangeEnd + " of '" + textFileName
+                    + "': " + e.getMessage());
+            return null;
+        }
+    }
 }
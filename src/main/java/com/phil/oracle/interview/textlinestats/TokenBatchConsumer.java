@@ -0,0 +1,20 @@
+package com.phil.oracle.interview.textlinestats;
+
+import com.phil.oracle.interview.textlinestats.framework.AbstractAccumulatingConsumer;
+import com.phil.oracle.interview.textlinestats.framework.Accumulator;
+import com.phil.oracle.interview.textlinestats.framework.BlockingBuffer;
+import com.phil.oracle.interview.textlinestats.token.TokenBatch;
+
+import java.util.List;
+
+/**
+ * Takes TokenBatches from the Buffer, and feeds each to all Accumulators in the list
+ *
+ * @author Phil
+ */
+public class TokenBatchConsumer extends AbstractAccumulatingConsumer<TokenBatch> {
+
+    public TokenBatchConsumer(BlockingBuffer<TokenBatch> buffer, List<? extends Accumulator<TokenBatch>> accumulators, int threadCount) {
+        super(buffer, accumulators, threadCount);
+    }
+}
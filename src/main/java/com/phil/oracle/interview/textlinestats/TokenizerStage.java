@@ -0,0 +1,23 @@
+package com.phil.oracle.interview.textlinestats;
+
+import com.phil.oracle.interview.textlinestats.framework.AbstractTransformingStage;
+import com.phil.oracle.interview.textlinestats.framework.BlockingBuffer;
+import com.phil.oracle.interview.textlinestats.framework.Consumer;
+import com.phil.oracle.interview.textlinestats.token.TokenBatch;
+
+/**
+ * Tokenizes arrays of Strings from the Buffer once, and passes the resulting TokenBatches on to the next stage
+ *
+ * @author Phil
+ */
+public class TokenizerStage extends AbstractTransformingStage<String[], TokenBatch> {
+
+    public TokenizerStage(BlockingBuffer<String[]> buffer, int threadCount, Consumer<TokenBatch> downstream) {
+        super(buffer, threadCount, downstream);
+    }
+
+    @Override
+    protected TokenBatch transform(String[] item) {
+        return TokenBatch.tokenize(item);
+    }
+}
@@ -1,17 +1,24 @@
 package com.phil.oracle.interview.textlinestats.accumulator;
 
-import com.phil.oracle.interview.textlinestats.framework.Accumulator;
+import com.phil.oracle.interview.textlinestats.framework.MergeableAccumulator;
+import com.phil.oracle.interview.textlinestats.token.TokenBatch;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Abstract implementation of the Accumulator interface
+ * Abstract implementation of the Accumulator interface - every accumulator's state can be merged (see MergeableAccumulator)
  *
  * @param <T> - the type of the input item this accumulator will be processing
  * @author Phil
  */
-public abstract class AbstractAccumulator<T> implements Accumulator<T> {
+public abstract class AbstractAccumulator<T> implements MergeableAccumulator<T> {
     private final AtomicLong totalRunNanos = new AtomicLong(0); // to track execution time
     private final AtomicLong inputItemCount = new AtomicLong(0);  // to track input items processed
 
@@ -33,6 +40,81 @@ public abstract class AbstractAccumulator<T> implements Accumulator<T> {
      */
     protected abstract void summarizeStats(String className);
 
+    /**
+     * Same as summarizeStats, but for structured output - implementing subclasses add their own statistics here
+     *
+     * @param stats - the map to add statistics to (performance and item counts are already in there)
+     */
+    protected void collectStats(Map<String, Object> stats) {
+        // nothing beyond performance and item counts by default
+    }
+
+    /**
+     * Subclasses implementing TokenBatchAccumulator accumulate the words of a token batch here, see accumulateTokens
+     * Same thread-safety requirements as accumulateItem
+     *
+     * @param inputItem - a batch of lines and their words
+     */
+    protected void accumulateTokenItem(TokenBatch inputItem) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " can't take token batches!");
+    }
+
+    /**
+     * Implementing subclasses write the state they accumulated here, see writeState
+     *
+     * @param out - where to write the state
+     */
+    protected abstract void writeAccumulatedState(DataOutput out) throws IOException;
+
+    /**
+     * Implementing subclasses merge the state written by writeAccumulatedState here
+     *
+     * @param in - where to read the state from
+     */
+    protected abstract void mergeAccumulatedState(DataInput in) throws IOException;
+
+    /**
+     * Writes performance and item counts collected here, followed by the output of writeAccumulatedState
+     *
+     * @param out - where to write the state
+     */
+    @Override
+    public final void writeState(DataOutput out) throws IOException {
+        out.writeLong(totalRunNanos.get());
+        out.writeLong(inputItemCount.get());
+        writeAccumulatedState(out);  // to be implemented by subclass
+    }
+
+    /**
+     * Counterpart of writeState
+     *
+     * @param in - where to read the state from
+     */
+    @Override
+    public final void mergeState(DataInput in) throws IOException {
+        totalRunNanos.addAndGet(in.readLong());
+        inputItemCount.addAndGet(in.readLong());
+        mergeAccumulatedState(in);  // to be implemented by subclass
+    }
+
+    /**
+     * For subclasses' state: unlike DataOutput.writeUTF, not limited to 64KB (e.g. for long lines)
+     */
+    protected static void writeString(DataOutput out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Counterpart of writeString
+     */
+    protected static String readString(DataInput in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
     /**
      * Wraps the abstract method accumulateItem and keeps track of the total time taken
      *
@@ -46,6 +128,19 @@ public abstract class AbstractAccumulator<T> implements Accumulator<T> {
         incrementRunTimeNanos(System.nanoTime() - start);
     }
 
+    /**
+     * Same as accumulate, for token batches - implements TokenBatchAccumulator.accumulateTokens for the subclasses
+     * implementing it
+     *
+     * @param inputItem - a batch of lines and their words
+     */
+    public final void accumulateTokens(TokenBatch inputItem) {
+        long start = System.nanoTime();
+        inputItemCount.incrementAndGet();
+        accumulateTokenItem(inputItem);  // to be implemented by subclass
+        incrementRunTimeNanos(System.nanoTime() - start);
+    }
+
     /**
      * Prefixes the output of summarizeStats with performance and item counts collected here
      */
@@ -57,6 +152,18 @@ public abstract class AbstractAccumulator<T> implements Accumulator<T> {
         summarizeStats(className);  // to be implemented by subclass
     }
 
+    /**
+     * Prefixes the output of collectStats with performance and item counts collected here
+     */
+    @Override
+    public final Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("totalRunMillis", TimeUnit.NANOSECONDS.toMillis(totalRunNanos.longValue()));
+        stats.put("totalItemsProcessed", inputItemCount.longValue());
+        collectStats(stats);  // to be implemented by subclass
+        return stats;
+    }
+
     /**
      * For tracking total accumulator runtime. This method is called at the end of each "accumulate" invocation
      *
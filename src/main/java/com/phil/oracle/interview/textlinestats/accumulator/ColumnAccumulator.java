@@ -0,0 +1,324 @@
+package com.phil.oracle.interview.textlinestats.accumulator;
+
+import com.phil.oracle.interview.textlinestats.kernel.FieldSplitter;
+import com.phil.oracle.interview.textlinestats.sketch.HyperLogLog;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-column statistics of delimited lines (CSV, TSV etc.): value lengths, distinct values (estimated with a
+ * HyperLogLog), and min/max/mean of the numeric values. Every line is a row, an empty line isn't
+ * Fields are read in place as offset ranges (see FieldSplitter) - hashed and parsed without creating substrings
+ * Each consumer thread keeps stats of its own, merged when the stats get summarized
+ *
+ * @author Phil
+ */
+public class ColumnAccumulator extends AbstractAccumulator<String[]> {
+
+    private static final int MAX_EXACT_DIGITS = 15;   // any 15-digit integer is exact as a double
+    private static final double[] POWERS_OF_TEN = new double[23];   // exact as doubles up to 10^22
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private final FieldSplitter splitter;
+    private final List<String> columnNames;
+
+    // stateful field(s)
+    private final Queue<ThreadState> threadStates = new ConcurrentLinkedQueue<>();   // every thread's stats, for merging
+    private final ThreadLocal<ThreadState> threadState = ThreadLocal.withInitial(() -> {
+        ThreadState state = new ThreadState();
+        threadStates.add(state);
+        return state;
+    });
+    private final AtomicLong rowCount = new AtomicLong(0);
+
+    /**
+     * @param delimiter   - the field separator, e.g. ',' or '\t'
+     * @param columnNames - names of the columns from the header line, if any (other columns are named by position)
+     */
+    public ColumnAccumulator(char delimiter, List<String> columnNames) {
+        this.splitter = new FieldSplitter(delimiter);
+        this.columnNames = columnNames;
+    }
+
+    @Override
+    protected void accumulateItem(String[] inputItem) {
+        ThreadState state = threadState.get();
+        long batchRowCount = 0;
+        for (String line : inputItem) {
+            state.line = line;
+            batchRowCount += splitter.split(line, state) > 0 ? 1 : 0;
+        }
+        if (batchRowCount != 0) {
+            rowCount.addAndGet(batchRowCount);
+        }
+    }
+
+    @Override
+    protected void summarizeStats(String className) {
+        System.out.println(className + ": Total Row Count = " + rowCount);
+        getColumnStats().forEach((name, stats) -> System.out.println(className + ": '" + name + "' " + stats));
+    }
+
+    @Override
+    protected void collectStats(Map<String, Object> stats) {
+        stats.put("totalRowCount", rowCount.get());
+        stats.put("columns", getColumnStats());
+    }
+
+    /**
+     * The delimiter and column names (to make sure they're the same on merging), then the stats of every column
+     */
+    @Override
+    protected void writeAccumulatedState(DataOutput out) throws IOException {
+        out.writeChar(splitter.getDelimiter());
+        out.writeInt(columnNames.size());
+        for (String name : columnNames) {
+            writeString(out, name);
+        }
+        out.writeLong(rowCount.get());
+        List<ColumnStats> merged = mergeColumns();
+        out.writeInt(merged.size());
+        for (ColumnStats column : merged) {
+            column.write(out);
+        }
+    }
+
+    @Override
+    protected void mergeAccumulatedState(DataInput in) throws IOException {
+        char delimiter = in.readChar();
+        List<String> names = new ArrayList<>();
+        for (int i = in.readInt(); i > 0; i--) {
+            names.add(readString(in));
+        }
+        if (delimiter != splitter.getDelimiter() || !names.equals(columnNames)) {
+            throw new IOException("Can't merge columns " + names + " delimited by '" + delimiter + "' into columns "
+                    + columnNames + " delimited by '" + splitter.getDelimiter() + "'");
+        }
+        rowCount.addAndGet(in.readLong());
+        ThreadState state = threadState.get();
+        for (int column = 0, columnCount = in.readInt(); column < columnCount; column++) {
+            state.getColumn(column).merge(ColumnStats.read(in));
+        }
+    }
+
+    /**
+     * Convenience method - expected to be called after accumulation is done (merges all the per-thread stats)
+     *
+     * @return - stats of every column seen, in column order, keyed by column name
+     */
+    public Map<String, Map<String, Object>> getColumnStats() {
+        Map<String, Map<String, Object>> columnStats = new LinkedHashMap<>();
+        List<ColumnStats> merged = mergeColumns();
+        for (int column = 0; column < merged.size(); column++) {
+            columnStats.put(getColumnName(column), merged.get(column).toMap());
+        }
+        return columnStats;
+    }
+
+    /**
+     * @return - number of (non-empty) lines
+     */
+    public long getTotalRowCount() {
+        return rowCount.get();
+    }
+
+    private String getColumnName(int column) {
+        return column < columnNames.size() ? columnNames.get(column) : "column" + (column + 1);
+    }
+
+    private List<ColumnStats> mergeColumns() {
+        List<ColumnStats> merged = new ArrayList<>();
+        for (ThreadState state : threadStates) {
+            for (int column = 0; column < state.columns.size(); column++) {
+                if (column == merged.size()) {
+                    merged.add(new ColumnStats());
+                }
+                merged.get(column).merge(state.columns.get(column));
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * @return - the value of the field as a decimal number, NaN if it isn't one (surrounding spaces are fine)
+     */
+    static double parseNumber(String line, int start, int end) {
+        while (start < end && line.charAt(start) == ' ') {
+            start++;
+        }
+        while (end > start && line.charAt(end - 1) == ' ') {
+            end--;
+        }
+        int i = start;
+        boolean negative = false;
+        if (i < end && (line.charAt(i) == '-' || line.charAt(i) == '+')) {
+            negative = line.charAt(i++) == '-';
+        }
+        long mantissa = 0;
+        int digitCount = 0, significantDigitCount = 0, fractionDigitCount = 0;
+        boolean fraction = false;
+        for (; i < end; i++) {
+            char ch = line.charAt(i);
+            if (ch >= '0' && ch <= '9') {
+                if (significantDigitCount == MAX_EXACT_DIGITS) {
+                    return parseSlowly(line, start, end);
+                }
+                mantissa = mantissa * 10 + (ch - '0');
+                digitCount++;
+                significantDigitCount += mantissa != 0 ? 1 : 0;
+                fractionDigitCount += fraction ? 1 : 0;
+            } else if (ch == '.' && !fraction) {
+                fraction = true;
+            } else if ((ch == 'e' || ch == 'E') && digitCount > 0) {
+                return parseSlowly(line, start, end);
+            } else {
+                return Double.NaN;
+            }
+        }
+        if (digitCount == 0) {
+            return Double.NaN;
+        } else if (fractionDigitCount >= POWERS_OF_TEN.length) {
+            return parseSlowly(line, start, end);
+        }
+        // both exact as doubles, so the division is correctly rounded - the same as Double.parseDouble
+        double value = mantissa / POWERS_OF_TEN[fractionDigitCount];
+        return negative ? -value : value;
+    }
+
+    private static double parseSlowly(String line, int start, int end) {
+        try {
+            return Double.parseDouble(line.substring(start, end));
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    /**
+     * The stats of a column, as accumulated by a thread or merged
+     */
+    private static final class ColumnStats {
+        private long valueCount, emptyCount, totalLength, maxLength, numericCount;
+        private double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY, sum;
+        private HyperLogLog distinctValues = new HyperLogLog();
+
+        private void add(String line, int start, int end, boolean quoted) {
+            long hash = 0xcbf29ce484222325L;   // FNV-1a of the value, i.e. undoubling quotes if quoted
+            int length = 0;
+            for (int i = start; i < end; i++) {
+                char ch = line.charAt(i);
+                if (quoted && ch == FieldSplitter.QUOTE) {
+                    i++;   // the second one of the doubled quote
+                }
+                hash = (hash ^ ch) * 0x100000001b3L;
+                length++;
+            }
+            if (length == 0) {
+                emptyCount++;
+                return;
+            }
+            valueCount++;
+            totalLength += length;
+            maxLength = Math.max(maxLength, length);
+            distinctValues.addHash(HyperLogLog.mix(hash));
+            double number = quoted ? Double.NaN : parseNumber(line, start, end);
+            if (!Double.isNaN(number)) {
+                numericCount++;
+                min = Math.min(min, number);
+                max = Math.max(max, number);
+                sum += number;
+            }
+        }
+
+        private void merge(ColumnStats other) {
+            valueCount += other.valueCount;
+            emptyCount += other.emptyCount;
+            totalLength += other.totalLength;
+            maxLength = Math.max(maxLength, other.maxLength);
+            numericCount += other.numericCount;
+            min = Math.min(min, other.min);
+            max = Math.max(max, other.max);
+            sum += other.sum;
+            distinctValues.merge(other.distinctValues);
+        }
+
+        private Map<String, Object> toMap() {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("valueCount", valueCount);
+            stats.put("emptyCount", emptyCount);
+            stats.put("averageLength", valueCount == 0 ? BigDecimal.ZERO
+                    : BigDecimal.valueOf(totalLength).divide(BigDecimal.valueOf(valueCount), 1, RoundingMode.HALF_UP));
+            stats.put("maxLength", maxLength);
+            stats.put("distinctEstimate", distinctValues.estimate());
+            stats.put("numericCount", numericCount);
+            if (numericCount > 0) {
+                stats.put("min", min);
+                stats.put("max", max);
+                stats.put("mean", sum / numericCount);
+            }
+            return stats;
+        }
+
+        private void write(DataOutput out) throws IOException {
+            out.writeLong(valueCount);
+            out.writeLong(emptyCount);
+            out.writeLong(totalLength);
+            out.writeLong(maxLength);
+            out.writeLong(numericCount);
+            out.writeDouble(min);
+            out.writeDouble(max);
+            out.writeDouble(sum);
+            distinctValues.write(out);
+        }
+
+        private static ColumnStats read(DataInput in) throws IOException {
+            ColumnStats stats = new ColumnStats();
+            stats.valueCount = in.readLong();
+            stats.emptyCount = in.readLong();
+            stats.totalLength = in.readLong();
+            stats.maxLength = in.readLong();
+            stats.numericCount = in.readLong();
+            stats.min = in.readDouble();
+            stats.max = in.readDouble();
+            stats.sum = in.readDouble();
+            stats.distinctValues = HyperLogLog.read(in);
+            return stats;
+        }
+    }
+
+    /**
+     * A consumer thread's stats, and the line being split
+     */
+    private static final class ThreadState implements FieldSplitter.FieldSink {
+        private final List<ColumnStats> columns = new ArrayList<>();
+        private String line;
+
+        @Override
+        public void field(int column, int start, int end, boolean quoted) {
+            getColumn(column).add(line, start, end, quoted);
+        }
+
+        private ColumnStats getColumn(int column) {
+            while (columns.size() <= column) {
+                columns.add(new ColumnStats());
+            }
+            return columns.get(column);
+        }
+    }
+}
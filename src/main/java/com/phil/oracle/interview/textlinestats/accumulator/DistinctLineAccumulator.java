@@ -0,0 +1,325 @@
+package com.phil.oracle.interview.textlinestats.accumulator;
+
+import com.phil.oracle.interview.textlinestats.sketch.HyperLogLog;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts distinct and duplicate lines, e.g. the dedup ratio of a log, and the top K duplicated lines
+ * Lines are kept as 64-bit hashes (a collision is next to impossible below billions of distinct lines) in primitive
+ * open-addressing sets with a count per hash, and the text of the line's first occurrence - needed in the state, as a
+ * line seen once by two accumulators is a duplicate once their states get merged
+ * The sets are sharded by the top bits of the hash, each shard with a lock of its own, so that consumer threads rarely
+ * contend on the same one
+ * Once the sets and texts would outgrow the memory budget, every shard falls back to a HyperLogLog of its hashes: the
+ * distinct count becomes an estimate (see isExact), and duplicated lines aren't reported any longer
+ *
+ * @author Phil
+ */
+public class DistinctLineAccumulator extends AbstractAccumulator<String[]> {
+    public static final long DEFAULT_MAX_BYTES_IN_MEMORY = 256L * 1024 * 1024;
+    private static final int SHARD_BITS = 6;
+    // per slot: the hash, its count and a reference to the text, at a load factor of 50% at most
+    private static final int BYTES_PER_SLOT = 8 + 8 + 8;
+    private static final int BYTES_PER_TEXT = 40;   // String and char[] headers, on top of 2 bytes per char
+
+    private final int topK;
+    private final long maxBytes;
+    private final Shard[] shards = new Shard[1 << SHARD_BITS];
+
+    // stateful field(s)
+    private final AtomicLong lineCount = new AtomicLong(0);
+    private final AtomicLong textBytes = new AtomicLong(0);   // estimated heap taken by the texts of every shard
+    private volatile boolean estimating;    // once the sets outgrew the memory budget
+
+    /**
+     * @param topK     - number of most duplicated lines to report
+     * @param maxBytes - estimated heap budget of the sets, Long.MAX_VALUE to count exactly whatever it takes
+     */
+    public DistinctLineAccumulator(int topK, long maxBytes) {
+        if (topK < 1 || maxBytes < 1) {
+            throw new UnsupportedOperationException("Number of top entries and memory budget have to be greater than zero!");
+        }
+        this.topK = topK;
+        this.maxBytes = maxBytes;
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new Shard();
+        }
+    }
+
+    /**
+     * With a budget of DEFAULT_MAX_BYTES_IN_MEMORY
+     */
+    public DistinctLineAccumulator(int topK) {
+        this(topK, DEFAULT_MAX_BYTES_IN_MEMORY);
+    }
+
+    @Override
+    protected void accumulateItem(String[] inputItem) {
+        for (String line : inputItem) {
+            long hash = hash(line);
+            Shard shard = shards[(int) (hash >>> (64 - SHARD_BITS))];
+            synchronized (shard) {
+                shard.add(hash, 1, line);
+            }
+        }
+        lineCount.addAndGet(inputItem.length);
+    }
+
+    @Override
+    protected void summarizeStats(String className) {
+        long distinctCount = getDistinctCount();
+        System.out.println(className + ": Distinct Lines = " + distinctCount + (estimating ? " (estimated)" : "")
+                + ", Total Lines = " + lineCount + ", Dedup Ratio = " + getDedupRatio(distinctCount));
+        getTopDuplicates().forEach((line, count) -> System.out.println(className + ": '" + line + "' = " + count));
+    }
+
+    @Override
+    protected void collectStats(Map<String, Object> stats) {
+        long distinctCount = getDistinctCount();
+        stats.put("distinctLineCount", distinctCount);
+        stats.put("totalLineCount", lineCount.get());
+        stats.put("dedupRatio", getDedupRatio(distinctCount));
+        stats.put("exact", !estimating);
+        if (!estimating) {
+            stats.put("topDuplicateLines", getTopDuplicates());
+        }
+    }
+
+    /**
+     * The line count, then either every shard's hashes (with their counts and texts) or, if estimating, the HyperLogLog
+     * of them all
+     */
+    @Override
+    protected void writeAccumulatedState(DataOutput out) throws IOException {
+        out.writeLong(lineCount.get());
+        out.writeBoolean(estimating);
+        if (estimating) {
+            mergeEstimates().write(out);
+            return;
+        }
+        for (Shard shard : shards) {
+            synchronized (shard) {
+                out.writeInt(shard.size);
+                for (int slot = 0; slot < shard.hashes.length; slot++) {
+                    if (shard.hashes[slot] != 0) {
+                        out.writeLong(shard.hashes[slot]);
+                        out.writeLong(shard.counts[slot]);
+                        out.writeBoolean(shard.texts[slot] != null);   // always, but not in older snapshots
+                        if (shard.texts[slot] != null) {
+                            writeString(out, shard.texts[slot]);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    protected void mergeAccumulatedState(DataInput in) throws IOException {
+        lineCount.addAndGet(in.readLong());
+        if (in.readBoolean()) {
+            estimating = true;
+            Shard shard = shards[0];
+            synchronized (shard) {
+                shard.fallBack();
+                shard.estimate.merge(HyperLogLog.read(in));
+            }
+            return;
+        }
+        for (Shard shard : shards) {
+            synchronized (shard) {
+                for (int i = in.readInt(); i > 0; i--) {
+                    long hash = in.readLong(), count = in.readLong();
+                    shard.add(hash, count, in.readBoolean() ? readString(in) : null);
+                }
+            }
+        }
+    }
+
+    /**
+     * Convenience method - expected to be called after accumulation is done
+     *
+     * @return - number of distinct lines, estimated if the sets outgrew the memory budget (see isExact)
+     */
+    public long getDistinctCount() {
+        if (estimating) {
+            return mergeEstimates().estimate();
+        }
+        long distinctCount = 0;
+        for (Shard shard : shards) {
+            synchronized (shard) {
+                distinctCount += shard.size;
+            }
+        }
+        return distinctCount;
+    }
+
+    public long getTotalLineCount() {
+        return lineCount.get();
+    }
+
+    /**
+     * @return - false if the sets outgrew the memory budget, so the distinct count is an estimate
+     */
+    public boolean isExact() {
+        return !estimating;
+    }
+
+    /**
+     * Convenience method - expected to be called after accumulation is done
+     *
+     * @return - the top K lines seen more than once mapped to their counts, most frequent first (ties in line order),
+     * empty if estimating
+     */
+    public Map<String, Long> getTopDuplicates() {
+        PriorityQueue<Map.Entry<String, Long>> heap = new PriorityQueue<>(topK + 1,
+                Map.Entry.<String, Long>comparingByValue().thenComparing(Map.Entry.comparingByKey(Comparator.reverseOrder())));
+        for (Shard shard : shards) {
+            synchronized (shard) {
+                for (int slot = 0; slot < shard.hashes.length; slot++) {
+                    if (shard.counts[slot] > 1 && shard.texts[slot] != null) {
+                        heap.add(new AbstractMap.SimpleImmutableEntry<>(shard.texts[slot], shard.counts[slot]));
+                        if (heap.size() > topK) {
+                            heap.poll();   // drop the least frequent one
+                        }
+                    }
+                }
+            }
+        }
+        List<Map.Entry<String, Long>> entries = new ArrayList<>(heap);
+        entries.sort(Collections.reverseOrder(heap.comparator()));
+        Map<String, Long> top = new LinkedHashMap<>();
+        entries.forEach(entry -> top.put(entry.getKey(), entry.getValue()));
+        return top;
+    }
+
+    /**
+     * @return - total lines per distinct line, e.g. 4.00 if every line occurs four times on average
+     */
+    private BigDecimal getDedupRatio(long distinctCount) {
+        return distinctCount == 0 ? BigDecimal.ZERO
+                : BigDecimal.valueOf(lineCount.get()).divide(BigDecimal.valueOf(distinctCount), 2, RoundingMode.HALF_UP);
+    }
+
+    private HyperLogLog mergeEstimates() {
+        HyperLogLog merged = new HyperLogLog();
+        for (Shard shard : shards) {
+            synchronized (shard) {
+                shard.fallBack();
+                merged.merge(shard.estimate);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * @return - FNV-1a hash of the line's chars, mixed, and never 0 (which marks empty slots)
+     */
+    static long hash(String line) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < line.length(); i++) {
+            hash = (hash ^ line.charAt(i)) * 0x100000001b3L;
+        }
+        hash = HyperLogLog.mix(hash);
+        return hash != 0 ? hash : 1;
+    }
+
+    /**
+     * An open-addressing (linear probing) set of hashes with their counts, or the HyperLogLog of them once estimating
+     * Guarded by its own monitor
+     */
+    private final class Shard {
+        private static final int INITIAL_CAPACITY = 1024;
+
+        private long[] hashes = new long[INITIAL_CAPACITY];
+        private long[] counts = new long[INITIAL_CAPACITY];
+        private String[] texts = new String[INITIAL_CAPACITY];
+        private int size;
+        private HyperLogLog estimate;   // instead of the set, once estimating
+
+        /**
+         * @param text - the line, only kept on its first occurrence (null in the state of older snapshots)
+         */
+        private void add(long hash, long count, String text) {
+            if (estimating) {
+                fallBack();
+                estimate.addHash(hash);
+                return;
+            }
+            int mask = hashes.length - 1;
+            int slot = (int) hash & mask;
+            while (hashes[slot] != 0 && hashes[slot] != hash) {
+                slot = (slot + 1) & mask;
+            }
+            if (hashes[slot] == 0) {
+                hashes[slot] = hash;
+                size++;
+            }
+            if (texts[slot] == null && text != null) {
+                texts[slot] = text;
+                textBytes.addAndGet(BYTES_PER_TEXT + 2L * text.length());
+            }
+            counts[slot] += count;
+            if (size * 2 > hashes.length) {   // keep the load factor at 50% at most, probe sequences stay short
+                grow();
+            }
+        }
+
+        private void grow() {
+            if ((long) hashes.length * 2 * BYTES_PER_SLOT * shards.length + textBytes.get() > maxBytes) {
+                estimating = true;   // every other shard falls back too, as it gets used next
+                fallBack();
+                return;
+            }
+            long[] oldHashes = hashes, oldCounts = counts;
+            String[] oldTexts = texts;
+            hashes = new long[oldHashes.length * 2];
+            counts = new long[hashes.length];
+            texts = new String[hashes.length];
+            int mask = hashes.length - 1;
+            for (int i = 0; i < oldHashes.length; i++) {
+                if (oldHashes[i] != 0) {
+                    int slot = (int) oldHashes[i] & mask;
+                    while (hashes[slot] != 0) {
+                        slot = (slot + 1) & mask;
+                    }
+                    hashes[slot] = oldHashes[i];
+                    counts[slot] = oldCounts[i];
+                    texts[slot] = oldTexts[i];
+                }
+            }
+        }
+
+        /**
+         * Moves the hashes of the set into a HyperLogLog, and drops the set
+         */
+        private void fallBack() {
+            if (estimate != null) {
+                return;
+            }
+            estimate = new HyperLogLog();
+            for (long hash : hashes) {
+                if (hash != 0) {
+                    estimate.addHash(hash);
+                }
+            }
+            hashes = counts = new long[0];
+            texts = new String[0];
+            size = 0;
+        }
+    }
+}
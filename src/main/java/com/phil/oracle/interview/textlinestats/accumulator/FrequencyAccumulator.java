@@ -0,0 +1,277 @@
+package com.phil.oracle.interview.textlinestats.accumulator;
+
+import com.phil.oracle.interview.textlinestats.kernel.WordTokenizer;
+import com.phil.oracle.interview.textlinestats.spill.RunFiles;
+import com.phil.oracle.interview.textlinestats.spill.SpillingCounter;
+import com.phil.oracle.interview.textlinestats.token.TokenBatch;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Counts the exact frequency of every distinct word (as per WordTokenizer) or line, in bounded memory:
+ * each consumer thread counts into its own in-memory table, which is sorted and spilled to a run file on local disk
+ * whenever it outgrows its share of the memory budget. The runs are k-way merged into a single run when the stats get
+ * summarized, yielding exact distinct/total counts and the top K, however large the input is
+ * Slower than VocabularyAccumulator (everything gets written and read back at least once), but the memory used stays
+ * the same no matter how many distinct words or lines there are
+ * Downstream of a TokenizerStage, words are counted off the token batches as they are, see TokenBatchAccumulator
+ *
+ * @author Phil
+ */
+public class FrequencyAccumulator extends AbstractAccumulator<String[]>
+        implements TokenBatchAccumulator {
+    public static final long DEFAULT_MAX_BYTES_IN_MEMORY = 64L * 1024 * 1024;
+
+    /**
+     * What gets counted
+     */
+    public enum Unit {WORDS, LINES}
+
+    private final Unit unit;
+    private final int topK;
+    private final long maxBytesPerThread;
+    private final File spillDirectory;
+
+    // stateful field(s)
+    private final Queue<File> runs = new ConcurrentLinkedQueue<>();
+    private final Queue<ThreadState> threadStates = new ConcurrentLinkedQueue<>();   // every thread's table, to flush
+    private final ThreadLocal<ThreadState> threadState = ThreadLocal.withInitial(() -> {
+        ThreadState state = new ThreadState();
+        threadStates.add(state);
+        return state;
+    });
+    private MergeResult mergeResult;    // of the last merge, reused until more runs get spilled
+    private int mergedStateRunCount;    // runs spilled by the accumulators whose state got merged, beyond their merged run
+
+    /**
+     * @param unit              - words or lines
+     * @param topK              - number of most frequent words or lines to report
+     * @param maxBytesPerThread - estimated heap budget of each consumer thread's in-memory table
+     * @param spillDirectory    - where to write run files (temporary, deleted after merging or on exit)
+     */
+    public FrequencyAccumulator(Unit unit, int topK, long maxBytesPerThread, File spillDirectory) {
+        if (topK < 1 || maxBytesPerThread < 1) {
+            throw new UnsupportedOperationException("Number of top entries and memory budget have to be greater than zero!");
+        }
+        this.unit = unit;
+        this.topK = topK;
+        this.maxBytesPerThread = maxBytesPerThread;
+        this.spillDirectory = spillDirectory;
+    }
+
+    /**
+     * Spills to the default temporary-file directory, each thread with a budget of DEFAULT_MAX_BYTES_IN_MEMORY
+     * divided by the number of processors
+     */
+    public FrequencyAccumulator(Unit unit, int topK) {
+        this(unit, topK, DEFAULT_MAX_BYTES_IN_MEMORY / Runtime.getRuntime().availableProcessors(),
+                new File(System.getProperty("java.io.tmpdir")));
+    }
+
+    /**
+     * Counts every word or line into this thread's own table - spilling it to disk when it gets too big
+     *
+     * @param inputItem - an input item to accumulate statistics from
+     */
+    @Override
+    protected void accumulateItem(String[] inputItem) {
+        ThreadState state = threadState.get();
+        try {
+            for (int i = 0; i < inputItem.length; i++) {
+                if (unit == Unit.LINES) {
+                    state.counter.add(inputItem[i]);
+                } else {
+                    state.line = inputItem[i];
+                    WordTokenizer.tokenize(inputItem, i, state);   // fragments of lines included, see LineFragments
+                    if (state.error != null) {
+                        throw state.error;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Couldn't spill " + unit.name().toLowerCase() + " to " + spillDirectory, e);
+        }
+    }
+
+    /**
+     * Same as accumulateItem, with the words of every line already there - lines are counted as they are
+     *
+     * @param inputItem - a batch of lines and their words
+     */
+    @Override
+    protected void accumulateTokenItem(TokenBatch inputItem) {
+        if (unit == Unit.LINES) {
+            accumulateItem(inputItem.getLines());
+            return;
+        }
+        SpillingCounter counter = threadState.get().counter;
+        String[] lines = inputItem.getLines();
+        try {
+            for (int token = 0; token < inputItem.getTokenCount(); token++) {
+                counter.add(lines[inputItem.getTokenLine(token)].substring(inputItem.getTokenStart(token),
+                        inputItem.getTokenEnd(token)));
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Couldn't spill " + unit.name().toLowerCase() + " to " + spillDirectory, e);
+        }
+    }
+
+    @Override
+    protected void summarizeStats(String className) {
+        MergeResult result = merge();
+        System.out.println(className + ": Distinct " + unit + " = " + result.distinctCount + ", Total " + unit + " = "
+                + result.totalCount + ", Runs Spilled = " + result.runCount);
+        result.top.forEach((key, count) -> System.out.println(className + ": '" + key + "' = " + count));
+    }
+
+    @Override
+    protected void collectStats(Map<String, Object> stats) {
+        MergeResult result = merge();
+        String unitName = unit == Unit.WORDS ? "Word" : "Line";
+        stats.put("distinct" + unitName + "Count", result.distinctCount);
+        stats.put("total" + unitName + "Count", result.totalCount);
+        stats.put("runsSpilled", result.runCount);
+        stats.put("top" + unitName + "s", result.top);
+    }
+
+    /**
+     * The merged run, as is - it's sorted already, and holds nothing but the exact counts
+     */
+    @Override
+    protected void writeAccumulatedState(DataOutput out) throws IOException {
+        MergeResult result = merge();
+        out.writeUTF(unit.name());
+        out.writeInt(result.runCount);
+        RunFiles.copy(result.mergedRun, out);
+    }
+
+    /**
+     * Adds the run of the state to the runs of this one, to be merged with them
+     */
+    @Override
+    protected synchronized void mergeAccumulatedState(DataInput in) throws IOException {
+        String stateUnit = in.readUTF();
+        if (!stateUnit.equals(unit.name())) {
+            throw new IOException("Can't merge " + stateUnit.toLowerCase() + " into " + unit.name().toLowerCase());
+        }
+        mergedStateRunCount += in.readInt() - 1;
+        runs.add(RunFiles.copy(in, spillDirectory));
+    }
+
+    /**
+     * Convenience method - expected to be called after accumulation is done (flushes and merges everything)
+     *
+     * @return - the top K words or lines mapped to their counts, most frequent first (ties in key order)
+     */
+    public Map<String, Long> getTop() {
+        return merge().top;
+    }
+
+    /**
+     * @return - exact number of distinct words or lines
+     */
+    public long getDistinctCount() {
+        return merge().distinctCount;
+    }
+
+    /**
+     * @return - exact number of words or lines
+     */
+    public long getTotalCount() {
+        return merge().totalCount;
+    }
+
+    /**
+     * Flushes every thread's table to a run, and merges all the runs into one (which stays around for the next merge)
+     * Must not run concurrently with accumulate
+     */
+    private synchronized MergeResult merge() {
+        try {
+            for (ThreadState state : threadStates) {
+                state.counter.spill();
+            }
+            if (mergeResult != null && runs.size() == 1 && runs.peek().equals(mergeResult.mergedRun)) {
+                return mergeResult;  // nothing new since the last merge
+            }
+            int runCount = runs.size() + (mergeResult != null ? mergeResult.runCount - 1 : 0) + mergedStateRunCount;
+            mergedStateRunCount = 0;
+            MergeResult result = new MergeResult(runCount);
+            List<File> toMerge = new ArrayList<>(runs);
+            runs.clear();
+            result.mergedRun = RunFiles.merge(toMerge, spillDirectory, result::entry);
+            runs.add(result.mergedRun);
+            result.finish();
+            mergeResult = result;
+            return result;
+        } catch (IOException e) {
+            throw new IllegalStateException("Couldn't merge the " + unit.name().toLowerCase() + " spilled to " + spillDirectory, e);
+        }
+    }
+
+    /**
+     * Distinct and total counts and the top K of a merge - keys come in sorted order, so ties are settled by key
+     */
+    private final class MergeResult {
+        private final int runCount;
+        private final PriorityQueue<Map.Entry<String, Long>> heap = new PriorityQueue<>(topK + 1,
+                Map.Entry.<String, Long>comparingByValue().thenComparing(Map.Entry.comparingByKey(Comparator.reverseOrder())));
+        private long distinctCount, totalCount;
+        private Map<String, Long> top;
+        private File mergedRun;
+
+        private MergeResult(int runCount) {
+            this.runCount = runCount;
+        }
+
+        private void entry(String key, long count) {
+            distinctCount++;
+            totalCount += count;
+            if (heap.size() < topK || count > heap.peek().getValue()) {
+                heap.add(new AbstractMap.SimpleImmutableEntry<>(key, count));
+                if (heap.size() > topK) {
+                    heap.poll();   // drop the least frequent one
+                }
+            }
+        }
+
+        private void finish() {
+            List<Map.Entry<String, Long>> entries = new ArrayList<>(heap);
+            entries.sort(Collections.reverseOrder(heap.comparator()));
+            top = new LinkedHashMap<>();
+            entries.forEach(entry -> top.put(entry.getKey(), entry.getValue()));
+        }
+    }
+
+    /**
+     * A consumer thread's table, and the line being tokenized
+     */
+    private final class ThreadState implements WordTokenizer.TokenSink {
+        private final SpillingCounter counter = new SpillingCounter(maxBytesPerThread, spillDirectory, runs::add);
+        private String line;
+        private IOException error;  // TokenSink can't throw it
+
+        @Override
+        public void token(int start, int end) {
+            if (error == null) {
+                try {
+                    counter.add(line.substring(start, end));
+                } catch (IOException e) {
+                    error = e;
+                }
+            }
+        }
+    }
+}
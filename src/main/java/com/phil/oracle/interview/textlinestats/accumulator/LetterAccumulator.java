@@ -1,6 +1,13 @@
 package com.phil.oracle.interview.textlinestats.accumulator;
 
+import com.phil.oracle.interview.textlinestats.kernel.TextKernel;
+import com.phil.oracle.interview.textlinestats.kernel.TextKernels;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.Arrays;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
@@ -11,13 +18,25 @@ import java.util.concurrent.atomic.AtomicLong;
 public class LetterAccumulator extends AbstractAccumulator<String[]> {
     public static final int MAX_CHAR_CODE = 127;  //limiting evaluated charset to US ASCII - TODO validate assumption!
 
+    private final TextKernel kernel;
+
     // stateful field(s)
     private final AtomicLong[] letterCounts = new AtomicLong[MAX_CHAR_CODE + 1];
 
     /**
-     * Initializes array of AtomicLongs
+     * Initializes array of AtomicLongs, using the kernel selected at startup
      */
     public LetterAccumulator() {
+        this(TextKernels.get());
+    }
+
+    /**
+     * Initializes array of AtomicLongs
+     *
+     * @param kernel - the character classification kernel to count with
+     */
+    public LetterAccumulator(TextKernel kernel) {
+        this.kernel = kernel;
         for (int i = 0; i < letterCounts.length; i++) {
             letterCounts[i] = new AtomicLong(0);
         }
@@ -25,17 +44,17 @@ public class LetterAccumulator extends AbstractAccumulator<String[]> {
 
     /**
      * Counts letters in the input item (array of lines) and updates letterCounts array atomically as per the requirements
+     * Letters are counted into a batch-local array first, so each distinct letter costs one atomic update per batch
      *
      * @param inputItem - an input item to accumulate statistics from
      */
     @Override
     public void accumulateItem(String[] inputItem) {
-        for (String line : inputItem) {
-            for (int i = 0; i < line.length(); i++) {
-                char ch = line.charAt(i);
-                if (Character.isLetter(ch) && (int) ch <= MAX_CHAR_CODE) {
-                    letterCounts[(int) ch].incrementAndGet();
-                }
+        long[] batchLetterCounts = new long[MAX_CHAR_CODE + 1];
+        kernel.countLetters(inputItem, batchLetterCounts);
+        for (int i = 0; i < batchLetterCounts.length; i++) {
+            if (batchLetterCounts[i] != 0) {
+                letterCounts[i].addAndGet(batchLetterCounts[i]);
             }
         }
     }
@@ -47,15 +66,46 @@ public class LetterAccumulator extends AbstractAccumulator<String[]> {
      */
     @Override
     public void summarizeStats(String className) {
-        long maxLetters = 0, maxCharCode = 0;
+        int maxCharCode = getMostCommonCharCode();
+        System.out.println(className + ": The most common letter is '" + (char) maxCharCode
+                + "' with " + letterCounts[maxCharCode].get() + " occurrences.");
+    }
+
+    @Override
+    protected void collectStats(Map<String, Object> stats) {
+        int maxCharCode = getMostCommonCharCode();
+        stats.put("totalLetterCount", getTotalLetterCount());
+        stats.put("mostCommonLetter", String.valueOf((char) maxCharCode));
+        stats.put("mostCommonLetterCount", letterCounts[maxCharCode].get());
+    }
+
+    @Override
+    protected void writeAccumulatedState(DataOutput out) throws IOException {
+        for (AtomicLong letterCount : letterCounts) {
+            out.writeLong(letterCount.get());
+        }
+    }
+
+    @Override
+    protected void mergeAccumulatedState(DataInput in) throws IOException {
+        for (AtomicLong letterCount : letterCounts) {
+            letterCount.addAndGet(in.readLong());
+        }
+    }
+
+    /**
+     * @return - char code of the most common letter (0 if there were no letters at all)
+     */
+    private int getMostCommonCharCode() {
+        long maxLetters = 0;
+        int maxCharCode = 0;
         for (int i = 0; i < letterCounts.length; i++) {
             if (letterCounts[i].get() > maxLetters) {
                 maxLetters = letterCounts[i].get();
                 maxCharCode = i;
             }
         }
-        System.out.println(className + ": The most common letter is '" + (char) maxCharCode
-                + "' with " + maxLetters + " occurrences.");
+        return maxCharCode;
     }
 
     /**
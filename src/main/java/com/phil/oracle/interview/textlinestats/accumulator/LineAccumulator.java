@@ -1,5 +1,11 @@
 package com.phil.oracle.interview.textlinestats.accumulator;
 
+import com.phil.oracle.interview.textlinestats.kernel.LineFragments;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
@@ -12,13 +18,14 @@ public class LineAccumulator extends AbstractAccumulator<String[]> {
     private final AtomicLong lineCount = new AtomicLong(0);
 
     /**
-     * Each item is an array of lines, so increment the count for the array's length
+     * Each item is an array of lines, so increment the count for the array's length - less the fragments of long lines
+     * that continue in the next item (see LineFragments)
      *
      * @param inputItem - an input item to accumulate statistics from
      */
     @Override
     public void accumulateItem(String inputItem[]) {
-        lineCount.addAndGet(inputItem.length);
+        lineCount.addAndGet(LineFragments.countLines(inputItem));
     }
 
     /**
@@ -31,6 +38,21 @@ public class LineAccumulator extends AbstractAccumulator<String[]> {
         System.out.println(className + ": Total Line Count = " + lineCount);
     }
 
+    @Override
+    protected void collectStats(Map<String, Object> stats) {
+        stats.put("totalLineCount", lineCount.get());
+    }
+
+    @Override
+    protected void writeAccumulatedState(DataOutput out) throws IOException {
+        out.writeLong(lineCount.get());
+    }
+
+    @Override
+    protected void mergeAccumulatedState(DataInput in) throws IOException {
+        lineCount.addAndGet(in.readLong());
+    }
+
     /**
      * Convenience method - expected to be called after accumulation is done, but safe regardless
      *
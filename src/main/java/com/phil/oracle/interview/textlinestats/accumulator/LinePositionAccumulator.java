@@ -0,0 +1,330 @@
+package com.phil.oracle.interview.textlinestats.accumulator;
+
+import com.phil.oracle.interview.textlinestats.framework.MergeableAccumulator;
+import com.phil.oracle.interview.textlinestats.kernel.WordTokenizer;
+import com.phil.oracle.interview.textlinestats.offheap.TokenDictionary;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Statistics that depend on where lines are in the input, so it's fed the lines in order (see isOrderSensitive):
+ * runs of repeated lines (the same line over and over, e.g. a log message in a loop), the gaps in lines between marker
+ * lines (e.g. containing "ERROR"), and the first and last line of the top K words
+ * Line numbers are 1-based. Words are as per WordTokenizer, interned into a TokenDictionary
+ * Merged state (see MergeableAccumulator) is taken to be the input following this one's, e.g. the next byte range of
+ * a file, so a run of lines or a gap may span both
+ * Not thread-safe - it doesn't need to be, as the lines come one batch at a time
+ *
+ * @author Phil
+ */
+public class LinePositionAccumulator extends AbstractAccumulator<String[]> {
+    public static final String DEFAULT_MARKER = "ERROR";
+
+    private final String marker;
+    private final int topK;
+    private final TokenDictionary dictionary = new TokenDictionary();
+    private final WordSink wordSink = new WordSink();
+
+    // stateful field(s)
+    private long lineCount;
+    private String firstLine, lastLine;
+    private long leadingRunLength;                      // of the first line
+    private long currentRunStart, currentRunLength;     // of the last line
+    private String longestRunLine;
+    private long longestRunStart, longestRunLength;
+    private long repeatedLineCount;                     // lines the same as the one before
+    private long markerLineCount, firstMarkerLine, lastMarkerLine, minMarkerGap = Long.MAX_VALUE, maxMarkerGap, markerGapSum;
+    private long[] wordCounts = new long[1024], firstWordLines = new long[1024], lastWordLines = new long[1024];   // by ID
+
+    /**
+     * @param marker - lines containing it are marker lines, e.g. "ERROR"
+     * @param topK   - number of most frequent words to report the first and last line of
+     */
+    public LinePositionAccumulator(String marker, int topK) {
+        if (marker.isEmpty() || topK < 1) {
+            throw new UnsupportedOperationException("The marker can't be empty, and number of top words has to be greater than zero!");
+        }
+        this.marker = marker;
+        this.topK = topK;
+    }
+
+    @Override
+    public boolean isOrderSensitive() {
+        return true;
+    }
+
+    @Override
+    protected void accumulateItem(String[] inputItem) {
+        for (String line : inputItem) {
+            long lineNumber = ++lineCount;
+            if (lastLine != null && line.equals(lastLine)) {
+                currentRunLength++;
+                repeatedLineCount++;
+            } else {
+                currentRunStart = lineNumber;
+                currentRunLength = 1;
+                lastLine = line;
+            }
+            if (currentRunStart == 1) {
+                firstLine = line;
+                leadingRunLength = currentRunLength;
+            }
+            if (currentRunLength > longestRunLength) {
+                longestRunLength = currentRunLength;
+                longestRunStart = currentRunStart;
+                longestRunLine = line;
+            }
+            if (line.contains(marker)) {
+                addMarkerLines(1, lineNumber, lineNumber, Long.MAX_VALUE, 0, 0);
+            }
+            wordSink.line = line;
+            WordTokenizer.tokenize(line, wordSink);
+        }
+    }
+
+    @Override
+    protected void summarizeStats(String className) {
+        System.out.println(className + ": Repeated Lines = " + repeatedLineCount + ", Longest Run = " + longestRunLength
+                + (longestRunLength > 1 ? " times '" + longestRunLine + "' from line " + longestRunStart : ""));
+        System.out.println(className + ": '" + marker + "' Lines = " + markerLineCount + (markerLineCount > 1
+                ? ", Gaps = " + minMarkerGap + " to " + maxMarkerGap + " lines, " + getAverageMarkerGap() + " on average" : ""));
+        getTopWords().forEach((word, lines) -> System.out.println(className + ": '" + word + "' = " + lines.get("count")
+                + " on lines " + lines.get("firstLine") + " to " + lines.get("lastLine")));
+    }
+
+    @Override
+    protected void collectStats(Map<String, Object> stats) {
+        stats.put("repeatedLineCount", repeatedLineCount);
+        stats.put("longestRunLength", longestRunLength);
+        if (longestRunLength > 1) {
+            stats.put("longestRunLine", longestRunLine);
+            stats.put("longestRunStart", longestRunStart);
+        }
+        stats.put("marker", marker);
+        stats.put("markerLineCount", markerLineCount);
+        if (markerLineCount > 0) {
+            stats.put("firstMarkerLine", firstMarkerLine);
+            stats.put("lastMarkerLine", lastMarkerLine);
+        }
+        if (markerLineCount > 1) {
+            stats.put("minMarkerGap", minMarkerGap);
+            stats.put("maxMarkerGap", maxMarkerGap);
+            stats.put("averageMarkerGap", getAverageMarkerGap());
+        }
+        stats.put("topWords", getTopWords());
+    }
+
+    /**
+     * What it takes to carry on from the end of the input: the line count, the first and last runs, the longest one,
+     * the marker lines, and the word positions
+     */
+    @Override
+    protected void writeAccumulatedState(DataOutput out) throws IOException {
+        out.writeLong(lineCount);
+        if (lineCount == 0) {
+            return;
+        }
+        writeString(out, firstLine);
+        out.writeLong(leadingRunLength);
+        writeString(out, lastLine);
+        out.writeLong(currentRunStart);
+        out.writeLong(currentRunLength);
+        writeString(out, longestRunLine);
+        out.writeLong(longestRunStart);
+        out.writeLong(longestRunLength);
+        out.writeLong(repeatedLineCount);
+        out.writeLong(markerLineCount);
+        out.writeLong(firstMarkerLine);
+        out.writeLong(lastMarkerLine);
+        out.writeLong(minMarkerGap);
+        out.writeLong(maxMarkerGap);
+        out.writeLong(markerGapSum);
+        List<Integer> ids = getWordIds();
+        out.writeInt(ids.size());
+        for (int id : ids) {
+            writeString(out, dictionary.getToken(id));
+            out.writeLong(wordCounts[id]);
+            out.writeLong(firstWordLines[id]);
+            out.writeLong(lastWordLines[id]);
+        }
+    }
+
+    /**
+     * Appends the state, i.e. its line numbers are shifted by this one's line count
+     */
+    @Override
+    protected void mergeAccumulatedState(DataInput in) throws IOException {
+        long offset = lineCount, otherLineCount = in.readLong();
+        if (otherLineCount == 0) {
+            return;
+        }
+        String otherFirstLine = readString(in);
+        long otherLeadingRunLength = in.readLong();
+        String otherLastLine = readString(in);
+        long otherRunStart = in.readLong() + offset, otherRunLength = in.readLong();
+        String otherLongestRunLine = readString(in);
+        long otherLongestRunStart = in.readLong() + offset, otherLongestRunLength = in.readLong();
+
+        // a run of lines across both - the longest run is the first of the longest ones, same as if read in one go
+        boolean joined = offset > 0 && lastLine.equals(otherFirstLine);
+        repeatedLineCount += in.readLong() + (joined ? 1 : 0);
+        if (joined && currentRunLength + otherLeadingRunLength > longestRunLength) {
+            longestRunLength = currentRunLength + otherLeadingRunLength;
+            longestRunStart = currentRunStart;
+            longestRunLine = lastLine;
+        }
+        if (otherLongestRunLength > longestRunLength) {
+            longestRunLength = otherLongestRunLength;
+            longestRunStart = otherLongestRunStart;
+            longestRunLine = otherLongestRunLine;
+        }
+        if (offset == 0) {
+            firstLine = otherFirstLine;
+            leadingRunLength = otherLeadingRunLength;
+        } else if (joined && leadingRunLength == offset) {   // all of this one's lines are the same
+            leadingRunLength += otherLeadingRunLength;
+        }
+        if (joined && otherLeadingRunLength == otherLineCount) {   // all of the other one's lines are the same
+            currentRunLength += otherLineCount;
+        } else {
+            lastLine = otherLastLine;
+            currentRunStart = otherRunStart;
+            currentRunLength = otherRunLength;
+        }
+
+        long otherMarkerLineCount = in.readLong(), otherFirstMarkerLine = in.readLong() + offset,
+                otherLastMarkerLine = in.readLong() + offset;
+        long otherMinGap = in.readLong(), otherMaxGap = in.readLong(), otherGapSum = in.readLong();
+        if (otherMarkerLineCount > 0) {
+            addMarkerLines(otherMarkerLineCount, otherFirstMarkerLine, otherLastMarkerLine, otherMinGap, otherMaxGap,
+                    otherGapSum);
+        }
+
+        for (int i = in.readInt(); i > 0; i--) {
+            int id = dictionary.intern(readString(in));
+            long count = in.readLong(), firstWordLine = in.readLong() + offset, lastWordLine = in.readLong() + offset;
+            addWord(id, count, firstWordLine, lastWordLine);
+        }
+        lineCount += otherLineCount;
+    }
+
+    /**
+     * Convenience method - expected to be called after accumulation is done
+     *
+     * @return - the first and last line the word is on, null if it never occurred
+     */
+    public long[] getWordLines(String word) {
+        int id = dictionary.lookup(word);
+        return id >= 0 && id < wordCounts.length && wordCounts[id] > 0
+                ? new long[]{firstWordLines[id], lastWordLines[id]} : null;
+    }
+
+    public long getRepeatedLineCount() {
+        return repeatedLineCount;
+    }
+
+    public long getLongestRunLength() {
+        return longestRunLength;
+    }
+
+    /**
+     * @return - line number the (first) longest run of a repeated line starts at, 0 if there are no lines
+     */
+    public long getLongestRunStart() {
+        return longestRunStart;
+    }
+
+    public long getMarkerLineCount() {
+        return markerLineCount;
+    }
+
+    /**
+     * @return - the smallest and largest number of lines from a marker line to the next, null if there's no gap
+     */
+    public long[] getMarkerGapRange() {
+        return markerLineCount > 1 ? new long[]{minMarkerGap, maxMarkerGap} : null;
+    }
+
+    /**
+     * @return - the top K words mapped to their count, first and last line, most frequent first (ties in order of
+     * first occurrence)
+     */
+    public Map<String, Map<String, Long>> getTopWords() {
+        List<Integer> ids = getWordIds();
+        ids.sort(Comparator.<Integer>comparingLong(id -> -wordCounts[id]).thenComparingLong(id -> firstWordLines[id]));
+        Map<String, Map<String, Long>> topWords = new LinkedHashMap<>();
+        for (int id : ids.subList(0, Math.min(topK, ids.size()))) {
+            Map<String, Long> lines = new LinkedHashMap<>();
+            lines.put("count", wordCounts[id]);
+            lines.put("firstLine", firstWordLines[id]);
+            lines.put("lastLine", lastWordLines[id]);
+            topWords.put(dictionary.getToken(id), lines);
+        }
+        return topWords;
+    }
+
+    private BigDecimal getAverageMarkerGap() {
+        return BigDecimal.valueOf(markerGapSum).divide(BigDecimal.valueOf(markerLineCount - 1), 2, RoundingMode.HALF_UP);
+    }
+
+    /**
+     * Adds marker lines after the ones so far - the gap to the first of them included
+     */
+    private void addMarkerLines(long count, long first, long last, long minGap, long maxGap, long gapSum) {
+        if (markerLineCount > 0) {
+            minGap = Math.min(minGap, first - lastMarkerLine);
+            maxGap = Math.max(maxGap, first - lastMarkerLine);
+            gapSum += first - lastMarkerLine;
+        } else {
+            firstMarkerLine = first;
+        }
+        minMarkerGap = Math.min(minMarkerGap, minGap);
+        maxMarkerGap = Math.max(maxMarkerGap, maxGap);
+        markerGapSum += gapSum;
+        markerLineCount += count;
+        lastMarkerLine = last;
+    }
+
+    private void addWord(int id, long count, long firstLine, long lastLine) {
+        if (id >= wordCounts.length) {
+            int length = Math.max(id + 1, wordCounts.length * 2);
+            wordCounts = Arrays.copyOf(wordCounts, length);
+            firstWordLines = Arrays.copyOf(firstWordLines, length);
+            lastWordLines = Arrays.copyOf(lastWordLines, length);
+        }
+        if (wordCounts[id] == 0) {
+            firstWordLines[id] = firstLine;
+        }
+        wordCounts[id] += count;
+        lastWordLines[id] = lastLine;
+    }
+
+    private List<Integer> getWordIds() {
+        List<Integer> ids = new ArrayList<>();
+        for (int id = 0; id < wordCounts.length; id++) {
+            if (wordCounts[id] > 0) {
+                ids.add(id);
+            }
+        }
+        return ids;
+    }
+
+    private final class WordSink implements WordTokenizer.TokenSink {
+        private String line;
+
+        @Override
+        public void token(int start, int end) {
+            addWord(dictionary.intern(line, start, end), 1, lineCount, lineCount);
+        }
+    }
+}
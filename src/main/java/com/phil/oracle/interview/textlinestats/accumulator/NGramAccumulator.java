@@ -0,0 +1,320 @@
+package com.phil.oracle.interview.textlinestats.accumulator;
+
+import com.phil.oracle.interview.textlinestats.kernel.WordTokenizer;
+import com.phil.oracle.interview.textlinestats.offheap.HashCountTable;
+import com.phil.oracle.interview.textlinestats.token.TokenBatch;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the frequencies of n-grams - sequences of n consecutive words (as per WordTokenizer) or chars within a line
+ * N-grams are keyed by a 64-bit rolling hash (so the window slides in O(1) per word or char), and counted in off-heap
+ * HashCountTables, one per consumer thread: no atomics and no contention while accumulating, nothing for the GC either
+ * The per-thread tables are merged when the stats get summarized, and only the top K n-grams come back on-heap
+ * Distinct n-grams with colliding 64-bit hashes would be counted together - negligible below billions of n-grams
+ * Word n-grams can be counted straight off the words of token batches too, see TokenBatchAccumulator
+ *
+ * @author Phil
+ */
+public class NGramAccumulator extends AbstractAccumulator<String[]>
+        implements TokenBatchAccumulator {
+
+    /**
+     * What the n-grams are made of
+     */
+    public enum Mode {WORDS, CHARS}
+
+    private static final long HASH_BASE = 0x9E3779B97F4A7C15L;  // odd, so multiplying by it is a bijection mod 2^64
+    private static final int INITIAL_TABLE_CAPACITY = 64 * 1024;
+
+    private final int n;
+    private final Mode mode;
+    private final int topK;
+    private final long outgoingFactor;  // HASH_BASE^n, to take the oldest element out of the rolling hash
+
+    // stateful field(s)
+    private final Queue<ThreadState> threadStates = new ConcurrentLinkedQueue<>();   // every thread's table, for merging
+    private final ThreadLocal<ThreadState> threadState = ThreadLocal.withInitial(() -> {
+        ThreadState state = new ThreadState();
+        threadStates.add(state);
+        return state;
+    });
+    private final AtomicLong nGramCount = new AtomicLong(0);
+
+    /**
+     * @param n    - number of words or chars per n-gram, e.g. 2 for bigrams
+     * @param mode - words or chars
+     * @param topK - number of most frequent n-grams to report
+     */
+    public NGramAccumulator(int n, Mode mode, int topK) {
+        if (n < 1 || topK < 1) {
+            throw new UnsupportedOperationException("N-gram size and number of top n-grams have to be greater than zero!");
+        }
+        this.n = n;
+        this.mode = mode;
+        this.topK = topK;
+        long factor = 1;
+        for (int i = 0; i < n; i++) {
+            factor *= HASH_BASE;
+        }
+        this.outgoingFactor = factor;
+    }
+
+    /**
+     * Counts the n-grams of every line into this thread's own table - no synchronization needed
+     *
+     * @param inputItem - an input item to accumulate statistics from
+     */
+    @Override
+    protected void accumulateItem(String[] inputItem) {
+        ThreadState state = threadState.get();
+        long batchNGramCount = 0;
+        for (String line : inputItem) {
+            batchNGramCount += mode == Mode.WORDS ? state.countWordNGrams(line) : state.countCharNGrams(line);
+        }
+        if (batchNGramCount != 0) {
+            nGramCount.addAndGet(batchNGramCount);
+        }
+    }
+
+    /**
+     * Same as accumulateItem, with the words of every line already there - char n-grams only need the lines
+     *
+     * @param inputItem - a batch of lines and their words
+     */
+    @Override
+    protected void accumulateTokenItem(TokenBatch inputItem) {
+        if (mode == Mode.CHARS) {
+            accumulateItem(inputItem.getLines());
+            return;
+        }
+        ThreadState state = threadState.get();
+        state.countedNGrams = 0;
+        String[] lines = inputItem.getLines();
+        for (int token = 0, line = -1; token < inputItem.getTokenCount(); token++) {
+            if (inputItem.getTokenLine(token) != line) {   // n-grams don't cross lines
+                line = inputItem.getTokenLine(token);
+                state.startLine(lines[line]);
+            }
+            state.token(inputItem.getTokenStart(token), inputItem.getTokenEnd(token));
+        }
+        if (state.countedNGrams != 0) {
+            nGramCount.addAndGet(state.countedNGrams);
+        }
+    }
+
+    @Override
+    protected void summarizeStats(String className) {
+        HashCountTable merged = mergeTables();
+        System.out.println(className + ": Total " + n + "-gram (" + mode.name().toLowerCase() + ") Count = " + nGramCount
+                + ", Distinct = " + merged.size() + ", Off-heap Bytes = " + getOffHeapBytes(merged));
+        getTopNGrams(merged).forEach((text, count) -> System.out.println(className + ": '" + text + "' = " + count));
+    }
+
+    @Override
+    protected void collectStats(Map<String, Object> stats) {
+        HashCountTable merged = mergeTables();
+        stats.put("n", n);
+        stats.put("mode", mode.name().toLowerCase());
+        stats.put("totalNGramCount", nGramCount.get());
+        stats.put("distinctNGramCount", merged.size());
+        stats.put("topNGrams", getTopNGrams(merged));
+    }
+
+    /**
+     * The merged table, slot by slot: hash key, count and text - n-grams keep their keys, which don't depend on the input
+     */
+    @Override
+    protected void writeAccumulatedState(DataOutput out) throws IOException {
+        HashCountTable merged = mergeTables();
+        out.writeInt(n);
+        out.writeUTF(mode.name());
+        out.writeLong(nGramCount.get());
+        out.writeInt(merged.size());
+        for (int slot = 0; slot < merged.capacity(); slot++) {
+            if (merged.getKey(slot) != 0) {
+                out.writeLong(merged.getKey(slot));
+                out.writeLong(merged.getCount(slot));
+                writeString(out, merged.getText(slot));
+            }
+        }
+    }
+
+    /**
+     * Counts the n-grams of the state into the calling thread's table, as if it had accumulated them
+     */
+    @Override
+    protected void mergeAccumulatedState(DataInput in) throws IOException {
+        int stateN = in.readInt();
+        String stateMode = in.readUTF();
+        if (stateN != n || !stateMode.equals(mode.name())) {
+            throw new IOException("Can't merge " + stateN + "-grams (" + stateMode.toLowerCase() + ") into " + n
+                    + "-grams (" + mode.name().toLowerCase() + ")");
+        }
+        nGramCount.addAndGet(in.readLong());
+        HashCountTable table = threadState.get().table;
+        for (int i = in.readInt(); i > 0; i--) {
+            long key = in.readLong(), count = in.readLong();
+            table.add(key, count, readString(in));
+        }
+    }
+
+    /**
+     * Convenience method - expected to be called after accumulation is done (merges all the per-thread tables)
+     *
+     * @return - the top K n-grams mapped to their counts, most frequent first (ties in text order)
+     */
+    public Map<String, Long> getTopNGrams() {
+        return getTopNGrams(mergeTables());
+    }
+
+    /**
+     * @return - total number of n-grams counted (not distinct ones)
+     */
+    public long getTotalNGramCount() {
+        return nGramCount.get();
+    }
+
+    private HashCountTable mergeTables() {
+        HashCountTable merged = new HashCountTable(INITIAL_TABLE_CAPACITY);
+        threadStates.forEach(state -> merged.mergeFrom(state.table));
+        return merged;
+    }
+
+    private long getOffHeapBytes(HashCountTable merged) {
+        return merged.getOffHeapBytes() + threadStates.stream().mapToLong(state -> state.table.getOffHeapBytes()).sum();
+    }
+
+    /**
+     * Selects the top K slots with a min-heap of size K, so only K n-grams ever get materialized as Strings
+     */
+    private Map<String, Long> getTopNGrams(HashCountTable table) {
+        Comparator<Integer> byCount = Comparator.comparingLong(table::getCount);
+        Comparator<Integer> ascending = byCount.thenComparing(table::getText, Comparator.reverseOrder());
+        PriorityQueue<Integer> top = new PriorityQueue<>(topK + 1, ascending);
+        for (int slot = 0; slot < table.capacity(); slot++) {
+            if (table.getKey(slot) != 0) {
+                top.add(slot);
+                if (top.size() > topK) {
+                    top.poll();   // drop the least frequent one
+                }
+            }
+        }
+        List<Integer> slots = new ArrayList<>(top);
+        slots.sort(Collections.reverseOrder(ascending));
+        Map<String, Long> topNGrams = new LinkedHashMap<>();
+        slots.forEach(slot -> topNGrams.put(table.getText(slot), table.getCount(slot)));
+        return topNGrams;
+    }
+
+    /**
+     * Everything a consumer thread needs: its own table, and the sliding window of the line being processed
+     */
+    private final class ThreadState implements WordTokenizer.TokenSink, CharSequence {
+        private final HashCountTable table = new HashCountTable(INITIAL_TABLE_CAPACITY);
+        // ring buffers of the last n words in the line: their hashes and offsets
+        private final long[] wordHashes = new long[n];
+        private final int[] wordStarts = new int[n], wordEnds = new int[n];
+        private String line;
+        private int wordIndex;      // number of words seen so far in the line
+        private long rollingHash;
+        private long countedNGrams;
+
+        private long countWordNGrams(String line) {
+            startLine(line);
+            countedNGrams = 0;
+            WordTokenizer.tokenize(line, this);
+            return countedNGrams;
+        }
+
+        private void startLine(String line) {
+            this.line = line;
+            wordIndex = 0;
+            rollingHash = 0;
+        }
+
+        @Override
+        public void token(int start, int end) {
+            long wordHash = 0xcbf29ce484222325L;   // FNV-1a
+            for (int i = start; i < end; i++) {
+                wordHash = (wordHash ^ line.charAt(i)) * 0x100000001b3L;
+            }
+            int ring = wordIndex % n;
+            rollingHash = rollingHash * HASH_BASE + wordHash - (wordIndex >= n ? wordHashes[ring] * outgoingFactor : 0);
+            wordHashes[ring] = wordHash;
+            wordStarts[ring] = start;
+            wordEnds[ring] = end;
+            if (++wordIndex >= n) {
+                table.add(HashCountTable.toKey(rollingHash), 1, this);
+                countedNGrams++;
+            }
+        }
+
+        private long countCharNGrams(String line) {
+            this.line = line;
+            long hash = 0;
+            for (int i = 0; i < line.length(); i++) {
+                hash = hash * HASH_BASE + line.charAt(i) - (i >= n ? line.charAt(i - n) * outgoingFactor : 0);
+                if (i + 1 >= n) {
+                    wordIndex = i + 1;  // end of the window, see charAt
+                    table.add(HashCountTable.toKey(hash), 1, this);
+                }
+            }
+            return Math.max(0, line.length() - n + 1);
+        }
+
+        // the current n-gram as text, only read by the table when the n-gram is new: words are joined by a space
+
+        @Override
+        public int length() {
+            if (mode == Mode.CHARS) {
+                return n;
+            }
+            int length = n - 1;
+            for (int i = 0; i < n; i++) {
+                length += wordEnds[i] - wordStarts[i];
+            }
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (mode == Mode.CHARS) {
+                return line.charAt(wordIndex - n + index);
+            }
+            for (int i = 0; i < n; i++) {
+                int ring = (wordIndex + i) % n;   // oldest word first
+                int wordLength = wordEnds[ring] - wordStarts[ring];
+                if (index < wordLength) {
+                    return line.charAt(wordStarts[ring] + index);
+                } else if (index == wordLength) {
+                    return ' ';
+                }
+                index -= wordLength + 1;
+            }
+            throw new IndexOutOfBoundsException();
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return toString().subSequence(start, end);
+        }
+
+        @Override
+        public String toString() {
+            return new StringBuilder(this).toString();
+        }
+    }
+}
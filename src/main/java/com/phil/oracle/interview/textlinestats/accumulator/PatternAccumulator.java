@@ -0,0 +1,168 @@
+package com.phil.oracle.interview.textlinestats.accumulator;
+
+import com.phil.oracle.interview.textlinestats.kernel.AhoCorasick;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the occurrences of a set of patterns, e.g. error signatures in a log file - case-sensitive, within a line,
+ * overlapping occurrences included
+ * The patterns are compiled into a single AhoCorasick automaton, so every line is scanned once whatever the number of
+ * patterns, instead of once per pattern with String.contains. Each consumer thread counts into its own array
+ *
+ * @author Phil
+ */
+public class PatternAccumulator extends AbstractAccumulator<String[]> {
+
+    private final AhoCorasick automaton;
+
+    // stateful field(s)
+    private final Queue<long[]> threadCounts = new ConcurrentLinkedQueue<>();   // every thread's counts, for merging
+    private final ThreadLocal<long[]> counts = ThreadLocal.withInitial(() -> {
+        long[] counts = new long[getPatternCount()];
+        threadCounts.add(counts);
+        return counts;
+    });
+    private final AtomicLong matchCount = new AtomicLong(0);
+
+    /**
+     * @param patterns - the patterns to count, non-empty (duplicates are counted once)
+     */
+    public PatternAccumulator(List<String> patterns) {
+        this.automaton = new AhoCorasick(new ArrayList<>(new LinkedHashSet<>(patterns)));
+    }
+
+    /**
+     * @param fileName - a UTF-8 text file on disk with one pattern per line (empty lines are skipped)
+     * @return - the patterns in the file
+     */
+    public static List<String> readPatterns(String fileName) throws IOException {
+        List<String> patterns = new ArrayList<>();
+        for (String line : Files.readAllLines(Paths.get(fileName), StandardCharsets.UTF_8)) {
+            if (!line.isEmpty()) {
+                patterns.add(line);
+            }
+        }
+        return patterns;
+    }
+
+    /**
+     * Scans every line once, counting into this thread's own array
+     *
+     * @param inputItem - an input item to accumulate statistics from
+     */
+    @Override
+    protected void accumulateItem(String[] inputItem) {
+        long[] patternCounts = counts.get();
+        long batchMatchCount = 0;
+        for (String line : inputItem) {
+            batchMatchCount += automaton.countMatches(line, patternCounts);
+        }
+        if (batchMatchCount != 0) {
+            matchCount.addAndGet(batchMatchCount);
+        }
+    }
+
+    @Override
+    protected void summarizeStats(String className) {
+        Map<String, Long> matchCounts = getMatchCounts();
+        long unmatchedCount = matchCounts.values().stream().filter(count -> count == 0).count();
+        System.out.println(className + ": Total Match Count = " + matchCount + " (" + matchCounts.size() + " patterns, "
+                + unmatchedCount + " of them unmatched)");
+        matchCounts.forEach((pattern, count) -> {
+            if (count != 0) {
+                System.out.println(className + ": '" + pattern + "' = " + count);
+            }
+        });
+    }
+
+    @Override
+    protected void collectStats(Map<String, Object> stats) {
+        stats.put("patternCount", getPatternCount());
+        stats.put("totalMatchCount", matchCount.get());
+        stats.put("matchCounts", getMatchCounts());
+    }
+
+    /**
+     * The patterns (to make sure they're the same on merging) and their counts
+     */
+    @Override
+    protected void writeAccumulatedState(DataOutput out) throws IOException {
+        long[] merged = mergeCounts();
+        out.writeInt(merged.length);
+        for (int i = 0; i < merged.length; i++) {
+            writeString(out, automaton.getPattern(i));
+            out.writeLong(merged[i]);
+        }
+    }
+
+    @Override
+    protected void mergeAccumulatedState(DataInput in) throws IOException {
+        int patternCount = in.readInt();
+        if (patternCount != getPatternCount()) {
+            throw new IOException("Can't merge the counts of " + patternCount + " patterns into " + getPatternCount());
+        }
+        long[] patternCounts = counts.get();
+        for (int i = 0; i < patternCount; i++) {
+            String pattern = readString(in);
+            if (!pattern.equals(automaton.getPattern(i))) {
+                throw new IOException("Can't merge the counts of pattern '" + pattern + "' into '"
+                        + automaton.getPattern(i) + "'");
+            }
+            long count = in.readLong();
+            patternCounts[i] += count;
+            matchCount.addAndGet(count);
+        }
+    }
+
+    /**
+     * Convenience method - expected to be called after accumulation is done (merges all the per-thread counts)
+     *
+     * @return - every pattern mapped to its number of occurrences, in pattern order
+     */
+    public Map<String, Long> getMatchCounts() {
+        long[] merged = mergeCounts();
+        Map<String, Long> matchCounts = new LinkedHashMap<>();
+        for (int i = 0; i < merged.length; i++) {
+            matchCounts.put(automaton.getPattern(i), merged[i]);
+        }
+        return matchCounts;
+    }
+
+    /**
+     * @return - total number of occurrences of all patterns
+     */
+    public long getTotalMatchCount() {
+        return matchCount.get();
+    }
+
+    /**
+     * @return - number of distinct patterns
+     */
+    public int getPatternCount() {
+        return automaton.getPatternCount();
+    }
+
+    private long[] mergeCounts() {
+        long[] merged = new long[getPatternCount()];
+        for (long[] threadCount : threadCounts) {
+            for (int i = 0; i < merged.length; i++) {
+                merged[i] += threadCount[i];
+            }
+        }
+        return merged;
+    }
+}
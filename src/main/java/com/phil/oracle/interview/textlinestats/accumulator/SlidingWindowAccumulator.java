@@ -0,0 +1,438 @@
+package com.phil.oracle.interview.textlinestats.accumulator;
+
+import com.phil.oracle.interview.textlinestats.framework.MergeableAccumulator;
+import com.phil.oracle.interview.textlinestats.kernel.TextKernel;
+import com.phil.oracle.interview.textlinestats.kernel.TextKernels;
+import com.phil.oracle.interview.textlinestats.kernel.WordTokenizer;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Line, word and letter counts and the top K words over the last few minutes of a stream (e.g. a log being ingested),
+ * rather than since the start of the run - the time is the time the lines get accumulated at, not their timestamps
+ * The window is a ring of time slices: each slice keeps the totals of its lines and the counts of its words, and the
+ * window keeps the running sums of them all. As time moves on, the oldest slice expires - its totals are subtracted in
+ * O(1), its words one by one - and gets reused for the current one. A word is dropped once the last slice counting it
+ * expires, so memory is bounded by the words within the window, however long the stream runs
+ * The window covers windowMillis give or take a slice, i.e. the current slice is only partially filled
+ * The top K words are kept up to date as words get counted, and only recomputed (a pass over the words within the
+ * window) when one of them loses counts to an expired slice, and only once they're asked for
+ * Batches are counted thread-locally first, word counts included, so the lock of the window is only taken once per
+ * batch, and each of its distinct words only looked up once
+ * Merged state (see MergeableAccumulator) goes into the current slice, as if its lines were accumulated just now
+ *
+ * @author Phil
+ */
+public class SlidingWindowAccumulator extends AbstractAccumulator<String[]> {
+    public static final long DEFAULT_WINDOW_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    public static final long DEFAULT_SLICE_MILLIS = TimeUnit.SECONDS.toMillis(10);
+
+    private final long windowMillis, sliceMillis;
+    private final int topK;
+    private final LongSupplier clock;
+    private final TextKernel kernel = TextKernels.get();
+    private final ThreadLocal<BatchCounter> batchCounter = ThreadLocal.withInitial(BatchCounter::new);
+
+    // stateful field(s), guarded by this
+    private final Slice[] slices;
+    private long currentSlice = Long.MIN_VALUE;     // slice number (time / sliceMillis) of the newest slice
+    private long lineCount, wordCount, letterCount;
+    private final Map<String, Word> words = new HashMap<>();   // the words within the window
+    private final Word[] top;                       // most frequent first
+    private int topSize;
+    private boolean topStale;                       // a top word lost counts, so another one may have overtaken it
+
+    /**
+     * @param windowMillis - length of the window
+     * @param sliceMillis  - granularity the window moves at, windowMillis has to be a multiple of it
+     * @param topK         - number of most frequent words to report
+     * @param clock        - current time in milliseconds, e.g. System::currentTimeMillis
+     */
+    public SlidingWindowAccumulator(long windowMillis, long sliceMillis, int topK, LongSupplier clock) {
+        if (sliceMillis < 1 || windowMillis < sliceMillis || windowMillis % sliceMillis != 0) {
+            throw new UnsupportedOperationException("The window has to be a multiple of its slice, both greater than zero!");
+        }
+        if (windowMillis / sliceMillis > Integer.MAX_VALUE) {
+            throw new UnsupportedOperationException("Too many slices in the window, make them longer!");
+        }
+        if (topK < 1) {
+            throw new UnsupportedOperationException("Number of top words has to be greater than zero!");
+        }
+        this.windowMillis = windowMillis;
+        this.sliceMillis = sliceMillis;
+        this.topK = topK;
+        this.clock = clock;
+        slices = new Slice[(int) (windowMillis / sliceMillis)];
+        for (int i = 0; i < slices.length; i++) {
+            slices[i] = new Slice();
+        }
+        top = new Word[topK];
+    }
+
+    /**
+     * Over the last DEFAULT_WINDOW_MILLIS in slices of DEFAULT_SLICE_MILLIS, by the system clock
+     */
+    public SlidingWindowAccumulator(int topK) {
+        this(DEFAULT_WINDOW_MILLIS, DEFAULT_SLICE_MILLIS, topK, System::currentTimeMillis);
+    }
+
+    /**
+     * Counts the batch into this thread's counter, then adds it to the current slice and the window at once
+     *
+     * @param inputItem - an input item to accumulate statistics from
+     */
+    @Override
+    protected void accumulateItem(String[] inputItem) {
+        BatchCounter batch = batchCounter.get();
+        batch.count(inputItem);
+        synchronized (this) {
+            Slice slice = advance();
+            slice.lineCount += inputItem.length;
+            slice.wordCount += batch.wordCount;
+            slice.letterCount += batch.letterCount;
+            lineCount += inputItem.length;
+            wordCount += batch.wordCount;
+            letterCount += batch.letterCount;
+            for (int slot = 0; slot < batch.words.length; slot++) {
+                if (batch.words[slot] != null) {
+                    addWord(slice, batch.words[slot], batch.counts[slot]);
+                }
+            }
+        }
+        batch.clear();
+    }
+
+    @Override
+    protected void summarizeStats(String className) {
+        Map<String, Object> window = new LinkedHashMap<>();
+        collectStats(window);
+        System.out.println(className + ": Last " + window.get("windowSeconds") + "s - Line Count = "
+                + window.get("lineCount") + ", Word Count = " + window.get("wordCount") + ", Letter Count = "
+                + window.get("letterCount"));
+        getTopWords().forEach((word, count) -> System.out.println(className + ": '" + word + "' = " + count));
+    }
+
+    @Override
+    protected synchronized void collectStats(Map<String, Object> stats) {
+        advance();
+        stats.put("windowSeconds", TimeUnit.MILLISECONDS.toSeconds(windowMillis));
+        stats.put("lineCount", lineCount);
+        stats.put("wordCount", wordCount);
+        stats.put("letterCount", letterCount);
+        stats.put("topWords", getTopWords());
+    }
+
+    /**
+     * The totals and word counts within the window
+     */
+    @Override
+    protected synchronized void writeAccumulatedState(DataOutput out) throws IOException {
+        advance();
+        out.writeLong(lineCount);
+        out.writeLong(wordCount);
+        out.writeLong(letterCount);
+        out.writeInt(words.size());
+        for (Word word : words.values()) {
+            writeString(out, word.text);
+            out.writeLong(word.count);
+        }
+    }
+
+    @Override
+    protected synchronized void mergeAccumulatedState(DataInput in) throws IOException {
+        Slice slice = advance();
+        long lines = in.readLong(), words = in.readLong(), letters = in.readLong();
+        slice.lineCount += lines;
+        slice.wordCount += words;
+        slice.letterCount += letters;
+        lineCount += lines;
+        wordCount += words;
+        letterCount += letters;
+        for (int i = in.readInt(); i > 0; i--) {
+            addWord(slice, readString(in), in.readLong());
+        }
+    }
+
+    /**
+     * Can be called at any point, e.g. while a stream is being read
+     *
+     * @return - number of lines within the window
+     */
+    public synchronized long getLineCount() {
+        advance();
+        return lineCount;
+    }
+
+    /**
+     * @return - number of words within the window
+     */
+    public synchronized long getWordCount() {
+        advance();
+        return wordCount;
+    }
+
+    /**
+     * @return - number of (US ASCII) letters within the window
+     */
+    public synchronized long getLetterCount() {
+        advance();
+        return letterCount;
+    }
+
+    /**
+     * @return - the top K words within the window mapped to their counts, most frequent first (ties in alphabetical
+     * order)
+     */
+    public synchronized Map<String, Long> getTopWords() {
+        advance();
+        if (topStale) {
+            rebuildTop();
+        }
+        Map<String, Long> topWords = new LinkedHashMap<>();
+        for (int i = 0; i < topSize; i++) {
+            topWords.put(top[i].text, top[i].count);
+        }
+        return topWords;
+    }
+
+    /**
+     * @return - number of distinct words within the window
+     */
+    synchronized int getDistinctWordCount() {
+        advance();
+        return words.size();
+    }
+
+    /**
+     * Moves the window up to the current time, expiring the slices which fell out of it
+     *
+     * @return - the current slice
+     */
+    private Slice advance() {
+        long now = Math.floorDiv(clock.getAsLong(), sliceMillis);
+        if (currentSlice == Long.MIN_VALUE) {
+            currentSlice = now;
+        }
+        // going through the whole ring at most, however long it's been - and never back, should the clock be
+        for (long next = currentSlice + 1; next <= now && next <= currentSlice + slices.length; next++) {
+            expire(slices[(int) Math.floorMod(next, (long) slices.length)]);
+        }
+        currentSlice = Math.max(currentSlice, now);
+        return slices[(int) Math.floorMod(currentSlice, (long) slices.length)];
+    }
+
+    private void addWord(Slice slice, String text, long count) {
+        Word word = words.computeIfAbsent(text, Word::new);
+        slice.add(word, count);
+        word.count += count;
+        if (!topStale) {    // no point otherwise, the top gets rebuilt anyway
+            promote(word);
+        }
+    }
+
+    private void expire(Slice slice) {
+        lineCount -= slice.lineCount;
+        wordCount -= slice.wordCount;
+        letterCount -= slice.letterCount;
+        for (int i = 0; i < slice.size; i++) {
+            Word word = slice.words[i];
+            word.count -= slice.counts[i];
+            if (word.slice == slice) {
+                word.slice = null;
+            }
+            topStale |= word.topPosition >= 0;
+            if (word.count == 0) {   // its last slice
+                words.remove(word.text);
+            }
+        }
+        slice.clear();
+    }
+
+    /**
+     * Moves a word whose count went up into, or up, the top K - counts only go down by expiring slices
+     */
+    private void promote(Word word) {
+        int position = word.topPosition;
+        if (position < 0) {
+            if (topSize < topK) {
+                position = topSize++;
+            } else if (ranksBefore(word, top[topK - 1])) {
+                position = topK - 1;   // replaces the last one
+                top[position].topPosition = -1;
+            } else {
+                return;
+            }
+        }
+        while (position > 0 && ranksBefore(word, top[position - 1])) {
+            top[position] = top[position - 1];
+            top[position].topPosition = position;
+            position--;
+        }
+        top[position] = word;
+        word.topPosition = position;
+    }
+
+    private void rebuildTop() {
+        for (int i = 0; i < topSize; i++) {
+            top[i].topPosition = -1;
+            top[i] = null;
+        }
+        topSize = 0;
+        topStale = false;
+        words.values().forEach(this::promote);
+    }
+
+    private static boolean ranksBefore(Word word, Word other) {
+        return word.count > other.count || word.count == other.count && word.text.compareTo(other.text) < 0;
+    }
+
+    /**
+     * A word within the window - its count over the window, its entry in the newest slice counting it, and its position
+     * in the top K
+     */
+    private static final class Word {
+        private final String text;
+        private long count;
+        private Slice slice;            // the newest slice counting it, null once that expired
+        private int sliceIndex;         // its entry in that slice
+        private int topPosition = -1;   // -1 if it's not in the top K
+
+        private Word(String text) {
+            this.text = text;
+        }
+    }
+
+    /**
+     * The totals of a slice of time, and the counts of its words - a word's entry is found through the word itself, as
+     * words only get added to the current slice
+     */
+    private static final class Slice {
+        private static final int INITIAL_CAPACITY = 256;
+
+        private long lineCount, wordCount, letterCount;
+        private Word[] words = new Word[INITIAL_CAPACITY];
+        private long[] counts = new long[INITIAL_CAPACITY];
+        private int size;
+
+        private void add(Word word, long count) {
+            if (word.slice != this) {
+                if (size == words.length) {
+                    words = Arrays.copyOf(words, size * 2);
+                    counts = Arrays.copyOf(counts, size * 2);
+                }
+                word.slice = this;
+                word.sliceIndex = size;
+                words[size] = word;
+                counts[size++] = 0;
+            }
+            counts[word.sliceIndex] += count;
+        }
+
+        private void clear() {
+            lineCount = wordCount = letterCount = 0;
+            if (words.length > INITIAL_CAPACITY * 64) {   // a burst shouldn't pin the memory for good
+                words = new Word[INITIAL_CAPACITY];
+                counts = new long[INITIAL_CAPACITY];
+            } else {
+                Arrays.fill(words, 0, size, null);
+            }
+            size = 0;
+        }
+    }
+
+    /**
+     * A consumer thread's counts of the batch at hand - the lines and letters counted by the kernel, and the words in an
+     * open-addressing (linear probing) map of word to count, so that a word only becomes a String once per batch
+     */
+    private final class BatchCounter implements WordTokenizer.TokenSink {
+        private static final int INITIAL_CAPACITY = 256;
+
+        private final long[] letterCounts = new long[TextKernel.MAX_CHAR_CODE + 1];
+        private String[] words = new String[INITIAL_CAPACITY];
+        private int[] hashes = new int[INITIAL_CAPACITY];
+        private long[] counts = new long[INITIAL_CAPACITY];
+        private int size;
+        private long wordCount, letterCount;
+        private String line;
+
+        private void count(String[] lines) {
+            wordCount = 0;
+            for (String line : lines) {
+                this.line = line;
+                WordTokenizer.tokenize(line, this);
+            }
+            line = null;
+            Arrays.fill(letterCounts, 0);
+            kernel.countLetters(lines, letterCounts);
+            letterCount = 0;
+            for (long count : letterCounts) {
+                letterCount += count;
+            }
+        }
+
+        @Override
+        public void token(int start, int end) {
+            wordCount++;
+            int hash = 0;
+            for (int i = start; i < end; i++) {
+                hash = 31 * hash + line.charAt(i);
+            }
+            int mask = words.length - 1;
+            int slot = (hash * 0x9E3779B9) >>> 1 & mask;
+            while (words[slot] != null) {
+                if (hashes[slot] == hash && words[slot].length() == end - start
+                        && line.regionMatches(start, words[slot], 0, end - start)) {
+                    counts[slot]++;
+                    return;
+                }
+                slot = (slot + 1) & mask;
+            }
+            words[slot] = line.substring(start, end);
+            hashes[slot] = hash;
+            counts[slot] = 1;
+            if (++size * 2 > words.length) {
+                grow();
+            }
+        }
+
+        private void grow() {
+            String[] oldWords = words;
+            int[] oldHashes = hashes;
+            long[] oldCounts = counts;
+            words = new String[oldWords.length * 2];
+            hashes = new int[words.length];
+            counts = new long[words.length];
+            int mask = words.length - 1;
+            for (int i = 0; i < oldWords.length; i++) {
+                if (oldWords[i] != null) {
+                    int slot = (oldHashes[i] * 0x9E3779B9) >>> 1 & mask;
+                    while (words[slot] != null) {
+                        slot = (slot + 1) & mask;
+                    }
+                    words[slot] = oldWords[i];
+                    hashes[slot] = oldHashes[i];
+                    counts[slot] = oldCounts[i];
+                }
+            }
+        }
+
+        private void clear() {
+            if (words.length > INITIAL_CAPACITY * 64) {   // a big batch shouldn't pin the memory for good
+                words = new String[INITIAL_CAPACITY];
+                hashes = new int[INITIAL_CAPACITY];
+                counts = new long[INITIAL_CAPACITY];
+            } else {
+                Arrays.fill(words, null);
+            }
+            size = 0;
+        }
+    }
+}
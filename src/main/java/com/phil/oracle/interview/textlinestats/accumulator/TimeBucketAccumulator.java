@@ -0,0 +1,256 @@
+package com.phil.oracle.interview.textlinestats.accumulator;
+
+import com.phil.oracle.interview.textlinestats.kernel.TextKernel;
+import com.phil.oracle.interview.textlinestats.kernel.TextKernels;
+import com.phil.oracle.interview.textlinestats.kernel.TimestampParser;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Line and word counts per minute and per hour of a log file, by the timestamp at the start of every line
+ * (see TimestampParser). Lines without one, e.g. stack trace lines, are counted as untimed
+ * Each consumer thread counts into primitive arrays of its own, indexed by minute from the first one it saw,
+ * merged (index-shifted) when the stats get summarized
+ *
+ * @author Phil
+ */
+public class TimeBucketAccumulator extends AbstractAccumulator<String[]> {
+    public static final int MAX_MINUTE_SPAN = 366 * 24 * 60;   // per thread - lines any further out are untimed
+
+    private final String timestampPattern;
+    private final TextKernel kernel;
+
+    // stateful field(s)
+    private final Queue<ThreadState> threadStates = new ConcurrentLinkedQueue<>();   // every thread's counts, for merging
+    private final ThreadLocal<ThreadState> threadState = ThreadLocal.withInitial(() -> {
+        ThreadState state = new ThreadState(new TimestampParser(getTimestampPattern()));
+        threadStates.add(state);
+        return state;
+    });
+
+    /**
+     * @param timestampPattern - fixed-width DateTimeFormatter pattern of the timestamps, e.g. "yyyy-MM-dd HH:mm:ss"
+     */
+    public TimeBucketAccumulator(String timestampPattern) {
+        new TimestampParser(timestampPattern);   // fail fast on an invalid pattern
+        this.timestampPattern = timestampPattern;
+        this.kernel = TextKernels.get();
+    }
+
+    /**
+     * Runs of lines within the same minute (most of them in a log) get counted together
+     *
+     * @param inputItem - an input item to accumulate statistics from
+     */
+    @Override
+    protected void accumulateItem(String[] inputItem) {
+        ThreadState state = threadState.get();
+        long runMinute = TimestampParser.NO_TIMESTAMP, runLineCount = 0, runWordCount = 0;
+        for (String line : inputItem) {
+            long minute = state.parser.parseMinute(line);
+            if (minute != runMinute) {
+                state.add(runMinute, runLineCount, runWordCount);
+                runMinute = minute;
+                runLineCount = runWordCount = 0;
+            }
+            state.line[0] = line;
+            runLineCount++;
+            runWordCount += kernel.countWords(state.line);
+        }
+        state.add(runMinute, runLineCount, runWordCount);
+    }
+
+    @Override
+    protected void summarizeStats(String className) {
+        MinuteCounts merged = mergeCounts();
+        System.out.println(className + ": Timed Line Count = " + merged.getTimedLineCount() + ", Untimed Line Count = "
+                + merged.untimedLineCount + " ('" + timestampPattern + "' timestamps)");
+        if (merged.getTimedLineCount() != 0) {
+            long busiest = merged.getBusiestMinute();
+            System.out.println(className + ": Busiest Minute = " + TimestampParser.formatMinute(busiest) + " ("
+                    + merged.lineCounts[(int) (busiest - merged.firstMinute)] + " lines)");
+            merged.toMap(60).forEach((hour, counts) -> System.out.println(className + ": " + hour + " " + counts));
+        }
+    }
+
+    @Override
+    protected void collectStats(Map<String, Object> stats) {
+        MinuteCounts merged = mergeCounts();
+        stats.put("timedLineCount", merged.getTimedLineCount());
+        stats.put("untimedLineCount", merged.untimedLineCount);
+        stats.put("perHour", merged.toMap(60));
+        stats.put("perMinute", merged.toMap(1));
+    }
+
+    /**
+     * The timestamp pattern (to make sure it's the same on merging), the untimed line count, then the non-empty minutes
+     */
+    @Override
+    protected void writeAccumulatedState(DataOutput out) throws IOException {
+        writeString(out, timestampPattern);
+        MinuteCounts merged = mergeCounts();
+        out.writeLong(merged.untimedLineCount);
+        int minuteCount = 0;
+        for (long lineCount : merged.lineCounts) {
+            minuteCount += lineCount != 0 ? 1 : 0;
+        }
+        out.writeInt(minuteCount);
+        for (int i = 0; i < merged.lineCounts.length; i++) {
+            if (merged.lineCounts[i] != 0) {
+                out.writeLong(merged.firstMinute + i);
+                out.writeLong(merged.lineCounts[i]);
+                out.writeLong(merged.wordCounts[i]);
+            }
+        }
+    }
+
+    @Override
+    protected void mergeAccumulatedState(DataInput in) throws IOException {
+        String pattern = readString(in);
+        if (!pattern.equals(timestampPattern)) {
+            throw new IOException("Can't merge the counts of '" + pattern + "' timestamps into '" + timestampPattern + "'");
+        }
+        ThreadState state = threadState.get();
+        state.counts.untimedLineCount += in.readLong();
+        for (int i = in.readInt(); i > 0; i--) {
+            state.add(in.readLong(), in.readLong(), in.readLong());
+        }
+    }
+
+    /**
+     * Convenience method - expected to be called after accumulation is done (merges all the per-thread counts)
+     *
+     * @param minutesPerBucket - 1 for per-minute counts, 60 for per-hour ones
+     * @return - the non-empty buckets in time order, keyed by "yyyy-MM-dd HH:mm" labels, each with its lines and words
+     */
+    public Map<String, Map<String, Long>> getBucketCounts(int minutesPerBucket) {
+        return mergeCounts().toMap(minutesPerBucket);
+    }
+
+    /**
+     * @return - number of lines without a timestamp (or too far out, see MAX_MINUTE_SPAN)
+     */
+    public long getUntimedLineCount() {
+        return mergeCounts().untimedLineCount;
+    }
+
+    public String getTimestampPattern() {
+        return timestampPattern;
+    }
+
+    private MinuteCounts mergeCounts() {
+        MinuteCounts merged = new MinuteCounts();
+        for (ThreadState state : threadStates) {
+            merged.untimedLineCount += state.counts.untimedLineCount;
+            for (int i = 0; i < state.counts.lineCounts.length; i++) {
+                if (state.counts.lineCounts[i] != 0 && !merged.add(state.counts.firstMinute + i,
+                        state.counts.lineCounts[i], state.counts.wordCounts[i])) {
+                    merged.untimedLineCount += state.counts.lineCounts[i];
+                }
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Line and word counts per minute, in arrays indexed from the first minute - grown both ways as needed
+     */
+    private static final class MinuteCounts {
+        private static final int INITIAL_MINUTES = 64;
+
+        private long firstMinute = TimestampParser.NO_TIMESTAMP;
+        private long[] lineCounts = new long[0];
+        private long[] wordCounts = new long[0];
+        private long untimedLineCount;
+
+        /**
+         * @return - false if the minute is too far from the others, in which case nothing is added
+         */
+        private boolean add(long minute, long lineCount, long wordCount) {
+            if (firstMinute == TimestampParser.NO_TIMESTAMP) {
+                firstMinute = minute;
+                lineCounts = new long[INITIAL_MINUTES];
+                wordCounts = new long[INITIAL_MINUTES];
+            }
+            long index = minute - firstMinute;
+            if (index < 0 || index >= lineCounts.length) {
+                long newFirstMinute = Math.min(firstMinute, minute);
+                long span = Math.max(firstMinute + lineCounts.length, minute + 1) - newFirstMinute;
+                if (span > MAX_MINUTE_SPAN) {
+                    return false;
+                }
+                int newLength = (int) Math.min(MAX_MINUTE_SPAN, Math.max(span, lineCounts.length * 2L));
+                int shift = (int) (firstMinute - newFirstMinute);
+                lineCounts = grow(lineCounts, newLength, shift);
+                wordCounts = grow(wordCounts, newLength, shift);
+                firstMinute = newFirstMinute;
+                index = minute - firstMinute;
+            }
+            lineCounts[(int) index] += lineCount;
+            wordCounts[(int) index] += wordCount;
+            return true;
+        }
+
+        private long getTimedLineCount() {
+            return Arrays.stream(lineCounts).sum();
+        }
+
+        private long getBusiestMinute() {
+            int busiest = 0;
+            for (int i = 1; i < lineCounts.length; i++) {
+                busiest = lineCounts[i] > lineCounts[busiest] ? i : busiest;
+            }
+            return firstMinute + busiest;
+        }
+
+        private Map<String, Map<String, Long>> toMap(int minutesPerBucket) {
+            Map<String, Map<String, Long>> buckets = new LinkedHashMap<>();
+            for (int i = 0; i < lineCounts.length; i++) {
+                if (lineCounts[i] != 0) {
+                    long minute = firstMinute + i;
+                    Map<String, Long> bucket = buckets.computeIfAbsent(
+                            TimestampParser.formatMinute(minute - Math.floorMod(minute, minutesPerBucket)),
+                            label -> new LinkedHashMap<>());
+                    bucket.merge("lines", lineCounts[i], Long::sum);
+                    bucket.merge("words", wordCounts[i], Long::sum);
+                }
+            }
+            return buckets;
+        }
+
+        private static long[] grow(long[] counts, int length, int shift) {
+            long[] grown = new long[length];
+            System.arraycopy(counts, 0, grown, shift, counts.length);
+            return grown;
+        }
+    }
+
+    /**
+     * A consumer thread's counts and timestamp parser (which caches the last timestamp, so it can't be shared)
+     */
+    private static final class ThreadState {
+        private final TimestampParser parser;
+        private final MinuteCounts counts = new MinuteCounts();
+        private final String[] line = new String[1];   // for counting the words of a single line
+
+        private ThreadState(TimestampParser parser) {
+            this.parser = parser;
+        }
+
+        private void add(long minute, long lineCount, long wordCount) {
+            if (lineCount == 0) {
+                return;
+            }
+            if (minute == TimestampParser.NO_TIMESTAMP || !counts.add(minute, lineCount, wordCount)) {
+                counts.untimedLineCount += lineCount;
+            }
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.phil.oracle.interview.textlinestats.accumulator;
+
+import com.phil.oracle.interview.textlinestats.token.TokenBatch;
+
+/**
+ * Implemented by line-level accumulators which count words, so that downstream of a TokenizerStage they can take the
+ * words of a token batch as they are, rather than tokenizing its lines all over again (see TokenBatchAdapter)
+ *
+ * @author Phil
+ */
+public interface TokenBatchAccumulator {
+    /**
+     * Same as Accumulator.accumulate, with the lines of the batch already tokenized - must come out the same
+     * Called in parallel by multiple consumer threads, same as accumulate
+     *
+     * @param inputItem - a batch of lines and their words
+     */
+    void accumulateTokens(TokenBatch inputItem);
+}
@@ -0,0 +1,75 @@
+package com.phil.oracle.interview.textlinestats.accumulator;
+
+import com.phil.oracle.interview.textlinestats.framework.Accumulator;
+import com.phil.oracle.interview.textlinestats.framework.MergeableAccumulator;
+import com.phil.oracle.interview.textlinestats.token.TokenBatch;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Lets a line-level accumulator participate downstream of a TokenizerStage, by feeding it the lines of every batch -
+ * or the whole batch, words included, if it's a TokenBatchAccumulator
+ * Its state is the delegate's, if the delegate is a MergeableAccumulator
+ *
+ * @param <A> - the type of the adapted accumulator
+ * @author Phil
+ */
+public class TokenBatchAdapter<A extends Accumulator<String[]>> implements MergeableAccumulator<TokenBatch> {
+
+    private final A delegate;
+
+    public TokenBatchAdapter(A delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void accumulate(TokenBatch inputItem) {
+        if (delegate instanceof TokenBatchAccumulator) {
+            ((TokenBatchAccumulator) delegate).accumulateTokens(inputItem);
+        } else {
+            delegate.accumulate(inputItem.getLines());
+        }
+    }
+
+    @Override
+    public void summarize() {
+        delegate.summarize();
+    }
+
+    @Override
+    public Map<String, Object> getStatistics() {
+        return delegate.getStatistics();
+    }
+
+    @Override
+    public boolean isOrderSensitive() {
+        return delegate.isOrderSensitive();
+    }
+
+    @Override
+    public void writeState(DataOutput out) throws IOException {
+        mergeableDelegate().writeState(out);
+    }
+
+    @Override
+    public void mergeState(DataInput in) throws IOException {
+        mergeableDelegate().mergeState(in);
+    }
+
+    private MergeableAccumulator<String[]> mergeableDelegate() {
+        if (!(delegate instanceof MergeableAccumulator)) {
+            throw new UnsupportedOperationException(delegate.getClass().getSimpleName() + " state can't be merged!");
+        }
+        return (MergeableAccumulator<String[]>) delegate;
+    }
+
+    /**
+     * @return - the adapted accumulator
+     */
+    public A getDelegate() {
+        return delegate;
+    }
+}
@@ -0,0 +1,211 @@
+package com.phil.oracle.interview.textlinestats.accumulator;
+
+import com.phil.oracle.interview.textlinestats.kernel.WordTokenizer;
+import com.phil.oracle.interview.textlinestats.offheap.TokenDictionary;
+import com.phil.oracle.interview.textlinestats.token.TokenBatch;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Counts the frequency of every distinct word (as per WordTokenizer, case-sensitive, punctuation included)
+ * Words are interned into an off-heap TokenDictionary, which may be shared with other vocabulary accumulators,
+ * and counted by ID in per-thread long arrays - no Strings on-heap except for the top K words reported at the end
+ * Downstream of a TokenizerStage, the words of the token batches get interned as they are, see TokenBatchAccumulator
+ *
+ * @author Phil
+ */
+public class VocabularyAccumulator extends AbstractAccumulator<String[]>
+        implements TokenBatchAccumulator {
+
+    private final TokenDictionary dictionary;
+    private final int topK;
+
+    // stateful field(s)
+    private final Queue<ThreadState> threadStates = new ConcurrentLinkedQueue<>();   // every thread's counts, for merging
+    private final ThreadLocal<ThreadState> threadState = ThreadLocal.withInitial(() -> {
+        ThreadState state = new ThreadState();
+        threadStates.add(state);
+        return state;
+    });
+
+    /**
+     * @param dictionary - the dictionary to intern words into
+     * @param topK       - number of most frequent words to report
+     */
+    public VocabularyAccumulator(TokenDictionary dictionary, int topK) {
+        if (topK < 1) {
+            throw new UnsupportedOperationException("Number of top words has to be greater than zero!");
+        }
+        this.dictionary = dictionary;
+        this.topK = topK;
+    }
+
+    /**
+     * Uses a dictionary of its own
+     */
+    public VocabularyAccumulator(int topK) {
+        this(new TokenDictionary(), topK);
+    }
+
+    /**
+     * Interns the words of every line and counts them into this thread's own array - the dictionary does the locking
+     *
+     * @param inputItem - an input item to accumulate statistics from
+     */
+    @Override
+    protected void accumulateItem(String[] inputItem) {
+        ThreadState state = threadState.get();
+        for (int i = 0; i < inputItem.length; i++) {
+            state.line = inputItem[i];
+            WordTokenizer.tokenize(inputItem, i, state);   // fragments of lines included, see LineFragments
+        }
+    }
+
+    /**
+     * Same as accumulateItem, with the words of every line already there
+     *
+     * @param inputItem - a batch of lines and their words
+     */
+    @Override
+    protected void accumulateTokenItem(TokenBatch inputItem) {
+        ThreadState state = threadState.get();
+        String[] lines = inputItem.getLines();
+        for (int token = 0; token < inputItem.getTokenCount(); token++) {
+            state.add(dictionary.intern(lines[inputItem.getTokenLine(token)], inputItem.getTokenStart(token),
+                    inputItem.getTokenEnd(token)), 1);
+        }
+    }
+
+    @Override
+    protected void summarizeStats(String className) {
+        long[] counts = mergeCounts();
+        System.out.println(className + ": Distinct Word Count = " + dictionary.size() + ", Dictionary Off-heap Bytes = "
+                + dictionary.getOffHeapBytes() + " (" + dictionary.getTokenBytes() + " bytes of words)");
+        getTopWords(counts).forEach((word, count) -> System.out.println(className + ": '" + word + "' = " + count));
+    }
+
+    @Override
+    protected void collectStats(Map<String, Object> stats) {
+        long[] counts = mergeCounts();
+        stats.put("distinctWordCount", dictionary.size());
+        stats.put("dictionaryOffHeapBytes", dictionary.getOffHeapBytes());
+        stats.put("topWords", getTopWords(counts));
+    }
+
+    /**
+     * Every counted word with its count - IDs are local to the dictionary, so they don't go into the state
+     */
+    @Override
+    protected void writeAccumulatedState(DataOutput out) throws IOException {
+        long[] counts = mergeCounts();
+        int wordCount = 0;
+        for (long count : counts) {
+            wordCount += count != 0 ? 1 : 0;
+        }
+        out.writeInt(wordCount);
+        for (int id = 0; id < counts.length; id++) {
+            if (counts[id] != 0) {
+                writeString(out, dictionary.getToken(id));
+                out.writeLong(counts[id]);
+            }
+        }
+    }
+
+    /**
+     * Interns the words of the state, and counts them into the calling thread's array
+     */
+    @Override
+    protected void mergeAccumulatedState(DataInput in) throws IOException {
+        ThreadState state = threadState.get();
+        for (int i = in.readInt(); i > 0; i--) {
+            state.add(dictionary.intern(readString(in)), in.readLong());
+        }
+    }
+
+    /**
+     * Convenience method - expected to be called after accumulation is done (merges all the per-thread counts)
+     *
+     * @return - the top K words mapped to their counts, most frequent first (ties in ID order)
+     */
+    public Map<String, Long> getTopWords() {
+        return getTopWords(mergeCounts());
+    }
+
+    /**
+     * @return - the number of times the word was counted, 0 if it never was
+     */
+    public long getCount(String word) {
+        int id = dictionary.lookup(word);
+        long[] counts = mergeCounts();
+        return id >= 0 && id < counts.length ? counts[id] : 0;
+    }
+
+    /**
+     * @return - the dictionary the words are interned into
+     */
+    public TokenDictionary getDictionary() {
+        return dictionary;
+    }
+
+    private long[] mergeCounts() {
+        long[] counts = new long[dictionary.getIdBound()];
+        for (ThreadState state : threadStates) {
+            for (int id = 0; id < Math.min(counts.length, state.counts.length); id++) {
+                counts[id] += state.counts[id];
+            }
+        }
+        return counts;
+    }
+
+    private Map<String, Long> getTopWords(long[] counts) {
+        // ties broken by text rather than ID, which depends on the thread interning a word first
+        Comparator<Integer> byCount = Comparator.comparingLong(id -> counts[id]);
+        Comparator<Integer> ascending = byCount.thenComparing(dictionary::getToken, Comparator.reverseOrder());
+        PriorityQueue<Integer> top = new PriorityQueue<>(topK + 1, ascending);
+        for (int id = 0; id < counts.length; id++) {
+            if (counts[id] != 0) {
+                top.add(id);
+                if (top.size() > topK) {
+                    top.poll();   // drop the least frequent one
+                }
+            }
+        }
+        List<Integer> ids = new ArrayList<>(top);
+        ids.sort(Collections.reverseOrder(ascending));
+        Map<String, Long> topWords = new LinkedHashMap<>();
+        ids.forEach(id -> topWords.put(dictionary.getToken(id), counts[id]));
+        return topWords;
+    }
+
+    /**
+     * A consumer thread's word counts, indexed by ID
+     */
+    private final class ThreadState implements WordTokenizer.TokenSink {
+        private long[] counts = new long[1024];
+        private String line;
+
+        @Override
+        public void token(int start, int end) {
+            add(dictionary.intern(line, start, end), 1);
+        }
+
+        private void add(int id, long count) {
+            if (id >= counts.length) {
+                counts = Arrays.copyOf(counts, Math.max(id + 1, counts.length * 2));
+            }
+            counts[id] += count;
+        }
+    }
+}
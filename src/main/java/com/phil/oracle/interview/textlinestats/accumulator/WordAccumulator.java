@@ -1,41 +1,72 @@
 package com.phil.oracle.interview.textlinestats.accumulator;
 
+import com.phil.oracle.interview.textlinestats.kernel.LineFragments;
+import com.phil.oracle.interview.textlinestats.kernel.TextKernel;
+import com.phil.oracle.interview.textlinestats.kernel.TextKernels;
+import com.phil.oracle.interview.textlinestats.kernel.WordTokenizer;
+import com.phil.oracle.interview.textlinestats.token.TokenBatch;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Counts the number of words
+ * Downstream of a TokenizerStage, the words of the token batches are counted as they are, see TokenBatchAccumulator
  *
  * @author Phil
  */
-public class WordAccumulator extends AbstractAccumulator<String[]> {
+public class WordAccumulator extends AbstractAccumulator<String[]>
+        implements WordCounter, TokenBatchAccumulator {
     public static final int MAX_CHAR_CODE = 127;  //limiting evaluated charset to US ASCII - TODO validate assumption!
+    private static final WordTokenizer.TokenSink NO_TOKENS = (start, end) -> { };   // counting only
+
+    private final TextKernel kernel;
 
     // stateful field(s)
     private final AtomicLong wordCount = new AtomicLong(0);
 
     /**
-     * Splits the input item (line) on whitespace and updates wordCount atomically as per the requirements
+     * Uses the kernel selected at startup
+     */
+    public WordAccumulator() {
+        this(TextKernels.get());
+    }
+
+    /**
+     * @param kernel - the character classification kernel to count with
+     */
+    public WordAccumulator(TextKernel kernel) {
+        this.kernel = kernel;
+    }
+
+    /**
+     * Splits the input item (lines) on whitespace and updates wordCount atomically (once per batch) as per the requirements
+     * See ScalarTextKernel for the exact rules - the few batches with a word cut between fragments of a line get
+     * tokenized instead (see LineFragments)
      *
      * @param inputItem - an input item to accumulate statistics from
      */
     @Override
     public void accumulateItem(String[] inputItem) {
-        for (String line : inputItem) {
-            int lastCharIndex = line.length() - 1;
-            boolean wordObserved = false;
-
-            for (int i = 0; i < line.length(); i++) {
-                char ch = line.charAt(i);
-                if ((int) ch > MAX_CHAR_CODE)
-                    continue;  // disregard characters outside our evaluation range
-                if (Character.isLetter(ch) && i != lastCharIndex) { // if the char is a letter, there is definitely a word
-                    wordObserved = true;
-                } else if ((Character.isWhitespace(ch) || i == lastCharIndex) && wordObserved) {
-                    // if char is whitespace preceded by a letter, or if it's the last character preceded by a letter
-                    wordCount.incrementAndGet();
-                    wordObserved = false;
-                }
-            }
+        long batchWordCount = LineFragments.cutsWords(inputItem) ? countWords(inputItem)
+                : kernel.countWords(inputItem);
+        if (batchWordCount != 0) {
+            wordCount.addAndGet(batchWordCount);
+        }
+    }
+
+    /**
+     * Same as accumulateItem, with the words of every line already there
+     *
+     * @param inputItem - a batch of lines and their words
+     */
+    @Override
+    protected void accumulateTokenItem(TokenBatch inputItem) {
+        if (inputItem.getTokenCount() != 0) {
+            wordCount.addAndGet(inputItem.getTokenCount());
         }
     }
 
@@ -49,11 +80,35 @@ public class WordAccumulator extends AbstractAccumulator<String[]> {
         System.out.println(className + ": Total Word Count = " + wordCount);
     }
 
+    @Override
+    protected void collectStats(Map<String, Object> stats) {
+        stats.put("totalWordCount", wordCount.get());
+    }
+
+    @Override
+    protected void writeAccumulatedState(DataOutput out) throws IOException {
+        out.writeLong(wordCount.get());
+    }
+
+    @Override
+    protected void mergeAccumulatedState(DataInput in) throws IOException {
+        wordCount.addAndGet(in.readLong());
+    }
+
+    private static long countWords(String[] lines) {
+        long wordCount = 0;
+        for (int i = 0; i < lines.length; i++) {
+            wordCount += WordTokenizer.tokenize(lines, i, NO_TOKENS);
+        }
+        return wordCount;
+    }
+
     /**
      * Convenience method - expected to be called after accumulation is done, but safe regardless
      *
      * @return - long value of wordCount
      */
+    @Override
     public long getTotalWordCount() {
         return wordCount.get();
     }
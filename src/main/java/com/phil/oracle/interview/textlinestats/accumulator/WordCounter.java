@@ -0,0 +1,15 @@
+package com.phil.oracle.interview.textlinestats.accumulator;
+
+/**
+ * Implemented by accumulators which count words, whichever way they get to them (raw lines or token batches)
+ *
+ * @author Phil
+ */
+public interface WordCounter {
+    /**
+     * Convenience method - expected to be called after accumulation is done, but safe regardless
+     *
+     * @return - the total number of words counted
+     */
+    long getTotalWordCount();
+}
@@ -0,0 +1,121 @@
+package com.phil.oracle.interview.textlinestats.accumulator;
+
+import com.phil.oracle.interview.textlinestats.token.TokenBatch;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Counts words and their lengths (in chars, punctuation included), and keeps the longest word
+ * Word counts are the same as WordAccumulator's - downstream of a TokenizerStage the words of the token batches are
+ * taken as they are, see TokenBatchAccumulator
+ *
+ * @author Phil
+ */
+public class WordLengthAccumulator extends AbstractAccumulator<String[]>
+        implements WordCounter, TokenBatchAccumulator {
+
+    // stateful field(s)
+    private final AtomicLong wordCount = new AtomicLong(0);
+    private final AtomicLong totalWordLength = new AtomicLong(0);
+    private final AtomicReference<String> longestWord = new AtomicReference<>("");
+
+    @Override
+    protected void accumulateItem(String[] inputItem) {
+        accumulateTokenItem(TokenBatch.tokenize(inputItem));
+    }
+
+    /**
+     * Sums up the batch locally and updates the atomics once per batch
+     *
+     * @param inputItem - a batch of lines and their words
+     */
+    @Override
+    protected void accumulateTokenItem(TokenBatch inputItem) {
+        int tokenCount = inputItem.getTokenCount();
+        if (tokenCount == 0) {
+            return;
+        }
+        long batchLength = 0;
+        int longestToken = 0;
+        for (int token = 0; token < tokenCount; token++) {
+            int length = inputItem.getTokenLength(token);
+            batchLength += length;
+            if (length > inputItem.getTokenLength(longestToken)) {
+                longestToken = token;
+            }
+        }
+        wordCount.addAndGet(tokenCount);
+        totalWordLength.addAndGet(batchLength);
+
+        // only materialize the batch's longest word if it beats the current one (first one wins on ties)
+        int longestLength = inputItem.getTokenLength(longestToken);
+        String current = longestWord.get();
+        while (longestLength > current.length()) {
+            if (longestWord.compareAndSet(current, inputItem.getToken(longestToken))) {
+                break;
+            }
+            current = longestWord.get();
+        }
+    }
+
+    @Override
+    protected void writeAccumulatedState(DataOutput out) throws IOException {
+        out.writeLong(wordCount.get());
+        out.writeLong(totalWordLength.get());
+        writeString(out, longestWord.get());
+    }
+
+    @Override
+    protected void mergeAccumulatedState(DataInput in) throws IOException {
+        wordCount.addAndGet(in.readLong());
+        totalWordLength.addAndGet(in.readLong());
+        String word = readString(in);
+        if (word.length() > longestWord.get().length()) {   // the state merged first wins on ties
+            longestWord.set(word);
+        }
+    }
+
+    @Override
+    protected void summarizeStats(String className) {
+        System.out.println(className + ": Total Word Count = " + wordCount);
+        System.out.println(className + ": Average Word Length = " + getAverageWordLength());
+        System.out.println(className + ": Longest Word = '" + longestWord + "'");
+    }
+
+    @Override
+    protected void collectStats(Map<String, Object> stats) {
+        stats.put("totalWordCount", wordCount.get());
+        stats.put("averageWordLength", getAverageWordLength());
+        stats.put("longestWord", longestWord.get());
+    }
+
+    @Override
+    public long getTotalWordCount() {
+        return wordCount.get();
+    }
+
+    /**
+     * @return - the longest word seen so far, or an empty String if there were no words
+     */
+    public String getLongestWord() {
+        return longestWord.get();
+    }
+
+    /**
+     * @return - average word length to one decimal place, zero if there were no words
+     */
+    public BigDecimal getAverageWordLength() {
+        long count = wordCount.get();
+        if (count == 0) {
+            return BigDecimal.ZERO;
+        }
+        return BigDecimal.valueOf(totalWordLength.get()).divide(BigDecimal.valueOf(count), 1, RoundingMode.HALF_UP);
+    }
+}
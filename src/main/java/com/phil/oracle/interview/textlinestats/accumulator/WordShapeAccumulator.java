@@ -0,0 +1,111 @@
+package com.phil.oracle.interview.textlinestats.accumulator;
+
+import com.phil.oracle.interview.textlinestats.token.TokenBatch;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts words by the case of their (ASCII) letters: all lower case, capitalized, all upper case, or mixed
+ * Non-letter characters don't affect the shape, e.g. "Hello," is capitalized and "U.S." is upper case
+ * Downstream of a TokenizerStage, the words of the token batches are taken as they are, see TokenBatchAccumulator
+ *
+ * @author Phil
+ */
+public class WordShapeAccumulator extends AbstractAccumulator<String[]> implements TokenBatchAccumulator {
+
+    /**
+     * The shapes a word can have - the ordinal indexes the counts
+     */
+    public enum Shape {LOWER, CAPITALIZED, UPPER, MIXED}
+
+    // stateful field(s)
+    private final AtomicLongArray shapeCounts = new AtomicLongArray(Shape.values().length);
+
+    @Override
+    protected void accumulateItem(String[] inputItem) {
+        accumulateTokenItem(TokenBatch.tokenize(inputItem));
+    }
+
+    @Override
+    protected void accumulateTokenItem(TokenBatch inputItem) {
+        long[] batchCounts = new long[shapeCounts.length()];
+        String[] lines = inputItem.getLines();
+        for (int token = 0; token < inputItem.getTokenCount(); token++) {
+            batchCounts[shapeOf(lines[inputItem.getTokenLine(token)], inputItem.getTokenStart(token),
+                    inputItem.getTokenEnd(token)).ordinal()]++;
+        }
+        for (int i = 0; i < batchCounts.length; i++) {
+            if (batchCounts[i] != 0) {
+                shapeCounts.addAndGet(i, batchCounts[i]);
+            }
+        }
+    }
+
+    /**
+     * @return - the shape of line.substring(start, end), which has at least one letter (see WordTokenizer)
+     */
+    static Shape shapeOf(String line, int start, int end) {
+        int letters = 0, upper = 0;
+        boolean firstUpper = false;
+        for (int i = start; i < end; i++) {
+            char ch = line.charAt(i);
+            if (ch >= 'a' && ch <= 'z') {
+                letters++;
+            } else if (ch >= 'A' && ch <= 'Z') {
+                firstUpper |= letters == 0;
+                letters++;
+                upper++;
+            }
+        }
+        if (upper == 0) {
+            return Shape.LOWER;
+        } else if (upper == letters) {
+            return letters == 1 ? Shape.CAPITALIZED : Shape.UPPER;  // "I" and "A" are capitalized words
+        }
+        return firstUpper && upper == 1 ? Shape.CAPITALIZED : Shape.MIXED;
+    }
+
+    @Override
+    protected void summarizeStats(String className) {
+        for (Shape shape : Shape.values()) {
+            System.out.println(className + ": " + shape + " Word Count = " + shapeCounts.get(shape.ordinal()));
+        }
+    }
+
+    @Override
+    protected void collectStats(Map<String, Object> stats) {
+        for (Shape shape : Shape.values()) {
+            stats.put(shape.name().toLowerCase() + "WordCount", shapeCounts.get(shape.ordinal()));
+        }
+    }
+
+    @Override
+    protected void writeAccumulatedState(DataOutput out) throws IOException {
+        out.writeInt(shapeCounts.length());
+        for (int i = 0; i < shapeCounts.length(); i++) {
+            out.writeLong(shapeCounts.get(i));
+        }
+    }
+
+    @Override
+    protected void mergeAccumulatedState(DataInput in) throws IOException {
+        int shapeCount = in.readInt();
+        if (shapeCount != shapeCounts.length()) {
+            throw new IOException("Expected " + shapeCounts.length() + " word shapes, got " + shapeCount);
+        }
+        for (int i = 0; i < shapeCount; i++) {
+            shapeCounts.addAndGet(i, in.readLong());
+        }
+    }
+
+    /**
+     * @return - number of words with the given shape
+     */
+    public long getWordCount(Shape shape) {
+        return shapeCounts.get(shape.ordinal());
+    }
+}
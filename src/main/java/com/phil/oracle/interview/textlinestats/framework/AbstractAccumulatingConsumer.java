@@ -1,25 +1,35 @@
 package com.phil.oracle.interview.textlinestats.framework;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Collectors;
 
 /**
  * Abstracts common boilerplate away from concrete AccumulatingConsumer implementations
+ * Order-sensitive Accumulators (see Accumulator.isOrderSensitive) get the items in order via a ReorderBuffer, as big as
+ * the buffer - the other Accumulators still get them straight away, on every consumer thread
  *
  * @author Phil
  */
 public abstract class AbstractAccumulatingConsumer<T> implements Consumer<T> {
+    static final int MAX_ITEMS_PER_DRAIN = 8;
+    private static final FlowTracer TRACER = FlowTracer.get();
 
     private final BlockingBuffer<T> buffer;
-    private final List<Accumulator<T>> accumulators;
+    private final List<Accumulator<T>> accumulators;            // the order-insensitive ones
+    private final List<Accumulator<T>> orderedAccumulators;
+    private final ReorderBuffer<T> reorderBuffer;               // null if there are no order-sensitive ones
     private final int threadCount;
 
-    public AbstractAccumulatingConsumer(BlockingBuffer<T> buffer, List<Accumulator<T>> accumulators, int threadCount) {
+    public AbstractAccumulatingConsumer(BlockingBuffer<T> buffer, List<? extends Accumulator<T>> accumulators, int threadCount) {
         this.buffer = buffer;
-        this.accumulators = accumulators;
+        this.accumulators = accumulators.stream().filter(a -> !a.isOrderSensitive()).collect(Collectors.toList());
+        this.orderedAccumulators = accumulators.stream().filter(Accumulator::isOrderSensitive).collect(Collectors.toList());
+        this.reorderBuffer = orderedAccumulators.isEmpty() ? null : new ReorderBuffer<>(buffer.capacity(), this::accumulateInOrder);
         this.threadCount = threadCount;
     }
 
-    public AbstractAccumulatingConsumer(BlockingBuffer<T> buffer, List<Accumulator<T>> accumulators) {
+    public AbstractAccumulatingConsumer(BlockingBuffer<T> buffer, List<? extends Accumulator<T>> accumulators) {
         this(buffer, accumulators, 1);  // single-threaded unless otherwise specified
     }
 
@@ -34,22 +44,44 @@ public abstract class AbstractAccumulatingConsumer<T> implements Consumer<T> {
     }
 
 
+    /**
+     * Takes several items per lock acquisition while there's plenty in the buffer - but no more than a fair share of it,
+     * so the other threads aren't left idle - until the buffer is closed and empty
+     * The items are fed to one Accumulator after the other, so that the time each one takes can be traced (see FlowTracer)
+     * - the order-sensitive ones first, so that the thread holding up the others' items hands them over as soon as can be
+     */
     @Override
     public long consumeFromBuffer(BlockingBuffer<T> buffer) throws InterruptedException {
 
         long itemCount = 0;
-        while (true) {
-            T item = buffer.take();
-            if (item.equals(getStopSignal())) {
-                break;
+        List<T> items = new ArrayList<>(MAX_ITEMS_PER_DRAIN);
+        long sequence;
+        while ((sequence = buffer.drainSequenced(items, Math.max(1, Math.min(MAX_ITEMS_PER_DRAIN, buffer.size() / threadCount)))) >= 0) {
+            // feed the items to all the Accumulators
+            FlowTracer.Span consumed = TRACER.beginBatchConsumed(this);
+            if (reorderBuffer != null) {
+                reorderBuffer.add(sequence, items);
             }
-
-            // feed the item to all the Accumulators
             for (Accumulator<T> accumulator : accumulators) {
-                accumulator.accumulate(item);
+                FlowTracer.Span accumulated = TRACER.beginAccumulate(accumulator);
+                for (T item : items) {
+                    accumulator.accumulate(item);
+                }
+                accumulated.end(items.size());
             }
-            itemCount++;
+            consumed.end(items.size());
+            itemCount += items.size();
+            items.clear();
         }
         return itemCount;
     }
+
+    // called by one thread at a time, in order
+    private void accumulateInOrder(T item) {
+        for (Accumulator<T> accumulator : orderedAccumulators) {
+            FlowTracer.Span accumulated = TRACER.beginAccumulate(accumulator);
+            accumulator.accumulate(item);
+            accumulated.end(1);
+        }
+    }
 }
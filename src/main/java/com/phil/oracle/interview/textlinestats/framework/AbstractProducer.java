@@ -1,5 +1,7 @@
 package com.phil.oracle.interview.textlinestats.framework;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * Defines an operational framework for the produce/signalCompletion sequence within run()
  * Abstracts common boilerplate away from concrete implementations
@@ -9,14 +11,12 @@ package com.phil.oracle.interview.textlinestats.framework;
 
 public abstract class AbstractProducer<T> implements Producer<T> {
     private final int threadCount;          // the producer's thread count
-
-    // these 3 are set from the consumer
     private final BlockingBuffer<T> buffer; // shared buffer with the consumer
-    private final int consumerThreadCount;  // number of stop signals (poison pills) to put into buffer at the end
-    private final T consumerStopSignal;     // special object for the consumer to stop
+
+    private final AtomicInteger finishedThreadCount = new AtomicInteger(0);
 
     /**
-     * Shared values from the consumer are initialized in the constructor
+     * The buffer shared with the consumer is initialized in the constructor
      *
      * @param threadCount - the Producer's thread count
      * @param consumer    - the initialized Consumer
@@ -24,8 +24,6 @@ public abstract class AbstractProducer<T> implements Producer<T> {
     public AbstractProducer(int threadCount, Consumer<T> consumer) {
         this.threadCount = threadCount;
         this.buffer = consumer.getBuffer();
-        this.consumerThreadCount = consumer.getThreadCount();
-        this.consumerStopSignal = consumer.getStopSignal();
     }
 
     /**
@@ -48,10 +46,10 @@ public abstract class AbstractProducer<T> implements Producer<T> {
     }
 
     @Override
-    public void signalCompletion() throws InterruptedException {
-        // add a poison pill per consumer thread to the buffer
-        for (int i = 0; i < consumerThreadCount; i++) {
-            buffer.put(consumerStopSignal);
+    public void signalCompletion() {
+        // the last thread out closes the buffer, which wakes up every consumer thread
+        if (finishedThreadCount.incrementAndGet() == threadCount) {
+            buffer.close();
         }
     }
 }
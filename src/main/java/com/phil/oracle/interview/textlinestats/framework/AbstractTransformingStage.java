@@ -0,0 +1,95 @@
+package com.phil.oracle.interview.textlinestats.framework;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An intermediate pipeline stage: consumes items from its own buffer, transforms each of them, and produces the results
+ * to the buffer of the next stage downstream. Has its own thread count, independent of its neighbours
+ * To its upstream Producer (or stage) it is just a Consumer; downstream, it signals completion the way a Producer does,
+ * by closing the downstream buffer
+ * Items get transformed concurrently, so they go downstream in no particular order - unless the stage is to preserve it
+ * (see preserveOrder), for order-sensitive Accumulators downstream
+ *
+ * @param <I> - the type of items consumed from this stage's buffer
+ * @param <O> - the type of items produced to the downstream buffer
+ * @author Phil
+ */
+public abstract class AbstractTransformingStage<I, O> implements Consumer<I> {
+
+    private final BlockingBuffer<I> buffer;
+    private final int threadCount;
+
+    private final BlockingBuffer<O> downstreamBuffer;   // set from the downstream consumer
+    private ReorderBuffer<O> reorderBuffer;             // puts the items downstream in order, if set
+
+    private final AtomicInteger finishedThreadCount = new AtomicInteger(0);
+    private static final FlowTracer TRACER = FlowTracer.get();
+
+    /**
+     * @param buffer      - this stage's own buffer
+     * @param threadCount - this stage's thread count
+     * @param downstream  - the initialized downstream Consumer (or stage)
+     */
+    public AbstractTransformingStage(BlockingBuffer<I> buffer, int threadCount, Consumer<O> downstream) {
+        this.buffer = buffer;
+        this.threadCount = threadCount;
+        this.downstreamBuffer = downstream.getBuffer();
+    }
+
+    /**
+     * For concrete realizations to implement - called in parallel by all of this stage's threads, so it has to be
+     * thread-safe. Ideally it is a pure function of the input item
+     *
+     * @param item - an item consumed from this stage's buffer
+     * @return - the item to produce downstream
+     */
+    protected abstract O transform(I item);
+
+    /**
+     * Makes the stage put the transformed items downstream in the order it got them - to be called before running
+     */
+    public void preserveOrder() {
+        reorderBuffer = new ReorderBuffer<>(buffer.capacity(), downstreamBuffer::put);
+    }
+
+    @Override
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    @Override
+    public BlockingBuffer<I> getBuffer() {
+        return buffer;
+    }
+
+    @Override
+    public long consumeFromBuffer(BlockingBuffer<I> buffer) throws InterruptedException {
+        long itemCount = 0;
+        List<I> items = new ArrayList<>(1);
+        try {
+            long sequence;
+            while ((sequence = buffer.drainSequenced(items, 1)) >= 0) {
+                FlowTracer.Span consumed = TRACER.beginBatchConsumed(this);
+                O transformed = transform(items.get(0));
+                if (reorderBuffer != null) {
+                    reorderBuffer.add(sequence, Collections.singletonList(transformed));
+                } else {
+                    downstreamBuffer.put(transformed);
+                }
+                consumed.end(1);
+                items.clear();
+                itemCount++;
+            }
+        } finally {
+            // the last thread out closes the downstream buffer - even if interrupted, so that nothing waits on it
+            // (in order, every item is downstream by then too: a thread handing items over only leaves once it's done)
+            if (finishedThreadCount.incrementAndGet() == threadCount) {
+                downstreamBuffer.close();
+            }
+        }
+        return itemCount;
+    }
+}
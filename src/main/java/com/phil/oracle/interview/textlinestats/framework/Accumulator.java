@@ -1,5 +1,8 @@
 package com.phil.oracle.interview.textlinestats.framework;
 
+import java.util.Collections;
+import java.util.Map;
+
 /**
  * A very simple interface for accumulating and summarizing various statistics over a list of of input items
  *
@@ -20,4 +23,25 @@ public interface Accumulator<T> {
      * There are no concurrency considerations here (furthermore, there is no good reason to mutate any state here)
      */
     void summarize();
+
+    /**
+     * Implementations should expose the summarized statistics as name/value pairs here (e.g. for JSON output)
+     * Same as summarize(), there are no concurrency considerations here
+     *
+     * @return - statistic names mapped to their values (numbers, strings, or nested maps/lists of those)
+     */
+    default Map<String, Object> getStatistics() {
+        return Collections.emptyMap();
+    }
+
+    /**
+     * Implementations whose statistics depend on the position of the input items (e.g. runs of repeated lines) return
+     * true here: they're then fed the items one at a time, in the order they were produced (see ReorderBuffer) - while
+     * the others get them in whatever order consumer threads happen to take them, concurrently
+     *
+     * @return - whether the items have to be accumulated in order
+     */
+    default boolean isOrderSensitive() {
+        return false;
+    }
 }
@@ -1,8 +1,15 @@
 package com.phil.oracle.interview.textlinestats.framework;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.IntStream;
 
 /**
@@ -11,6 +18,12 @@ import java.util.stream.IntStream;
  * @author Phil
  */
 public final class AsyncFlowOrchestrator {
+    // run phases, as traced (see FlowTracer)
+    static final String PRODUCER_CONSUMER_FLOW = "producer-consumer";
+    static final String INLINE_FLOW = "inline";
+    static final String PIPELINE_FLOW = "pipeline";
+    static final String PRODUCE_PHASE = "produce";
+    static final String DRAIN_PHASE = "drain";
 
     private AsyncFlowOrchestrator() {/* No instantiation or extension for utility class */ }
 
@@ -28,6 +41,91 @@ public final class AsyncFlowOrchestrator {
         return awaitCompletion(maxMillisToRun, producerExecutor, consumerExecutor);       // wait for completion as configured
     }
 
+    /**
+     * Same as above, but runs on long-lived thread pools owned by the caller, which are left running for the next flow
+     * Each pool needs at least as many threads as the Producer/Consumer it runs, or the flow will not complete
+     * Stragglers cancelled on a timeout or failure are waited for, so the pools and buffers can be reused right away
+     *
+     * @param maxMillisToRun   - maximum milliseconds to wait for completion before interrupting
+     * @param producer         - the (Runnable) Producer
+     * @param consumer         - the (Runnable) Consumer
+     * @param producerExecutor - the thread pool to run the Producer on
+     * @param consumerExecutor - the thread pool to run the Consumer on
+     * @return - total milliseconds taken for the run
+     * @throws IllegalStateException - if the Producer or Consumer failed, with the failure as the cause
+     */
+    public static long runProducerConsumer(long maxMillisToRun, Producer<?> producer, Consumer<?> consumer,
+                                           ExecutorService producerExecutor, ExecutorService consumerExecutor) {
+        long start = System.nanoTime();
+        FlowTracer.Span phase = FlowTracer.get().beginPhase(PRODUCER_CONSUMER_FLOW, PRODUCE_PHASE);
+        SubmittedTasks consumerTasks = new SubmittedTasks(consumer, consumer.getThreadCount(), consumerExecutor);
+        SubmittedTasks producerTasks = new SubmittedTasks(producer, producer.getThreadCount(), producerExecutor);
+
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(maxMillisToRun);
+        try {
+            producerTasks.await(deadline);  // block on producer first
+        } catch (IllegalStateException e) {
+            consumerTasks.cancel();  // no point in draining a failed run
+            throw e;
+        } finally {
+            phase.end(0);
+        }
+        phase = FlowTracer.get().beginPhase(PRODUCER_CONSUMER_FLOW, DRAIN_PHASE);
+        consumerTasks.await(deadline);  // block on consumer for remainder
+        phase.end(0);
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    /**
+     * Runs a Producer to completion and then its Consumer, both on the calling thread - no thread pools, no waiting
+     * Meant for inputs small enough that the threading overhead would dwarf the actual work: the Consumer's buffer
+     * has to be able to hold everything produced, or the Producer will block forever
+     * Multi-stage pipelines (see runPipeline) work the same way, the stages run one after the other in order
+     *
+     * @param producer - the (Runnable) Producer
+     * @param stages   - the (Runnable) Consumer, or the pipeline's stages in flow order
+     * @return - total milliseconds taken for the run
+     */
+    public static long runInline(Producer<?> producer, Consumer<?>... stages) {
+        long start = System.nanoTime();
+        FlowTracer.Span phase = FlowTracer.get().beginPhase(INLINE_FLOW, PRODUCE_PHASE);
+        IntStream.range(0, producer.getThreadCount()).forEach(i -> producer.run());
+        phase.end(0);
+        for (Consumer<?> stage : stages) {
+            phase = FlowTracer.get().beginPhase(INLINE_FLOW, DRAIN_PHASE + " " + stage.getClass().getSimpleName());
+            IntStream.range(0, stage.getThreadCount()).forEach(i -> stage.run()); // the last "thread" closes downstream
+            phase.end(0);
+        }
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    /**
+     * Runs a multi-stage pipeline asynchronously: Producer -> transforming stage(s) -> Consumer, each stage on its own
+     * thread pool, and waits up to the specified timeout for completion, upstream to downstream
+     *
+     * @param maxMillisToRun - maximum milliseconds to wait for completion before interrupting
+     * @param producer       - the (Runnable) Producer
+     * @param stages         - the (Runnable) stages in flow order, e.g. AbstractTransformingStage(s), then a Consumer
+     * @return - total milliseconds taken for the run
+     */
+    public static long runPipeline(long maxMillisToRun, Producer<?> producer, Consumer<?>... stages) {
+        List<ExecutorService> stageExecutors = new ArrayList<>(stages.length);
+        for (int i = stages.length - 1; i >= 0; i--) {  // start downstream first, so nothing waits on a missing stage
+            stageExecutors.add(0, runAsync(stages[i], stages[i].getThreadCount()));
+        }
+        FlowTracer.Span phase = FlowTracer.get().beginPhase(PIPELINE_FLOW, PRODUCE_PHASE);
+        ExecutorService producerExecutor = runAsync(producer, producer.getThreadCount());
+
+        long millisWaited = awaitCompletion(maxMillisToRun, producerExecutor);  // block on producer first
+        phase.end(0);
+        for (int i = 0; i < stages.length; i++) {  // then on each stage for the remainder
+            phase = FlowTracer.get().beginPhase(PIPELINE_FLOW, DRAIN_PHASE + " " + stages[i].getClass().getSimpleName());
+            millisWaited += awaitCompletion(Math.max(0, maxMillisToRun - millisWaited), stageExecutors.get(i));
+            phase.end(0);
+        }
+        return millisWaited;
+    }
+
     /**
      * Executes a Runnable asynchronously on a newFixedThreadPool with the specified threadCount
      *
@@ -50,10 +148,14 @@ public final class AsyncFlowOrchestrator {
      * @return - total milliseconds taken for the run
      */
     private static long awaitCompletion(long maxMillisToRun, ExecutorService producerExecutor, ExecutorService consumerExecutor) {
+        FlowTracer.Span phase = FlowTracer.get().beginPhase(PRODUCER_CONSUMER_FLOW, PRODUCE_PHASE);
         long producerMillisWaited = awaitCompletion(maxMillisToRun, producerExecutor);  // block on producer first
+        phase.end(0);
 
+        phase = FlowTracer.get().beginPhase(PRODUCER_CONSUMER_FLOW, DRAIN_PHASE);
         long remainingMillis = Math.max(0, maxMillisToRun - producerMillisWaited);
         long consumerMillisWaited = awaitCompletion(remainingMillis, consumerExecutor); // block on consumer for remainder
+        phase.end(0);
         return producerMillisWaited + consumerMillisWaited;
     }
 
@@ -77,4 +179,77 @@ public final class AsyncFlowOrchestrator {
         }
         return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
     }
+
+    /**
+     * A Runnable submitted to an existing ExecutorService the specified number of times - unlike its Futures, it can be
+     * waited for once cancelled, until none of its threads is running it any longer
+     */
+    private static final class SubmittedTasks {
+        private final List<Future<?>> futures;
+        private final AtomicInteger runningCount = new AtomicInteger(0);
+        private volatile boolean cancelled;
+
+        /**
+         * @param runnable        - the Runnable to execute
+         * @param threadCount     - how many threads to execute the Runnable on
+         * @param executorService - the thread pool to execute on
+         */
+        SubmittedTasks(Runnable runnable, int threadCount, ExecutorService executorService) {
+            futures = new ArrayList<>(threadCount);
+            IntStream.range(0, threadCount).forEach(i -> futures.add(executorService.submit(() -> {
+                runningCount.incrementAndGet();
+                try {
+                    if (!cancelled) {   // starting as it got cancelled, too late for its Future to stop it
+                        runnable.run();
+                    }
+                } finally {
+                    if (runningCount.decrementAndGet() == 0) {
+                        synchronized (this) {
+                            notifyAll();
+                        }
+                    }
+                }
+            })));
+        }
+
+        /**
+         * Blocking call to await execution of the tasks until the deadline, cancelling (interrupting) any stragglers
+         *
+         * @param deadlineNanos - System.nanoTime() value to give up at
+         * @throws IllegalStateException - if a task failed, with its failure as the cause (once the others are cancelled)
+         */
+        void await(long deadlineNanos) {
+            try {
+                for (Future<?> future : futures) {
+                    future.get(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+                }
+            } catch (InterruptedException e) {
+                System.out.println(AsyncFlowOrchestrator.class.getSimpleName() + " was interrupted!");
+                Thread.currentThread().interrupt();  // restore the interrupt
+            } catch (TimeoutException | CancellationException e) {
+                // ran out of time - same as awaitTermination timing out, stragglers get interrupted
+            } catch (ExecutionException e) {  // the stragglers still get cancelled first, see finally
+                throw new IllegalStateException("Task failed: " + e.getCause(), e.getCause());
+            } finally {
+                cancel();
+            }
+        }
+
+        /**
+         * Cancels (interrupts) the tasks still running, and waits for them to stop - unless interrupted
+         */
+        void cancel() {
+            cancelled = true;
+            futures.forEach(future -> future.cancel(true));
+            synchronized (this) {
+                try {
+                    while (runningCount.get() > 0) {
+                        wait();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();  // restore the interrupt
+                }
+            }
+        }
+    }
 }
@@ -1,20 +1,35 @@
 package com.phil.oracle.interview.textlinestats.framework;
 
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
- * A simple wrapper (aka decorator) of a FIFO BlockingQueue containing objects of any given type T
+ * A bounded FIFO buffer containing objects of any given type T, which can be closed
  * Buffer provides a thread-safe communications and throttling medium between concurrent Producer(s) and Consumers
+ * Items can be put and taken in bulk (see putAll and drainTo), i.e. several of them per lock acquisition, and closing
+ * the buffer wakes up every thread waiting on it: consumers drain what's left, and stop once it's empty - so the
+ * producer doesn't need to know how many consumer threads there are
+ * Items come out in the order they were put, so they're numbered as they're taken (see drainSequenced): the number of an
+ * item is its position in the producer's order, whatever consumer thread gets it
  *
  * @author Phil
  */
 public class BlockingBuffer<T> {
-    private final BlockingQueue<T> queue;
+    private static final FlowTracer TRACER = FlowTracer.get();   // stalls, i.e. waiting for room or for items
+
+    private final ArrayDeque<T> queue = new ArrayDeque<>();
+    private final int capacity;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private boolean closed;     // guarded by the lock
+    private long takenCount;    // same, the sequence number of the next item to be taken
 
     // should not be instantiated by clients directly
     private BlockingBuffer(int size) {
-        queue = new LinkedBlockingQueue<>(size);  // LinkedBlockingQueue has been proven to perform well in this context
+        capacity = size;
     }
 
     /**
@@ -35,32 +50,205 @@ public class BlockingBuffer<T> {
      * Put an item into the buffer. If the buffer is at maximum capacity, the call will block
      *
      * @param item - the item to add (to the tail of the queue)
+     * @throws IllegalStateException - if the buffer is closed
      */
     public void put(T item) throws InterruptedException {
-        queue.put(item);
+        lock.lockInterruptibly();
+        try {
+            awaitRoom();
+            queue.addLast(item);
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Put all the items into the buffer, in order - as many at a time as there's room for, blocking until there's more
+     *
+     * @param items - the items to add (to the tail of the queue)
+     * @throws IllegalStateException - if the buffer is closed
+     */
+    public void putAll(Collection<? extends T> items) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            for (T item : items) {
+                if (queue.size() == capacity) {
+                    notEmpty.signalAll();   // let the consumers at what's in there while waiting
+                }
+                awaitRoom();
+                queue.addLast(item);
+            }
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
-     * Take the first item out of the buffer. If the buffer is empty, the call will block
+     * Take the first item out of the buffer. If the buffer is empty, the call will block until it isn't, or is closed
      *
-     * @return - the item taken out (from the head of the queue)
+     * @return - the item taken out (from the head of the queue), or null if the buffer is closed and empty
      */
     public T take() throws InterruptedException {
-        return queue.take();
+        lock.lockInterruptibly();
+        try {
+            awaitItems();
+            T item = queue.pollFirst();
+            if (item != null) {
+                takenCount++;
+                notFull.signal();
+            }
+            return item;
+        } finally {
+            lock.unlock();
+        }
+    }
 
+    /**
+     * Take up to maxItems items out of the buffer at once. If the buffer is empty, the call will block until it isn't,
+     * or is closed
+     *
+     * @param target   - where to add the items taken out (from the head of the queue), in order
+     * @param maxItems - maximum number of items to take, at least 1
+     * @return - number of items taken, 0 only if the buffer is closed and empty
+     */
+    public int drainTo(Collection<? super T> target, int maxItems) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            return drain(target, maxItems);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Same as drainTo, but tells where the items taken were in the order they were put, e.g. for them to be put back in
+     * that order later on (see ReorderBuffer) - the items taken are numbered on from the one returned
+     *
+     * @param target   - where to add the items taken out (from the head of the queue), in order
+     * @param maxItems - maximum number of items to take, at least 1
+     * @return - sequence number of the first item taken (0 for the first item put), -1 only if the buffer is closed
+     * and empty
+     */
+    public long drainSequenced(Collection<? super T> target, int maxItems) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            int count = drain(target, maxItems);  // may have waited for items, others taking theirs meanwhile
+            return count > 0 ? takenCount - count : -1;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Closes the buffer: nothing more can be put into it, and every thread waiting to take from it wakes up - the items
+     * still in it can be taken as usual, then take and drainTo return straight away. Closing it again does nothing
+     */
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            notEmpty.signalAll();
+            notFull.signalAll();    // producers waiting for room fail
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return - whether the buffer is closed (it may still have items in it)
+     */
+    public boolean isClosed() {
+        lock.lock();
+        try {
+            return closed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Discards everything in the buffer, and reopens it if closed (numbering starts over), e.g. leftovers of an interrupted run before the
+     * buffer gets reused
+     */
+    public void clear() {
+        lock.lock();
+        try {
+            queue.clear();
+            closed = false;
+            takenCount = 0;
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
      * @return - current buffer size
      */
     public int size() {
-        return queue.size();
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return - maximum number of items in the buffer, as instantiated
+     */
+    public int capacity() {
+        return capacity;
     }
 
     /**
      * @return - buffer is empty or not
      */
     public boolean isEmpty() {
-        return queue.isEmpty();
+        return size() == 0;
+    }
+
+    // with the lock held
+    private int drain(Collection<? super T> target, int maxItems) throws InterruptedException {
+        if (maxItems < 1) {
+            throw new UnsupportedOperationException("At least one item has to be taken!");
+        }
+        awaitItems();
+        int count = 0;
+        for (; count < maxItems && !queue.isEmpty(); count++) {
+            target.add(queue.pollFirst());
+        }
+        if (count > 0) {
+            takenCount += count;
+            notFull.signalAll();
+        }
+        return count;
+    }
+
+    // with the lock held
+    private void awaitItems() throws InterruptedException {
+        if (queue.isEmpty() && !closed) {
+            FlowTracer.Span stall = TRACER.beginBufferStall(false, capacity);
+            while (queue.isEmpty() && !closed) {
+                notEmpty.await();
+            }
+            stall.end(queue.size());
+        }
+    }
+
+    // with the lock held
+    private void awaitRoom() throws InterruptedException {
+        if (queue.size() == capacity && !closed) {
+            FlowTracer.Span stall = TRACER.beginBufferStall(true, capacity);
+            while (queue.size() == capacity && !closed) {
+                notFull.await();
+            }
+            stall.end(queue.size());
+        }
+        if (closed) {
+            throw new IllegalStateException("The buffer is closed!");
+        }
     }
 }
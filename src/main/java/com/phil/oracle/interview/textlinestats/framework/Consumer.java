@@ -4,7 +4,7 @@ import java.util.concurrent.TimeUnit;
 
 /**
  * The Consumer is a Runnable that shares a BlockingBuffer with the Producer and consumes from the Bufferr
- * It also needs to expose its thread count and a poison pill of choice to the Producer
+ * It also needs to expose its thread count, and consumes until the Producer closes the Buffer
   *
  * @param <T> - the type of objects that will be consumed from the Buffer
  *
@@ -23,11 +23,6 @@ public interface Consumer<T> extends Runnable {
      */
     BlockingBuffer<T> getBuffer();
 
-    /**
-     * @return - the Consumer's stop signal (aka poison pill)
-     */
-    T getStopSignal();
-
     @Override
     default void run() {
         long start = System.nanoTime();
@@ -0,0 +1,233 @@
+package com.phil.oracle.interview.textlinestats.framework;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A Consumer which broadcasts every item to a buffer per Accumulator (a branch), each consumed by threads of its own -
+ * so that an expensive Accumulator can get more threads, and doesn't hold back the cheap ones (as it does when every
+ * thread feeds every Accumulator, see AbstractAccumulatingConsumer). Items are shared by reference, not copied, so
+ * Accumulators must not modify them
+ * One of the threads is the dispatcher, the others are spread over the branches - either as given, or in proportion to
+ * the time each Accumulator takes: the dispatcher feeds the first CALIBRATION_ITEMS items to every Accumulator itself,
+ * timing them, before the branch threads get assigned (see allocateThreads)
+ * The slowest branch throttles the dispatcher once its buffer is full, as any consumer throttles its producer
+ * Order-sensitive Accumulators (see Accumulator.isOrderSensitive) get the items of their branch in order, via a
+ * ReorderBuffer - so more than one thread on their branch only helps with taking the items
+ * An instance is good for one run
+ *
+ * @author Phil
+ */
+public class FanOutConsumer<T> implements Consumer<T> {
+    public static final int CALIBRATION_ITEMS = 16;
+    private static final FlowTracer TRACER = FlowTracer.get();
+
+    private final BlockingBuffer<T> buffer;
+    private final List<? extends Accumulator<T>> accumulators;
+    private final List<BlockingBuffer<T>> branchBuffers = new ArrayList<>();
+    private final List<ReorderBuffer<T>> reorderBuffers = new ArrayList<>();   // null for order-insensitive branches
+    private final int branchThreadCount;
+
+    private final AtomicInteger nextThread = new AtomicInteger(0);
+    private final CountDownLatch allocated = new CountDownLatch(1);
+    private volatile int[] branchThreadCounts;   // set once allocated
+
+    /**
+     * Sizes the branches from the measured cost of each Accumulator
+     *
+     * @param buffer            - the buffer to consume from, the branch buffers get the same capacity
+     * @param accumulators      - the Accumulators, one branch each
+     * @param branchThreadCount - number of threads to spread over the branches, at least one per branch
+     */
+    public FanOutConsumer(BlockingBuffer<T> buffer, List<? extends Accumulator<T>> accumulators, int branchThreadCount) {
+        if (accumulators.isEmpty() || branchThreadCount < accumulators.size()) {
+            throw new UnsupportedOperationException("Every Accumulator needs a thread of its own!");
+        }
+        this.buffer = buffer;
+        this.accumulators = accumulators;
+        this.branchThreadCount = branchThreadCount;
+        for (Accumulator<T> accumulator : accumulators) {
+            branchBuffers.add(BlockingBuffer.instance(buffer.capacity()));
+            reorderBuffers.add(accumulator.isOrderSensitive()
+                    ? new ReorderBuffer<>(buffer.capacity(), accumulator::accumulate) : null);
+        }
+    }
+
+    /**
+     * With the thread count of every branch given up front - no calibration
+     *
+     * @param branchThreadCounts - number of threads of each Accumulator's branch, in order, at least one each
+     */
+    public FanOutConsumer(BlockingBuffer<T> buffer, List<? extends Accumulator<T>> accumulators, int[] branchThreadCounts) {
+        this(buffer, accumulators, Arrays.stream(branchThreadCounts).sum());
+        if (branchThreadCounts.length != accumulators.size() || Arrays.stream(branchThreadCounts).anyMatch(c -> c < 1)) {
+            throw new UnsupportedOperationException("Every Accumulator needs a thread count of at least one!");
+        }
+        this.branchThreadCounts = branchThreadCounts.clone();
+        allocated.countDown();
+    }
+
+    /**
+     * @return - the dispatcher thread, plus the threads of all the branches
+     */
+    @Override
+    public int getThreadCount() {
+        return 1 + branchThreadCount;
+    }
+
+    @Override
+    public BlockingBuffer<T> getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * @return - number of threads of each Accumulator's branch, in order, null until they're allocated
+     */
+    public int[] getBranchThreadCounts() {
+        int[] counts = branchThreadCounts;
+        return counts == null ? null : counts.clone();
+    }
+
+    /**
+     * The first thread in becomes the dispatcher, the others consume from the branches - a thread is assigned to a
+     * branch once the threads are allocated
+     */
+    @Override
+    public long consumeFromBuffer(BlockingBuffer<T> buffer) throws InterruptedException {
+        int thread = nextThread.getAndIncrement() % getThreadCount();
+        if (thread == 0) {
+            return dispatch(buffer);
+        }
+        allocated.await();
+        int[] counts = branchThreadCounts;
+        int branch = 0;
+        for (int threads = counts[0]; thread > threads; threads += counts[branch]) {
+            branch++;
+        }
+        return consumeBranch(branch);
+    }
+
+    /**
+     * Spreads threads over branches in proportion to their costs, with at least one thread per branch - whatever is left
+     * after rounding down goes to the branches furthest under their share
+     *
+     * @param costs       - relative cost of each branch, e.g. nanoseconds taken for the same items
+     * @param threadCount - number of threads to spread, at least one per branch
+     * @return - number of threads of each branch
+     */
+    public static int[] allocateThreads(long[] costs, int threadCount) {
+        if (threadCount < costs.length) {
+            throw new UnsupportedOperationException("Every branch needs a thread of its own!");
+        }
+        double totalCost = Arrays.stream(costs).map(cost -> Math.max(cost, 1)).sum();
+        double[] shares = new double[costs.length];   // ideal (fractional) thread counts
+        int[] counts = new int[costs.length];
+        int allocated = 0;
+        for (int i = 0; i < costs.length; i++) {
+            shares[i] = threadCount * Math.max(costs[i], 1) / totalCost;
+            counts[i] = Math.max(1, (int) shares[i]);
+            allocated += counts[i];
+        }
+        for (; allocated > threadCount; allocated--) {   // the minimum of one pushed it over, take from the most over
+            int most = -1;
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] > 1 && (most < 0 || counts[i] - shares[i] > counts[most] - shares[most])) {
+                    most = i;
+                }
+            }
+            counts[most]--;
+        }
+        for (; allocated < threadCount; allocated++) {   // the leftovers go to the most under
+            int most = 0;
+            for (int i = 1; i < counts.length; i++) {
+                most = shares[i] - counts[i] > shares[most] - counts[most] ? i : most;
+            }
+            counts[most]++;
+        }
+        return counts;
+    }
+
+    /**
+     * Calibrates (unless the threads were given), then puts every item into every branch buffer, until the buffer is
+     * closed and empty - and closes the branch buffers, even if interrupted, so that nothing waits on them
+     */
+    private long dispatch(BlockingBuffer<T> buffer) throws InterruptedException {
+        long itemCount = 0;
+        List<T> items = new ArrayList<>(AbstractAccumulatingConsumer.MAX_ITEMS_PER_DRAIN);
+        try {
+            if (branchThreadCounts == null) {
+                itemCount = calibrate(buffer);
+            }
+            while (buffer.drainTo(items, AbstractAccumulatingConsumer.MAX_ITEMS_PER_DRAIN) > 0) {
+                FlowTracer.Span consumed = TRACER.beginBatchConsumed(this);
+                for (BlockingBuffer<T> branchBuffer : branchBuffers) {
+                    branchBuffer.putAll(items);
+                }
+                consumed.end(items.size());
+                itemCount += items.size();
+                items.clear();
+            }
+        } finally {
+            if (branchThreadCounts == null) {   // interrupted while calibrating, the branch threads just need to finish
+                branchThreadCounts = allocateThreads(new long[accumulators.size()], branchThreadCount);
+            }
+            allocated.countDown();
+            branchBuffers.forEach(BlockingBuffer::close);
+        }
+        return itemCount;
+    }
+
+    /**
+     * Feeds the first items to every Accumulator on the dispatcher thread, and allocates the branch threads by the time
+     * each one took
+     *
+     * @return - number of items accumulated
+     */
+    private long calibrate(BlockingBuffer<T> buffer) throws InterruptedException {
+        long[] costs = new long[accumulators.size()];
+        long itemCount = 0;
+        for (T item; itemCount < CALIBRATION_ITEMS && (item = buffer.take()) != null; itemCount++) {
+            for (int i = 0; i < costs.length; i++) {
+                long start = System.nanoTime();
+                accumulators.get(i).accumulate(item);
+                costs[i] += System.nanoTime() - start;
+            }
+        }
+        branchThreadCounts = allocateThreads(costs, branchThreadCount);
+        allocated.countDown();
+        System.out.println(getClass().getSimpleName() + ": Branch threads " + Arrays.toString(branchThreadCounts)
+                + " for accumulation costs " + Arrays.toString(costs) + "ns");
+        return itemCount;
+    }
+
+    /**
+     * Same as AbstractAccumulatingConsumer, for a single Accumulator - the items are already shared by all the threads
+     * of the branch, so they take their fair share of them at most
+     */
+    private long consumeBranch(int branch) throws InterruptedException {
+        BlockingBuffer<T> branchBuffer = branchBuffers.get(branch);
+        Accumulator<T> accumulator = accumulators.get(branch);
+        int threads = branchThreadCounts[branch];
+        long itemCount = 0;
+        List<T> items = new ArrayList<>(AbstractAccumulatingConsumer.MAX_ITEMS_PER_DRAIN);
+        long sequence;
+        while ((sequence = branchBuffer.drainSequenced(items, Math.max(1, Math.min(AbstractAccumulatingConsumer.MAX_ITEMS_PER_DRAIN,
+                branchBuffer.size() / threads)))) >= 0) {
+            FlowTracer.Span accumulated = TRACER.beginAccumulate(accumulator);
+            if (reorderBuffers.get(branch) != null && threads > 1) {
+                reorderBuffers.get(branch).add(sequence, items);
+            } else {    // a single thread takes the items in order anyway
+                for (T item : items) {
+                    accumulator.accumulate(item);
+                }
+            }
+            accumulated.end(items.size());
+            itemCount += items.size();
+            items.clear();
+        }
+        return itemCount;
+    }
+}
@@ -0,0 +1,114 @@
+package com.phil.oracle.interview.textlinestats.framework;
+
+/**
+ * Tracing hooks of the flow: batches produced and consumed (with a span per accumulator), buffer stalls and run phases
+ * - as Java Flight Recorder events, so that a recording lines them up with GC pauses, I/O and everything else
+ * The JFR events (JfrFlowTracer) live in the multi-release path (META-INF/versions/16) and are loaded reflectively, same
+ * as the Vector API kernel - on Java 8, or with -Dtextlinestats.jfr=false, nothing is traced
+ * Near-zero cost when not recording: begin checks whether the event is enabled, and hands out the shared no-op span if
+ * it's not - no allocation, no timestamps
+ *
+ * @author Phil
+ */
+public abstract class FlowTracer {
+    public static final String JFR_PROPERTY = "textlinestats.jfr";
+    public static final Span NO_SPAN = count -> { };
+
+    // only present in the multi-release jar (META-INF/versions/16), hence loaded reflectively
+    private static final String JFR_TRACER_CLASS = "com.phil.oracle.interview.textlinestats.framework.JfrFlowTracer";
+    private static final FlowTracer TRACER = load(Boolean.parseBoolean(System.getProperty(JFR_PROPERTY, "true")));
+
+    /**
+     * A traced span of time, begun by one of the begin methods - to be ended on the same thread
+     */
+    public interface Span {
+        /**
+         * @param count - number of items (lines, chunks...) the span covers, or the buffer size for stalls
+         */
+        void end(long count);
+    }
+
+    /**
+     * @return - the tracer selected at startup
+     */
+    public static FlowTracer get() {
+        return TRACER;
+    }
+
+    /**
+     * From reading the first line of a batch to putting the batch into the buffer
+     *
+     * @param producer - the producer, for its class name
+     */
+    public abstract Span beginBatchProduced(Object producer);
+
+    /**
+     * From taking a batch out of the buffer to having fed it to every accumulator
+     *
+     * @param consumer - the consumer, for its class name
+     */
+    public abstract Span beginBatchConsumed(Object consumer);
+
+    /**
+     * Feeding a batch to a single accumulator, nested within the consumed batch - the breakdown per accumulator
+     *
+     * @param accumulator - the accumulator, for its class name
+     */
+    public abstract Span beginAccumulate(Object accumulator);
+
+    /**
+     * A thread waiting on the buffer, for room to put (full) or for items to take (empty)
+     *
+     * @param full     - whether it's waiting for room, rather than for items
+     * @param capacity - of the buffer
+     */
+    public abstract Span beginBufferStall(boolean full, int capacity);
+
+    /**
+     * A phase of a run, e.g. producing, or draining what's left once the producer is done
+     *
+     * @param flow  - the kind of run, e.g. producer-consumer
+     * @param phase - the phase
+     */
+    public abstract Span beginPhase(String flow, String phase);
+
+    /**
+     * @param enabled - whether to trace at all
+     * @return - the JFR tracer, or the no-op one if disabled, on Java 8, or without the jdk.jfr module
+     */
+    static FlowTracer load(boolean enabled) {
+        if (enabled) {
+            try {
+                return (FlowTracer) Class.forName(JFR_TRACER_CLASS).getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                // no JFR here
+            }
+        }
+        return new FlowTracer() {
+            @Override
+            public Span beginBatchProduced(Object producer) {
+                return NO_SPAN;
+            }
+
+            @Override
+            public Span beginBatchConsumed(Object consumer) {
+                return NO_SPAN;
+            }
+
+            @Override
+            public Span beginAccumulate(Object accumulator) {
+                return NO_SPAN;
+            }
+
+            @Override
+            public Span beginBufferStall(boolean full, int capacity) {
+                return NO_SPAN;
+            }
+
+            @Override
+            public Span beginPhase(String flow, String phase) {
+                return NO_SPAN;
+            }
+        };
+    }
+}
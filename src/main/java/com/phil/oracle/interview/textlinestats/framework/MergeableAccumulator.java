@@ -0,0 +1,30 @@
+package com.phil.oracle.interview.textlinestats.framework;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * An Accumulator whose accumulated state can be serialized, and merged into another instance of the same class
+ * e.g. accumulated by worker processes over parts of the input, then merged by a coordinator (see ScaleOutCoordinator),
+ * or saved per input file and merged later on (see StatsSnapshot)
+ *
+ * @param <T> - the type of input items this accumulator will be processing
+ * @author Phil
+ */
+public interface MergeableAccumulator<T> extends Accumulator<T> {
+    /**
+     * Expected to be called after accumulation is done
+     *
+     * @param out - where to write the accumulated state
+     */
+    void writeState(DataOutput out) throws IOException;
+
+    /**
+     * Adds state written by writeState of another instance to this one's - as if this one had accumulated its input too
+     * Not expected to be called concurrently with accumulate
+     *
+     * @param in - where to read the state from
+     */
+    void mergeState(DataInput in) throws IOException;
+}
@@ -54,7 +54,7 @@ public interface Producer<T> extends Runnable {
     long produceToBuffer(BlockingBuffer<T> buffer) throws InterruptedException;
 
     /**
-     * For concrete realizations to implement - poison pill per consumer thread
+     * For concrete realizations to implement - closes the buffer once done (see BlockingBuffer.close)
      */
     void signalCompletion() throws InterruptedException;
 
@@ -0,0 +1,129 @@
+package com.phil.oracle.interview.textlinestats.framework;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Puts items taken out of order by several threads back in order (see BlockingBuffer.drainSequenced), and hands them
+ * over to a sink one at a time, in order - for whatever depends on the position of the items in the input, e.g. the
+ * order-sensitive Accumulators (see Accumulator.isOrderSensitive)
+ * There's no thread of its own: the thread adding the next item in order hands over everything in order from there on,
+ * outside the lock, while the other threads add theirs and move on. So the sink is never called concurrently
+ * Items ahead of the next one wait in here - up to capacity of them, then the threads adding more items ahead block,
+ * until the next one is added (the thread adding it never blocks)
+ *
+ * @param <T> - the type of items to put in order
+ * @author Phil
+ */
+public class ReorderBuffer<T> {
+
+    /**
+     * Receives the items in order
+     */
+    @FunctionalInterface
+    public interface Sink<T> {
+        void accept(T item) throws InterruptedException;
+    }
+
+    private final int capacity;
+    private final Sink<T> sink;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition handedOver = lock.newCondition();
+
+    // guarded by the lock
+    private final Map<Long, T> pending = new HashMap<>();   // items added, not handed over yet
+    private long next;                                      // sequence number of the next item to hand over
+    private boolean handingOver;                            // a thread is handing items over to the sink
+
+    /**
+     * @param capacity - maximum number of items waiting for the items before them, at least one
+     * @param sink     - receives the items in order, never concurrently
+     */
+    public ReorderBuffer(int capacity, Sink<T> sink) {
+        if (capacity < 1) {
+            throw new UnsupportedOperationException("Reorder buffer size has to be greater than zero!");
+        }
+        this.capacity = capacity;
+        this.sink = sink;
+    }
+
+    /**
+     * Adds items numbered on from the sequence number, and hands over whatever is in order on the calling thread, unless
+     * another thread already does
+     *
+     * @param sequence - sequence number of the first item, the first item of all is 0
+     * @param items    - consecutive items, none of them null
+     */
+    public void add(long sequence, List<? extends T> items) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (sequence != next && pending.size() >= capacity) {
+                handedOver.await();
+            }
+            for (int i = 0; i < items.size(); i++) {
+                pending.put(sequence + i, items.get(i));
+            }
+            if (handingOver) {
+                return;     // the other thread gets to them
+            }
+            handingOver = true;
+        } finally {
+            lock.unlock();
+        }
+        handOver();
+    }
+
+    /**
+     * @return - number of items waiting for the items before them
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return pending.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Hands over the items in order until there's a gap - any items added meanwhile included
+     */
+    private void handOver() throws InterruptedException {
+        List<T> ready = new ArrayList<>();
+        try {
+            while (true) {
+                lock.lock();
+                try {
+                    for (T item = pending.remove(next); item != null; item = pending.remove(next)) {
+                        ready.add(item);
+                        next++;
+                    }
+                    if (ready.isEmpty()) {
+                        handingOver = false;
+                        return;
+                    }
+                    handedOver.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+                for (T item : ready) {
+                    sink.accept(item);
+                }
+                ready.clear();
+            }
+        } finally {
+            if (!ready.isEmpty()) {     // the sink failed, or was interrupted - let another thread take over
+                lock.lock();
+                try {
+                    handingOver = false;
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+}
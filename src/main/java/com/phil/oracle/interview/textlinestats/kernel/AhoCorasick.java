@@ -0,0 +1,196 @@
+package com.phil.oracle.interview.textlinestats.kernel;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * Aho-Corasick automaton: finds every occurrence of any number of patterns in a single pass over the text, at a cost
+ * independent of the number of patterns (beyond the matches themselves). Overlapping occurrences all count,
+ * e.g. "aa" occurs twice in "aaa", and so do patterns which are part of others, e.g. "err" in "error"
+ * ASCII chars step through a dense transition table (a full DFA - one array lookup per char, no failure links walked),
+ * other chars through sparse per-state maps and failure links. Immutable once built, so safe to share between threads
+ *
+ * @author Phil
+ */
+public final class AhoCorasick {
+    private static final int DENSE_CHARS = TextKernel.MAX_CHAR_CODE + 1;
+    private static final int ROOT = 0;
+
+    private final String[] patterns;
+    private final int[] dense;          // dense[state * DENSE_CHARS + ch] = next state, for ASCII chars
+    private final Map<Character, Integer>[] sparse;   // children on non-ASCII chars, null for states without any
+    private final int[] failures;       // longest proper suffix of the state's string which is a state too
+    private final int[] patternEnds;    // index of the pattern ending at the state, -1 if none
+    private final int[] outputs;        // nearest state down the failure chain where a pattern ends, -1 if none
+
+    /**
+     * @param patterns - the patterns to find, non-empty and distinct (case-sensitive)
+     */
+    public AhoCorasick(List<String> patterns) {
+        if (patterns.isEmpty()) {
+            throw new UnsupportedOperationException("At least one pattern is needed!");
+        }
+        this.patterns = patterns.toArray(new String[0]);
+
+        // the trie first: dense children are -1 until the transitions get completed below
+        List<int[]> denseRows = new ArrayList<>();
+        List<Map<Character, Integer>> sparseRows = new ArrayList<>();
+        List<Integer> ends = new ArrayList<>();
+        addState(denseRows, sparseRows, ends);
+        for (int index = 0; index < this.patterns.length; index++) {
+            String pattern = this.patterns[index];
+            if (pattern.isEmpty()) {
+                throw new UnsupportedOperationException("Patterns can't be empty!");
+            }
+            int state = ROOT;
+            for (int i = 0; i < pattern.length(); i++) {
+                char ch = pattern.charAt(i);
+                Integer child = ch < DENSE_CHARS ? (Integer) denseRows.get(state)[ch] : sparseRows.get(state).get(ch);
+                if (child == null || child < 0) {
+                    child = addState(denseRows, sparseRows, ends);
+                    if (ch < DENSE_CHARS) {
+                        denseRows.get(state)[ch] = child;
+                    } else {
+                        sparseRows.get(state).put(ch, child);
+                    }
+                }
+                state = child;
+            }
+            if (ends.get(state) >= 0) {
+                throw new UnsupportedOperationException("Duplicate pattern '" + pattern + "'!");
+            }
+            ends.set(state, index);
+        }
+
+        int stateCount = denseRows.size();
+        dense = new int[stateCount * DENSE_CHARS];
+        sparse = newSparseArray(stateCount);
+        failures = new int[stateCount];
+        patternEnds = new int[stateCount];
+        outputs = new int[stateCount];
+        for (int state = 0; state < stateCount; state++) {
+            System.arraycopy(denseRows.get(state), 0, dense, state * DENSE_CHARS, DENSE_CHARS);
+            sparse[state] = sparseRows.get(state).isEmpty() ? null : sparseRows.get(state);
+            patternEnds[state] = ends.get(state);
+        }
+        link();
+    }
+
+    /**
+     * Counts the occurrences of every pattern in the text
+     *
+     * @param text   - the text to search, e.g. a line (matches don't span calls)
+     * @param counts - per-pattern counts to add to, indexed like the patterns
+     * @return - total number of occurrences found
+     */
+    public long countMatches(CharSequence text, long[] counts) {
+        long matchCount = 0;
+        int state = ROOT;
+        for (int i = 0; i < text.length(); i++) {
+            char ch = text.charAt(i);
+            state = ch < DENSE_CHARS ? dense[state * DENSE_CHARS + ch] : nextSparse(state, ch);
+            for (int output = patternEnds[state] >= 0 ? state : outputs[state]; output >= 0; output = outputs[output]) {
+                counts[patternEnds[output]]++;
+                matchCount++;
+            }
+        }
+        return matchCount;
+    }
+
+    /**
+     * @return - the number of patterns
+     */
+    public int getPatternCount() {
+        return patterns.length;
+    }
+
+    /**
+     * @return - the pattern at the index, as passed in
+     */
+    public String getPattern(int index) {
+        return patterns[index];
+    }
+
+    /**
+     * @return - number of states, i.e. distinct pattern prefixes + 1
+     */
+    public int getStateCount() {
+        return failures.length;
+    }
+
+    /**
+     * Breadth-first over the trie: failure links and outputs, and the missing dense transitions (from the failure state)
+     */
+    private void link() {
+        Queue<Integer> queue = new ArrayDeque<>();
+        outputs[ROOT] = -1;
+        for (int ch = 0; ch < DENSE_CHARS; ch++) {
+            int child = dense[ROOT * DENSE_CHARS + ch];
+            if (child < 0) {
+                dense[ROOT * DENSE_CHARS + ch] = ROOT;
+            } else {
+                queue.add(child);   // failures[child] is ROOT already
+            }
+        }
+        if (sparse[ROOT] != null) {
+            queue.addAll(sparse[ROOT].values());
+        }
+        for (int state : queue) {
+            outputs[state] = -1;
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            int failure = failures[state];
+            for (int ch = 0; ch < DENSE_CHARS; ch++) {
+                int child = dense[state * DENSE_CHARS + ch];
+                if (child < 0) {
+                    dense[state * DENSE_CHARS + ch] = dense[failure * DENSE_CHARS + ch];
+                } else {
+                    linkChild(child, dense[failure * DENSE_CHARS + ch], queue);
+                }
+            }
+            if (sparse[state] != null) {
+                for (Map.Entry<Character, Integer> child : sparse[state].entrySet()) {
+                    linkChild(child.getValue(), nextSparse(failure, child.getKey()), queue);
+                }
+            }
+        }
+    }
+
+    private void linkChild(int child, int failure, Queue<Integer> queue) {
+        failures[child] = failure;
+        outputs[child] = patternEnds[failure] >= 0 ? failure : outputs[failure];
+        queue.add(child);
+    }
+
+    private int nextSparse(int state, char ch) {
+        while (true) {
+            Integer child = sparse[state] != null ? sparse[state].get(ch) : null;
+            if (child != null) {
+                return child;
+            } else if (state == ROOT) {
+                return ROOT;
+            }
+            state = failures[state];
+        }
+    }
+
+    private static int addState(List<int[]> denseRows, List<Map<Character, Integer>> sparseRows, List<Integer> ends) {
+        int[] row = new int[DENSE_CHARS];
+        Arrays.fill(row, -1);
+        denseRows.add(row);
+        sparseRows.add(new HashMap<>());
+        ends.add(-1);
+        return denseRows.size() - 1;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<Character, Integer>[] newSparseArray(int length) {
+        return (Map<Character, Integer>[]) new Map<?, ?>[length];
+    }
+}
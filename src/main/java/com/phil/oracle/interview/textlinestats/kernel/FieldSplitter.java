@@ -0,0 +1,89 @@
+package com.phil.oracle.interview.textlinestats.kernel;
+
+/**
+ * Splits delimited lines (CSV, TSV etc.) into fields as [start, end) char offsets - no substrings get created
+ * A field starting with a double quote is quoted: it runs to the matching closing quote, delimiters included, and a
+ * doubled quote within it stands for a single one (RFC 4180). Anything between the closing quote and the next delimiter
+ * is disregarded. Quoted fields can't span lines: an unterminated one runs to the end of the line
+ * Immutable, so safe to share between threads
+ *
+ * @author Phil
+ */
+public final class FieldSplitter {
+    public static final char QUOTE = '"';
+
+    /**
+     * Receives the fields found in a line, in order
+     */
+    @FunctionalInterface
+    public interface FieldSink {
+        /**
+         * @param column - zero-based index of the field in the line
+         * @param start  - offset of the field's first char in the line (after the opening quote, if quoted)
+         * @param end    - offset just past the field's last char (before the closing quote, if quoted)
+         * @param quoted - whether the field was quoted, i.e. may contain doubled quotes (see unquote)
+         */
+        void field(int column, int start, int end, boolean quoted);
+    }
+
+    private final char delimiter;
+
+    /**
+     * @param delimiter - the field separator, e.g. ',' or '\t' - anything but a double quote
+     */
+    public FieldSplitter(char delimiter) {
+        if (delimiter == QUOTE || delimiter == '\n' || delimiter == '\r') {
+            throw new UnsupportedOperationException("Invalid field delimiter '" + delimiter + "'!");
+        }
+        this.delimiter = delimiter;
+    }
+
+    /**
+     * @param line - the line to split, an empty one has no fields
+     * @param sink - receives the fields
+     * @return - number of fields found
+     */
+    public int split(String line, FieldSink sink) {
+        int length = line.length(), column = 0, i = 0;
+        if (length == 0) {
+            return 0;
+        }
+        while (true) {
+            if (i < length && line.charAt(i) == QUOTE) {
+                int start = ++i;
+                while (i < length && (line.charAt(i) != QUOTE || (i + 1 < length && line.charAt(i + 1) == QUOTE))) {
+                    i += line.charAt(i) == QUOTE ? 2 : 1;   // a doubled quote doesn't close the field
+                }
+                sink.field(column++, start, Math.min(i, length), true);
+                while (i < length && line.charAt(i) != delimiter) {
+                    i++;   // the closing quote, and anything after it
+                }
+            } else {
+                int start = i;
+                while (i < length && line.charAt(i) != delimiter) {
+                    i++;
+                }
+                sink.field(column++, start, i, false);
+            }
+            if (i >= length) {
+                return column;
+            }
+            i++;  // past the delimiter - a trailing one means there's an empty last field
+        }
+    }
+
+    /**
+     * @return - the value of the field, i.e. with doubled quotes undoubled if quoted
+     */
+    public static String unquote(String line, int start, int end, boolean quoted) {
+        String value = line.substring(start, end);
+        return quoted ? value.replace("\"\"", "\"") : value;
+    }
+
+    /**
+     * @return - the field delimiter
+     */
+    public char getDelimiter() {
+        return delimiter;
+    }
+}
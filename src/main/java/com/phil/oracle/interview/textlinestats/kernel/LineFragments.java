@@ -0,0 +1,63 @@
+package com.phil.oracle.interview.textlinestats.kernel;
+
+/**
+ * Lines read in fragments (see Utf8LineReader.setMaxLineChars) are passed on as consecutive items, every fragment but
+ * the last of a line followed by a marker item - an empty string, so that it doesn't add to any word or letter counts,
+ * told apart from an empty line by identity
+ * Fragments are cut after whitespace (CONTINUED), unless there's none to cut after, i.e. a word is longer than the
+ * limit: then it's cut right at the limit (CONTINUED_IN_WORD), and the next fragment starts with the rest of it. Such a
+ * word counts once, at the fragment it ends in (see WordTokenizer.tokenize(String[], int, TokenSink)), and reads as the
+ * rest of it there - its whole text is never held, however long it is
+ * Word counts come out the same as from whole lines, and so do the words themselves but for those longer than the
+ * limit - line-level statistics count the lines by countLines
+ *
+ * @author Phil
+ */
+public final class LineFragments {
+    public static final int DEFAULT_MAX_CHARS = 64 * 1024;
+    @SuppressWarnings("RedundantStringConstructorCall")
+    public static final String CONTINUED = new String("");   // not the interned "", which an empty line may well be
+    /**
+     * Follows a fragment cut inside a word, i.e. one without any whitespace - its word goes on in the next fragment
+     */
+    @SuppressWarnings("RedundantStringConstructorCall")
+    public static final String CONTINUED_IN_WORD = new String("");
+    /**
+     * Precedes a fragment starting with the rest of a word cut by CONTINUED_IN_WORD, if there's a letter in the part(s)
+     * of it cut off - the word counts where it ends then, whether or not the rest of it has a letter too
+     */
+    @SuppressWarnings("RedundantStringConstructorCall")
+    public static final String REST_OF_WORD = new String("");
+
+    private LineFragments() {/* No instantiation or extension for utility class */ }
+
+    /**
+     * @param items - lines, or fragments of lines with their markers
+     * @return - number of lines the items amount to - a line's fragments count once, at its last one
+     */
+    public static int countLines(String[] items) {
+        int lineCount = items.length;
+        for (String item : items) {
+            if (item == CONTINUED || item == CONTINUED_IN_WORD) {
+                lineCount -= 2;     // it, and the fragment before it
+            } else if (item == REST_OF_WORD) {
+                lineCount--;
+            }
+        }
+        return lineCount;
+    }
+
+    /**
+     * @param items - lines, or fragments of lines with their markers
+     * @return - whether a word is cut between the items and the ones before or after them, i.e. they can't be
+     * tokenized line by line (see WordTokenizer.tokenize(String[], int, TokenSink))
+     */
+    public static boolean cutsWords(String[] items) {
+        for (String item : items) {
+            if (item == CONTINUED_IN_WORD || item == REST_OF_WORD) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,62 @@
+package com.phil.oracle.interview.textlinestats.kernel;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The reference kernel - one char at a time, exactly as the accumulators always did it
+ *
+ * @author Phil
+ */
+public class ScalarTextKernel implements TextKernel {
+
+    @Override
+    public void countLetters(String[] lines, long[] letterCounts) {
+        for (String line : lines) {
+            for (int i = 0; i < line.length(); i++) {
+                char ch = line.charAt(i);
+                if (Character.isLetter(ch) && (int) ch <= MAX_CHAR_CODE) {
+                    letterCounts[(int) ch]++;
+                }
+            }
+        }
+    }
+
+    /**
+     * A word is a run of characters containing a letter, terminated by whitespace or by the last character of the line
+     * Characters outside of the evaluated range are disregarded entirely
+     */
+    @Override
+    public long countWords(String[] lines) {
+        long wordCount = 0;
+        for (String line : lines) {
+            int lastCharIndex = line.length() - 1;
+            boolean wordObserved = false;
+
+            for (int i = 0; i < line.length(); i++) {
+                char ch = line.charAt(i);
+                if ((int) ch > MAX_CHAR_CODE)
+                    continue;  // disregard characters outside our evaluation range
+                if (Character.isLetter(ch) && i != lastCharIndex) { // if the char is a letter, there is definitely a word
+                    wordObserved = true;
+                } else if ((Character.isWhitespace(ch) || i == lastCharIndex) && wordObserved) {
+                    // if char is whitespace preceded by a letter, or if it's the last character preceded by a letter
+                    wordCount++;
+                    wordObserved = false;
+                }
+            }
+        }
+        return wordCount;
+    }
+
+    @Override
+    public long countLineBreaks(ByteBuffer bytes) {
+        long lineBreakCount = 0;
+        for (int i = bytes.position(); i < bytes.limit(); i++) {
+            byte b = bytes.get(i);
+            if (b == '\n' || b == '\r' && (i + 1 == bytes.limit() || bytes.get(i + 1) != '\n')) {
+                lineBreakCount++;
+            }
+        }
+        return lineBreakCount;
+    }
+}
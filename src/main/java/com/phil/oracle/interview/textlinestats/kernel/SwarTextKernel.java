@@ -0,0 +1,155 @@
+package com.phil.oracle.interview.textlinestats.kernel;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * SIMD-within-a-register kernel for Java 8: classifies 8 bytes per long - 4 chars in 16-bit lanes, or 8 raw bytes
+ * Lane arithmetic never carries across lanes, because every lane is masked down to 15 bits before adding to it
+ *
+ * @author Phil
+ */
+public class SwarTextKernel implements TextKernel {
+    private static final long LANES_16 = 0x0001_0001_0001_0001L;   // multiply by this to repeat a value in all 16-bit lanes
+    private static final long HIGH_16 = 0x8000 * LANES_16;         // the top bit of every 16-bit lane
+    private static final long LOW_15 = 0x7FFF * LANES_16;
+    private static final long LANES_8 = 0x0101_0101_0101_0101L;    // same for 8-bit lanes
+    private static final long LOW_7 = 0x7F * LANES_8;
+    private static final long NEWLINES = '\n' * LANES_8;
+    private static final long CARRIAGE_RETURNS = '\r' * LANES_8;
+
+    @Override
+    public void countLetters(String[] lines, long[] letterCounts) {
+        char[] chars = new char[0];
+        for (String line : lines) {
+            chars = getChars(line, chars);
+            int length = line.length(), i = 0;
+            for (; i + 4 <= length; i += 4) {
+                int letterBits = toBits(letters(pack(chars, i)));
+                while (letterBits != 0) {   // lines are mostly letters, but the histogram has to be bumped one at a time
+                    letterCounts[chars[i + Integer.numberOfTrailingZeros(letterBits)]]++;
+                    letterBits &= letterBits - 1;
+                }
+            }
+            for (; i < length; i++) {
+                char ch = chars[i];
+                if ((int) ch <= MAX_CHAR_CODE && WordBoundaries.CHAR_CLASSES[ch] == WordBoundaries.LETTER) {
+                    letterCounts[ch]++;
+                }
+            }
+        }
+    }
+
+    @Override
+    public long countWords(String[] lines) {
+        long wordCount = 0;
+        char[] chars = new char[0];
+        for (String line : lines) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            chars = getChars(line, chars);
+            int lastCharIndex = line.length() - 1, i = 0;
+            long state = 0;
+            for (; i + 4 <= lastCharIndex; i += 4) {   // the last character follows different rules, so it's excluded
+                long lanes = pack(chars, i);
+                state = WordBoundaries.stepNibble(state, toBits(letters(lanes)), toBits(whitespace(lanes)));
+            }
+            for (; i < lastCharIndex; i++) {
+                state = WordBoundaries.stepChar(state, chars[i]);
+            }
+            wordCount += WordBoundaries.finishLine(state, chars[lastCharIndex]);
+        }
+        return wordCount;
+    }
+
+    @Override
+    public long countLineBreaks(ByteBuffer bytes) {
+        ByteBuffer littleEndian = bytes.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        long lineBreakCount = 0, carriageReturns = 0;
+        int i = bytes.position();
+        for (; i + 8 <= bytes.limit(); i += 8) {
+            long lanes = littleEndian.getLong(i);
+            long newlines = zeroBytes(lanes ^ NEWLINES);
+            // a '\r' in the top byte of the previous long lines up with the bottom byte of this one
+            long pairs = newlines & (carriageReturns >>> 56 | (carriageReturns = zeroBytes(lanes ^ CARRIAGE_RETURNS)) << 8);
+            lineBreakCount += Long.bitCount(newlines) + Long.bitCount(carriageReturns) - Long.bitCount(pairs);
+        }
+        boolean afterCarriageReturn = carriageReturns < 0;
+        for (; i < bytes.limit(); i++) {
+            byte b = bytes.get(i);
+            if (b == '\r' || b == '\n' && !afterCarriageReturn) {
+                lineBreakCount++;
+            }
+            afterCarriageReturn = b == '\r';
+        }
+        return lineBreakCount;
+    }
+
+    /**
+     * @return - the top bit of every zero byte - exact, no false positives
+     */
+    private static long zeroBytes(long lanes) {
+        return ~(((lanes & LOW_7) + LOW_7) | lanes | LOW_7);
+    }
+
+    /**
+     * @return - the top bit of every lane holding an ASCII letter
+     */
+    private static long letters(long lanes) {
+        long folded = (lanes | 0x20 * LANES_16) & LOW_15;   // 'A'-'Z' folds onto 'a'-'z', nothing else lands there
+        return inRange(folded, 'a', 'z') & ascii(lanes);
+    }
+
+    /**
+     * @return - the top bit of every lane holding ASCII whitespace (as per Character.isWhitespace)
+     */
+    private static long whitespace(long lanes) {
+        long low = lanes & LOW_15;
+        return (inRange(low, 0x09, 0x0D) | inRange(low, 0x1C, 0x20)) & ascii(lanes);
+    }
+
+    /**
+     * @return - the top bit of every lane holding a char code no greater than MAX_CHAR_CODE
+     */
+    private static long ascii(long lanes) {
+        long nonAscii = ((lanes & 0x7F80 * LANES_16) + 0x7F80 * LANES_16) | lanes;
+        return ~nonAscii & HIGH_16;
+    }
+
+    /**
+     * @param lanes - 15-bit lanes
+     * @return - the top bit of every lane between low and high, inclusive
+     */
+    private static long inRange(long lanes, int low, int high) {
+        long atLeastLow = lanes + (0x8000 - low) * LANES_16;
+        long atMostHigh = (0x8000 + high) * LANES_16 - lanes;
+        return atLeastLow & atMostHigh & HIGH_16;
+    }
+
+    /**
+     * @return - 4 chars starting at the index, the first one in the lowest lane
+     */
+    private static long pack(char[] chars, int index) {
+        return (long) chars[index] | (long) chars[index + 1] << 16
+                | (long) chars[index + 2] << 32 | (long) chars[index + 3] << 48;
+    }
+
+    /**
+     * @return - the top lane bits gathered into bits 0-3
+     */
+    private static int toBits(long highBits) {
+        return (int) ((highBits >>> 15 & 1) | (highBits >>> 30 & 2) | (highBits >>> 45 & 4) | (highBits >>> 60 & 8));
+    }
+
+    /**
+     * Copies the line into the scratch array, growing it if needed
+     */
+    private static char[] getChars(String line, char[] chars) {
+        if (chars.length < line.length()) {
+            chars = new char[Math.max(line.length(), chars.length * 2)];
+        }
+        line.getChars(0, line.length(), chars, 0);
+        return chars;
+    }
+}
@@ -0,0 +1,40 @@
+package com.phil.oracle.interview.textlinestats.kernel;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Character classification kernel behind the hot inner loops of the letter/word/line counting code
+ * Every implementation MUST produce exactly the same results as ScalarTextKernel (the reference implementation)
+ * Implementations are stateless and therefore safe to share between consumer threads
+ *
+ * @author Phil
+ */
+public interface TextKernel {
+    int MAX_CHAR_CODE = 127;  // only US ASCII letters and whitespace are classified, same as the accumulators
+
+    /**
+     * Counts the ASCII letters in every line, adding to the per-letter count indexed by char code
+     *
+     * @param lines        - a batch of lines
+     * @param letterCounts - per-letter counts to add to, at least MAX_CHAR_CODE + 1 long
+     */
+    void countLetters(String[] lines, long[] letterCounts);
+
+    /**
+     * Counts the words in every line (see ScalarTextKernel for the exact definition of a word)
+     *
+     * @param lines - a batch of lines
+     * @return - total number of words in the batch
+     */
+    long countWords(String[] lines);
+
+    /**
+     * Counts the line breaks between the buffer's position and limit, without moving the position: '\n', '\r' and
+     * "\r\n" count once each, same as the line readers. A '\r' right at the limit counts too, the caller has to take
+     * a '\n' right after it (i.e. at the start of the next buffer) off
+     *
+     * @param bytes - the bytes to scan
+     * @return - number of line breaks
+     */
+    long countLineBreaks(ByteBuffer bytes);
+}
@@ -0,0 +1,55 @@
+package com.phil.oracle.interview.textlinestats.kernel;
+
+/**
+ * Picks the fastest TextKernel available on this JVM, once at startup
+ * Can be overridden with -Dtextlinestats.kernel=scalar|swar|vector (default: auto)
+ *
+ * @author Phil
+ */
+public final class TextKernels {
+    public static final String KERNEL_PROPERTY = "textlinestats.kernel";
+
+    // only present in the multi-release jar (META-INF/versions/16), hence loaded reflectively
+    private static final String VECTOR_KERNEL_CLASS = "com.phil.oracle.interview.textlinestats.kernel.VectorTextKernel";
+
+    private static final TextKernel KERNEL = select(System.getProperty(KERNEL_PROPERTY, "auto"));
+
+    private TextKernels() {/* No instantiation or extension for utility class */ }
+
+    /**
+     * @return - the kernel selected at startup
+     */
+    public static TextKernel get() {
+        return KERNEL;
+    }
+
+    /**
+     * @param name - scalar, swar, vector or auto (vector if available, swar otherwise)
+     * @return - the requested kernel, or the best available one if the requested one can't be used
+     */
+    static TextKernel select(String name) {
+        switch (name.toLowerCase()) {
+            case "scalar":
+                return new ScalarTextKernel();
+            case "swar":
+                return new SwarTextKernel();
+            case "vector":
+            case "auto":
+                TextKernel vectorKernel = loadVectorKernel();
+                return vectorKernel != null ? vectorKernel : new SwarTextKernel();
+            default:
+                throw new UnsupportedOperationException("Unknown text kernel '" + name + "'!");
+        }
+    }
+
+    /**
+     * @return - the Vector API kernel, or null on Java 8 or without '--add-modules jdk.incubator.vector'
+     */
+    private static TextKernel loadVectorKernel() {
+        try {
+            return (TextKernel) Class.forName(VECTOR_KERNEL_CLASS).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+}
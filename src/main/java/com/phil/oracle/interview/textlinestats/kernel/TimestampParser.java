@@ -0,0 +1,133 @@
+package com.phil.oracle.interview.textlinestats.kernel;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+
+/**
+ * Parses the timestamp at the start of a log line to the minute it falls within (zones are disregarded, i.e. it's the
+ * local time of the log). The timestamp format has to be fixed-width, e.g. "yyyy-MM-dd HH:mm:ss.SSS", and names of
+ * months and days are in English, as in most logs
+ * Consecutive log lines mostly fall within the same minute, so the last timestamp parsed is cached: a line whose
+ * timestamp only differs from it in the seconds (and fraction of a second) is within the same minute, and gets
+ * compared char by char instead of going through DateTimeFormatter (the seconds of such lines aren't validated)
+ * Not thread-safe because of the cache: use one per thread
+ *
+ * @author Phil
+ */
+public final class TimestampParser {
+    public static final long NO_TIMESTAMP = Long.MIN_VALUE;
+    private static final LocalDateTime SAMPLE = LocalDateTime.of(2000, 1, 1, 0, 0);
+    private static final LocalDateTime[] WIDTH_SAMPLES = {   // e.g. the longest and shortest month and day names
+            LocalDateTime.of(2000, 9, 27, 12, 34, 56), LocalDateTime.of(2000, 5, 1, 9, 5, 7)};
+
+    private final String pattern;
+    private final DateTimeFormatter formatter;
+    private final int width;
+    private final boolean[] withinMinute;   // positions of the seconds and fraction of a second, not compared
+
+    // the cache
+    private final char[] lastTimestamp;
+    private long lastMinute = NO_TIMESTAMP;
+    private long parseCount;
+
+    /**
+     * @param pattern - fixed-width DateTimeFormatter pattern of the timestamp, with a date and a time down to minutes
+     */
+    public TimestampParser(String pattern) {
+        this.pattern = pattern;
+        String sample;
+        try {
+            formatter = DateTimeFormatter.ofPattern(pattern, Locale.ENGLISH);
+            sample = format(SAMPLE);
+            if (formatter.parse(sample, LocalDateTime::from).getMinute() != SAMPLE.getMinute()) {
+                throw new DateTimeParseException("Not down to minutes", sample, 0);
+            }
+        } catch (RuntimeException e) {   // IllegalArgumentException, DateTimeException
+            throw new UnsupportedOperationException("Invalid timestamp pattern '" + pattern + "' - it needs a date "
+                    + "and a time down to minutes: " + e.getMessage());
+        }
+        width = sample.length();
+        for (LocalDateTime widthSample : WIDTH_SAMPLES) {
+            if (format(widthSample).length() != width) {
+                throw new UnsupportedOperationException("Timestamp pattern '" + pattern + "' isn't fixed-width!");
+            }
+        }
+        String endOfMinute = format(SAMPLE.plusSeconds(59).plusNanos(999_999_999));
+        withinMinute = new boolean[width];
+        for (int i = 0; i < width; i++) {
+            withinMinute[i] = sample.charAt(i) != endOfMinute.charAt(i);
+        }
+        lastTimestamp = new char[width];
+    }
+
+    /**
+     * @param line - a line starting with a timestamp, or not (e.g. a stack trace line)
+     * @return - minutes since the epoch, or NO_TIMESTAMP if the line doesn't start with a timestamp of the pattern
+     */
+    public long parseMinute(String line) {
+        if (line.length() < width) {
+            return NO_TIMESTAMP;
+        }
+        if (lastMinute != NO_TIMESTAMP && isLastMinute(line)) {
+            return lastMinute;
+        }
+        parseCount++;
+        String timestamp = line.substring(0, width);
+        try {
+            lastMinute = Math.floorDiv(formatter.parse(timestamp, LocalDateTime::from).toEpochSecond(ZoneOffset.UTC), 60);
+        } catch (DateTimeParseException e) {
+            return NO_TIMESTAMP;   // the cache is still good
+        }
+        timestamp.getChars(0, width, lastTimestamp, 0);
+        return lastMinute;
+    }
+
+    /**
+     * @param minute - minutes since the epoch
+     * @return - the minute as a "yyyy-MM-dd HH:mm" label
+     */
+    public static String formatMinute(long minute) {
+        return LocalDateTime.ofEpochSecond(minute * 60, 0, ZoneOffset.UTC).toString().replace('T', ' ');
+    }
+
+    /**
+     * Counterpart of formatMinute
+     *
+     * @param label - a "yyyy-MM-dd HH:mm" minute
+     * @return - minutes since the epoch
+     * @throws DateTimeParseException - if it's not a minute label
+     */
+    public static long parseMinuteLabel(String label) {
+        return Math.floorDiv(LocalDateTime.parse(label.replace(' ', 'T')).toEpochSecond(ZoneOffset.UTC), 60);
+    }
+
+    /**
+     * @return - the pattern it was created with
+     */
+    public String getPattern() {
+        return pattern;
+    }
+
+    /**
+     * @return - number of timestamps that went through DateTimeFormatter, i.e. cache misses
+     */
+    public long getParseCount() {
+        return parseCount;
+    }
+
+    private boolean isLastMinute(String line) {
+        for (int i = 0; i < width; i++) {
+            if (line.charAt(i) != lastTimestamp[i] && !withinMinute[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String format(LocalDateTime dateTime) {
+        return formatter.format(dateTime.atOffset(ZoneOffset.UTC));   // zone fields need a zone to be formatted
+    }
+}
@@ -0,0 +1,312 @@
+package com.phil.oracle.interview.textlinestats.kernel;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads lines of UTF-8 text straight from a byte buffer - runs of ASCII bytes are scanned in a tight loop, all-ASCII
+ * lines become Strings by a plain byte copy, and multi-byte sequences are decoded and validated inline into a reusable
+ * char array (no CharsetDecoder, no CharBuffers). Lines end at '\n', '\r' or "\r\n", same as BufferedReader.readLine
+ * Malformed input (invalid or truncated sequences, overlongs, surrogates, beyond U+10FFFF) is replaced by U+FFFD,
+ * one per maximal invalid subpart, the same way the JDK decoder does it - and counted, see getMalformedCount
+ * Lines can be limited in length, so that memory stays bounded however long a line is: longer ones are read in
+ * fragments (see setMaxLineChars)
+ * Not thread-safe
+ *
+ * @author Phil
+ */
+public final class Utf8LineReader implements Closeable {
+    public static final char REPLACEMENT = '\uFFFD';
+    private static final int BUFFER_BYTES = 64 * 1024;
+    private static final int MAX_SEQUENCE_BYTES = 4;
+
+    private final InputStream in;
+    private final byte[] bytes;
+    private int position, limit;
+    private long discarded;                 // bytes dropped off the start of the buffer so far
+    private long lineStart = -1;
+    private boolean endOfInput;
+    private boolean skipLineFeed;           // the last line ended with '\r', which may be followed by '\n'
+    private boolean afterLineFeed = true;   // the input read so far is empty or ends with a '\n'
+    private boolean lineFollowsLineFeed;    // the same, for the start of the line last read
+    private char[] chars = new char[256];   // the line being decoded
+    private long malformedCount;
+    private int maxLineChars;               // lines longer than this come in fragments if set
+    private int carriedLength;              // chars of the line being read carried over to its next fragment
+    private boolean lineContinued;          // the last line read was a fragment, the next one continues it
+    private boolean lineContinuedInWord;    // the same, cut inside a word
+    private boolean cutWordHasLetter;       // the part(s) of that word read so far have a letter
+    private boolean wordWithLetterContinued;    // the last line read starts with the rest of such a word
+
+    public Utf8LineReader(InputStream in) {
+        this(in, BUFFER_BYTES);
+    }
+
+    /**
+     * @param in          - the UTF-8 bytes to read (a BOM isn't skipped, same as the JDK decoder)
+     * @param bufferBytes - size of the read buffer, at least 4
+     */
+    public Utf8LineReader(InputStream in, int bufferBytes) {
+        if (bufferBytes < MAX_SEQUENCE_BYTES) {
+            throw new UnsupportedOperationException("The buffer has to hold a whole UTF-8 sequence!");
+        }
+        this.in = in;
+        this.bytes = new byte[bufferBytes];
+    }
+
+    /**
+     * Reads the lines of bytes already in memory, in place - no copying
+     *
+     * @param bytes  - the UTF-8 bytes to read (not modified)
+     * @param offset - where the input starts in the bytes
+     * @param length - number of bytes of input
+     */
+    public Utf8LineReader(byte[] bytes, int offset, int length) {
+        this.in = null;
+        this.bytes = bytes;
+        this.position = offset;
+        this.limit = offset + length;
+        this.discarded = -offset;   // line starts are relative to the offset
+        this.endOfInput = true;     // nothing to fill
+    }
+
+    /**
+     * @return - the next line without its terminator, or null at the end of the input
+     */
+    public String readLine() throws IOException {
+        int length = carriedLength;
+        boolean lineStarted = lineContinued;
+        wordWithLetterContinued = lineContinuedInWord && cutWordHasLetter;
+        carriedLength = 0;
+        lineContinued = lineContinuedInWord = false;
+        while (true) {
+            if (maxLineChars > 0 && length >= maxLineChars + 2) {   // the line goes on past the cut, by a char at least
+                return fragment(length);
+            }
+            if (limit - position < MAX_SEQUENCE_BYTES && !endOfInput) {
+                fill();
+            }
+            if (position == limit) {
+                return lineStarted ? new String(chars, 0, length) : null;
+            }
+            if (skipLineFeed) {
+                skipLineFeed = false;
+                if (bytes[position] == '\n') {
+                    position++;
+                    afterLineFeed = true;
+                    continue;
+                }
+            }
+            if (!lineStarted) {
+                lineStarted = true;
+                lineStart = discarded + position;
+                lineFollowsLineFeed = afterLineFeed;
+            }
+            if (chars.length - length < limit - position) {   // at most one char per byte
+                char[] grown = new char[Math.max(chars.length * 2, length + limit - position)];
+                System.arraycopy(chars, 0, grown, 0, length);
+                chars = grown;
+            }
+            // a whole sequence is buffered at any point before the last 4 bytes, or anywhere at the end of the input
+            int end = endOfInput ? limit : limit - MAX_SEQUENCE_BYTES + 1;
+            if (maxLineChars > 0) {
+                end = (int) Math.min(end, position + (long) maxLineChars + 2 - length);   // at least a char per byte
+            }
+            int p = position;
+            while (p < end) {
+                int runStart = p;
+                while (p < end && bytes[p] >= 0 && bytes[p] != '\n' && bytes[p] != '\r') {
+                    p++;   // an ASCII run
+                }
+                if (p < end && (bytes[p] == '\n' || bytes[p] == '\r')) {
+                    position = p + 1;
+                    skipLineFeed = bytes[p] == '\r';
+                    afterLineFeed = !skipLineFeed;
+                    if (length == 0) {   // an all-ASCII line - Latin-1 is a straight byte copy into the String
+                        return new String(bytes, runStart, p - runStart, StandardCharsets.ISO_8859_1);
+                    }
+                    length = appendAscii(runStart, p, length);
+                    return new String(chars, 0, length);
+                }
+                length = appendAscii(runStart, p, length);
+                if (p < end) {
+                    p = decodeSequence(p, length);
+                    length += Character.isHighSurrogate(chars[length]) ? 2 : 1;
+                }
+            }
+            position = p;
+        }
+    }
+
+    /**
+     * Reads lines longer than the limit in fragments, each cut right after its last whitespace (the rest of it carried
+     * over to the next fragment), so that no word is split - unless there's no whitespace, i.e. a word is longer than
+     * the limit: then it's cut right at the limit, and the next fragment starts with the rest of it (see
+     * isLineContinuedInWord). A fragment can run over the limit by a char, a whitespace or the low surrogate of a pair
+     *
+     * @param maxLineChars - number of chars a fragment is cut at, 0 to read every line whole
+     */
+    public void setMaxLineChars(int maxLineChars) {
+        if (maxLineChars < 0) {
+            throw new UnsupportedOperationException("The line length limit can't be negative!");
+        }
+        this.maxLineChars = maxLineChars;
+    }
+
+    /**
+     * @return - whether the line last read is a fragment, continued by the next one read (see setMaxLineChars)
+     */
+    public boolean isLineContinued() {
+        return lineContinued;
+    }
+
+    /**
+     * @return - whether the line last read is a fragment cut inside a word, i.e. it has no whitespace at all - the next
+     * one starts with the rest of the word (see LineFragments.CONTINUED_IN_WORD)
+     */
+    public boolean isLineContinuedInWord() {
+        return lineContinuedInWord;
+    }
+
+    /**
+     * @return - whether the line last read starts with the rest of a word cut inside, which has a letter in the
+     * fragment(s) before (see LineFragments.REST_OF_WORD)
+     */
+    public boolean isWordWithLetterContinued() {
+        return wordWithLetterContinued;
+    }
+
+    /**
+     * @return - byte offset in the input of the start of the line last read, -1 before the first one - the same for
+     * all the fragments of a line
+     */
+    public long getLineStart() {
+        return lineStart;
+    }
+
+    /**
+     * @return - whether the line last read starts the input or follows a '\n', rather than a lone '\r' - only such
+     * lines start byte ranges (see TextLinesProducer.alignToLineStart)
+     */
+    public boolean isLineFollowingLineFeed() {
+        return lineFollowsLineFeed;
+    }
+
+    /**
+     * @return - number of malformed byte sequences replaced by U+FFFD so far
+     */
+    public long getMalformedCount() {
+        return malformedCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (in != null) {
+            in.close();
+        }
+    }
+
+    /**
+     * Cuts the line decoded so far after its last whitespace up to the limit, or right at the limit if there's none,
+     * and carries the rest over to the next fragment
+     *
+     * @param length - number of chars decoded, past the limit by two at least
+     */
+    private String fragment(int length) {
+        int cut = Character.isHighSurrogate(chars[maxLineChars - 1]) ? maxLineChars + 1 : maxLineChars;
+        int end = cut + 1;   // a whitespace right after the cut ends the word there
+        while (end > 0 && (chars[end - 1] > TextKernel.MAX_CHAR_CODE
+                || WordBoundaries.CHAR_CLASSES[chars[end - 1]] != WordBoundaries.WHITESPACE)) {
+            end--;
+        }
+        if (end == 0) {   // a single word, going on in the next fragment
+            end = cut;
+            boolean hasLetter = wordWithLetterContinued;
+            for (int i = 0; i < end && !hasLetter; i++) {
+                hasLetter = chars[i] <= TextKernel.MAX_CHAR_CODE
+                        && WordBoundaries.CHAR_CLASSES[chars[i]] == WordBoundaries.LETTER;
+            }
+            cutWordHasLetter = hasLetter;
+            lineContinuedInWord = true;
+        }
+        String fragment = new String(chars, 0, end);
+        carriedLength = length - end;
+        System.arraycopy(chars, end, chars, 0, carriedLength);
+        lineContinued = true;
+        return fragment;
+    }
+
+    private int appendAscii(int start, int end, int at) {
+        for (int i = start; i < end; i++) {
+            chars[at++] = (char) bytes[i];
+        }
+        return at;
+    }
+
+    /**
+     * Decodes the multi-byte sequence at p into chars[at] (and chars[at + 1] for a surrogate pair)
+     * The bounds of the second byte are per the Unicode well-formed byte sequences table, so that overlongs and code
+     * points beyond U+10FFFF are malformed - surrogates are checked once decoded, as the JDK does
+     *
+     * @return - the position after the sequence, or after its maximal invalid subpart if malformed
+     */
+    private int decodeSequence(int p, int at) {
+        int b1 = bytes[p] & 0xFF;
+        int continuationCount, min2 = 0x80, max2 = 0xBF;
+        if (b1 >= 0xC2 && b1 <= 0xDF) {
+            continuationCount = 1;
+        } else if (b1 >= 0xE0 && b1 <= 0xEF) {
+            continuationCount = 2;
+            min2 = b1 == 0xE0 ? 0xA0 : 0x80;
+        } else if (b1 >= 0xF0 && b1 <= 0xF4) {
+            continuationCount = 3;
+            min2 = b1 == 0xF0 ? 0x90 : 0x80;
+            max2 = b1 == 0xF4 ? 0x8F : 0xBF;
+        } else {
+            return malformed(p + 1, at);   // a continuation byte, C0, C1 or F5..FF
+        }
+        int codePoint = b1 & (0x3F >> continuationCount);
+        for (int i = 1; i <= continuationCount; i++) {
+            int b = p + i < limit ? bytes[p + i] & 0xFF : -1;
+            if (i == 1 ? b < min2 || b > max2 : b < 0x80 || b > 0xBF) {
+                return malformed(p + i, at);
+            }
+            codePoint = (codePoint << 6) | (b & 0x3F);
+        }
+        if (continuationCount == 2 && Character.isSurrogate((char) codePoint)) {
+            return malformed(p + 3, at);   // a whole encoded surrogate is a single malformed sequence to the JDK
+        } else if (continuationCount == 3) {
+            chars[at] = Character.highSurrogate(codePoint);
+            chars[at + 1] = Character.lowSurrogate(codePoint);
+        } else {
+            chars[at] = (char) codePoint;
+        }
+        return p + continuationCount + 1;
+    }
+
+    private int malformed(int next, int at) {
+        chars[at] = REPLACEMENT;
+        malformedCount++;
+        return next;
+    }
+
+    private void fill() throws IOException {
+        discarded += position;
+        System.arraycopy(bytes, position, bytes, 0, limit - position);
+        limit -= position;
+        position = 0;
+        while (limit < bytes.length) {
+            int read = in.read(bytes, limit, bytes.length - limit);
+            if (read < 0) {
+                endOfInput = true;
+                return;
+            }
+            limit += read;
+            if (limit >= MAX_SEQUENCE_BYTES) {
+                return;   // no need to block for more
+            }
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.phil.oracle.interview.textlinestats.kernel;
+
+/**
+ * The word counting state machine of ScalarTextKernel, shared by the wide kernels so they can step over
+ * 4 classified characters at a time via a lookup table instead of branching on every character
+ * A running state packs the word count so far and the "word observed" flag: (wordCount << 1) | wordObserved
+ *
+ * @author Phil
+ */
+final class WordBoundaries {
+    static final byte OTHER = 0, LETTER = 1, WHITESPACE = 2;
+
+    // class of every char in the evaluated range, as per Character.isLetter/isWhitespace
+    static final byte[] CHAR_CLASSES = new byte[TextKernel.MAX_CHAR_CODE + 1];
+
+    // index = wordObserved << 8 | letterBits << 4 | whitespaceBits, value = wordsCounted << 1 | wordObserved
+    private static final byte[] NIBBLE_STEPS = new byte[2 << 8];
+
+    static {
+        for (int ch = 0; ch < CHAR_CLASSES.length; ch++) {
+            CHAR_CLASSES[ch] = Character.isLetter(ch) ? LETTER : Character.isWhitespace(ch) ? WHITESPACE : OTHER;
+        }
+        for (int index = 0; index < NIBBLE_STEPS.length; index++) {
+            long state = index >>> 8;
+            for (int lane = 0; lane < 4; lane++) {
+                byte charClass = ((index >>> 4) & (1 << lane)) != 0 ? LETTER : (index & (1 << lane)) != 0 ? WHITESPACE : OTHER;
+                state = stepClass(state, charClass);
+            }
+            NIBBLE_STEPS[index] = (byte) state;
+        }
+    }
+
+    private WordBoundaries() {/* No instantiation or extension for utility class */ }
+
+    /**
+     * Advances the state over 4 consecutive characters, none of which is the last character of the line
+     *
+     * @param state          - the running state
+     * @param letterBits     - bit n is set if character n is an ASCII letter
+     * @param whitespaceBits - bit n is set if character n is ASCII whitespace
+     * @return - the new state
+     */
+    static long stepNibble(long state, int letterBits, int whitespaceBits) {
+        int step = NIBBLE_STEPS[(int) (state & 1) << 8 | letterBits << 4 | whitespaceBits];
+        return ((state >>> 1) + (step >>> 1)) << 1 | (step & 1);
+    }
+
+    /**
+     * Advances the state over any number of consecutive characters, none of which is the last character of the line
+     *
+     * @param state          - the running state
+     * @param letterBits     - bit n is set if character n is an ASCII letter
+     * @param whitespaceBits - bit n is set if character n is ASCII whitespace
+     * @param charCount      - number of characters the bits describe (up to 64)
+     * @return - the new state
+     */
+    static long stepBits(long state, long letterBits, long whitespaceBits, int charCount) {
+        for (int shift = 0; shift < charCount; shift += 4) {
+            state = stepNibble(state, (int) (letterBits >>> shift) & 0xF, (int) (whitespaceBits >>> shift) & 0xF);
+        }
+        return state;
+    }
+
+    /**
+     * Advances the state over a single character which is not the last character of the line
+     */
+    static long stepChar(long state, char ch) {
+        if ((int) ch > TextKernel.MAX_CHAR_CODE) {
+            return state;  // disregard characters outside our evaluation range
+        }
+        return stepClass(state, CHAR_CLASSES[ch]);
+    }
+
+    /**
+     * Applies the last character of the line to the state
+     *
+     * @return - the total number of words in the line
+     */
+    static long finishLine(long state, char lastChar) {
+        if ((int) lastChar <= TextKernel.MAX_CHAR_CODE && (state & 1) != 0) {
+            return (state >>> 1) + 1;   // the last character terminates a word in progress, whatever it is
+        }
+        return state >>> 1;
+    }
+
+    private static long stepClass(long state, byte charClass) {
+        if (charClass == LETTER) {
+            return state | 1;
+        } else if (charClass == WHITESPACE && (state & 1) != 0) {
+            return ((state >>> 1) + 1) << 1;
+        }
+        return state;
+    }
+}
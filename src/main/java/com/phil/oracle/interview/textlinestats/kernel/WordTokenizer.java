@@ -0,0 +1,104 @@
+package com.phil.oracle.interview.textlinestats.kernel;
+
+/**
+ * Finds the words of a line as [start, end) char offsets - exactly the words TextKernel.countWords counts
+ * A word spans from the character after the preceding whitespace (or the start of the line) to the whitespace that
+ * terminates it (or the end of the line), so leading/trailing punctuation and non-ASCII characters are part of it
+ *
+ * @author Phil
+ */
+public final class WordTokenizer {
+
+    /**
+     * Receives the words found in a line, in order
+     */
+    @FunctionalInterface
+    public interface TokenSink {
+        /**
+         * @param start - offset of the word's first char in the line
+         * @param end   - offset just past the word's last char
+         */
+        void token(int start, int end);
+    }
+
+    private WordTokenizer() {/* No instantiation or extension for utility class */ }
+
+    /**
+     * @param line - the line to tokenize
+     * @param sink - receives the words
+     * @return - number of words found
+     */
+    public static int tokenize(String line, TokenSink sink) {
+        return tokenize(line, 0, false, sink);
+    }
+
+    /**
+     * Same as tokenize(String, TokenSink), for a line of a batch which may be a fragment of a line (see LineFragments):
+     * a word cut between fragments comes out once, at the fragment it ends in - as the rest of it there
+     *
+     * @param lines - lines, or fragments of lines with their markers
+     * @param index - of the line to tokenize
+     * @param sink  - receives the words of the line
+     * @return - number of words found
+     */
+    public static int tokenize(String[] lines, int index, TokenSink sink) {
+        String line = lines[index];
+        boolean restOfWord = index > 0 && lines[index - 1] == LineFragments.REST_OF_WORD;
+        boolean cutInWord = index + 1 < lines.length && lines[index + 1] == LineFragments.CONTINUED_IN_WORD;
+        if (!restOfWord) {
+            return tokenize(line, 0, cutInWord, sink);
+        }
+        // the word has a letter already, so it counts wherever it ends - unless on a non-ASCII last char of the line
+        int wordEnd = 0;
+        while (wordEnd < line.length() && !isWhitespace(line.charAt(wordEnd))) {
+            wordEnd++;
+        }
+        if (wordEnd < line.length()) {
+            sink.token(0, wordEnd);
+            return 1 + tokenize(line, wordEnd, cutInWord, sink);
+        } else if (!cutInWord && wordEnd > 0 && (int) line.charAt(wordEnd - 1) <= TextKernel.MAX_CHAR_CODE) {
+            sink.token(0, wordEnd);
+            return 1;
+        }
+        return 0;
+    }
+
+    /**
+     * @param from      - where to start, at a whitespace (or the start of the line)
+     * @param cutInWord - whether the line is a fragment cut inside its last word, which then doesn't end there
+     */
+    private static int tokenize(String line, int from, boolean cutInWord, TokenSink sink) {
+        int lastCharIndex = line.length() - 1, wordStart = from, wordCount = 0;
+        boolean wordObserved = false;
+        for (int i = from; i < lastCharIndex; i++) {
+            char ch = line.charAt(i);
+            if ((int) ch > TextKernel.MAX_CHAR_CODE) {
+                continue;  // disregard characters outside our evaluation range
+            }
+            byte charClass = WordBoundaries.CHAR_CLASSES[ch];
+            if (charClass == WordBoundaries.LETTER) {
+                wordObserved = true;
+            } else if (charClass == WordBoundaries.WHITESPACE) {
+                if (wordObserved) {
+                    sink.token(wordStart, i);
+                    wordCount++;
+                    wordObserved = false;
+                }
+                wordStart = i + 1;
+            }
+        }
+        if (lastCharIndex >= from && wordObserved && !cutInWord) {
+            char lastChar = line.charAt(lastCharIndex);
+            if ((int) lastChar <= TextKernel.MAX_CHAR_CODE) {   // the last character terminates the word in progress
+                boolean whitespace = WordBoundaries.CHAR_CLASSES[lastChar] == WordBoundaries.WHITESPACE;
+                sink.token(wordStart, whitespace ? lastCharIndex : lastCharIndex + 1);
+                wordCount++;
+            }
+        }
+        return wordCount;
+    }
+
+    private static boolean isWhitespace(char ch) {
+        return (int) ch <= TextKernel.MAX_CHAR_CODE && WordBoundaries.CHAR_CLASSES[ch] == WordBoundaries.WHITESPACE;
+    }
+}
@@ -0,0 +1,192 @@
+package com.phil.oracle.interview.textlinestats.offheap;
+
+import java.nio.ByteBuffer;
+
+/**
+ * An open-addressing (linear probing) hash table of 64-bit keys to counts, with a text sample per key, all off-heap:
+ * the slots and the texts live in direct ByteBuffers, so millions of entries cost the GC next to nothing
+ * Keys are expected to be well-mixed hashes already - key 0 is reserved to mark empty slots (see toKey)
+ * NOT thread-safe: meant to be owned by a single thread, and merged into another table (see mergeFrom) at the end
+ *
+ * @author Phil
+ */
+public final class HashCountTable {
+    // slot layout: key (8 bytes), count (8 bytes), text offset in chars (4 bytes), text length in chars (4 bytes)
+    private static final int SLOT_BYTES = 24, COUNT_OFFSET = 8, TEXT_OFFSET = 16, TEXT_LENGTH = 20;
+    private static final int MIN_CAPACITY = 1024;
+
+    private ByteBuffer slots;
+    private int capacity;       // number of slots, always a power of 2
+    private int size;           // number of used slots
+    private ByteBuffer texts;   // UTF-16 chars of the texts, appended as keys get inserted
+    private int textLength;     // chars used in texts
+
+    /**
+     * @param initialCapacity - expected number of distinct keys (the table grows past it anyway)
+     */
+    public HashCountTable(int initialCapacity) {
+        capacity = Integer.highestOneBit(Math.max(MIN_CAPACITY, initialCapacity) * 2 - 1);
+        slots = ByteBuffer.allocateDirect(capacity * SLOT_BYTES);
+        texts = ByteBuffer.allocateDirect(capacity * 8);
+    }
+
+    /**
+     * @param hash - any 64-bit hash
+     * @return - the hash, mixed (murmur3 finalizer) and guaranteed to be non-zero
+     */
+    public static long toKey(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash != 0 ? hash : 1;
+    }
+
+    /**
+     * Adds to the count of a key, inserting the key with the text given if it isn't in the table yet
+     *
+     * @param key   - a non-zero key, see toKey
+     * @param delta - the amount to add
+     * @param text  - the text the key stands for - only read (and copied) if the key is new
+     */
+    public void add(long key, long delta, CharSequence text) {
+        int slot = findSlot(key);
+        int position = slot * SLOT_BYTES;
+        boolean newKey = slots.getLong(position) == 0;
+        if (newKey) {
+            slots.putLong(position, key);
+            slots.putInt(position + TEXT_OFFSET, appendText(text));
+            slots.putInt(position + TEXT_LENGTH, text.length());
+            size++;
+        }
+        slots.putLong(position + COUNT_OFFSET, slots.getLong(position + COUNT_OFFSET) + delta);
+        if (newKey && size * 2 > capacity) {   // keep the load factor at 50% at most, probe sequences stay short
+            grow();
+        }
+    }
+
+    /**
+     * @param key - a non-zero key, see toKey
+     * @return - the count of the key, 0 if it isn't in the table
+     */
+    public long getCount(long key) {
+        int position = findSlot(key) * SLOT_BYTES;
+        return slots.getLong(position) == 0 ? 0 : slots.getLong(position + COUNT_OFFSET);
+    }
+
+    /**
+     * Adds all the counts of another table to this one (the other table is left as is)
+     */
+    public void mergeFrom(HashCountTable other) {
+        for (int slot = 0; slot < other.capacity; slot++) {
+            long key = other.getKey(slot);
+            if (key != 0) {
+                add(key, other.getCount(slot), other.getText(slot));
+            }
+        }
+    }
+
+    /**
+     * @return - number of distinct keys
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return - number of slots, for iterating with getKey/getCount/getText(slot)
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return - the key in the slot, 0 if the slot is empty
+     */
+    public long getKey(int slot) {
+        return slots.getLong(slot * SLOT_BYTES);
+    }
+
+    /**
+     * @return - the count in the slot
+     */
+    public long getCount(int slot) {
+        return slots.getLong(slot * SLOT_BYTES + COUNT_OFFSET);
+    }
+
+    /**
+     * @return - the text of the key in the slot (a new String)
+     */
+    public String getText(int slot) {
+        int position = slot * SLOT_BYTES;
+        int offset = slots.getInt(position + TEXT_OFFSET), length = slots.getInt(position + TEXT_LENGTH);
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = texts.getChar((offset + i) * 2);
+        }
+        return new String(chars);
+    }
+
+    /**
+     * @return - off-heap bytes allocated by the table
+     */
+    public long getOffHeapBytes() {
+        return (long) slots.capacity() + texts.capacity();
+    }
+
+    private int findSlot(long key) {
+        int mask = capacity - 1;
+        int slot = (int) key & mask;
+        while (true) {
+            long slotKey = slots.getLong(slot * SLOT_BYTES);
+            if (slotKey == key || slotKey == 0) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private int appendText(CharSequence text) {
+        if ((long) (textLength + text.length()) * 2 > texts.capacity()) {
+            long newBytes = Math.max((long) texts.capacity() * 2, (long) (textLength + text.length()) * 2);
+            if (newBytes > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Off-heap text storage is full at " + textLength + " chars!");
+            }
+            ByteBuffer newTexts = ByteBuffer.allocateDirect((int) newBytes);
+            ByteBuffer used = texts.duplicate();
+            used.limit(textLength * 2).position(0);
+            newTexts.put(used);
+            texts = newTexts;
+        }
+        int offset = textLength;
+        for (int i = 0; i < text.length(); i++) {
+            texts.putChar((offset + i) * 2, text.charAt(i));
+        }
+        textLength += text.length();
+        return offset;
+    }
+
+    /**
+     * Doubles the slots, re-inserting every key - the texts stay where they are
+     */
+    private void grow() {
+        if ((long) capacity * 2 * SLOT_BYTES > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Off-heap hash table is full at " + size + " keys!");
+        }
+        ByteBuffer oldSlots = slots;
+        int oldCapacity = capacity;
+        capacity *= 2;
+        slots = ByteBuffer.allocateDirect(capacity * SLOT_BYTES);
+        for (int slot = 0; slot < oldCapacity; slot++) {
+            int oldPosition = slot * SLOT_BYTES;
+            long key = oldSlots.getLong(oldPosition);
+            if (key != 0) {
+                int position = findSlot(key) * SLOT_BYTES;
+                slots.putLong(position, key);
+                slots.putLong(position + COUNT_OFFSET, oldSlots.getLong(oldPosition + COUNT_OFFSET));
+                slots.putLong(position + TEXT_OFFSET, oldSlots.getLong(oldPosition + TEXT_OFFSET));  // offset & length
+            }
+        }
+    }
+}
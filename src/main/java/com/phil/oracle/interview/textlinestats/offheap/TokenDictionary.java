@@ -0,0 +1,298 @@
+package com.phil.oracle.interview.textlinestats.offheap;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Interns tokens (e.g. words) to stable int IDs, so vocabulary statistics can count in primitive arrays indexed by ID
+ * instead of holding millions of small Strings on-heap. Everything lives off-heap, in direct ByteBuffers:
+ * the tokens as UTF-8 bytes in an arena, and an open-addressing hash index from token bytes to ID
+ * Thread-safe: the dictionary is split into 64 stripes by token hash, each with its own lock, arena and index,
+ * so consumer threads rarely contend. An ID is (index within its stripe << 6 | stripe): IDs are dense per stripe,
+ * and getIdBound() is a tight enough upper bound for sizing arrays indexed by ID
+ *
+ * @author Phil
+ */
+public final class TokenDictionary {
+    private static final int STRIPE_BITS = 6, STRIPE_COUNT = 1 << STRIPE_BITS, STRIPE_MASK = STRIPE_COUNT - 1;
+    static final int MAX_TOKEN_CHARS = 1024 * 1024;    // longer tokens are truncated, see intern
+
+    private final Stripe[] stripes = new Stripe[STRIPE_COUNT];
+
+    // UTF-8 encoding scratch space, per thread
+    private final ThreadLocal<byte[]> scratch = ThreadLocal.withInitial(() -> new byte[256]);
+
+    public TokenDictionary() {
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * A token longer than MAX_TOKEN_CHARS (e.g. a blob of a minified file, read as a single word) is interned as its
+     * first MAX_TOKEN_CHARS chars, the same as any other token starting with them
+     *
+     * @param text  - the text containing the token, e.g. a line
+     * @param start - offset of the token's first char
+     * @param end   - offset just past the token's last char
+     * @return - the ID of the token, the same for equal tokens, assigned when the token is first seen
+     */
+    public int intern(CharSequence text, int start, int end) {
+        return find(text, start, end, true);
+    }
+
+    /**
+     * @return - the ID of the token
+     */
+    public int intern(CharSequence token) {
+        return intern(token, 0, token.length());
+    }
+
+    /**
+     * Same as intern, but without interning unknown tokens
+     *
+     * @return - the ID of the token, or -1 if it was never interned
+     */
+    public int lookup(CharSequence token) {
+        return find(token, 0, token.length(), false);
+    }
+
+    private int find(CharSequence text, int start, int end, boolean intern) {
+        if (end - start > MAX_TOKEN_CHARS) {
+            end = start + MAX_TOKEN_CHARS;
+            end -= Character.isHighSurrogate(text.charAt(end - 1)) ? 1 : 0;   // not half of a pair
+        }
+        byte[] bytes = scratch.get();
+        if (bytes.length < (end - start) * 3) {  // at most 3 UTF-8 bytes per UTF-16 char
+            bytes = new byte[(end - start) * 3];
+            scratch.set(bytes);
+        }
+        int length = encodeUtf8(text, start, end, bytes);
+        int hash = hash(bytes, length);
+        int stripe = hash & STRIPE_MASK;
+        int localId = stripes[stripe].find(bytes, length, hash, intern);
+        return localId < 0 ? -1 : localId << STRIPE_BITS | stripe;
+    }
+
+    /**
+     * @param id - an ID returned by intern
+     * @return - the token (a new String)
+     */
+    public String getToken(int id) {
+        return stripes[id & STRIPE_MASK].getToken(id >>> STRIPE_BITS);
+    }
+
+    /**
+     * @return - number of distinct tokens interned so far
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            size += stripe.size();
+        }
+        return size;
+    }
+
+    /**
+     * @return - every ID assigned so far is less than this
+     */
+    public int getIdBound() {
+        int maxStripeSize = 0;
+        for (Stripe stripe : stripes) {
+            maxStripeSize = Math.max(maxStripeSize, stripe.size());
+        }
+        return maxStripeSize << STRIPE_BITS;
+    }
+
+    /**
+     * @return - off-heap bytes allocated for tokens and index
+     */
+    public long getOffHeapBytes() {
+        long bytes = 0;
+        for (Stripe stripe : stripes) {
+            bytes += stripe.getOffHeapBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * @return - bytes taken by the (UTF-8) tokens themselves, a lower bound for getOffHeapBytes
+     */
+    public long getTokenBytes() {
+        long bytes = 0;
+        for (Stripe stripe : stripes) {
+            bytes += stripe.getTokenBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * Same as String.getBytes(UTF_8), including '?' for unpaired surrogates, but without allocating
+     *
+     * @return - number of bytes written
+     */
+    static int encodeUtf8(CharSequence text, int start, int end, byte[] bytes) {
+        int length = 0;
+        for (int i = start; i < end; i++) {
+            char ch = text.charAt(i);
+            if (ch < 0x80) {
+                bytes[length++] = (byte) ch;
+            } else if (ch < 0x800) {
+                bytes[length++] = (byte) (0xC0 | ch >>> 6);
+                bytes[length++] = (byte) (0x80 | ch & 0x3F);
+            } else if (Character.isHighSurrogate(ch) && i + 1 < end && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(ch, text.charAt(++i));
+                bytes[length++] = (byte) (0xF0 | codePoint >>> 18);
+                bytes[length++] = (byte) (0x80 | codePoint >>> 12 & 0x3F);
+                bytes[length++] = (byte) (0x80 | codePoint >>> 6 & 0x3F);
+                bytes[length++] = (byte) (0x80 | codePoint & 0x3F);
+            } else if (Character.isSurrogate(ch)) {
+                bytes[length++] = '?';
+            } else {
+                bytes[length++] = (byte) (0xE0 | ch >>> 12);
+                bytes[length++] = (byte) (0x80 | ch >>> 6 & 0x3F);
+                bytes[length++] = (byte) (0x80 | ch & 0x3F);
+            }
+        }
+        return length;
+    }
+
+    /**
+     * FNV-1a, then mixed so that both the stripe bits and the index bits are well distributed
+     */
+    private static int hash(byte[] bytes, int length) {
+        int hash = 0x811c9dc5;
+        for (int i = 0; i < length; i++) {
+            hash = (hash ^ bytes[i]) * 0x01000193;
+        }
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        return hash ^ hash >>> 13;
+    }
+
+    /**
+     * A lock-protected slice of the dictionary
+     */
+    private static final class Stripe {
+        // index slot layout: hash (4 bytes), local ID + 1 (4 bytes, 0 for empty slots)
+        private static final int SLOT_BYTES = 8;
+
+        private ByteBuffer index = ByteBuffer.allocateDirect(256 * SLOT_BYTES);
+        private int indexCapacity = 256;
+        private ByteBuffer entries = ByteBuffer.allocateDirect(128 * 8);   // per local ID: arena offset, byte length
+        private ByteBuffer arena = ByteBuffer.allocateDirect(4096);        // the tokens, UTF-8 encoded
+        private int arenaLength;
+        private int size;
+
+        /**
+         * @return - the local ID of the token, -1 if it's not there and not to be interned
+         */
+        private synchronized int find(byte[] bytes, int length, int hash, boolean intern) {
+            int mask = indexCapacity - 1;
+            int slot = (hash >>> STRIPE_BITS) & mask;
+            while (true) {
+                int position = slot * SLOT_BYTES;
+                int localIdPlusOne = index.getInt(position + 4);
+                if (localIdPlusOne == 0) {
+                    break;
+                }
+                if (index.getInt(position) == hash && matches(localIdPlusOne - 1, bytes, length)) {
+                    return localIdPlusOne - 1;
+                }
+                slot = (slot + 1) & mask;
+            }
+            if (!intern) {
+                return -1;
+            }
+
+            // a new token: append it to the arena, record it, and index it
+            int localId = size++;
+            arena = ensureCapacity(arena, arenaLength + length);
+            for (int i = 0; i < length; i++) {
+                arena.put(arenaLength + i, bytes[i]);
+            }
+            entries = ensureCapacity(entries, size * 8);
+            entries.putInt(localId * 8, arenaLength);
+            entries.putInt(localId * 8 + 4, length);
+            arenaLength += length;
+            index.putInt(slot * SLOT_BYTES, hash);
+            index.putInt(slot * SLOT_BYTES + 4, localId + 1);
+            if (size * 2 > indexCapacity) {
+                growIndex();
+            }
+            return localId;
+        }
+
+        private boolean matches(int localId, byte[] bytes, int length) {
+            if (entries.getInt(localId * 8 + 4) != length) {
+                return false;
+            }
+            int offset = entries.getInt(localId * 8);
+            for (int i = 0; i < length; i++) {
+                if (arena.get(offset + i) != bytes[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private synchronized String getToken(int localId) {
+            if (localId >= size) {
+                throw new UnsupportedOperationException("Unknown token ID!");
+            }
+            byte[] bytes = new byte[entries.getInt(localId * 8 + 4)];
+            ByteBuffer token = arena.duplicate();
+            token.position(entries.getInt(localId * 8));
+            token.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private synchronized int size() {
+            return size;
+        }
+
+        private synchronized long getOffHeapBytes() {
+            return (long) index.capacity() + entries.capacity() + arena.capacity();
+        }
+
+        private synchronized long getTokenBytes() {
+            return arenaLength;
+        }
+
+        private void growIndex() {
+            ByteBuffer oldIndex = index;
+            int oldCapacity = indexCapacity;
+            indexCapacity *= 2;
+            index = ByteBuffer.allocateDirect(indexCapacity * SLOT_BYTES);
+            int mask = indexCapacity - 1;
+            for (int oldSlot = 0; oldSlot < oldCapacity; oldSlot++) {
+                long slotValue = oldIndex.getLong(oldSlot * SLOT_BYTES);  // hash & local ID + 1, moved as one
+                if (oldIndex.getInt(oldSlot * SLOT_BYTES + 4) != 0) {
+                    int slot = (oldIndex.getInt(oldSlot * SLOT_BYTES) >>> STRIPE_BITS) & mask;
+                    while (index.getInt(slot * SLOT_BYTES + 4) != 0) {
+                        slot = (slot + 1) & mask;
+                    }
+                    index.putLong(slot * SLOT_BYTES, slotValue);
+                }
+            }
+        }
+
+        /**
+         * @return - the buffer if it can hold the bytes needed, otherwise a copy at least twice as big
+         */
+        private static ByteBuffer ensureCapacity(ByteBuffer buffer, int bytesNeeded) {
+            if (bytesNeeded <= buffer.capacity()) {
+                return buffer;
+            }
+            long newCapacity = Math.max((long) buffer.capacity() * 2, bytesNeeded);
+            if (newCapacity > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Token dictionary stripe is full!");
+            }
+            ByteBuffer grown = ByteBuffer.allocateDirect((int) newCapacity);
+            ByteBuffer used = buffer.duplicate();
+            used.clear();
+            grown.put(used);
+            return grown;
+        }
+    }
+}
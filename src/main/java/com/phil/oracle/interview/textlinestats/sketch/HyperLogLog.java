@@ -0,0 +1,120 @@
+package com.phil.oracle.interview.textlinestats.sketch;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * HyperLogLog distinct-count estimator: 2^precision one-byte registers, whatever the number of distinct values
+ * The standard error is about 1.04 / sqrt(2^precision), i.e. 0.8% at the default precision, for 16KB
+ * Small cardinalities are estimated by linear counting instead, which is close to exact
+ * Not thread-safe: use one per thread, and merge them (merging is lossless)
+ *
+ * @author Phil
+ */
+public final class HyperLogLog {
+    public static final int DEFAULT_PRECISION = 14;
+    private static final int MIN_PRECISION = 4, MAX_PRECISION = 18;
+
+    private final int precision;
+    private final byte[] registers;
+
+    /**
+     * @param precision - number of index bits, between 4 and 18
+     */
+    public HyperLogLog(int precision) {
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+            throw new UnsupportedOperationException("HyperLogLog precision has to be between " + MIN_PRECISION
+                    + " and " + MAX_PRECISION + "!");
+        }
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    public HyperLogLog() {
+        this(DEFAULT_PRECISION);
+    }
+
+    /**
+     * @param hash - 64-bit hash of the value, well mixed (see mix)
+     */
+    public void addHash(long hash) {
+        int index = (int) (hash >>> (64 - precision));
+        // leading zeros after the index bits, + 1 - the sentinel bit caps it if all of them are zero
+        byte rank = (byte) (Long.numberOfLeadingZeros((hash << precision) | (1L << (precision - 1))) + 1);
+        if (rank > registers[index]) {
+            registers[index] = rank;
+        }
+    }
+
+    /**
+     * @return - the number of distinct hashes added, estimated
+     */
+    public long estimate() {
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            zeros += register == 0 ? 1 : 0;
+        }
+        int m = registers.length;
+        double estimate = 0.7213 / (1 + 1.079 / m) * m * m / sum;
+        if (estimate <= 2.5 * m && zeros > 0) {
+            estimate = m * Math.log((double) m / zeros);  // linear counting
+        }
+        return Math.round(estimate);
+    }
+
+    /**
+     * @param other - a HyperLogLog of the same precision, whose values get added to this one's
+     */
+    public void merge(HyperLogLog other) {
+        if (other.precision != precision) {
+            throw new UnsupportedOperationException("Can't merge a HyperLogLog of precision " + other.precision
+                    + " into one of precision " + precision + "!");
+        }
+        for (int i = 0; i < registers.length; i++) {
+            registers[i] = (byte) Math.max(registers[i], other.registers[i]);
+        }
+    }
+
+    /**
+     * @param out - where to write the precision and registers
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeByte(precision);
+        out.write(registers);
+    }
+
+    /**
+     * Counterpart of write
+     */
+    public static HyperLogLog read(DataInput in) throws IOException {
+        int precision = in.readByte();
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+            throw new IOException("Invalid HyperLogLog precision " + precision);
+        }
+        HyperLogLog hyperLogLog = new HyperLogLog(precision);
+        in.readFully(hyperLogLog.registers);
+        return hyperLogLog;
+    }
+
+    /**
+     * @return - the precision it was created with
+     */
+    public int getPrecision() {
+        return precision;
+    }
+
+    /**
+     * Spreads the bits of a weak hash (e.g. FNV) over all 64 bits - MurmurHash3's finalizer
+     */
+    public static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,204 @@
+package com.phil.oracle.interview.textlinestats.spill;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Sorted run files of (key, count) entries, for aggregating more distinct keys than fit in memory:
+ * in-memory tables are spilled as runs sorted by key, and runs are k-way merged into one, summing the counts of equal keys
+ * Entry format: UTF-8 key length (int), UTF-8 key bytes, count (long)
+ *
+ * @author Phil
+ */
+public final class RunFiles {
+    static final int MAX_FAN_IN = 64;   // runs merged at once - more than that get merged in several passes
+    private static final int IO_BUFFER_BYTES = 64 * 1024;
+
+    /**
+     * Receives every distinct key of a merge once, in key order, with its total count
+     */
+    @FunctionalInterface
+    public interface EntryListener {
+        void entry(String key, long count);
+    }
+
+    private RunFiles() {/* No instantiation or extension for utility class */ }
+
+    /**
+     * @param counts    - the table to spill (left as is)
+     * @param directory - where to create the run file
+     * @return - the new run file, sorted by key
+     */
+    public static File write(Map<String, long[]> counts, File directory) throws IOException {
+        List<String> keys = new ArrayList<>(counts.keySet());
+        Collections.sort(keys);
+        File run = File.createTempFile("textlinestats-run", ".bin", directory);
+        run.deleteOnExit();
+        try (DataOutputStream out = open(run)) {
+            for (String key : keys) {
+                writeEntry(out, key, counts.get(key)[0]);
+            }
+        }
+        return run;
+    }
+
+    /**
+     * K-way merges the runs into a single run, deleting them, and reports every distinct key to the listener
+     * With more than MAX_FAN_IN runs, the earlier ones are merged into intermediate runs first (without reporting)
+     *
+     * @param runs      - sorted run files
+     * @param directory - where to create the merged run file
+     * @param listener  - receives the merged entries
+     * @return - the merged run file
+     */
+    public static File merge(List<File> runs, File directory, EntryListener listener) throws IOException {
+        List<File> pending = new ArrayList<>(runs);
+        while (pending.size() > MAX_FAN_IN) {
+            List<File> batch = new ArrayList<>(pending.subList(0, MAX_FAN_IN));
+            pending.subList(0, MAX_FAN_IN).clear();
+            pending.add(mergeOnce(batch, directory, (key, count) -> {
+            }));
+        }
+        return mergeOnce(pending, directory, listener);
+    }
+
+    /**
+     * Copies a run file as is: its length in bytes, then its content
+     *
+     * @param run - the run file to copy
+     * @param out - where to copy it to
+     */
+    public static void copy(File run, DataOutput out) throws IOException {
+        out.writeLong(run.length());
+        byte[] buffer = new byte[IO_BUFFER_BYTES];
+        try (FileInputStream in = new FileInputStream(run)) {
+            for (int read = in.read(buffer); read > 0; read = in.read(buffer)) {
+                out.write(buffer, 0, read);
+            }
+        }
+    }
+
+    /**
+     * Counterpart of copy
+     *
+     * @param in        - where to read the run from
+     * @param directory - where to create the run file
+     * @return - the new run file
+     */
+    public static File copy(DataInput in, File directory) throws IOException {
+        File run = File.createTempFile("textlinestats-run", ".bin", directory);
+        run.deleteOnExit();
+        byte[] buffer = new byte[IO_BUFFER_BYTES];
+        try (FileOutputStream out = new FileOutputStream(run)) {
+            for (long remaining = in.readLong(); remaining > 0; ) {
+                int length = (int) Math.min(buffer.length, remaining);
+                in.readFully(buffer, 0, length);
+                out.write(buffer, 0, length);
+                remaining -= length;
+            }
+        }
+        return run;
+    }
+
+    private static File mergeOnce(List<File> runs, File directory, EntryListener listener) throws IOException {
+        File merged = File.createTempFile("textlinestats-run", ".bin", directory);
+        merged.deleteOnExit();
+        List<RunReader> readers = new ArrayList<>(runs.size());
+        try (DataOutputStream out = open(merged)) {
+            PriorityQueue<RunReader> heads = new PriorityQueue<>(Math.max(1, runs.size()),
+                    (a, b) -> a.key.compareTo(b.key));
+            for (File run : runs) {
+                RunReader reader = new RunReader(run);
+                readers.add(reader);
+                if (reader.next()) {
+                    heads.add(reader);
+                }
+            }
+            while (!heads.isEmpty()) {
+                RunReader head = heads.poll();
+                String key = head.key;
+                long count = head.count;
+                if (head.next()) {
+                    heads.add(head);
+                }
+                while (!heads.isEmpty() && heads.peek().key.equals(key)) {  // the same key from other runs
+                    RunReader other = heads.poll();
+                    count += other.count;
+                    if (other.next()) {
+                        heads.add(other);
+                    }
+                }
+                writeEntry(out, key, count);
+                listener.entry(key, count);
+            }
+        } finally {
+            for (RunReader reader : readers) {
+                reader.close();
+            }
+        }
+        runs.forEach(File::delete);
+        return merged;
+    }
+
+    private static DataOutputStream open(File run) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run), IO_BUFFER_BYTES));
+    }
+
+    private static void writeEntry(DataOutputStream out, String key, long count) throws IOException {
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+        out.writeLong(count);
+    }
+
+    /**
+     * Reads a run file one entry at a time
+     */
+    static final class RunReader implements Closeable {
+        private final DataInputStream in;
+        String key;
+        long count;
+
+        RunReader(File run) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(run), IO_BUFFER_BYTES));
+        }
+
+        /**
+         * @return - whether there was another entry (now in key and count)
+         */
+        boolean next() throws IOException {
+            int length;
+            try {
+                length = in.readInt();
+            } catch (EOFException e) {
+                return false;
+            }
+            byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            key = new String(bytes, StandardCharsets.UTF_8);
+            count = in.readLong();
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
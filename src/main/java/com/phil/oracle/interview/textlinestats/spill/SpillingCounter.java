@@ -0,0 +1,70 @@
+package com.phil.oracle.interview.textlinestats.spill;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Counts keys in memory up to an (estimated) memory budget, then spills the table to a sorted run file and starts over
+ * NOT thread-safe: meant to be owned by a single thread
+ *
+ * @author Phil
+ */
+public final class SpillingCounter {
+    // rough heap cost of a table entry beyond the key's chars: HashMap node, String and long[] headers, references
+    static final int ENTRY_OVERHEAD_BYTES = 112;
+
+    private final long maxBytesInMemory;
+    private final File directory;
+    private final Consumer<File> runListener;
+    private Map<String, long[]> counts = new HashMap<>();
+    private long estimatedBytes;
+
+    /**
+     * @param maxBytesInMemory - estimated heap budget of the in-memory table
+     * @param directory        - where to spill run files
+     * @param runListener      - receives every run file spilled
+     */
+    public SpillingCounter(long maxBytesInMemory, File directory, Consumer<File> runListener) {
+        this.maxBytesInMemory = maxBytesInMemory;
+        this.directory = directory;
+        this.runListener = runListener;
+    }
+
+    /**
+     * @param key - the key to count once
+     */
+    public void add(String key) throws IOException {
+        long[] count = counts.get(key);
+        if (count == null) {
+            counts.put(key, new long[]{1});
+            estimatedBytes += ENTRY_OVERHEAD_BYTES + 2L * key.length();
+            if (estimatedBytes > maxBytesInMemory) {
+                spill();
+            }
+        } else {
+            count[0]++;
+        }
+    }
+
+    /**
+     * Writes the in-memory table out as a run file (unless it's empty), and empties it
+     */
+    public void spill() throws IOException {
+        if (counts.isEmpty()) {
+            return;
+        }
+        runListener.accept(RunFiles.write(counts, directory));
+        counts = new HashMap<>();
+        estimatedBytes = 0;
+    }
+
+    /**
+     * @return - number of distinct keys currently in memory
+     */
+    public int size() {
+        return counts.size();
+    }
+}
@@ -0,0 +1,124 @@
+package com.phil.oracle.interview.textlinestats.token;
+
+import com.phil.oracle.interview.textlinestats.kernel.WordTokenizer;
+
+import java.util.Arrays;
+
+/**
+ * A batch of lines together with their words, tokenized once and shared by every word-level accumulator
+ * Words are kept compact, as offsets into their lines (no substrings): 3 ints per word
+ * Immutable, and therefore safe to share between consumer threads
+ *
+ * @author Phil
+ */
+public final class TokenBatch {
+    public static final TokenBatch EMPTY = new TokenBatch(new String[0], new int[0], new int[0], new int[0], 0);
+
+    private final String[] lines;
+    private final int[] tokenLines;     // index of the line each token is in
+    private final int[] tokenStarts;    // offset of each token's first char in its line
+    private final int[] tokenEnds;      // offset just past each token's last char
+    private final int tokenCount;
+
+    private TokenBatch(String[] lines, int[] tokenLines, int[] tokenStarts, int[] tokenEnds, int tokenCount) {
+        this.lines = lines;
+        this.tokenLines = tokenLines;
+        this.tokenStarts = tokenStarts;
+        this.tokenEnds = tokenEnds;
+        this.tokenCount = tokenCount;
+    }
+
+    /**
+     * @param lines - a batch of lines, or fragments of lines (see LineFragments)
+     * @return - the batch with the words of every line (see WordTokenizer)
+     */
+    public static TokenBatch tokenize(String[] lines) {
+        Builder builder = new Builder(lines);
+        for (int i = 0; i < lines.length; i++) {
+            builder.line = i;
+            WordTokenizer.tokenize(lines, i, builder);
+        }
+        return new TokenBatch(lines, builder.tokenLines, builder.tokenStarts, builder.tokenEnds, builder.tokenCount);
+    }
+
+    /**
+     * @return - the lines of the batch (not to be modified)
+     */
+    public String[] getLines() {
+        return lines;
+    }
+
+    /**
+     * @return - the total number of words in the batch
+     */
+    public int getTokenCount() {
+        return tokenCount;
+    }
+
+    /**
+     * @param token - index of the word, 0 to getTokenCount() - 1, in line order
+     * @return - index of the line the word is in
+     */
+    public int getTokenLine(int token) {
+        return tokenLines[token];
+    }
+
+    /**
+     * @return - offset of the word's first char in its line
+     */
+    public int getTokenStart(int token) {
+        return tokenStarts[token];
+    }
+
+    /**
+     * @return - offset just past the word's last char in its line
+     */
+    public int getTokenEnd(int token) {
+        return tokenEnds[token];
+    }
+
+    /**
+     * @return - the length of the word in chars
+     */
+    public int getTokenLength(int token) {
+        return tokenEnds[token] - tokenStarts[token];
+    }
+
+    /**
+     * Convenience method - allocates a new String, prefer the offsets in hot loops
+     *
+     * @return - the word
+     */
+    public String getToken(int token) {
+        return lines[tokenLines[token]].substring(tokenStarts[token], tokenEnds[token]);
+    }
+
+    /**
+     * Collects tokens into growing arrays - about 8 words per line to start with
+     */
+    private static final class Builder implements WordTokenizer.TokenSink {
+        private int[] tokenLines, tokenStarts, tokenEnds;
+        private int tokenCount;
+        private int line;
+
+        private Builder(String[] lines) {
+            int capacity = Math.max(16, lines.length * 8);
+            tokenLines = new int[capacity];
+            tokenStarts = new int[capacity];
+            tokenEnds = new int[capacity];
+        }
+
+        @Override
+        public void token(int start, int end) {
+            if (tokenCount == tokenStarts.length) {
+                tokenLines = Arrays.copyOf(tokenLines, tokenCount * 2);
+                tokenStarts = Arrays.copyOf(tokenStarts, tokenCount * 2);
+                tokenEnds = Arrays.copyOf(tokenEnds, tokenCount * 2);
+            }
+            tokenLines[tokenCount] = line;
+            tokenStarts[tokenCount] = start;
+            tokenEnds[tokenCount] = end;
+            tokenCount++;
+        }
+    }
+}
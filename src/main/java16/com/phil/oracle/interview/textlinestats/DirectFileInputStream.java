@@ -0,0 +1,146 @@
+package com.phil.oracle.interview.textlinestats;
+
+import com.sun.nio.file.ExtendedOpenOption;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Reads a byte range of a file on disk with direct I/O (multi-release path, JDK 10+ APIs), see DirectIo
+ * Direct reads have to be aligned to the file store's block size - in position, length and buffer address - so the
+ * range is read in aligned blocks into aligned direct buffers, and the bytes outside of it are skipped
+ * Without the page cache there's no kernel read-ahead either, so a few blocks are read ahead on threads of the stream's
+ * own, i.e. several reads are outstanding at any time to keep the device busy
+ * Not thread-safe, same as any InputStream
+ *
+ * @author Phil
+ */
+public class DirectFileInputStream extends InputStream {
+    static final int BLOCK_BYTES = 1024 * 1024;
+    static final int READS_IN_FLIGHT = 4;
+
+    private final FileChannel channel;
+    private final int alignment;
+    private final long start, end;
+    private final ExecutorService readers;
+    private final Deque<Future<ByteBuffer>> inFlight = new ArrayDeque<>();
+    private final Deque<ByteBuffer> freeBuffers = new ArrayDeque<>();
+    private long nextPosition;          // of the next block to read, aligned
+    private ByteBuffer current;         // the block being read from, positioned and limited to the range
+
+    /**
+     * @param textFileName - a file on disk
+     * @param start        - the first byte to read
+     * @param end          - just past the last byte to read, -1 for the end of the file
+     * @throws UnsupportedOperationException - if the file system doesn't do direct I/O
+     */
+    public DirectFileInputStream(String textFileName, long start, long end) throws IOException {
+        Path path = Paths.get(textFileName);
+        alignment = (int) Files.getFileStore(path).getBlockSize();
+        channel = FileChannel.open(path, StandardOpenOption.READ, ExtendedOpenOption.DIRECT);
+        this.start = start;
+        this.end = end < 0 ? channel.size() : end;
+        int blockBytes = Math.max(alignment, BLOCK_BYTES / alignment * alignment);
+        for (int i = 0; i < READS_IN_FLIGHT; i++) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(blockBytes + alignment).alignedSlice(alignment);
+            buffer.limit(blockBytes);
+            freeBuffers.add(buffer.slice());
+        }
+        readers = Executors.newFixedThreadPool(READS_IN_FLIGHT, runnable -> {
+            Thread thread = new Thread(runnable, "direct-io-reader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        nextPosition = start / alignment * alignment;
+        try {
+            while (!freeBuffers.isEmpty() && nextPosition < this.end) {
+                readAhead();
+            }
+            current = nextBlock();      // a file system without direct I/O fails the first read, rather than the open
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        while (current != null && !current.hasRemaining()) {
+            current.clear();
+            freeBuffers.add(current);
+            if (nextPosition < end) {
+                readAhead();
+            }
+            current = nextBlock();
+        }
+        if (current == null) {
+            return -1;
+        }
+        int read = Math.min(len, current.remaining());
+        current.get(b, off, read);
+        return read;
+    }
+
+    @Override
+    public void close() throws IOException {
+        readers.shutdownNow();
+        channel.close();
+    }
+
+    private void readAhead() {
+        ByteBuffer buffer = freeBuffers.poll();
+        long position = nextPosition;
+        nextPosition += buffer.capacity();
+        inFlight.add(readers.submit(() -> readBlock(buffer, position)));
+    }
+
+    /**
+     * @return - the next block read, positioned and limited to the range - null if there are none left
+     */
+    private ByteBuffer nextBlock() throws IOException {
+        Future<ByteBuffer> read = inFlight.poll();
+        if (read == null) {
+            return null;
+        }
+        try {
+            return read.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading");
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        }
+    }
+
+    private ByteBuffer readBlock(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read <= 0 || buffer.position() % alignment != 0) {
+                break;  // the end of the file - a short read can only be the last one
+            }
+        }
+        int length = buffer.position();
+        buffer.position((int) Math.min(length, Math.max(0, start - position)));
+        buffer.limit((int) Math.max(buffer.position(), Math.min(length, end - position)));
+        return buffer;
+    }
+}
@@ -0,0 +1,172 @@
+package com.phil.oracle.interview.textlinestats.framework;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Java Flight Recorder events of the flow (multi-release path, JDK 16+), see FlowTracer
+ * All are duration events on the thread doing the work, under the "Text Line Stats" category, e.g. in JDK Mission
+ * Control. Enable them in a recording with the profile settings, or e.g. textlinestats.BufferStall#threshold=1 ms to
+ * keep stalls only when they're long
+ * An event is only allocated (and timestamped) while its type is enabled in a recording
+ *
+ * @author Phil
+ */
+public class JfrFlowTracer extends FlowTracer {
+    private static final String CATEGORY = "Text Line Stats";
+
+    // probes of whether each event type is enabled, so that nothing gets allocated while it's not
+    private static final BatchProduced BATCH_PRODUCED = new BatchProduced();
+    private static final BatchConsumed BATCH_CONSUMED = new BatchConsumed();
+    private static final Accumulate ACCUMULATE = new Accumulate();
+    private static final BufferStall BUFFER_STALL = new BufferStall();
+    private static final FlowPhase FLOW_PHASE = new FlowPhase();
+
+    @Override
+    public Span beginBatchProduced(Object producer) {
+        if (!BATCH_PRODUCED.isEnabled()) {
+            return NO_SPAN;
+        }
+        BatchProduced event = new BatchProduced();
+        event.producer = producer.getClass().getSimpleName();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public Span beginBatchConsumed(Object consumer) {
+        if (!BATCH_CONSUMED.isEnabled()) {
+            return NO_SPAN;
+        }
+        BatchConsumed event = new BatchConsumed();
+        event.consumer = consumer.getClass().getSimpleName();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public Span beginAccumulate(Object accumulator) {
+        if (!ACCUMULATE.isEnabled()) {
+            return NO_SPAN;
+        }
+        Accumulate event = new Accumulate();
+        event.accumulator = accumulator.getClass().getSimpleName();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public Span beginBufferStall(boolean full, int capacity) {
+        if (!BUFFER_STALL.isEnabled()) {
+            return NO_SPAN;
+        }
+        BufferStall event = new BufferStall();
+        event.full = full;
+        event.capacity = capacity;
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public Span beginPhase(String flow, String phase) {
+        if (!FLOW_PHASE.isEnabled()) {
+            return NO_SPAN;
+        }
+        FlowPhase event = new FlowPhase();
+        event.flow = flow;
+        event.phase = phase;
+        event.begin();
+        return event;
+    }
+
+    @Name("textlinestats.BatchProduced")
+    @Label("Batch Produced")
+    @Category({CATEGORY, "Pipeline"})
+    @Description("A batch read and put into the buffer, including any wait for room")
+    static class BatchProduced extends Event implements Span {
+        @Label("Producer")
+        String producer;
+        @Label("Items")
+        long items;
+
+        @Override
+        public void end(long count) {
+            items = count;
+            commit();
+        }
+    }
+
+    @Name("textlinestats.BatchConsumed")
+    @Label("Batch Consumed")
+    @Category({CATEGORY, "Pipeline"})
+    @Description("Batches taken out of the buffer and fed to every accumulator - see Accumulate for the breakdown")
+    static class BatchConsumed extends Event implements Span {
+        @Label("Consumer")
+        String consumer;
+        @Label("Items")
+        long items;
+
+        @Override
+        public void end(long count) {
+            items = count;
+            commit();
+        }
+    }
+
+    @Name("textlinestats.Accumulate")
+    @Label("Accumulate")
+    @Category({CATEGORY, "Pipeline"})
+    @Description("Batches fed to a single accumulator, within a Batch Consumed event")
+    static class Accumulate extends Event implements Span {
+        @Label("Accumulator")
+        String accumulator;
+        @Label("Items")
+        long items;
+
+        @Override
+        public void end(long count) {
+            items = count;
+            commit();
+        }
+    }
+
+    @Name("textlinestats.BufferStall")
+    @Label("Buffer Stall")
+    @Category({CATEGORY, "Buffer"})
+    @Description("A thread waiting on a buffer, for room to put when it's full, or for items to take when it's empty")
+    static class BufferStall extends Event implements Span {
+        @Label("Full")
+        @Description("Waiting for room, rather than for items")
+        boolean full;
+        @Label("Capacity")
+        int capacity;
+        @Label("Size")
+        @Description("Items in the buffer once the wait was over")
+        long size;
+
+        @Override
+        public void end(long count) {
+            size = count;
+            commit();
+        }
+    }
+
+    @Name("textlinestats.FlowPhase")
+    @Label("Flow Phase")
+    @Category({CATEGORY, "Flow"})
+    @Description("A phase of a run, e.g. producing, then draining the stages once the producer is done")
+    static class FlowPhase extends Event implements Span {
+        @Label("Flow")
+        String flow;
+        @Label("Phase")
+        String phase;
+
+        @Override
+        public void end(long count) {
+            commit();
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.phil.oracle.interview.textlinestats.kernel;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Vector API kernel (JDK 16+, multi-release path) - classifies a full hardware vector of chars or bytes per step,
+ * e.g. 16 chars or 32 bytes with AVX2 and twice that with AVX-512
+ * Only loadable when the JVM runs with '--add-modules jdk.incubator.vector', see TextKernels
+ *
+ * @author Phil
+ */
+public class VectorTextKernel implements TextKernel {
+    private static final VectorSpecies<Short> CHARS = ShortVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Byte> BYTES = ByteVector.SPECIES_PREFERRED;
+    private static final int SCRATCH_BYTES = 64 * 1024;   // for copying out of buffers which are not array-backed
+
+    @Override
+    public void countLetters(String[] lines, long[] letterCounts) {
+        char[] chars = new char[0];
+        short[] units = new short[0];
+        for (String line : lines) {
+            chars = getChars(line, chars);
+            units = getUnits(chars, line.length(), units);
+            int length = line.length(), i = 0;
+            for (; i < CHARS.loopBound(length); i += CHARS.length()) {
+                long letterBits = letters(ShortVector.fromArray(CHARS, units, i)).toLong();
+                while (letterBits != 0) {
+                    letterCounts[chars[i + Long.numberOfTrailingZeros(letterBits)]]++;
+                    letterBits &= letterBits - 1;
+                }
+            }
+            for (; i < length; i++) {
+                char ch = chars[i];
+                if ((int) ch <= MAX_CHAR_CODE && WordBoundaries.CHAR_CLASSES[ch] == WordBoundaries.LETTER) {
+                    letterCounts[ch]++;
+                }
+            }
+        }
+    }
+
+    @Override
+    public long countWords(String[] lines) {
+        long wordCount = 0;
+        char[] chars = new char[0];
+        short[] units = new short[0];
+        for (String line : lines) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            chars = getChars(line, chars);
+            units = getUnits(chars, line.length(), units);
+            int lastCharIndex = line.length() - 1, i = 0;
+            long state = 0;
+            for (; i < CHARS.loopBound(lastCharIndex); i += CHARS.length()) {  // the last character is excluded
+                ShortVector lanes = ShortVector.fromArray(CHARS, units, i);
+                long letterBits = letters(lanes).toLong(), whitespaceBits = whitespace(lanes).toLong();
+                if ((letterBits | whitespaceBits) != 0) {
+                    state = WordBoundaries.stepBits(state, letterBits, whitespaceBits, CHARS.length());
+                }
+            }
+            for (; i < lastCharIndex; i++) {
+                state = WordBoundaries.stepChar(state, chars[i]);
+            }
+            wordCount += WordBoundaries.finishLine(state, chars[lastCharIndex]);
+        }
+        return wordCount;
+    }
+
+    @Override
+    public long countLineBreaks(ByteBuffer bytes) {
+        if (bytes.hasArray()) {
+            return countLineBreaks(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+        }
+        ByteBuffer source = bytes.duplicate();
+        byte[] scratch = new byte[Math.min(SCRATCH_BYTES, source.remaining())];
+        long lineBreakCount = 0;
+        byte lastByte = 0;
+        while (source.hasRemaining()) {
+            int length = Math.min(scratch.length, source.remaining());
+            source.get(scratch, 0, length);
+            lineBreakCount += countLineBreaks(scratch, 0, length);
+            if (lastByte == '\r' && scratch[0] == '\n') {   // "\r\n" across two scratch copies
+                lineBreakCount--;
+            }
+            lastByte = scratch[length - 1];
+        }
+        return lineBreakCount;
+    }
+
+    private static long countLineBreaks(byte[] bytes, int offset, int length) {
+        long lineBreakCount = 0, carriageReturns = 0;
+        int i = 0;
+        for (; i < BYTES.loopBound(length); i += BYTES.length()) {
+            ByteVector lanes = ByteVector.fromArray(BYTES, bytes, offset + i);
+            long newlines = lanes.eq((byte) '\n').toLong();
+            // a '\r' in the top lane of the previous vector lines up with the bottom lane of this one
+            long pairs = newlines & (carriageReturns >>> (BYTES.length() - 1)
+                    | (carriageReturns = lanes.eq((byte) '\r').toLong()) << 1);
+            lineBreakCount += Long.bitCount(newlines) + Long.bitCount(carriageReturns) - Long.bitCount(pairs);
+        }
+        boolean afterCarriageReturn = (carriageReturns >>> (BYTES.length() - 1)) != 0;
+        for (; i < length; i++) {
+            byte b = bytes[offset + i];
+            if (b == '\r' || b == '\n' && !afterCarriageReturn) {
+                lineBreakCount++;
+            }
+            afterCarriageReturn = b == '\r';
+        }
+        return lineBreakCount;
+    }
+
+    private static VectorMask<Short> ascii(ShortVector lanes) {
+        return lanes.compare(VectorOperators.GE, (short) 0).and(lanes.compare(VectorOperators.LE, (short) MAX_CHAR_CODE));
+    }
+
+    private static VectorMask<Short> letters(ShortVector lanes) {
+        ShortVector folded = lanes.or((short) 0x20);   // 'A'-'Z' folds onto 'a'-'z', nothing else in ASCII lands there
+        return inRange(folded, 'a', 'z').and(ascii(lanes));
+    }
+
+    private static VectorMask<Short> whitespace(ShortVector lanes) {
+        return inRange(lanes, 0x09, 0x0D).or(inRange(lanes, 0x1C, 0x20)).and(ascii(lanes));
+    }
+
+    private static VectorMask<Short> inRange(ShortVector lanes, int low, int high) {
+        return lanes.compare(VectorOperators.GE, (short) low).and(lanes.compare(VectorOperators.LE, (short) high));
+    }
+
+    private static char[] getChars(String line, char[] chars) {
+        if (chars.length < line.length()) {
+            chars = new char[Math.max(line.length(), chars.length * 2)];
+        }
+        line.getChars(0, line.length(), chars, 0);
+        return chars;
+    }
+
+    // the same UTF-16 code units as shorts, for loading into lanes - fromCharArray is only there from JDK 17 on
+    private static short[] getUnits(char[] chars, int length, short[] units) {
+        if (units.length < length) {
+            units = new short[Math.max(length, units.length * 2)];
+        }
+        for (int i = 0; i < length; i++) {   // a plain copy loop, vectorized by the JIT
+            units[i] = (short) chars[i];
+        }
+        return units;
+    }
+}
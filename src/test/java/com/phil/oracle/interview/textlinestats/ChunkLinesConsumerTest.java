@@ -0,0 +1,121 @@
+package com.phil.oracle.interview.textlinestats;
+
+import com.phil.oracle.interview.textlinestats.framework.Accumulator;
+import com.phil.oracle.interview.textlinestats.framework.AsyncFlowOrchestrator;
+import com.phil.oracle.interview.textlinestats.framework.BlockingBuffer;
+import com.phil.oracle.interview.textlinestats.framework.TestUtil;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+
+public class ChunkLinesConsumerTest {
+
+    @Test
+    public void shouldSplitLinesLikeTheProducer() throws IOException, InterruptedException {
+        Random random = new Random(20180313);
+        String[] samples = {"plain ascii ", "caf\u00e9 ", "\u0436\u0443\u043a ", "\u20ac\u4e2d ", "\ud83d\ude00 ", "\r\n", "\n", "\r"};
+        for (int round = 0; round < 100; round++) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            for (int i = random.nextInt(300); i > 0; i--) {
+                if (random.nextInt(20) == 0) {
+                    bytes.write(random.nextInt(256));   // most likely malformed
+                } else {
+                    byte[] sample = samples[random.nextInt(samples.length)].getBytes(StandardCharsets.UTF_8);
+                    bytes.write(sample, 0, sample.length);
+                }
+            }
+            byte[] input = bytes.toByteArray();
+            List<String> expected = readWithJdk(input);
+            for (int chunkBytes : new int[]{1, 2, 3, 7, 64, 1024}) {
+                List<RawChunk> chunks = split(input, chunkBytes);
+                Collections.shuffle(chunks, random);   // the stitcher has to put them back in order
+                BlockingBuffer<RawChunk> buffer = BlockingBuffer.instance(chunks.size() + 1);
+                LineCollector collector = new LineCollector();
+                ChunkLinesConsumer consumer = new ChunkLinesConsumer(buffer, Collections.singletonList(collector), 1, 5);
+                buffer.putAll(chunks);
+                buffer.close();
+                assertEquals(chunks.size(), consumer.consumeFromBuffer(buffer));
+                // lines straddling chunks are accumulated as they get stitched, so the order differs
+                assertEquals("round " + round + ", " + chunkBytes + " byte chunks", sorted(expected), sorted(collector.lines));
+            }
+        }
+    }
+
+    @Test
+    public void shouldCountLinesOfGzippedFileOnAllThreads() throws IOException {
+        File gzipFile = File.createTempFile("chunks", TextLinesProducer.GZIP_SUFFIX);
+        gzipFile.deleteOnExit();
+        List<String> expected = new ArrayList<>();
+        try (InputStream in = getClass().getClassLoader().getResourceAsStream(TestUtil.SAMPLE_TEXT_FILE_NAME);
+             BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                expected.add(line);
+            }
+        }
+        try (GZIPOutputStream out = new GZIPOutputStream(Files.newOutputStream(gzipFile.toPath()))) {
+            out.write(String.join("\n", expected).getBytes(StandardCharsets.UTF_8));   // no trailing newline
+        }
+
+        LineCollector collector = new LineCollector();
+        ChunkLinesConsumer consumer = new ChunkLinesConsumer(BlockingBuffer.instance(16),
+                Collections.singletonList(collector), 4, 1000);
+        long millisTaken = AsyncFlowOrchestrator.runProducerConsumer(10000,
+                new RawChunkProducer(gzipFile.getPath(), 4096, consumer), consumer);
+        System.out.println(expected.size() + " lines of 4KB chunks split in " + millisTaken + "ms");
+        assertEquals(sorted(expected), sorted(collector.lines));
+        assertEquals(0, consumer.getMalformedInputCount());
+    }
+
+    private static List<RawChunk> split(byte[] input, int chunkBytes) {
+        List<RawChunk> chunks = new ArrayList<>();
+        for (int offset = 0; offset < input.length; offset += chunkBytes) {
+            byte[] bytes = Arrays.copyOfRange(input, offset, Math.min(input.length, offset + chunkBytes));
+            chunks.add(new RawChunk(chunks.size(), bytes, bytes.length));
+        }
+        return chunks;
+    }
+
+    private static List<String> readWithJdk(byte[] input) throws IOException {
+        List<String> lines = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(input), StandardCharsets.UTF_8));
+        for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+            lines.add(line);
+        }
+        return lines;
+    }
+
+    private static List<String> sorted(List<String> lines) {
+        List<String> sorted = new ArrayList<>(lines);
+        Collections.sort(sorted);
+        return sorted;
+    }
+
+    private static final class LineCollector implements Accumulator<String[]> {
+        private final List<String> lines = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public void accumulate(String[] inputItem) {
+            lines.addAll(Arrays.asList(inputItem));
+        }
+
+        @Override
+        public void summarize() {
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.phil.oracle.interview.textlinestats;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CommandLineArgsTest {
+
+    @Test
+    public void shouldSplitPositionalArgumentsAndOptions() {
+        CommandLineArgs commandLine = CommandLineArgs.parse(new String[]{"c:/giant.log", "--stats=lines,words", "300", "--server", "--"});
+        assertEquals(3, commandLine.positionalCount());
+        assertEquals("c:/giant.log", commandLine.getPositional(0));
+        assertEquals("300", commandLine.getPositional(1));
+        assertEquals("--", commandLine.getPositional(2));  // not an option
+        assertEquals("lines,words", commandLine.getOption("stats", null));
+        assertTrue(commandLine.hasOption("server"));
+        assertEquals("", commandLine.getOption("server", null));
+        assertFalse(commandLine.hasOption("charset"));
+        assertEquals("UTF-8", commandLine.getOption("charset", "UTF-8"));
+    }
+}
@@ -0,0 +1,25 @@
+package com.phil.oracle.interview.textlinestats;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class JsonTest {
+
+    @Test
+    public void shouldRenderStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("count", 42L);
+        stats.put("avg", new BigDecimal("4.5"));
+        stats.put("nan", Double.NaN);
+        stats.put("letter", "\"\\\n\u0001");
+        stats.put("list", Arrays.asList(1, true, null));
+        assertEquals("{\"count\":42,\"avg\":4.5,\"nan\":null,\"letter\":\"\\\"\\\\\\n\\u0001\",\"list\":[1,true,null]}",
+                Json.toJson(stats));
+    }
+}
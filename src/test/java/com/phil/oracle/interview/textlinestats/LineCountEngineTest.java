@@ -0,0 +1,89 @@
+package com.phil.oracle.interview.textlinestats;
+
+import com.phil.oracle.interview.textlinestats.framework.TestUtil;
+import com.phil.oracle.interview.textlinestats.kernel.ScalarTextKernel;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class LineCountEngineTest {
+
+    @Test
+    public void shouldCountLinesLikeTheProducer() throws IOException, URISyntaxException {
+        // the sample file is in classpath, so it gets streamed
+        long expectedLineCount = 0;
+        Path path = Paths.get(ClassLoader.getSystemResource(TestUtil.SAMPLE_TEXT_FILE_NAME).toURI());
+        try (BufferedReader br = Files.newBufferedReader(path)) {
+            while (br.readLine() != null) {
+                expectedLineCount++;
+            }
+        }
+        assertEquals(expectedLineCount, new LineCountEngine().countLines(TestUtil.SAMPLE_TEXT_FILE_NAME));
+        // and on disk, it gets mapped
+        assertEquals(expectedLineCount, new LineCountEngine().countLines(path.toString()));
+    }
+
+    @Test
+    public void testVariousEndings() throws IOException {
+        assertEquals(0, countLines(""));
+        assertEquals(1, countLines("\n"));
+        assertEquals(1, countLines("no newline"));
+        assertEquals(2, countLines("one\r\ntwo\r\n"));
+        assertEquals(3, countLines("one\n\nthree"));
+        assertEquals(3, countLines("one\rtwo\rthree\n"));
+        assertEquals(4, countLines("one\r\rthree\r\nfour\r"));
+        assertEquals(4, countLines("\n\r\r\n\n"));
+    }
+
+    @Test
+    public void shouldCountCarriageReturnsAcrossChunks() throws IOException {
+        // the "\r\n" is split between the first 64k chunk and the next one
+        byte[] bytes = new byte[64 * 1024 + 5];
+        Arrays.fill(bytes, (byte) 'a');
+        bytes[64 * 1024 - 1] = '\r';
+        bytes[64 * 1024] = '\n';
+        bytes[64 * 1024 + 2] = '\r';
+        assertEquals(3, new LineCountEngine().countLines(new ByteArrayInputStream(bytes)));
+        assertEquals(3, new LineCountEngine(new ScalarTextKernel()).countLines(new ByteArrayInputStream(bytes)));
+    }
+
+    @Test
+    public void testEdgeCases() throws IOException {
+        try {
+            new LineCountEngine().countLines("no_such_file.txt");
+            fail("Shouldn't be here!");
+        } catch (FileNotFoundException e) {
+            e.printStackTrace(); //ok
+        }
+    }
+
+    private long countLines(String contents) throws IOException {
+        File file = File.createTempFile("lines", ".txt");
+        file.deleteOnExit();
+        Files.write(file.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+        long lineCount = new LineCountEngine().countLines(file.getPath());
+        assertEquals(lineCount, new LineCountEngine(new ScalarTextKernel()).countLines(file.getPath()));
+
+        // same as the line accumulator, on lines read by the producer
+        TextFileStatsGenerator app = new TextFileStatsGenerator();
+        app.setStatistics(EnumSet.of(Statistic.LINES, Statistic.WORDS));
+        app.initialize(file.getPath(), 100, 10, 1);
+        app.run(5);
+        assertEquals(lineCount, ((Map) app.getStatistics().get("LineAccumulator")).get("totalLineCount"));
+        return lineCount;
+    }
+}
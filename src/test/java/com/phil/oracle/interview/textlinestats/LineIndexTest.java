@@ -0,0 +1,205 @@
+package com.phil.oracle.interview.textlinestats;
+
+import com.phil.oracle.interview.textlinestats.framework.TestUtil;
+import com.phil.oracle.interview.textlinestats.kernel.TimestampParser;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.*;
+
+public class LineIndexTest {
+
+    @Test
+    public void shouldFindLineRanges() throws IOException {
+        File file = createLogFile(10000);
+        List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        indexFile(file, 1000);
+
+        long start = System.currentTimeMillis();
+        LineIndex index = LineIndex.read(file.getPath());
+        assertEquals(10000, index.getLineCount());
+        assertEquals(10, index.getBlockCount());
+        for (long[] range : new long[][]{{0, 1}, {0, 1000}, {999, 1001}, {1234, 5678}, {9999, 10000}, {5000, 5000}}) {
+            long[] byteRange = index.getLineRange(file.getPath(), range[0], range[1]);
+            assertEquals(lines.subList((int) range[0], (int) range[1]), readLines(file, byteRange));
+        }
+        System.out.println("Line ranges took " + (System.currentTimeMillis() - start) + "ms");
+        // past the end
+        assertArrayEquals(new long[]{file.length(), file.length()}, index.getLineRange(file.getPath(), 10000, 20000));
+        // a line range of the generator, 1-based and inclusive
+        final TextFileStatsGenerator app = new TextFileStatsGenerator();
+        app.setStatistics(Statistic.defaults());
+        long[] byteRange = index.getLineRange(file.getPath(), 2000, 3000);
+        app.setRange(byteRange[0], byteRange[1]);
+        app.initialize(file.getPath(), 100, 100, 2);
+        app.run(5);
+        assertEquals(1000L, ((Map) app.getStatistics().get("LineAccumulator")).get("totalLineCount"));
+    }
+
+    @Test
+    public void shouldFindTimeRanges() throws IOException {
+        File file = createLogFile(10000);   // a line per second from 09:00
+        List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        indexFile(file, 500);
+
+        LineIndex index = LineIndex.read(file.getPath());
+        assertEquals("yyyy-MM-dd HH:mm:ss", index.getTimestampPattern());
+        long[] byteRange = index.getTimeRange(TimestampParser.parseMinuteLabel("2018-03-13 10:00"),
+                TimestampParser.parseMinuteLabel("2018-03-13 11:00"));
+        List<String> rangeLines = readLines(file, byteRange);
+        // whole blocks around the hour's 3600 lines
+        assertEquals(lines.subList(3500, 7500), rangeLines);
+        assertArrayEquals(new long[]{0, 0}, index.getTimeRange(TimestampParser.parseMinuteLabel("2018-03-14 00:00"),
+                Long.MAX_VALUE));
+        assertArrayEquals(new long[]{0, file.length()}, index.getTimeRange(Long.MIN_VALUE, Long.MAX_VALUE));
+
+        // cover the command-line
+        TextFileStatsGenerator.main(new String[]{file.getPath(), "--time=2018-03-13 10:00..2018-03-13 10:59"});
+        TextFileStatsGenerator.main(new String[]{file.getPath(), "--time=..2018-03-13 09:30"});
+        TextFileStatsGenerator.main(new String[]{file.getPath(), "--lines=1001-2000"});
+        TextFileStatsGenerator.main(new String[]{file.getPath(), "--lines=1001"});
+    }
+
+    @Test
+    public void shouldAlignCoordinatorRangesToBlocks() throws IOException {
+        File file = createLogFile(3000);
+        indexFile(file, 100);
+        LineIndex index = LineIndex.read(file.getPath());
+        ScaleOutCoordinator coordinator = new ScaleOutCoordinator(2, 100, 1, port -> () -> {
+        }, file.length() / 7 + 1);
+        List<ScaleOutCoordinator.Range> ranges = coordinator.split(file.getPath());
+        assertTrue(ranges.size() > 1);
+        assertEquals(0, ranges.get(0).start);
+        assertEquals(file.length(), ranges.get(ranges.size() - 1).end);
+        for (int i = 0; i < ranges.size(); i++) {
+            assertEquals(ranges.get(i).end, index.alignToBlock(ranges.get(i).end));
+            assertEquals(i == 0 ? 0 : ranges.get(i - 1).end, ranges.get(i).start);
+        }
+    }
+
+    @Test
+    public void shouldNotEndLinesAtLoneCarriageReturns() throws IOException {
+        // the reader ends lines at a lone '\r' too, byte ranges only start after a '\n'
+        File file = File.createTempFile("indexed", ".log");
+        file.deleteOnExit();
+        LineIndex.indexFileOf(file.getPath()).deleteOnExit();
+        Files.write(file.toPath(), "a\rb\nc\r\nd\re\nf\n".getBytes(StandardCharsets.UTF_8));
+        indexFile(file, 2);
+        LineIndex index = LineIndex.read(file.getPath());
+        assertEquals(4, index.getLineCount());
+        assertEquals(2, index.getBlockCount());
+        assertArrayEquals(new long[]{4, 11}, index.getLineRange(file.getPath(), 1, 3));
+        final TextFileStatsGenerator app = new TextFileStatsGenerator();
+        app.setRange(4, 11);
+        app.initialize(file.getPath(), 100, 100, 1);
+        app.run(5);
+        assertEquals(3L, ((Map) app.getStatistics().get("LineAccumulator")).get("totalLineCount"));   // "c", "d", "e"
+
+        // only '\r' line endings - a single line
+        Files.write(file.toPath(), "x\ry\rz".getBytes(StandardCharsets.UTF_8));
+        indexFile(file, 1);
+        index = LineIndex.read(file.getPath());
+        assertEquals(1, index.getLineCount());
+        assertArrayEquals(new long[]{0, file.length()}, index.getLineRange(file.getPath(), 0, 1));
+        assertArrayEquals(new long[]{file.length(), file.length()}, index.getLineRange(file.getPath(), 1, 2));
+    }
+
+    @Test
+    public void testEdgeCases() throws IOException {
+        File file = createLogFile(100);
+        try {
+            LineIndex.read(file.getPath());
+            fail("Shouldn't be here!");
+        } catch (IOException e) {
+            e.printStackTrace(); //ok - no index yet
+        }
+        assertNull(LineIndex.readIfCurrent(file.getPath()));
+
+        indexFile(file, 10);
+        assertNotNull(LineIndex.readIfCurrent(file.getPath()));
+        Files.write(file.toPath(), Arrays.asList("one more line"), StandardCharsets.UTF_8,
+                StandardOpenOption.APPEND);
+        try {
+            LineIndex.read(file.getPath());
+            fail("Shouldn't be here!");
+        } catch (IOException e) {
+            e.printStackTrace(); //ok - stale
+        }
+
+        // no timestamps
+        final TextFileStatsGenerator app = new TextFileStatsGenerator();
+        app.setIndexBlockLines(10);
+        app.initialize(file.getPath(), 100, 100, 1);
+        app.run(5);
+        LineIndex index = LineIndex.read(file.getPath());
+        assertEquals(101, index.getLineCount());
+        assertNull(index.getTimestampPattern());
+        try {
+            index.getTimeRange(0, 1);
+            fail("Shouldn't be here!");
+        } catch (UnsupportedOperationException e) {
+            e.printStackTrace(); //ok
+        }
+        try {
+            index.getLineRange(file.getPath(), 10, 5);
+            fail("Shouldn't be here!");
+        } catch (UnsupportedOperationException e) {
+            e.printStackTrace(); //ok
+        }
+        try {
+            new LineIndex.Builder(0, null);
+            fail("Shouldn't be here!");
+        } catch (UnsupportedOperationException e) {
+            e.printStackTrace(); //ok
+        }
+        try {
+            final TextFileStatsGenerator classpathApp = new TextFileStatsGenerator();
+            classpathApp.setIndexBlockLines(10);
+            classpathApp.initialize(TestUtil.SAMPLE_TEXT_FILE_NAME, 100, 100, 1);   // on the classpath, not on disk
+            fail("Shouldn't be here!");
+        } catch (UnsupportedOperationException e) {
+            e.printStackTrace(); //ok
+        }
+        TextFileStatsGenerator.main(new String[]{file.getPath(), "--index=lots"});
+        TextFileStatsGenerator.main(new String[]{file.getPath(), "--index", "--lines=1-10"});
+        TextFileStatsGenerator.main(new String[]{file.getPath() + ".missing", "--lines=1-10"});
+    }
+
+    /**
+     * @return - a log file with a line per second from 09:00, '\n' terminated
+     */
+    private static File createLogFile(int lineCount) throws IOException {
+        File file = File.createTempFile("indexed", ".log");
+        file.deleteOnExit();
+        LineIndex.indexFileOf(file.getPath()).deleteOnExit();
+        List<String> lines = new ArrayList<>();
+        IntStream.range(0, lineCount).forEach(i -> lines.add(String.format("2018-03-13 %02d:%02d:%02d %s",
+                9 + i / 3600, i / 60 % 60, i % 60, i % 10 == 0 ? "\u00e9v\u00e9nement" : TestUtil.generateRandomSentence())));
+        Files.write(file.toPath(), lines, StandardCharsets.UTF_8);
+        return file;
+    }
+
+    private static void indexFile(File file, int blockLines) {
+        final TextFileStatsGenerator app = new TextFileStatsGenerator();
+        app.setIndexBlockLines(blockLines);
+        app.setTimestampPattern("yyyy-MM-dd HH:mm:ss");
+        app.initialize(file.getPath(), 100, 100, 2);
+        app.run(5);
+    }
+
+    private static List<String> readLines(File file, long[] byteRange) throws IOException {
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        String text = new String(bytes, (int) byteRange[0], (int) (byteRange[1] - byteRange[0]), StandardCharsets.UTF_8);
+        return text.isEmpty() ? new ArrayList<>() : Arrays.asList(text.split("\n"));
+    }
+}
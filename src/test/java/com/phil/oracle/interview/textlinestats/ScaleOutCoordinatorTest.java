@@ -0,0 +1,131 @@
+package com.phil.oracle.interview.textlinestats;
+
+import com.phil.oracle.interview.textlinestats.framework.MergeableAccumulator;
+import com.phil.oracle.interview.textlinestats.framework.TestUtil;
+import org.junit.Test;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ScaleOutCoordinatorTest {
+
+    // runs workers as threads of this JVM - same protocol, without the process launch overhead
+    private static final ScaleOutCoordinator.WorkerLauncher THREAD_LAUNCHER = port -> {
+        Thread worker = new Thread(() -> {
+            try {
+                ScaleOutWorker.serve(port);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+        worker.start();
+        return worker::interrupt;
+    };
+
+    @Test
+    public void shouldMatchSingleProcessRun() throws IOException {
+        File file = createTestFile(5000);
+        final TextFileStatsGenerator app = new TextFileStatsGenerator();
+        app.initialize(file.getPath(), 1000, 100, 2);
+        app.run(10);
+
+        ScaleOutCoordinator coordinator = new ScaleOutCoordinator(3, 100, 2, THREAD_LAUNCHER);
+        assertEquals(1, coordinator.split(file.getPath()).size());  // a small file is a single range...
+        List<MergeableAccumulator<String[]>> merged = splitAndRun(file, 3, THREAD_LAUNCHER, 17);    // ...unless forced otherwise
+
+        assertEquals(TestUtil.withoutRunTimes(app.getStatistics()), withoutRunTimes(merged));
+    }
+
+    @Test
+    public void shouldRetryFailedRanges() throws IOException {
+        File file = createTestFile(2000);
+        AtomicInteger launchCount = new AtomicInteger();
+        // every other worker dies as soon as it gets its first task
+        ScaleOutCoordinator.WorkerLauncher flakyLauncher = port -> launchCount.incrementAndGet() % 2 == 0
+                ? THREAD_LAUNCHER.launch(port) : crashingWorker(port);
+        List<MergeableAccumulator<String[]>> merged = splitAndRun(file, 2, flakyLauncher, 5);
+        assertTrue(launchCount.get() > 2);
+
+        final TextFileStatsGenerator app = new TextFileStatsGenerator();
+        app.initialize(file.getPath(), 1000, 100, 2);
+        app.run(10);
+        assertEquals(TestUtil.withoutRunTimes(app.getStatistics()), withoutRunTimes(merged));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldGiveUpOnRangesFailingTooOften() throws IOException {
+        File file = createTestFile(100);
+        new ScaleOutCoordinator(2, 100, 1, ScaleOutCoordinatorTest::crashingWorker)
+                .run(file.getPath(), EnumSet.of(Statistic.LINES), 10000);
+    }
+
+    @Test
+    public void testEdgeCases() throws IOException {
+        ScaleOutCoordinator coordinator = new ScaleOutCoordinator(2, 100, 1, THREAD_LAUNCHER);
+        assertEquals("all", coordinator.split(TestUtil.SAMPLE_TEXT_FILE_NAME).get(0).toString());   // classpath
+        try {
+            coordinator.run("no such file", EnumSet.of(Statistic.LINES), 1000);
+            fail("Shouldn't be here!");
+        } catch (IOException e) {
+            e.printStackTrace(); //ok
+        }
+    }
+
+    /**
+     * Runs the coordinator with ranges small enough to split the file into several parts
+     */
+    private static List<MergeableAccumulator<String[]>> splitAndRun(File file, int workerCount,
+                                                           ScaleOutCoordinator.WorkerLauncher launcher, int rangeCount)
+            throws IOException {
+        ScaleOutCoordinator coordinator = new ScaleOutCoordinator(workerCount, 100, 2, launcher,
+                file.length() / rangeCount + 1);
+        assertTrue(coordinator.split(file.getPath()).size() > 1);
+        long start = System.currentTimeMillis();
+        List<MergeableAccumulator<String[]>> merged = coordinator.run(file.getPath(), Statistic.defaults(), 20000);
+        System.out.println("Coordinator run took " + (System.currentTimeMillis() - start) + "ms");
+        return merged;
+    }
+
+    private static Closeable crashingWorker(int port) throws IOException {
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+        Thread worker = new Thread(() -> {
+            try {
+                socket.getInputStream().read();   // the first byte of the task, then "crash"
+                socket.close();
+            } catch (IOException e) {
+                // fine
+            }
+        });
+        worker.start();
+        return socket;
+    }
+
+    private static File createTestFile(int lineCount) throws IOException {
+        File file = File.createTempFile("scaleout", ".txt");
+        file.deleteOnExit();
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < lineCount; i++) {
+            lines.add(TestUtil.generateRandomSentence());
+        }
+        lines.add("\u044f \u0443\u0441\u0442\u0430\u043b, \u043c\u043d\u0435 \u043d\u0430\u0434\u043e\u0435\u043b\u043e");
+        Files.write(file.toPath(), lines, StandardCharsets.UTF_8);
+        return file;
+    }
+
+    private static String withoutRunTimes(List<MergeableAccumulator<String[]>> accumulators) {
+        final TextFileStatsGenerator app = new TextFileStatsGenerator();
+        app.setAccumulators(accumulators);
+        return TestUtil.withoutRunTimes(app.getStatistics());
+    }
+}
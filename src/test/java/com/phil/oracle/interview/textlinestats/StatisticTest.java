@@ -0,0 +1,38 @@
+package com.phil.oracle.interview.textlinestats;
+
+import com.phil.oracle.interview.textlinestats.accumulator.LineAccumulator;
+import com.phil.oracle.interview.textlinestats.accumulator.NGramAccumulator;
+import org.junit.Test;
+
+import java.util.EnumSet;
+
+import static org.junit.Assert.*;
+
+public class StatisticTest {
+
+    @Test
+    public void shouldParseStatistics() {
+        assertEquals(EnumSet.of(Statistic.LINES), Statistic.parse("lines"));
+        assertEquals(EnumSet.of(Statistic.WORDS, Statistic.LETTERS), Statistic.parse(" Letters,WORDS, "));
+        assertTrue(Statistic.LINES.newAccumulator() instanceof LineAccumulator);
+        assertTrue(Statistic.NGRAMS.newAccumulator() instanceof NGramAccumulator);
+    }
+
+    @Test
+    public void expensiveStatisticsShouldBeOptIn() {
+        assertEquals(EnumSet.of(Statistic.WORDS, Statistic.LINES, Statistic.LETTERS), Statistic.defaults());
+        assertEquals(EnumSet.of(Statistic.NGRAMS), Statistic.parse("ngrams"));
+    }
+
+    @Test
+    public void testEdgeCases() {
+        for (String names : new String[]{"lines,paragraphs", ",", ""}) {
+            try {
+                Statistic.parse(names);
+                fail("Shouldn't be here!");
+            } catch (UnsupportedOperationException e) {
+                e.printStackTrace(); //ok
+            }
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package com.phil.oracle.interview.textlinestats;
+
+import com.phil.oracle.interview.textlinestats.framework.TestUtil;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class StatsSnapshotTest {
+
+    @Test
+    public void mergedSnapshotsShouldMatchASingleRun() throws IOException {
+        assertMergeMatchesSingleRun(false);
+    }
+
+    @Test
+    public void mergedPipelineSnapshotsShouldMatchASingleRun() throws IOException {
+        assertMergeMatchesSingleRun(true);
+    }
+
+    @Test
+    public void mergedSnapshotShouldMergeAgain() throws IOException {
+        List<String> lines = readSampleLines(3000);
+        File first = snapshot(write(lines.subList(0, 1000)), false, EnumSet.of(Statistic.WORDS, Statistic.VOCABULARY));
+        File second = snapshot(write(lines.subList(1000, 2000)), false, EnumSet.of(Statistic.WORDS, Statistic.VOCABULARY));
+        File third = snapshot(write(lines.subList(2000, 3000)), false, EnumSet.of(Statistic.WORDS, Statistic.VOCABULARY));
+
+        File firstTwo = tempFile(".tlss");
+        TextFileStatsGenerator app = new TextFileStatsGenerator();
+        app.setSnapshotFileName(firstTwo.getPath());
+        app.merge(Arrays.asList(first, second));
+
+        StatsSnapshot all = StatsSnapshot.merge(Arrays.asList(firstTwo, third));
+        assertEquals(3, all.getSources().size());
+        assertEquals(withoutRunTimes(StatsSnapshot.merge(Arrays.asList(first, second, third))), withoutRunTimes(all));
+    }
+
+    @Test
+    public void shouldSnapshotPatternCounts() throws IOException {
+        List<String> lines = readSampleLines(2000);
+        List<String> patterns = Arrays.asList("Prince", "Anna Pavlovna", "the");
+        File first = snapshot(write(lines.subList(0, 1000)), true, EnumSet.of(Statistic.LINES), patterns);
+        File second = snapshot(write(lines.subList(1000, 2000)), true, EnumSet.of(Statistic.LINES), patterns);
+        StatsSnapshot merged = StatsSnapshot.merge(Arrays.asList(first, second));
+        assertEquals(patterns, merged.getPatterns());
+
+        TextFileStatsGenerator app = run(write(lines), true, EnumSet.of(Statistic.LINES), patterns, null);
+        assertTrue(TestUtil.withoutRunTimes(app.getStatistics()).contains("Prince="));
+        assertEquals(TestUtil.withoutRunTimes(app.getStatistics()), withoutRunTimes(merged));
+
+        File other = snapshot(write(lines.subList(0, 10)), true, EnumSet.of(Statistic.LINES), Arrays.asList("Prince"));
+        try {
+            StatsSnapshot.merge(Arrays.asList(first, other));
+            fail("Shouldn't be here!");
+        } catch (UnsupportedOperationException e) {
+            e.printStackTrace(); //ok
+        }
+    }
+
+    @Test
+    public void shouldSnapshotColumnStats() throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (int row = 0; row < 3000; row++) {
+            lines.add(row + ",\"name " + (row % 50) + "\"," + (row % 3 == 0 ? "" : row % 11));
+        }
+        List<String> names = Arrays.asList("id", "name", "score");
+        File first = columnSnapshot(write(lines.subList(0, 1000)), ',', names);
+        File second = columnSnapshot(write(lines.subList(1000, 3000)), ',', names);
+        StatsSnapshot merged = StatsSnapshot.merge(Arrays.asList(first, second));
+        assertEquals(',', merged.getColumnDelimiter());
+        assertEquals(names, merged.getColumnNames());
+
+        TextFileStatsGenerator app = new TextFileStatsGenerator();
+        app.setStatistics(EnumSet.of(Statistic.LINES));
+        app.setColumns(',', names);
+        app.initialize(write(lines).getPath(), 1000, 100, 1);
+        app.run(10);
+        assertTrue(TestUtil.withoutRunTimes(app.getStatistics()).contains("distinctEstimate=50"));
+        assertEquals(TestUtil.withoutRunTimes(app.getStatistics()), withoutRunTimes(merged));
+
+        File tabs = columnSnapshot(write(lines.subList(0, 10)), '\t', names);
+        try {
+            StatsSnapshot.merge(Arrays.asList(first, tabs));
+            fail("Shouldn't be here!");
+        } catch (UnsupportedOperationException e) {
+            e.printStackTrace(); //ok
+        }
+    }
+
+    @Test
+    public void testEdgeCases() throws IOException {
+        File notASnapshot = write(Arrays.asList("TLSX", "hello"));
+        try {
+            StatsSnapshot.merge(Arrays.asList(notASnapshot));
+            fail("Shouldn't be here!");
+        } catch (IOException e) {
+            e.printStackTrace(); //ok
+        }
+
+        List<String> lines = readSampleLines(100);
+        File words = snapshot(write(lines), false, EnumSet.of(Statistic.WORDS));
+        File wordsPipeline = snapshot(write(lines), true, EnumSet.of(Statistic.WORDS));
+        File lettersOnly = snapshot(write(lines), false, EnumSet.of(Statistic.LETTERS));
+        for (File incompatible : Arrays.asList(wordsPipeline, lettersOnly)) {
+            try {
+                StatsSnapshot.merge(Arrays.asList(words, incompatible));
+                fail("Shouldn't be here!");
+            } catch (UnsupportedOperationException e) {
+                e.printStackTrace(); //ok
+            }
+        }
+
+        // a newer version
+        byte[] bytes = Files.readAllBytes(words.toPath());
+        bytes[StatsSnapshot.MAGIC.length + 1] = StatsSnapshot.VERSION + 1;
+        File newer = tempFile(".tlss");
+        Files.write(newer.toPath(), bytes);
+        try {
+            StatsSnapshot.merge(Arrays.asList(newer));
+            fail("Shouldn't be here!");
+        } catch (IOException e) {
+            e.printStackTrace(); //ok
+        }
+
+        // a truncated one
+        File truncated = tempFile(".tlss");
+        Files.write(truncated.toPath(), Arrays.copyOf(bytes, bytes.length - 3));
+        try {
+            StatsSnapshot.merge(Arrays.asList(truncated));
+            fail("Shouldn't be here!");
+        } catch (IOException e) {
+            e.printStackTrace(); //ok
+        }
+
+        // LINES alone would run on the LineCountEngine, which has no state - not when snapshotting
+        File linesOnly = snapshot(write(lines), false, EnumSet.of(Statistic.LINES));
+        assertEquals(200L, StatsSnapshot.merge(Arrays.asList(linesOnly, linesOnly)).getAccumulators().get(0)
+                .getStatistics().get("totalLineCount"));
+    }
+
+    private static void assertMergeMatchesSingleRun(boolean pipeline) throws IOException {
+        Set<Statistic> statistics = EnumSet.allOf(Statistic.class);
+        List<String> lines = readSampleLines(6000);
+        File whole = write(lines);
+        List<File> snapshots = new ArrayList<>();
+        for (int start = 0; start < lines.size(); start += 2000) {
+            snapshots.add(snapshot(write(lines.subList(start, start + 2000)), pipeline, statistics));
+        }
+
+        long start = System.currentTimeMillis();
+        StatsSnapshot merged = StatsSnapshot.merge(snapshots);
+        System.out.println("Merging " + snapshots.size() + " snapshots took " + (System.currentTimeMillis() - start) + "ms");
+        assertEquals(3, merged.getSources().size());
+
+        TextFileStatsGenerator app = run(whole, pipeline, statistics, Collections.emptyList(), null);
+        assertEquals(TestUtil.withoutRunTimes(app.getStatistics()), withoutRunTimes(merged));
+    }
+
+    private static File snapshot(File file, boolean pipeline, Set<Statistic> statistics) throws IOException {
+        return snapshot(file, pipeline, statistics, Collections.emptyList());
+    }
+
+    private static File snapshot(File file, boolean pipeline, Set<Statistic> statistics, List<String> patterns)
+            throws IOException {
+        File snapshot = tempFile(".tlss");
+        run(file, pipeline, statistics, patterns, snapshot);
+        return snapshot;
+    }
+
+    private static File columnSnapshot(File file, char delimiter, List<String> columnNames) throws IOException {
+        File snapshot = tempFile(".tlss");
+        TextFileStatsGenerator app = new TextFileStatsGenerator();
+        app.setStatistics(EnumSet.of(Statistic.LINES));
+        app.setColumns(delimiter, columnNames);
+        app.setSnapshotFileName(snapshot.getPath());
+        app.initialize(file.getPath(), 1000, 100, 1);
+        app.run(10);
+        return snapshot;
+    }
+
+    private static TextFileStatsGenerator run(File file, boolean pipeline, Set<Statistic> statistics,
+                                              List<String> patterns, File snapshot) {
+        TextFileStatsGenerator app = new TextFileStatsGenerator();
+        app.setStatistics(statistics);
+        app.setPatterns(patterns);
+        if (pipeline) {
+            app.setTokenizerThreadCount(1);
+        }
+        if (snapshot != null) {
+            app.setSnapshotFileName(snapshot.getPath());
+        }
+        app.initialize(file.getPath(), 1000, 100, 1);  // one consumer, so that ties are settled the same way
+        app.run(10);
+        return app;
+    }
+
+    private static String withoutRunTimes(StatsSnapshot snapshot) {
+        TextFileStatsGenerator app = new TextFileStatsGenerator();
+        app.setAccumulators(snapshot.getAccumulators());
+        return TestUtil.withoutRunTimes(app.getStatistics());
+    }
+
+    private static List<String> readSampleLines(int lineCount) throws IOException {
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                StatsSnapshotTest.class.getClassLoader().getResourceAsStream(TestUtil.SAMPLE_TEXT_FILE_NAME),
+                StandardCharsets.UTF_8))) {
+            for (String line = reader.readLine(); line != null && lines.size() < lineCount; line = reader.readLine()) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+
+    private static File write(List<String> lines) throws IOException {
+        File file = tempFile(".txt");
+        Files.write(file.toPath(), lines, StandardCharsets.UTF_8);
+        return file;
+    }
+
+    private static File tempFile(String suffix) throws IOException {
+        File file = File.createTempFile("snapshot", suffix);
+        file.deleteOnExit();
+        return file;
+    }
+}
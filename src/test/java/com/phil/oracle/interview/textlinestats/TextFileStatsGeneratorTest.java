@@ -6,12 +6,23 @@ import com.phil.oracle.interview.textlinestats.accumulator.WordAccumulator;
 import com.phil.oracle.interview.textlinestats.framework.*;
 import org.junit.Test;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.IntStream;
+import java.util.zip.GZIPOutputStream;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 public class TextFileStatsGeneratorTest {
@@ -38,7 +49,7 @@ public class TextFileStatsGeneratorTest {
            if we added many other Accumulators. Currently the LetterAccumulator is the heaviest out of the existing 3.
         */
         final TextFileStatsGenerator app = new TextFileStatsGenerator();
-        List<Accumulator<String[]>> accumulators = new ArrayList<>();
+        List<MergeableAccumulator<String[]>> accumulators = new ArrayList<>();
         accumulators.add(new WordAccumulator());
         accumulators.add(new LineAccumulator());
         /* Let's tweak the app in this test by adding an extra 50 LetterAccumulator instances in the Consumer
@@ -122,7 +133,7 @@ public class TextFileStatsGeneratorTest {
     @Test
     public void testInterruptedScenario() {
         final TextFileStatsGenerator app = new TextFileStatsGenerator();
-        List<Accumulator<String[]>> accumulators = Arrays.asList(new WordAccumulator(), new LineAccumulator(), new LetterAccumulator());
+        List<MergeableAccumulator<String[]>> accumulators = Arrays.asList(new WordAccumulator(), new LineAccumulator(), new LetterAccumulator());
         app.setAccumulators(accumulators);
 
         final BlockingBuffer<String[]> buffer = BlockingBuffer.instance(TextFileStatsGenerator.DEFAULT_BUFFER_SIZE);
@@ -140,6 +151,374 @@ public class TextFileStatsGeneratorTest {
 
     }
 
+    @Test
+    public void inlineRunShouldMatchThreadedRun() throws IOException {
+        File smallFile = File.createTempFile("small", ".txt");
+        smallFile.deleteOnExit();
+        List<String> lines = new ArrayList<>();
+        IntStream.range(0, 100).forEach(i -> lines.add(TestUtil.generateRandomSentence()));
+        lines.add("я устал, мне надоело");
+        Files.write(smallFile.toPath(), lines, StandardCharsets.UTF_8);
+
+        final TextFileStatsGenerator inlineApp = new TextFileStatsGenerator();
+        assertTrue(inlineApp.initializeInline(smallFile.getPath(), 7));
+        inlineApp.run(5);
+
+        final TextFileStatsGenerator threadedApp = new TextFileStatsGenerator();
+        threadedApp.initialize(smallFile.getPath(), BlockingBuffer.instance(100), 7, 4);
+        threadedApp.run(5);
+
+        assertEquals(TestUtil.withoutRunTimes(threadedApp.getStatistics()), TestUtil.withoutRunTimes(inlineApp.getStatistics()));
+        assertTrue(TestUtil.withoutRunTimes(inlineApp.getStatistics()).contains("totalLineCount=101"));
+
+        // the sample file is too big to run inline
+        assertFalse(new TextFileStatsGenerator().initializeInline(TestUtil.SAMPLE_TEXT_FILE_NAME, 1000));
+    }
+
+    @Test
+    public void shouldComputeSelectedStatisticsOnly() {
+        final TextFileStatsGenerator app = new TextFileStatsGenerator();
+        app.setStatistics(EnumSet.of(Statistic.WORDS, Statistic.LINES));
+        app.initialize(TestUtil.SAMPLE_TEXT_FILE_NAME, 1000, 1000, 2);
+        app.run(5);
+        Map<String, Object> statistics = app.getStatistics();
+        assertEquals(2, statistics.size());  // no letters, so no average letters per word either
+        assertTrue(statistics.containsKey("WordAccumulator") && statistics.containsKey("LineAccumulator"));
+        Object lineCount = ((Map) statistics.get("LineAccumulator")).get("totalLineCount");
+
+        // line count only - the dedicated engine does it, and should get the same count
+        final TextFileStatsGenerator lineCountApp = new TextFileStatsGenerator();
+        lineCountApp.setStatistics(EnumSet.of(Statistic.LINES));
+        lineCountApp.initialize(TestUtil.SAMPLE_TEXT_FILE_NAME, 1000, 1000, 2);
+        lineCountApp.run(5);
+        assertEquals(lineCount, ((Map) lineCountApp.getStatistics().get("LineCountEngine")).get("totalLineCount"));
+
+        // cover the command-line
+        TextFileStatsGenerator.main(new String[]{TestUtil.SAMPLE_TEXT_FILE_NAME, "--stats=lines"});
+        TextFileStatsGenerator.main(new String[]{TestUtil.SAMPLE_TEXT_FILE_NAME, "--stats=pages"});
+    }
+
+    @Test
+    public void pipelineRunShouldCountTheSameWords() {
+        final TextFileStatsGenerator app = new TextFileStatsGenerator();
+        app.initialize(TestUtil.SAMPLE_TEXT_FILE_NAME, 1000, 1000, 2);
+        app.run(10);
+
+        // producer -> 2 tokenizer threads -> 2 token consumer threads, words are tokenized once and shared
+        final TextFileStatsGenerator pipelineApp = new TextFileStatsGenerator();
+        pipelineApp.setTokenizerThreadCount(2);
+        pipelineApp.initialize(TestUtil.SAMPLE_TEXT_FILE_NAME, 1000, 1000, 2);
+        pipelineApp.run(10);
+
+        Map<String, Object> statistics = pipelineApp.getStatistics();
+        assertEquals(((Map) app.getStatistics().get("WordAccumulator")).get("totalWordCount"),
+                ((Map) statistics.get("WordAccumulator")).get("totalWordCount"));
+        assertEquals(((Map) app.getStatistics().get("LetterAccumulator")).get("totalLetterCount"),
+                ((Map) statistics.get("LetterAccumulator")).get("totalLetterCount"));
+        assertEquals(app.getStatistics().get("averageLettersPerWord"), statistics.get("averageLettersPerWord"));
+
+        // the word length and shape statistics are opt-in, and count the same words either way
+        final TextFileStatsGenerator wordsApp = new TextFileStatsGenerator();
+        wordsApp.setStatistics(EnumSet.of(Statistic.WORD_LENGTHS, Statistic.WORD_SHAPES));
+        wordsApp.initialize(TestUtil.SAMPLE_TEXT_FILE_NAME, 1000, 1000, 2);
+        wordsApp.run(10);
+        final TextFileStatsGenerator wordsPipelineApp = new TextFileStatsGenerator();
+        wordsPipelineApp.setStatistics(EnumSet.of(Statistic.WORD_LENGTHS, Statistic.WORD_SHAPES));
+        wordsPipelineApp.setTokenizerThreadCount(2);
+        wordsPipelineApp.initialize(TestUtil.SAMPLE_TEXT_FILE_NAME, 1000, 1000, 2);
+        wordsPipelineApp.run(10);
+        assertFalse(statistics.containsKey("WordLengthAccumulator") || statistics.containsKey("WordShapeAccumulator"));
+        assertEquals(((Map) app.getStatistics().get("WordAccumulator")).get("totalWordCount"),
+                ((Map) wordsApp.getStatistics().get("WordLengthAccumulator")).get("totalWordCount"));
+        assertEquals(TestUtil.withoutRunTimes(wordsApp.getStatistics()),
+                TestUtil.withoutRunTimes(wordsPipelineApp.getStatistics()));
+
+        // cover the command-line
+        TextFileStatsGenerator.main(new String[]{TestUtil.SAMPLE_TEXT_FILE_NAME, "--pipeline"});
+        TextFileStatsGenerator.main(new String[]{TestUtil.SAMPLE_TEXT_FILE_NAME, "--pipeline=many"});
+    }
+
+    @Test
+    public void fanOutRunShouldMatchTheRegularRun() {
+        final TextFileStatsGenerator app = new TextFileStatsGenerator();
+        app.setStatistics(EnumSet.of(Statistic.WORDS, Statistic.LETTERS, Statistic.VOCABULARY));
+        app.initialize(TestUtil.SAMPLE_TEXT_FILE_NAME, 1000, 1000, 2);
+        app.run(10);
+
+        // a branch per accumulator, the expensive vocabulary one should get more of the 6 threads
+        final TextFileStatsGenerator fanOutApp = new TextFileStatsGenerator();
+        fanOutApp.setStatistics(EnumSet.of(Statistic.WORDS, Statistic.LETTERS, Statistic.VOCABULARY));
+        fanOutApp.setFanOutThreadCount(6);
+        fanOutApp.initialize(TestUtil.SAMPLE_TEXT_FILE_NAME, 1000, 1000, 2);
+        fanOutApp.run(10);
+
+        assertEquals(TestUtil.withoutRunTimes(app.getStatistics()), TestUtil.withoutRunTimes(fanOutApp.getStatistics()));
+
+        // cover the command-line
+        TextFileStatsGenerator.main(new String[]{TestUtil.SAMPLE_TEXT_FILE_NAME, "--fan-out=4"});
+        TextFileStatsGenerator.main(new String[]{TestUtil.SAMPLE_TEXT_FILE_NAME, "--fan-out", "--pipeline"});
+    }
+
+    @Test
+    public void orderSensitiveStatsShouldMatchASingleThreadedRun() {
+        final TextFileStatsGenerator app = new TextFileStatsGenerator();
+        app.setStatistics(EnumSet.of(Statistic.LINES, Statistic.POSITIONS));
+        app.initialize(TestUtil.SAMPLE_TEXT_FILE_NAME, 1000, 100, 1);
+        app.run(10);
+
+        // several threads taking batches out of order, put back in order
+        final TextFileStatsGenerator threadedApp = new TextFileStatsGenerator();
+        threadedApp.setStatistics(EnumSet.of(Statistic.LINES, Statistic.POSITIONS));
+        threadedApp.initialize(TestUtil.SAMPLE_TEXT_FILE_NAME, 1000, 100, 4);
+        threadedApp.run(10);
+        assertEquals(TestUtil.withoutRunTimes(app.getStatistics()), TestUtil.withoutRunTimes(threadedApp.getStatistics()));
+
+        final TextFileStatsGenerator pipelineApp = new TextFileStatsGenerator();
+        pipelineApp.setStatistics(EnumSet.of(Statistic.LINES, Statistic.POSITIONS));
+        pipelineApp.setTokenizerThreadCount(2);
+        pipelineApp.initialize(TestUtil.SAMPLE_TEXT_FILE_NAME, 1000, 100, 4);
+        pipelineApp.run(10);
+        assertEquals(TestUtil.withoutRunTimes(app.getStatistics()), TestUtil.withoutRunTimes(pipelineApp.getStatistics()));
+
+        final TextFileStatsGenerator fanOutApp = new TextFileStatsGenerator();
+        fanOutApp.setStatistics(EnumSet.of(Statistic.LINES, Statistic.POSITIONS));
+        fanOutApp.setFanOutThreadCount(5);
+        fanOutApp.initialize(TestUtil.SAMPLE_TEXT_FILE_NAME, 1000, 100, 2);
+        fanOutApp.run(10);
+        assertEquals(TestUtil.withoutRunTimes(app.getStatistics()), TestUtil.withoutRunTimes(fanOutApp.getStatistics()));
+    }
+
+    @Test
+    public void fragmentsOfLongLinesShouldMatchWholeLines() throws IOException {
+        File file = File.createTempFile("long", ".txt");
+        file.deleteOnExit();
+        // segments of 20 words, each repeated a different number of times - so that no two words tie on count
+        StringBuilder segment = new StringBuilder();
+        for (char letter = 'a'; letter < 'u'; letter++) {
+            for (int times = letter - 'a' + 1; times > 0; times--) {
+                segment.append('w').append(letter).append(letter).append(times % 7 == 0 ? '\t' : ' ');
+            }
+        }
+        List<String> lines = new ArrayList<>();
+        IntStream.range(0, 200).forEach(i -> {
+            StringBuilder line = new StringBuilder();
+            for (int segments = i % 10 == 0 ? 50 : 1; segments > 0; segments--) {   // every 10th line is a long one
+                line.append(segment);
+            }
+            lines.add(i % 50 == 0 ? "" : line.toString().trim());
+        });
+        Files.write(file.toPath(), lines, StandardCharsets.UTF_8);
+        Set<Statistic> statistics = EnumSet.of(Statistic.WORDS, Statistic.LINES, Statistic.LETTERS,
+                Statistic.VOCABULARY, Statistic.WORD_FREQUENCIES);
+
+        final TextFileStatsGenerator app = new TextFileStatsGenerator();
+        app.setStatistics(statistics);
+        app.initialize(file.getPath(), 100, 10, 4);
+        app.run(10);
+
+        final TextFileStatsGenerator fragmentsApp = new TextFileStatsGenerator();
+        fragmentsApp.setStatistics(statistics);
+        fragmentsApp.setMaxLineChars(100);
+        fragmentsApp.initialize(file.getPath(), 100, 10, 4);
+        fragmentsApp.run(10);
+        assertEquals(TestUtil.withoutRunTimes(app.getStatistics()), TestUtil.withoutRunTimes(fragmentsApp.getStatistics()));
+
+        final TextFileStatsGenerator pipelineApp = new TextFileStatsGenerator();
+        pipelineApp.setStatistics(statistics);
+        pipelineApp.setMaxLineChars(100);
+        pipelineApp.setTokenizerThreadCount(2);
+        pipelineApp.initialize(file.getPath(), 100, 10, 2);
+        pipelineApp.run(10);
+        Map<String, Object> pipelineStatistics = pipelineApp.getStatistics();
+        assertEquals(((Map) app.getStatistics().get("LineAccumulator")).get("totalLineCount"),
+                ((Map) pipelineStatistics.get("LineAccumulator")).get("totalLineCount"));
+        assertEquals(((Map) app.getStatistics().get("WordAccumulator")).get("totalWordCount"),
+                ((Map) pipelineStatistics.get("WordAccumulator")).get("totalWordCount"));
+
+        // a small file would run inline, but the fragments of its line wouldn't fit the inline buffer
+        File smallFile = File.createTempFile("small", ".txt");
+        smallFile.deleteOnExit();
+        Files.write(smallFile.toPath(), lines.get(10).getBytes(StandardCharsets.UTF_8));
+        final TextFileStatsGenerator smallApp = new TextFileStatsGenerator();
+        smallApp.setStatistics(statistics);
+        smallApp.setMaxLineChars(100);
+        smallApp.initialize(smallFile.getPath(), 100, 1000, 4);
+        smallApp.run(10);
+        assertEquals(1L, ((Map) smallApp.getStatistics().get("LineAccumulator")).get("totalLineCount"));
+
+        // words longer than the limit, e.g. minified JSON, are cut at it, yet counted once - as the rest of them
+        File jsonFile = File.createTempFile("minified", ".json");
+        jsonFile.deleteOnExit();
+        List<String> jsonLines = new ArrayList<>();
+        IntStream.range(0, 100).forEach(i -> {
+            StringBuilder line = new StringBuilder("{");
+            for (int fields = i % 10 == 0 ? 40 : 2; fields > 0; fields--) {
+                line.append("\"k").append(fields).append("\":\"v").append(fields % 7).append("\",");
+            }
+            jsonLines.add(line.append(i % 3 == 0 ? "} tail\twords" : "}").toString());
+        });
+        Files.write(jsonFile.toPath(), jsonLines, StandardCharsets.UTF_8);
+        final TextFileStatsGenerator jsonApp = new TextFileStatsGenerator();
+        jsonApp.setStatistics(statistics);
+        jsonApp.initialize(jsonFile.getPath(), 100, 10, 4);
+        jsonApp.run(10);
+        final TextFileStatsGenerator jsonFragmentsApp = new TextFileStatsGenerator();
+        jsonFragmentsApp.setStatistics(statistics);
+        jsonFragmentsApp.setMaxLineChars(100);
+        jsonFragmentsApp.initialize(jsonFile.getPath(), 100, 10, 4);
+        jsonFragmentsApp.run(10);
+        assertEquals(TestUtil.withoutRunTimes(withoutWordTexts(jsonApp.getStatistics())),
+                TestUtil.withoutRunTimes(withoutWordTexts(jsonFragmentsApp.getStatistics())));
+
+        // cover the command-line
+        TextFileStatsGenerator.main(new String[]{file.getPath(), "--fragments=1000"});
+        TextFileStatsGenerator.main(new String[]{file.getPath(), "--fragments", "--stats=positions"});
+        TextFileStatsGenerator.main(new String[]{file.getPath(), "--fragments=many"});
+    }
+
+    @Test
+    public void wordsWithoutWhitespaceShouldNotOutgrowTheLimit() throws IOException {
+        File file = File.createTempFile("whitespace-free", ".txt");
+        file.deleteOnExit();
+        StringBuilder word = new StringBuilder(4 * 1024 * 1024);
+        for (int i = 0; word.length() < 4 * 1024 * 1024; i++) {
+            word.append(i % 3 == 0 ? "\u20ac" : "").append(i % 1000 == 0 ? '-' : (char) ('a' + i % 26));
+        }
+        Files.write(file.toPath(), Arrays.asList("head", word.toString(), "0" + word.substring(1, 5000) + " " + word,
+                "1234567890", "", "tail of it"), StandardCharsets.UTF_8);
+        Set<Statistic> statistics = EnumSet.of(Statistic.WORDS, Statistic.LINES, Statistic.LETTERS,
+                Statistic.VOCABULARY, Statistic.WORD_FREQUENCIES);
+
+        final TextFileStatsGenerator app = new TextFileStatsGenerator();
+        app.setStatistics(statistics);
+        app.initialize(file.getPath(), 100, 10, 4);
+        app.run(10);
+
+        for (int tokenizerThreads : new int[]{0, 2}) {
+            final TextFileStatsGenerator fragmentsApp = new TextFileStatsGenerator();
+            fragmentsApp.setStatistics(statistics);
+            fragmentsApp.setMaxLineChars(1000);
+            if (tokenizerThreads > 0) {
+                fragmentsApp.setTokenizerThreadCount(tokenizerThreads);
+            }
+            fragmentsApp.initialize(file.getPath(), 100, 10, 4);
+            fragmentsApp.run(10);
+            assertEquals(TestUtil.withoutRunTimes(withoutWordTexts(app.getStatistics())),
+                    TestUtil.withoutRunTimes(withoutWordTexts(fragmentsApp.getStatistics())));
+        }
+    }
+
+    @Test
+    public void shouldComputeColumnStatsBelowTheHeader() throws IOException {
+        File csvFile = File.createTempFile("columns", ".csv");
+        csvFile.deleteOnExit();
+        List<String> lines = new ArrayList<>();
+        lines.add("id,\"full name\",score");
+        IntStream.range(0, 500).forEach(i -> lines.add(i + ",\"Doe, J" + (i % 20) + "\"," + (i % 10) / 2.0));
+        Files.write(csvFile.toPath(), lines, StandardCharsets.UTF_8);
+
+        final TextFileStatsGenerator app = new TextFileStatsGenerator();
+        app.setStatistics(EnumSet.of(Statistic.LINES));
+        app.setColumns(TextFileStatsGenerator.parseDelimiter("csv"), app.readHeader(csvFile.getPath(), ','));
+        app.initialize(csvFile.getPath(), 100, 100, 2);
+        app.run(5);
+        Map<String, Object> statistics = app.getStatistics();
+        assertEquals(500L, ((Map) statistics.get("LineAccumulator")).get("totalLineCount"));
+        Map columns = (Map) ((Map) statistics.get("ColumnAccumulator")).get("columns");
+        assertEquals("[id, full name, score]", columns.keySet().toString());
+        assertEquals(20L, ((Map) columns.get("full name")).get("distinctEstimate"));
+        assertEquals(4.5, ((Map) columns.get("score")).get("max"));
+
+        assertEquals('\t', TextFileStatsGenerator.parseDelimiter("TSV"));
+        assertEquals('|', TextFileStatsGenerator.parseDelimiter("|"));
+        // cover the command-line
+        TextFileStatsGenerator.main(new String[]{csvFile.getPath(), "--stats=lines", "--columns=csv", "--header"});
+        TextFileStatsGenerator.main(new String[]{csvFile.getPath(), "--columns=;;"});
+        TextFileStatsGenerator.main(new String[]{TestUtil.SAMPLE_TEXT_FILE_NAME, "--columns=tsv", "--header"});
+    }
+
+    @Test
+    public void shouldCountLogLinesPerHour() throws IOException {
+        File logFile = File.createTempFile("timestamps", ".log");
+        logFile.deleteOnExit();
+        List<String> lines = new ArrayList<>();
+        IntStream.range(0, 7200).forEach(i -> lines.add(String.format("2018-03-13 %02d:%02d:%02d,%03d INFO %s",
+                9 + i / 3600, i / 60 % 60, i % 60, i % 1000, TestUtil.generateRandomSentence())));
+        Files.write(logFile.toPath(), lines, StandardCharsets.UTF_8);
+
+        final TextFileStatsGenerator app = new TextFileStatsGenerator();
+        app.setStatistics(EnumSet.of(Statistic.WORDS));
+        app.setTimestampPattern("yyyy-MM-dd HH:mm:ss,SSS");
+        app.initialize(logFile.getPath(), 100, 100, 4);
+        app.run(5);
+        Map timeBuckets = (Map) app.getStatistics().get("TimeBucketAccumulator");
+        assertEquals(7200L, timeBuckets.get("timedLineCount"));
+        assertEquals("[2018-03-13 09:00, 2018-03-13 10:00]", ((Map) timeBuckets.get("perHour")).keySet().toString());
+        assertEquals(120, ((Map) timeBuckets.get("perMinute")).size());
+
+        // cover the command-line
+        TextFileStatsGenerator.main(new String[]{logFile.getPath(), "--stats=lines", "--timestamps=yyyy-MM-dd HH:mm:ss"});
+        TextFileStatsGenerator.main(new String[]{logFile.getPath(), "--timestamps=HH:mm"});
+    }
+
+    @Test
+    public void shouldReportMalformedInput() throws IOException {
+        File latin1File = File.createTempFile("latin1", ".txt");
+        latin1File.deleteOnExit();
+        Files.write(latin1File.toPath(), "d\u00e9j\u00e0 vu\nna\u00efve words\n".getBytes(StandardCharsets.ISO_8859_1));
+
+        final TextFileStatsGenerator utf8App = new TextFileStatsGenerator();
+        utf8App.initialize(latin1File.getPath(), 100, 100, 1);
+        utf8App.run(5);
+        assertEquals(3L, utf8App.getStatistics().get("malformedInputCount"));
+
+        final TextFileStatsGenerator latin1App = new TextFileStatsGenerator();
+        latin1App.setCharset(StandardCharsets.ISO_8859_1);
+        latin1App.initialize(latin1File.getPath(), 100, 100, 1);
+        latin1App.run(5);
+        assertFalse(latin1App.getStatistics().containsKey("malformedInputCount"));
+        assertEquals(((Map) utf8App.getStatistics().get("WordAccumulator")).get("totalWordCount"),
+                ((Map) latin1App.getStatistics().get("WordAccumulator")).get("totalWordCount"));
+
+        // cover the command-line
+        TextFileStatsGenerator.main(new String[]{latin1File.getPath(), "--charset=ISO-8859-1"});
+        TextFileStatsGenerator.main(new String[]{latin1File.getPath(), "--charset=EBCDIC-42"});
+    }
+
+    @Test
+    public void gzippedFileShouldMatchThePlainOne() throws IOException {
+        File plainFile = File.createTempFile("plain", ".txt");
+        plainFile.deleteOnExit();
+        List<String> lines = new ArrayList<>();
+        IntStream.range(0, 20000).forEach(i -> lines.add(i % 100 == 0 ? "" : TestUtil.generateRandomSentence()));
+        Files.write(plainFile.toPath(), lines, StandardCharsets.UTF_8);
+        File gzipFile = new File(plainFile.getPath() + TextLinesProducer.GZIP_SUFFIX);
+        gzipFile.deleteOnExit();
+        try (GZIPOutputStream out = new GZIPOutputStream(Files.newOutputStream(gzipFile.toPath()))) {
+            Files.copy(plainFile.toPath(), out);
+        }
+
+        final TextFileStatsGenerator plainApp = new TextFileStatsGenerator();
+        plainApp.initialize(plainFile.getPath(), 100, 100, 4);
+        plainApp.run(10);
+
+        // raw chunks split into lines by the consumers
+        final TextFileStatsGenerator chunksApp = new TextFileStatsGenerator();
+        chunksApp.initialize(gzipFile.getPath(), 100, 100, 4);
+        chunksApp.run(10);
+        assertEquals(TestUtil.withoutRunTimes(plainApp.getStatistics()), TestUtil.withoutRunTimes(chunksApp.getStatistics()));
+
+        // a single consumer - lines by the producer
+        final TextFileStatsGenerator linesApp = new TextFileStatsGenerator();
+        linesApp.initialize(gzipFile.getPath(), 100, 100, 1);
+        linesApp.run(10);
+        assertEquals(TestUtil.withoutRunTimes(plainApp.getStatistics()), TestUtil.withoutRunTimes(linesApp.getStatistics()));
+
+        // cover the command-line
+        TextFileStatsGenerator.main(new String[]{gzipFile.getPath(), "--stats=lines"});
+        TextFileStatsGenerator.main(new String[]{plainFile.getPath(), "--stats=lines", "--columns=csv", "--header"});
+    }
+
     @Test  // of extremely limited value :)
     public void testTask20180313() {
         System.out.println("Please send reply with  your program within seven calendar days, " +
@@ -147,4 +526,24 @@ public class TextFileStatsGeneratorTest {
                 "Include the text “Task 20180313” somewhere in your submission.");
 
     }
-}
\ No newline at end of file
+
+    /**
+     * @param statistics - as collected by a run
+     * @return - the same, but for the text of the top words, and the dictionary bytes it takes - words longer than the
+     * limit on line fragments read as the rest of them
+     */
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> withoutWordTexts(Map<String, Object> statistics) {
+        Map<String, Object> counts = new LinkedHashMap<>();
+        statistics.forEach((name, value) -> {
+            if (value instanceof Map) {
+                Map<String, Object> accumulatorCounts = new LinkedHashMap<>((Map<String, Object>) value);
+                accumulatorCounts.remove("dictionaryOffHeapBytes");
+                accumulatorCounts.computeIfPresent("topWords", (key, top) -> new ArrayList<>(((Map<String, Object>) top).values()));
+                value = accumulatorCounts;
+            }
+            counts.put(name, value);
+        });
+        return counts;
+    }
+}
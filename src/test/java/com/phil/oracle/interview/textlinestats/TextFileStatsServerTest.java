@@ -0,0 +1,95 @@
+package com.phil.oracle.interview.textlinestats;
+
+import com.phil.oracle.interview.textlinestats.framework.TestUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class TextFileStatsServerTest {
+
+    private TextFileStatsServer server;
+
+    @Before
+    public void startServer() throws IOException {
+        server = new TextFileStatsServer(0, 1000, 2, 5);  // any free port
+        server.start();
+    }
+
+    @After
+    public void stopServer() {
+        server.stop();
+    }
+
+    @Test
+    public void shouldReuseThePipelineAcrossJobs() {
+        Map<String, Object> first = server.analyze(TestUtil.SAMPLE_TEXT_FILE_NAME);
+        Map<String, Object> second = server.analyze(TestUtil.SAMPLE_TEXT_FILE_NAME);
+        assertNull(first.get("error"));
+        // same thread pools and buffer, same results
+        assertEquals(first.get("statistics").toString().replaceAll("totalRunMillis=\\d+", ""),
+                second.get("statistics").toString().replaceAll("totalRunMillis=\\d+", ""));
+        assertTrue(first.get("statistics").toString().contains("totalLineCount"));
+        assertNull(first.get("timedOut"));
+    }
+
+    @Test
+    public void shouldFlagTimedOutJobs() throws IOException {
+        TextFileStatsServer impatientServer = new TextFileStatsServer(0, 1000, 2, 0);
+        impatientServer.start();
+        try {
+            assertEquals(true, impatientServer.analyze(TestUtil.SAMPLE_TEXT_FILE_NAME).get("timedOut"));
+            assertEquals(true, impatientServer.analyze(TestUtil.SAMPLE_TEXT_FILE_NAME).get("timedOut"));
+        } finally {
+            impatientServer.stop();
+        }
+    }
+
+    @Test
+    public void shouldServeJsonOverHttp() throws IOException {
+        String json = request("GET", "/stats?file=" + TestUtil.SAMPLE_TEXT_FILE_NAME + "&file=no_such_file.txt", null, 200);
+        System.out.println(json);
+        assertTrue(json.startsWith("[{\"file\":\"" + TestUtil.SAMPLE_TEXT_FILE_NAME + "\""));
+        assertTrue(json.contains("\"LineAccumulator\":{"));
+        assertTrue(json.contains("{\"file\":\"no_such_file.txt\",\"error\":"));
+
+        json = request("POST", "/stats", TestUtil.SAMPLE_TEXT_FILE_NAME + "\n", 200);
+        assertTrue(json.contains("\"totalWordCount\":"));
+    }
+
+    @Test
+    public void testEdgeCases() throws IOException {
+        request("GET", "/stats", null, 400);
+        request("DELETE", "/stats", null, 405);
+    }
+
+    private String request(String method, String path, String body, int expectedStatus) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + server.getPort() + path).openConnection();
+        connection.setRequestMethod(method);
+        if (body != null) {
+            connection.setDoOutput(true);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        assertEquals(expectedStatus, connection.getResponseCode());
+        try (InputStream in = expectedStatus == 200 ? connection.getInputStream() : connection.getErrorStream()) {
+            ByteArrayOutputStream response = new ByteArrayOutputStream();
+            byte[] chunk = new byte[4096];
+            for (int read; (read = in.read(chunk)) != -1; ) {
+                response.write(chunk, 0, read);
+            }
+            return new String(response.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}
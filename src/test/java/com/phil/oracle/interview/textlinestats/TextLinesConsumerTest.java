@@ -5,17 +5,20 @@ import com.phil.oracle.interview.textlinestats.framework.Consumer;
 import org.junit.Test;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 
-import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.assertEquals;
 
 
 public class TextLinesConsumerTest {
 
     // not much to test here
     @Test
-    public void testPoisonPill() {
-        Consumer<String[]> consumer = new TextLinesConsumer(BlockingBuffer.instance(1), new ArrayList<>(), 1);
-        assertTrue(Arrays.equals(TextLinesConsumer.STOP_SIGNAL, consumer.getStopSignal()));
+    public void shouldConsumeUntilTheBufferIsClosed() throws InterruptedException {
+        BlockingBuffer<String[]> buffer = BlockingBuffer.instance(10);
+        Consumer<String[]> consumer = new TextLinesConsumer(buffer, new ArrayList<>(), 1);
+        buffer.put(new String[]{"one"});
+        buffer.put(new String[0]);   // an empty batch is just a batch
+        buffer.close();
+        assertEquals(2, consumer.consumeFromBuffer(buffer));
     }
-}
\ No newline at end of file
+}
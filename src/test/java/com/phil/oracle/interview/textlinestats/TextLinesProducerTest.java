@@ -3,14 +3,21 @@ package com.phil.oracle.interview.textlinestats;
 import com.phil.oracle.interview.textlinestats.framework.BlockingBuffer;
 import com.phil.oracle.interview.textlinestats.framework.Consumer;
 import com.phil.oracle.interview.textlinestats.framework.TestUtil;
+import com.phil.oracle.interview.textlinestats.kernel.LineFragments;
 import org.junit.Test;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
 
 import static org.junit.Assert.*;
 
@@ -22,7 +29,7 @@ public class TextLinesProducerTest {
 
         BlockingBuffer<String[]> buffer = BlockingBuffer.instance(Integer.MAX_VALUE);
         Runnable producer = new TextLinesProducer(TestUtil.SAMPLE_TEXT_FILE_NAME,
-                batchSizePerItem, new ConsumerStub<>(0, buffer, null));
+                batchSizePerItem, new ConsumerStub<>(0, buffer));
         // run the producer directly on this thread to fill up the buffer
         producer.run();
 
@@ -53,12 +60,182 @@ public class TextLinesProducerTest {
         assertEquals(expectedCharCount, bufferCharCount);
     }
 
+    @Test
+    public void adjacentRangesShouldProduceEveryLineOnce() throws IOException, InterruptedException {
+        File file = File.createTempFile("ranges", ".txt");
+        file.deleteOnExit();
+        StringBuilder text = new StringBuilder("\n\nfirst\r\n");
+        for (int i = 0; i < 2000; i++) {
+            text.append(i % 7 == 0 ? "" : TestUtil.generateRandomSentence()).append(i % 3 == 0 ? "\r\n" : "\n");
+        }
+        text.append("last line, no newline");
+        Files.write(file.toPath(), text.toString().getBytes(StandardCharsets.UTF_8));
+        List<String> expected = readLines(file.getPath(), 0, -1);
+
+        Random random = new Random(20180313);
+        for (int split = 0; split < 20; split++) {
+            List<String> actual = new ArrayList<>();
+            long start = 0;
+            while (start < file.length()) {
+                long end = Math.min(file.length(), start + random.nextInt(split % 2 == 0 ? 20 : 5000));
+                actual.addAll(readLines(file.getPath(), start, end));
+                start = end;
+            }
+            assertEquals(expected, actual);
+        }
+        assertEquals(0, readLines(file.getPath(), file.length(), file.length()).size());
+    }
+
+    @Test
+    public void directIoShouldReadTheSameLines() throws IOException, InterruptedException {
+        File file = File.createTempFile("direct", ".txt");
+        file.deleteOnExit();
+        StringBuilder text = new StringBuilder();
+        while (text.length() < 3 * 1024 * 1024) {   // a few direct I/O blocks
+            text.append(TestUtil.generateRandomSentence()).append('\n');
+        }
+        text.append("last line, no newline");
+        Files.write(file.toPath(), text.toString().getBytes(StandardCharsets.UTF_8));
+
+        long start = System.nanoTime();
+        List<String> expected = readLines(file.getPath(), 0, -1, false);
+        long bufferedNanos = System.nanoTime() - start;
+        start = System.nanoTime();
+        // falls back to buffered reads where direct I/O isn't available
+        assertEquals(expected, readLines(file.getPath(), 0, -1, true));
+        System.out.println("Read " + expected.size() + " lines in " + bufferedNanos / 1000000 + "ms buffered, "
+                + (System.nanoTime() - start) / 1000000 + "ms " + (DirectIo.isAvailable() ? "direct" : "buffered again"));
+
+        // ranges are aligned to lines, then to direct I/O blocks
+        long[] bounds = {0, 4097, 1024 * 1024 + 1, 2 * 1024 * 1024 - 3, file.length()};
+        for (int i = 1; i < bounds.length; i++) {
+            assertEquals(readLines(file.getPath(), bounds[i - 1], bounds[i], false),
+                    readLines(file.getPath(), bounds[i - 1], bounds[i], true));
+        }
+
+        try {
+            new TextLinesProducer(TestUtil.SAMPLE_TEXT_FILE_NAME, 7, new ConsumerStub<>(0, null)).setDirectIo(true);
+            fail("Classpath files can't be read with direct I/O");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        assertTrue(DirectIo.parseMode("DIRECT") && !DirectIo.parseMode("buffered"));
+        assertTrue(DirectIo.isAvailable() || !TestUtil.JAVA16_CLASSES_EXPECTED);
+    }
+
+    private static List<String> readLines(String fileName, long start, long end) throws InterruptedException {
+        return readLines(fileName, start, end, false);
+    }
+
+    private static List<String> readLines(String fileName, long start, long end, boolean directIo)
+            throws InterruptedException {
+        BlockingBuffer<String[]> buffer = BlockingBuffer.instance(Integer.MAX_VALUE);
+        TextLinesProducer producer = new TextLinesProducer(fileName, 7, new ConsumerStub<>(0, buffer), start, end);
+        producer.setDirectIo(directIo);
+        producer.run();
+        List<String> lines = new ArrayList<>();
+        while (!buffer.isEmpty()) {
+            lines.addAll(Arrays.asList(buffer.take()));
+        }
+        return lines;
+    }
+
+    @Test
+    public void shouldReadTheGivenCharset() throws IOException, InterruptedException {
+        File file = File.createTempFile("charset", ".txt");
+        file.deleteOnExit();
+        Files.write(file.toPath(), "caf\u00e9\nna\u00efve\n".getBytes(StandardCharsets.ISO_8859_1));
+
+        BlockingBuffer<String[]> buffer = BlockingBuffer.instance(10);
+        TextLinesProducer latin1 = new TextLinesProducer(file.getPath(), 7, new ConsumerStub<>(0, buffer), 0, -1,
+                StandardCharsets.ISO_8859_1);
+        latin1.run();
+        assertEquals(Arrays.asList("caf\u00e9", "na\u00efve"), Arrays.asList(buffer.take()));
+        assertEquals(0, latin1.getMalformedInputCount());
+
+        // as UTF-8, the Latin-1 accented letters are malformed
+        buffer.clear();   // reopens it - the first producer closed it
+        TextLinesProducer utf8 = new TextLinesProducer(file.getPath(), 7, new ConsumerStub<>(0, buffer));
+        utf8.run();
+        assertEquals(Arrays.asList("caf\ufffd", "na\ufffdve"), Arrays.asList(buffer.take()));
+        assertEquals(2, utf8.getMalformedInputCount());
+
+        assertTrue(TextLinesProducer.isLineSplittable(StandardCharsets.ISO_8859_1));
+        assertFalse(TextLinesProducer.isLineSplittable(StandardCharsets.UTF_16));
+        try {
+            new TextLinesProducer(file.getPath(), 7, new ConsumerStub<>(0, buffer), 1, 5, StandardCharsets.UTF_16);
+            fail("Shouldn't be here!");
+        } catch (UnsupportedOperationException e) {
+            e.printStackTrace(); //ok
+        }
+    }
+
+    @Test
+    public void shouldProduceLongLinesInFragments() throws IOException, InterruptedException {
+        StringBuilder longLine = new StringBuilder();
+        while (longLine.length() < 10000) {
+            longLine.append(TestUtil.generateRandomSentence()).append(' ');
+        }
+        List<String> lines = Arrays.asList("short", longLine.toString(), "", longLine.toString().trim(), "last");
+        File file = File.createTempFile("fragments", ".txt");
+        file.deleteOnExit();
+        Files.write(file.toPath(), lines, StandardCharsets.UTF_8);
+
+        BlockingBuffer<String[]> buffer = BlockingBuffer.instance(Integer.MAX_VALUE);
+        TextLinesProducer producer = new TextLinesProducer(file.getPath(), 3, new ConsumerStub<>(0, buffer));
+        producer.setMaxLineChars(100);
+        assertEquals(lines.size(), producer.produceToBuffer(buffer));
+        buffer.close();
+
+        List<String> joined = new ArrayList<>();
+        StringBuilder line = new StringBuilder();
+        int lineCount = 0, fragmentCount = 0;
+        for (String[] batch = buffer.take(); batch != null; batch = buffer.take()) {
+            assertTrue(batch.length <= 4);
+            lineCount += LineFragments.countLines(batch);
+            for (int i = 0; i < batch.length; i++) {
+                if (batch[i] == LineFragments.CONTINUED) {
+                    assertEquals(batch.length - 1, i);  // it ends the batch
+                    fragmentCount++;
+                    continue;
+                }
+                assertTrue(batch[i].length() < 200);
+                line.append(batch[i]);
+                if (i == batch.length - 1 || batch[i + 1] != LineFragments.CONTINUED) {
+                    joined.add(line.toString());
+                    line.setLength(0);
+                }
+            }
+        }
+        assertEquals(lines, joined);
+        assertEquals(lines.size(), lineCount);
+        assertTrue(fragmentCount > 100);
+
+        try {
+            new TextLinesProducer(file.getPath(), 3, new ConsumerStub<>(0, buffer), 0, -1, StandardCharsets.ISO_8859_1)
+                    .setMaxLineChars(100);
+            fail("Shouldn't be here!");
+        } catch (UnsupportedOperationException e) {
+            e.printStackTrace(); //ok
+        }
+    }
+
+    @Test
+    public void shouldDetermineInputSize() throws IOException {
+        assertTrue(TextLinesProducer.getInputSize(TestUtil.SAMPLE_TEXT_FILE_NAME) > 0);  // classpath
+        File file = File.createTempFile("size", ".txt");
+        file.deleteOnExit();
+        Files.write(file.toPath(), new byte[]{'a', '\n', 'b'});
+        assertEquals(3, TextLinesProducer.getInputSize(file.getPath()));  // disk
+        assertEquals(-1, TextLinesProducer.getInputSize("no_such_file.txt"));
+    }
+
     @Test
     public void testEdgeCases() {
 
         try {
             new TextLinesProducer(TestUtil.SAMPLE_TEXT_FILE_NAME,
-                    0, new ConsumerStub<>(0, null, null));
+                    0, new ConsumerStub<>(0, null));
             fail("Shouldn't be here!");
         } catch (UnsupportedOperationException e) {
             e.printStackTrace(); //ok
@@ -69,12 +246,10 @@ public class TextLinesProducerTest {
     private static class ConsumerStub<T> implements Consumer<T> {
         private final int threadCount;
         private final BlockingBuffer<T> buffer;
-        private final T stopSignal;
 
-        ConsumerStub(int threadCount, BlockingBuffer<T> buffer, T stopSignal) {
+        ConsumerStub(int threadCount, BlockingBuffer<T> buffer) {
             this.threadCount = threadCount;
             this.buffer = buffer;
-            this.stopSignal = stopSignal;
         }
 
         @Override
@@ -87,11 +262,6 @@ public class TextLinesProducerTest {
             return buffer;
         }
 
-        @Override
-        public T getStopSignal() {
-            return stopSignal;
-        }
-
         @Override
         public long consumeFromBuffer(BlockingBuffer<T> buffer) {
             fail("Shouldn't be here!");
@@ -2,6 +2,9 @@ package com.phil.oracle.interview.textlinestats.accumulator;
 
 import org.junit.Test;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
@@ -36,6 +39,14 @@ public class AbstractAccumulatorTest {
                 assertEquals(expectedItemCount, atomicItemCount.get());  // Atomics are safe
                 assertTrue(expectedItemCount > nonAtomicItemCount);  // non-atomics will not be accurate
             }
+
+            @Override
+            protected void writeAccumulatedState(DataOutput out) {
+            }
+
+            @Override
+            protected void mergeAccumulatedState(DataInput in) {
+            }
         };
 
         for(int i = 0; i < threadCount; i++) {
@@ -48,4 +59,36 @@ public class AbstractAccumulatorTest {
         accumulatorStub.summarize();
     }
 
+    @Test
+    public void testGetStatistics() {
+        AbstractAccumulator<Integer> accumulatorStub = new AbstractAccumulator<Integer>() {
+            @Override
+            public void accumulateItem(Integer inputItem) {
+            }
+
+            @Override
+            public void summarizeStats(String className) {
+            }
+
+            @Override
+            protected void collectStats(Map<String, Object> stats) {
+                stats.put("answer", 42);
+            }
+
+            @Override
+            protected void writeAccumulatedState(DataOutput out) {
+            }
+
+            @Override
+            protected void mergeAccumulatedState(DataInput in) {
+            }
+        };
+        accumulatorStub.accumulate(1);
+        accumulatorStub.accumulate(2);
+        Map<String, Object> stats = accumulatorStub.getStatistics();
+        assertEquals(2L, stats.get("totalItemsProcessed"));
+        assertTrue(stats.containsKey("totalRunMillis"));
+        assertEquals(42, stats.get("answer"));
+    }
+
 }
\ No newline at end of file
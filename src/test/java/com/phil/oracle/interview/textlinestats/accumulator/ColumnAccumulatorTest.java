@@ -0,0 +1,115 @@
+package com.phil.oracle.interview.textlinestats.accumulator;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ColumnAccumulatorTest {
+
+    @Test
+    public void shouldAccumulateColumnStats() {
+        ColumnAccumulator accumulator = new ColumnAccumulator(',', Arrays.asList("name", "age"));
+        accumulator.accumulate(new String[]{"alice,30,\"London, UK\"", "bob,,Paris", ""});
+        accumulator.accumulate(new String[]{"\"carol \"\"c\"\"\",41.5,\"123\"", "alice,n/a"});
+        accumulator.summarize();
+
+        assertEquals(4, accumulator.getTotalRowCount());
+        Map<String, Map<String, Object>> columns = accumulator.getColumnStats();
+        assertEquals("[name, age, column3]", columns.keySet().toString());
+        assertEquals("{valueCount=4, emptyCount=0, averageLength=5.5, maxLength=9, distinctEstimate=3, numericCount=0}",
+                columns.get("name").toString());
+        assertEquals("{valueCount=3, emptyCount=1, averageLength=3.0, maxLength=4, distinctEstimate=3, numericCount=2, "
+                + "min=30.0, max=41.5, mean=35.75}", columns.get("age").toString());
+        // a quoted number is text
+        assertEquals(0L, columns.get("column3").get("numericCount"));
+        assertEquals(4L, accumulator.getStatistics().get("totalRowCount"));
+    }
+
+    @Test
+    public void shouldParseNumbersLikeParseDouble() {
+        Random random = new Random(42);
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < 100_000; i++) {
+            String number = random.nextInt(3) == 0 ? Long.toString(random.nextLong())
+                    : String.format("%." + random.nextInt(8) + "f", (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(12)));
+            assertEquals(number, Double.parseDouble(number), ColumnAccumulator.parseNumber(number, 0, number.length()), 0);
+        }
+        System.out.println("100000 numbers parsed twice in " + (System.currentTimeMillis() - start) + "ms");
+
+        for (String number : Arrays.asList("1e3", "-2.5E-2", " 42 ", "+7", ".5", "5.", "0.000000000000000000000001",
+                "12345678901234567890")) {
+            assertEquals(number, Double.parseDouble(number), ColumnAccumulator.parseNumber(number, 0, number.length()), 0);
+        }
+        for (String notANumber : Arrays.asList("", " ", "-", ".", "1.2.3", "1,000", "e5", "12a", "NaN", "0x1F")) {
+            assertTrue(notANumber, Double.isNaN(ColumnAccumulator.parseNumber(notANumber, 0, notANumber.length())));
+        }
+    }
+
+    @Test
+    public void shouldAccumulateConcurrently() {
+        String[][] batches = new String[100][];
+        for (int i = 0; i < batches.length; i++) {
+            batches[i] = new String[100];
+            for (int j = 0; j < batches[i].length; j++) {
+                int row = i * batches[i].length + j;
+                batches[i][j] = row + "\t" + (row % 7) + "\tcategory" + (row % 100);
+            }
+        }
+        ColumnAccumulator accumulator = new ColumnAccumulator('\t', Collections.emptyList());
+        long start = System.currentTimeMillis();
+        IntStream.range(0, batches.length).parallel().forEach(i -> accumulator.accumulate(batches[i]));
+        System.out.println("10000 rows accumulated in " + (System.currentTimeMillis() - start) + "ms");
+
+        Map<String, Map<String, Object>> columns = accumulator.getColumnStats();
+        assertEquals(10000L, accumulator.getTotalRowCount());
+        long idEstimate = (Long) columns.get("column1").get("distinctEstimate");
+        assertTrue("" + idEstimate, Math.abs(idEstimate - 10000) < 300);
+        assertEquals(7L, columns.get("column2").get("distinctEstimate"));
+        assertEquals(100L, columns.get("column3").get("distinctEstimate"));
+        assertEquals(9999.0, columns.get("column1").get("max"));
+        assertEquals(4999.5, columns.get("column1").get("mean"));
+    }
+
+    @Test
+    public void shouldMergeWrittenState() throws IOException {
+        ColumnAccumulator first = new ColumnAccumulator(',', Collections.singletonList("x"));
+        ColumnAccumulator second = new ColumnAccumulator(',', Collections.singletonList("x"));
+        first.accumulate(new String[]{"1,a", "2,b"});
+        second.accumulate(new String[]{"3,a,extra"});
+        first.mergeState(new DataInputStream(new ByteArrayInputStream(stateOf(second))));
+        assertEquals(3, first.getTotalRowCount());
+        Map<String, Map<String, Object>> columns = first.getColumnStats();
+        assertEquals("[x, column2, column3]", columns.keySet().toString());
+        assertEquals(2.0, columns.get("x").get("mean"));
+        assertEquals(2L, columns.get("column2").get("distinctEstimate"));
+
+        try {
+            new ColumnAccumulator(';', Collections.singletonList("x")).mergeState(
+                    new DataInputStream(new ByteArrayInputStream(stateOf(second))));
+            fail("Shouldn't be here!");
+        } catch (IOException e) {
+            e.printStackTrace(); //ok
+        }
+    }
+
+    private static byte[] stateOf(ColumnAccumulator accumulator) throws IOException {
+        ByteArrayOutputStream state = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(state)) {
+            accumulator.writeState(out);
+        }
+        return state.toByteArray();
+    }
+}
@@ -0,0 +1,118 @@
+package com.phil.oracle.interview.textlinestats.accumulator;
+
+import com.phil.oracle.interview.textlinestats.framework.TestUtil;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.*;
+
+public class DistinctLineAccumulatorTest {
+
+    @Test
+    public void shouldCountDistinctLinesExactly() {
+        String[][] batches = new String[200][];
+        Map<String, Long> expected = new HashMap<>();
+        for (int i = 0; i < batches.length; i++) {
+            batches[i] = new String[100];
+            for (int j = 0; j < batches[i].length; j++) {
+                batches[i][j] = j % 10 == 0 ? "heartbeat ok" : j % 3 == 0 ? "request " + (i * j % 500)
+                        : TestUtil.generateRandomSentence() + " " + i + "/" + j;
+                expected.merge(batches[i][j], 1L, Long::sum);
+            }
+        }
+        DistinctLineAccumulator accumulator = new DistinctLineAccumulator(3);
+        long start = System.currentTimeMillis();
+        IntStream.range(0, batches.length).parallel().forEach(i -> accumulator.accumulate(batches[i]));
+        accumulator.summarize();
+        System.out.println("Counted in " + (System.currentTimeMillis() - start) + "ms");
+
+        assertTrue(accumulator.isExact());
+        assertEquals((long) expected.size(), accumulator.getDistinctCount());
+        assertEquals(20000, accumulator.getTotalLineCount());
+        Map<String, Long> top = accumulator.getTopDuplicates();
+        assertEquals(3, top.size());
+        assertEquals(expected.get("heartbeat ok"), top.get("heartbeat ok"));
+        top.forEach((line, count) -> assertEquals(expected.get(line), count));
+        Map<String, Object> stats = accumulator.getStatistics();
+        assertEquals(BigDecimal.valueOf(20000).divide(BigDecimal.valueOf(expected.size()), 2, RoundingMode.HALF_UP),
+                stats.get("dedupRatio"));
+    }
+
+    @Test
+    public void shouldFallBackToAnEstimateBeyondTheBudget() {
+        DistinctLineAccumulator accumulator = new DistinctLineAccumulator(3, 4 * 1024 * 1024);
+        long start = System.currentTimeMillis();
+        IntStream.range(0, 100).parallel().forEach(i -> accumulator.accumulate(
+                IntStream.range(0, 5000).mapToObj(j -> "line " + (i * 5000 + j) % 300000).toArray(String[]::new)));
+        System.out.println("Counted in " + (System.currentTimeMillis() - start) + "ms");
+
+        assertFalse(accumulator.isExact());
+        assertEquals(300000, accumulator.getDistinctCount(), 300000 * 0.03);
+        assertEquals(500000, accumulator.getTotalLineCount());
+        assertTrue(accumulator.getTopDuplicates().isEmpty());
+        assertEquals(Boolean.FALSE, accumulator.getStatistics().get("exact"));
+    }
+
+    @Test
+    public void shouldMergeState() throws IOException {
+        DistinctLineAccumulator first = new DistinctLineAccumulator(2), second = new DistinctLineAccumulator(2);
+        first.accumulate(new String[]{"a", "b", "b", "c"});
+        second.accumulate(new String[]{"c", "d", "c"});
+        DistinctLineAccumulator merged = new DistinctLineAccumulator(2);
+        for (DistinctLineAccumulator accumulator : new DistinctLineAccumulator[]{first, second}) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            accumulator.writeState(new DataOutputStream(bytes));
+            merged.mergeState(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        }
+        assertEquals(4, merged.getDistinctCount());
+        assertEquals(7, merged.getTotalLineCount());
+        assertEquals("{c=3, b=2}", merged.getTopDuplicates().toString());
+
+        // an estimate merged in makes it an estimate
+        DistinctLineAccumulator estimating = new DistinctLineAccumulator(2, 1);
+        estimating.accumulate(IntStream.range(0, 50000).mapToObj(i -> "e" + i).toArray(String[]::new));
+        assertFalse(estimating.isExact());
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        estimating.writeState(new DataOutputStream(bytes));
+        merged.mergeState(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        assertFalse(merged.isExact());
+        assertEquals(50004, merged.getDistinctCount(), 50004 * 0.03);
+        assertEquals(50007, merged.getTotalLineCount());
+    }
+
+    @Test
+    public void linesSeenOnceOnEachSideShouldBeDuplicatesOnceMerged() throws IOException {
+        DistinctLineAccumulator first = new DistinctLineAccumulator(2), second = new DistinctLineAccumulator(2);
+        first.accumulate(new String[]{"dup", "x"});
+        second.accumulate(new String[]{"dup", "y"});
+        assertTrue(first.getTopDuplicates().isEmpty() && second.getTopDuplicates().isEmpty());
+        DistinctLineAccumulator merged = new DistinctLineAccumulator(2);
+        for (DistinctLineAccumulator accumulator : new DistinctLineAccumulator[]{first, second}) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            accumulator.writeState(new DataOutputStream(bytes));
+            merged.mergeState(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        }
+
+        // same as a single run over all of it
+        DistinctLineAccumulator single = new DistinctLineAccumulator(2);
+        single.accumulate(new String[]{"dup", "x", "dup", "y"});
+        assertEquals("{dup=2}", single.getTopDuplicates().toString());
+        assertEquals(single.getTopDuplicates(), merged.getTopDuplicates());
+        assertEquals(3, merged.getDistinctCount());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testEdgeCases() {
+        new DistinctLineAccumulator(0);
+    }
+}
@@ -0,0 +1,101 @@
+package com.phil.oracle.interview.textlinestats.accumulator;
+
+import com.phil.oracle.interview.textlinestats.framework.TestUtil;
+import com.phil.oracle.interview.textlinestats.token.TokenBatch;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FrequencyAccumulatorTest {
+
+    @Test
+    public void shouldCountWordsExactlyWhileSpilling() throws IOException {
+        File directory = Files.createTempDirectory("spill").toFile();
+        directory.deleteOnExit();
+        String[][] batches = new String[200][];
+        Map<String, Long> expected = new HashMap<>();
+        for (int i = 0; i < batches.length; i++) {
+            batches[i] = new String[50];
+            for (int j = 0; j < batches[i].length; j++) {
+                batches[i][j] = "common " + TestUtil.generateRandomSentence() + " word" + (i * j % 97);
+                for (String word : batches[i][j].trim().split("\\s+")) {
+                    expected.merge(word, 1L, Long::sum);
+                }
+            }
+        }
+        // a tiny budget, so every thread spills lots of runs
+        FrequencyAccumulator accumulator = new FrequencyAccumulator(FrequencyAccumulator.Unit.WORDS, 3, 20000, directory);
+        long start = System.currentTimeMillis();
+        IntStream.range(0, batches.length).parallel().forEach(i -> accumulator.accumulate(batches[i]));
+        accumulator.summarize();
+        System.out.println("Counted and merged in " + (System.currentTimeMillis() - start) + "ms");
+
+        Map<String, Object> stats = accumulator.getStatistics();
+        assertTrue((Integer) stats.get("runsSpilled") > 10);
+        assertEquals((long) expected.size(), accumulator.getDistinctCount());
+        assertEquals(expected.values().stream().mapToLong(Long::longValue).sum(), accumulator.getTotalCount());
+        Map.Entry<String, Long> first = accumulator.getTop().entrySet().iterator().next();
+        assertEquals("common", first.getKey());
+        assertEquals(expected.get("common"), first.getValue());
+        accumulator.getTop().forEach((word, count) -> assertEquals(expected.get(word), count));
+        assertEquals(1, directory.listFiles().length);  // just the merged run
+
+        // more input after a merge gets merged with it
+        accumulator.accumulate(new String[]{"common"});
+        assertEquals(expected.get("common") + 1, accumulator.getTop().get("common").longValue());
+    }
+
+    @Test
+    public void shouldCountLines() throws IOException {
+        File directory = Files.createTempDirectory("spill").toFile();
+        directory.deleteOnExit();
+        FrequencyAccumulator accumulator = new FrequencyAccumulator(FrequencyAccumulator.Unit.LINES, 2, 1000, directory);
+        accumulator.accumulate(new String[]{"ERROR disk full", "INFO started", "ERROR disk full", ""});
+        accumulator.accumulate(new String[]{"INFO started", "ERROR disk full"});
+        assertEquals("{ERROR disk full=3, INFO started=2}", accumulator.getTop().toString());
+        assertEquals(3, accumulator.getDistinctCount());
+        assertEquals(3L, accumulator.getStatistics().get("distinctLineCount"));
+    }
+
+    @Test
+    public void tokenBatchesShouldCountTheSame() throws IOException {
+        for (FrequencyAccumulator.Unit unit : FrequencyAccumulator.Unit.values()) {
+            File directory = Files.createTempDirectory("spill").toFile();
+            directory.deleteOnExit();
+            FrequencyAccumulator fromLines = new FrequencyAccumulator(unit, 5, 20000, directory);
+            TokenBatchAdapter<FrequencyAccumulator> fromTokens =
+                    new TokenBatchAdapter<>(new FrequencyAccumulator(unit, 5, 20000, directory));
+            for (int i = 0; i < 100; i++) {
+                String[] batch = {TestUtil.generateRandomSentence(), "", "the cat, sat; on the  cat", "a",
+                        TestUtil.generateRandomSentence() + " the end"};
+                fromLines.accumulate(batch);
+                fromTokens.accumulate(TokenBatch.tokenize(batch));
+            }
+            assertEquals(fromLines.getDistinctCount(), fromTokens.getDelegate().getDistinctCount());
+            assertEquals(fromLines.getTotalCount(), fromTokens.getDelegate().getTotalCount());
+            assertEquals(fromLines.getTop(), fromTokens.getDelegate().getTop());
+        }
+    }
+
+    @Test
+    public void testEdgeCases() {
+        try {
+            new FrequencyAccumulator(FrequencyAccumulator.Unit.LINES, 0);
+            fail("Shouldn't be here!");
+        } catch (UnsupportedOperationException e) {
+            e.printStackTrace(); //ok
+        }
+        FrequencyAccumulator accumulator = new FrequencyAccumulator(FrequencyAccumulator.Unit.WORDS, 10);
+        assertEquals(0, accumulator.getDistinctCount());
+        assertEquals(0, accumulator.getTop().size());
+    }
+}
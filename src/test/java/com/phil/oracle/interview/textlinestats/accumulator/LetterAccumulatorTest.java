@@ -3,6 +3,11 @@ package com.phil.oracle.interview.textlinestats.accumulator;
 import com.phil.oracle.interview.textlinestats.framework.TestUtil;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
@@ -42,6 +47,24 @@ public class LetterAccumulatorTest {
         assertEquals(expectedLetterCount, accumulator.getTotalLetterCount());  // we should tie out on the count
     }
 
+    @Test
+    public void shouldMergeWrittenState() throws IOException {
+        LetterAccumulator first = new LetterAccumulator(), second = new LetterAccumulator();
+        first.accumulate(new String[]{"aab", "c"});
+        second.accumulate(new String[]{"zzz top"});
+        second.accumulate(new String[]{"b"});
+
+        ByteArrayOutputStream state = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(state)) {
+            second.writeState(out);
+        }
+        first.mergeState(new DataInputStream(new ByteArrayInputStream(state.toByteArray())));
+
+        assertEquals(11, first.getTotalLetterCount());
+        assertEquals(3L, first.getStatistics().get("totalItemsProcessed"));
+        assertEquals("z", first.getStatistics().get("mostCommonLetter"));
+    }
+
      private int getLetterCount(String inputItem) {
         int rv = 0;
         for (int i = 0; i < inputItem.length(); i++) {
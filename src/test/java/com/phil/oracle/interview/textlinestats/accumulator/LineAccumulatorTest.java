@@ -1,6 +1,7 @@
 package com.phil.oracle.interview.textlinestats.accumulator;
 
 import com.phil.oracle.interview.textlinestats.framework.TestUtil;
+import com.phil.oracle.interview.textlinestats.kernel.LineFragments;
 import org.junit.Test;
 
 import java.util.ArrayList;
@@ -38,4 +39,13 @@ public class LineAccumulatorTest {
         accumulator.summarize();  // see what has been accumulated
         assertEquals(expectedLines, accumulator.getTotalLineCount());  // we should tie out on the count
     }
+
+    @Test
+    public void shouldCountTheFragmentsOfALineOnce() {
+        LineAccumulator accumulator = new LineAccumulator();
+        accumulator.accumulate(new String[]{"", "a whole line", "the ", LineFragments.CONTINUED});
+        accumulator.accumulate(new String[]{"quick ", LineFragments.CONTINUED});
+        accumulator.accumulate(new String[]{"fox", ""});
+        assertEquals(4, accumulator.getTotalLineCount());   // the empty lines are lines, the fragments one line
+    }
 }
@@ -0,0 +1,72 @@
+package com.phil.oracle.interview.textlinestats.accumulator;
+
+import com.phil.oracle.interview.textlinestats.framework.TestUtil;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class LinePositionAccumulatorTest {
+
+    @Test
+    public void shouldTrackRunsMarkersAndWordLines() {
+        LinePositionAccumulator accumulator = new LinePositionAccumulator("ERROR", 1);
+        accumulator.accumulate(new String[]{"ok fine", "ERROR disk", "ok fine", "ok fine"});
+        accumulator.accumulate(new String[]{"ok fine", "ERROR net", "so so", "so so", "so so", "ERROR disk"});
+        assertTrue(accumulator.isOrderSensitive());
+
+        assertEquals(4, accumulator.getRepeatedLineCount());
+        assertEquals(3, accumulator.getLongestRunLength());
+        assertEquals(3, accumulator.getLongestRunStart());   // the first of the two longest
+        assertEquals(3, accumulator.getMarkerLineCount());
+        assertArrayEquals(new long[]{4, 4}, accumulator.getMarkerGapRange());
+        assertArrayEquals(new long[]{2, 10}, accumulator.getWordLines("disk"));
+        assertArrayEquals(new long[]{1, 5}, accumulator.getWordLines("fine"));
+        assertNull(accumulator.getWordLines("nowhere"));
+
+        Map<String, Map<String, Long>> topWords = accumulator.getTopWords();
+        assertEquals(1, topWords.size());
+        assertEquals(6L, (long) topWords.get("so").get("count"));
+        assertEquals(7L, (long) topWords.get("so").get("firstLine"));
+        assertEquals(9L, (long) topWords.get("so").get("lastLine"));
+    }
+
+    @Test
+    public void mergedPartsShouldMatchASinglePass() throws IOException {
+        String[] lines = new String[20000];
+        for (int i = 0; i < lines.length; i++) {
+            // runs across the boundaries of the parts, and the odd marker line
+            lines[i] = i % 700 < 5 ? "same old line" : i % 97 == 0 ? "ERROR " + TestUtil.generateRandomSentence()
+                    : TestUtil.generateRandomSentence();
+        }
+        LinePositionAccumulator single = new LinePositionAccumulator("ERROR", 10);
+        single.accumulate(lines);
+
+        LinePositionAccumulator merged = new LinePositionAccumulator("ERROR", 10);
+        long start = System.currentTimeMillis();
+        for (int from : new int[]{0, 698, 702, 7000, 13999}) {
+            int to = from == 13999 ? lines.length : from == 0 ? 698 : from == 698 ? 702 : from == 702 ? 7000 : 13999;
+            LinePositionAccumulator part = new LinePositionAccumulator("ERROR", 10);
+            part.accumulate(Arrays.copyOfRange(lines, from, to));
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            part.writeState(new DataOutputStream(bytes));
+            merged.mergeState(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        }
+        System.out.println("Merged 5 parts in " + (System.currentTimeMillis() - start) + "ms");
+
+        assertEquals(TestUtil.withoutRunTimes(single.getStatistics()), TestUtil.withoutRunTimes(merged.getStatistics()));
+        assertEquals(single.getLongestRunStart(), merged.getLongestRunStart());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void shouldRejectAnEmptyMarker() {
+        new LinePositionAccumulator("", 10);
+    }
+}
@@ -0,0 +1,94 @@
+package com.phil.oracle.interview.textlinestats.accumulator;
+
+import com.phil.oracle.interview.textlinestats.framework.TestUtil;
+import com.phil.oracle.interview.textlinestats.token.TokenBatch;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class NGramAccumulatorTest {
+
+    @Test
+    public void shouldCountWordBigrams() {
+        NGramAccumulator accumulator = new NGramAccumulator(2, NGramAccumulator.Mode.WORDS, 3);
+        accumulator.accumulate(new String[]{"the cat sat on the  cat", "sat on the mat"});
+        accumulator.accumulate(new String[]{"", "one", "the cat"});
+        accumulator.summarize();
+
+        // 5 + 3 + 1 bigrams, n-grams don't span lines
+        assertEquals(9, accumulator.getTotalNGramCount());
+        Map<String, Long> top = accumulator.getTopNGrams();
+        assertEquals(Arrays.asList("the cat", "on the", "sat on"), Arrays.asList(top.keySet().toArray()));
+        assertEquals(Arrays.asList(3L, 2L, 2L), Arrays.asList(top.values().toArray()));
+        assertEquals(9L, accumulator.getStatistics().get("totalNGramCount"));
+        assertEquals(5, accumulator.getStatistics().get("distinctNGramCount"));
+    }
+
+    @Test
+    public void tokenBatchesShouldCountTheSame() {
+        for (NGramAccumulator.Mode mode : NGramAccumulator.Mode.values()) {
+            NGramAccumulator fromLines = new NGramAccumulator(2, mode, 5);
+            TokenBatchAdapter<NGramAccumulator> fromTokens = new TokenBatchAdapter<>(new NGramAccumulator(2, mode, 5));
+            for (int i = 0; i < 20; i++) {
+                String[] batch = {TestUtil.generateRandomSentence(), "", "the cat, sat; on the  cat", "one",
+                        TestUtil.generateRandomSentence() + " the cat"};
+                fromLines.accumulate(batch);
+                fromTokens.accumulate(TokenBatch.tokenize(batch));
+            }
+            assertEquals(fromLines.getTotalNGramCount(), fromTokens.getDelegate().getTotalNGramCount());
+            assertEquals(fromLines.getTopNGrams(), fromTokens.getDelegate().getTopNGrams());
+            assertEquals(20L, fromTokens.getStatistics().get("totalItemsProcessed"));
+        }
+    }
+
+    @Test
+    public void shouldCountCharTrigrams() {
+        NGramAccumulator accumulator = new NGramAccumulator(3, NGramAccumulator.Mode.CHARS, 2);
+        accumulator.accumulate(new String[]{"abcabcab", "ab", "xabc"});
+        assertEquals(6 + 2, accumulator.getTotalNGramCount());
+        Iterator<Map.Entry<String, Long>> top = accumulator.getTopNGrams().entrySet().iterator();
+        assertEquals("abc=3", top.next().toString());
+        assertEquals("bca=2", top.next().toString());  // ties with "cab", in text order
+    }
+
+    @Test
+    public void shouldMatchNaiveCountsConcurrently() {
+        String[][] batches = new String[100][];
+        Map<String, Long> expected = new HashMap<>();
+        for (int i = 0; i < batches.length; i++) {
+            batches[i] = new String[100];
+            for (int j = 0; j < batches[i].length; j++) {
+                batches[i][j] = TestUtil.generateRandomSentence();
+                String[] words = batches[i][j].trim().split("\\s+");
+                for (int w = 0; w + 2 < words.length; w++) {
+                    expected.merge(words[w] + " " + words[w + 1] + " " + words[w + 2], 1L, Long::sum);
+                }
+            }
+        }
+        NGramAccumulator accumulator = new NGramAccumulator(3, NGramAccumulator.Mode.WORDS, 20);
+        long start = System.currentTimeMillis();
+        IntStream.range(0, batches.length).parallel().forEach(i -> accumulator.accumulate(batches[i]));
+        System.out.println("Trigrams counted in " + (System.currentTimeMillis() - start) + "ms");
+
+        assertEquals(expected.values().stream().mapToLong(Long::longValue).sum(), accumulator.getTotalNGramCount());
+        accumulator.getTopNGrams().forEach((text, count) -> assertEquals(text, expected.get(text), count));
+    }
+
+    @Test
+    public void testEdgeCases() {
+        try {
+            new NGramAccumulator(0, NGramAccumulator.Mode.WORDS, 10);
+            fail("Shouldn't be here!");
+        } catch (UnsupportedOperationException e) {
+            e.printStackTrace(); //ok
+        }
+        assertEquals(0, new NGramAccumulator(1, NGramAccumulator.Mode.CHARS, 10).getTopNGrams().size());
+    }
+}
@@ -0,0 +1,106 @@
+package com.phil.oracle.interview.textlinestats.accumulator;
+
+import com.phil.oracle.interview.textlinestats.framework.TestUtil;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class PatternAccumulatorTest {
+
+    @Test
+    public void shouldCountPatterns() {
+        PatternAccumulator accumulator = new PatternAccumulator(Arrays.asList("ERROR", "timeout", "ERROR", "disk full"));
+        accumulator.accumulate(new String[]{"ERROR: timeout after 30s", "INFO all good", "ERROR ERROR: disk full"});
+        accumulator.accumulate(new String[]{"WARN timeout", "ERROR: timeout"});
+        accumulator.summarize();
+
+        assertEquals(3, accumulator.getPatternCount());   // the duplicate is counted once
+        assertEquals(4 + 3 + 1, accumulator.getTotalMatchCount());
+        assertEquals("{ERROR=4, timeout=3, disk full=1}", accumulator.getMatchCounts().toString());
+        assertEquals(8L, accumulator.getStatistics().get("totalMatchCount"));
+    }
+
+    @Test
+    public void shouldCountConcurrently() {
+        List<String> patterns = Arrays.asList("the", "a", "e", "xyz");
+        String[][] batches = new String[200][];
+        long[] expected = new long[patterns.size()];
+        for (int i = 0; i < batches.length; i++) {
+            batches[i] = new String[50];
+            for (int j = 0; j < batches[i].length; j++) {
+                batches[i][j] = TestUtil.generateRandomSentence();
+                for (int p = 0; p < patterns.size(); p++) {
+                    String line = batches[i][j];
+                    for (int at = line.indexOf(patterns.get(p)); at >= 0; at = line.indexOf(patterns.get(p), at + 1)) {
+                        expected[p]++;
+                    }
+                }
+            }
+        }
+        PatternAccumulator accumulator = new PatternAccumulator(patterns);
+        long start = System.currentTimeMillis();
+        IntStream.range(0, batches.length).parallel().forEach(i -> accumulator.accumulate(batches[i]));
+        System.out.println("Patterns counted in " + (System.currentTimeMillis() - start) + "ms");
+
+        Map<String, Long> counts = accumulator.getMatchCounts();
+        for (int p = 0; p < patterns.size(); p++) {
+            assertEquals(patterns.get(p), expected[p], (long) counts.get(patterns.get(p)));
+        }
+    }
+
+    @Test
+    public void shouldMergeWrittenState() throws IOException {
+        PatternAccumulator first = new PatternAccumulator(Arrays.asList("ab", "b"));
+        PatternAccumulator second = new PatternAccumulator(Arrays.asList("ab", "b"));
+        first.accumulate(new String[]{"abab"});
+        second.accumulate(new String[]{"bb"});
+        first.mergeState(new DataInputStream(new ByteArrayInputStream(stateOf(second))));
+        assertEquals("{ab=2, b=4}", first.getMatchCounts().toString());
+        assertEquals(6, first.getTotalMatchCount());
+
+        try {
+            new PatternAccumulator(Arrays.asList("ab", "c")).mergeState(new DataInputStream(new ByteArrayInputStream(stateOf(second))));
+            fail("Shouldn't be here!");
+        } catch (IOException e) {
+            e.printStackTrace(); //ok
+        }
+    }
+
+    @Test
+    public void shouldReadPatterns() throws IOException {
+        File file = File.createTempFile("patterns", ".txt");
+        file.deleteOnExit();
+        Files.write(file.toPath(), Arrays.asList("OutOfMemoryError", "", "Connection reset by peer "), StandardCharsets.UTF_8);
+        assertEquals(Arrays.asList("OutOfMemoryError", "Connection reset by peer "),
+                PatternAccumulator.readPatterns(file.getPath()));
+        try {
+            new PatternAccumulator(Collections.emptyList());
+            fail("Shouldn't be here!");
+        } catch (UnsupportedOperationException e) {
+            e.printStackTrace(); //ok
+        }
+    }
+
+    private static byte[] stateOf(PatternAccumulator accumulator) throws IOException {
+        ByteArrayOutputStream state = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(state)) {
+            accumulator.writeState(out);
+        }
+        return state.toByteArray();
+    }
+}
@@ -0,0 +1,148 @@
+package com.phil.oracle.interview.textlinestats.accumulator;
+
+import com.phil.oracle.interview.textlinestats.framework.TestUtil;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.*;
+
+public class SlidingWindowAccumulatorTest {
+
+    @Test
+    public void shouldOnlyCountWithinTheWindow() {
+        AtomicLong now = new AtomicLong(1_000_000);
+        SlidingWindowAccumulator accumulator = new SlidingWindowAccumulator(60_000, 10_000, 2, now::get);
+        accumulator.accumulate(new String[]{"ab cd", "ab"});
+        now.addAndGet(30_000);
+        accumulator.accumulate(new String[]{"ef ef ef"});
+        assertEquals(3, accumulator.getLineCount());
+        assertEquals(6, accumulator.getWordCount());
+        assertEquals(12, accumulator.getLetterCount());
+        assertEquals(3L, (long) accumulator.getTopWords().get("ef"));
+        assertEquals(2L, (long) accumulator.getTopWords().get("ab"));
+
+        now.addAndGet(30_000);   // the first slice falls out of the window
+        assertEquals(1, accumulator.getLineCount());
+        assertEquals(3, accumulator.getWordCount());
+        assertEquals(6, accumulator.getLetterCount());
+        Map<String, Long> top = accumulator.getTopWords();
+        assertEquals(1, top.size());
+        assertEquals(3L, (long) top.get("ef"));
+
+        now.addAndGet(10 * 60_000);   // long idle, everything expired
+        assertEquals(0, accumulator.getLineCount());
+        assertTrue(accumulator.getTopWords().isEmpty());
+        accumulator.accumulate(new String[]{"gh"});
+        assertEquals(1, accumulator.getWordCount());
+        assertEquals(60L, accumulator.getStatistics().get("windowSeconds"));
+    }
+
+    @Test
+    public void shouldRecomputeTheTopWordsAsTheyExpire() {
+        AtomicLong now = new AtomicLong(0);
+        SlidingWindowAccumulator accumulator = new SlidingWindowAccumulator(20_000, 10_000, 2, now::get);
+        accumulator.accumulate(new String[]{"aa aa aa aa bb bb bb"});
+        now.addAndGet(10_000);
+        accumulator.accumulate(new String[]{"cc cc bb"});
+        assertEquals(4L, (long) accumulator.getTopWords().get("aa"));
+
+        now.addAndGet(10_000);   // "aa" drops out of the top, "cc" overtakes the remaining "bb"
+        Map<String, Long> top = accumulator.getTopWords();
+        assertEquals(2, top.size());
+        assertEquals(2L, (long) top.get("cc"));
+        assertEquals(1L, (long) top.get("bb"));
+        assertEquals("cc", top.keySet().iterator().next());
+    }
+
+    @Test
+    public void shouldDropWordsOnceTheirLastSliceExpires() {
+        AtomicLong now = new AtomicLong(0);
+        SlidingWindowAccumulator accumulator = new SlidingWindowAccumulator(30_000, 10_000, 3, now::get);
+        for (int slice = 0; slice < 1000; slice++) {   // a stream of new words, and one that keeps coming
+            accumulator.accumulate(new String[]{"word" + slice + "a word" + slice + "b", "always"});
+            accumulator.accumulate(new String[]{"word" + slice + "a always"});
+            now.addAndGet(10_000);
+        }
+        assertEquals(2 * 2 + 1, accumulator.getDistinctWordCount());   // the last 2 slices' words only, the current is empty
+        Map<String, Long> top = accumulator.getTopWords();
+        assertEquals(Arrays.asList("always", "word998a", "word999a"), new ArrayList<>(top.keySet()));  // ties by text
+        assertEquals(4L, (long) top.get("always"));
+
+        now.addAndGet(30_000);
+        assertEquals(0, accumulator.getDistinctWordCount());
+        assertTrue(accumulator.getTopWords().isEmpty());
+    }
+
+    @Test
+    public void shouldMergeStateIntoTheCurrentSlice() throws IOException {
+        AtomicLong now = new AtomicLong(0);
+        SlidingWindowAccumulator first = new SlidingWindowAccumulator(20_000, 10_000, 2, now::get);
+        SlidingWindowAccumulator second = new SlidingWindowAccumulator(20_000, 10_000, 2, now::get);
+        first.accumulate(new String[]{"ab cd ab"});
+        second.accumulate(new String[]{"cd cd ef"});
+        SlidingWindowAccumulator merged = new SlidingWindowAccumulator(20_000, 10_000, 2, now::get);
+        for (SlidingWindowAccumulator accumulator : new SlidingWindowAccumulator[]{first, second}) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            accumulator.writeState(new DataOutputStream(bytes));
+            merged.mergeState(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        }
+        assertEquals(6, merged.getWordCount());
+        assertEquals("{cd=3, ab=2}", merged.getTopWords().toString());
+
+        now.addAndGet(20_000);
+        assertEquals(0, merged.getWordCount());
+        assertEquals(0, merged.getDistinctWordCount());
+    }
+
+    @Test
+    public void shouldMatchTheExactCountsWithinOneSlice() {
+        String[][] batches = new String[100][];
+        Map<String, Long> expected = new HashMap<>();
+        long wordCount = 0;
+        for (int i = 0; i < batches.length; i++) {
+            batches[i] = new String[100];
+            for (int j = 0; j < batches[i].length; j++) {
+                batches[i][j] = TestUtil.generateRandomSentence();
+                for (String word : batches[i][j].trim().split("\\s+")) {
+                    if (!word.isEmpty()) {
+                        expected.merge(word, 1L, Long::sum);
+                        wordCount++;
+                    }
+                }
+            }
+        }
+        SlidingWindowAccumulator accumulator = new SlidingWindowAccumulator(5);
+        long start = System.currentTimeMillis();
+        IntStream.range(0, batches.length).parallel().forEach(i -> accumulator.accumulate(batches[i]));
+        accumulator.summarize();
+        System.out.println("Counted in " + (System.currentTimeMillis() - start) + "ms");
+
+        assertEquals(10000, accumulator.getLineCount());
+        assertEquals(wordCount, accumulator.getWordCount());
+        Map<String, Long> top = accumulator.getTopWords();
+        assertEquals(5, top.size());
+        long previous = Long.MAX_VALUE;
+        for (Map.Entry<String, Long> entry : top.entrySet()) {
+            assertEquals(expected.get(entry.getKey()), entry.getValue());
+            assertTrue(entry.getValue() <= previous);
+            previous = entry.getValue();
+        }
+        assertEquals(expected.values().stream().mapToLong(Long::longValue).max().getAsLong(), (long) top.values().iterator().next());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void shouldRejectAWindowThatIsNotAMultipleOfTheSlice() {
+        new SlidingWindowAccumulator(25_000, 10_000, 2, System::currentTimeMillis);
+    }
+}
@@ -0,0 +1,94 @@
+package com.phil.oracle.interview.textlinestats.accumulator;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class TimeBucketAccumulatorTest {
+    private static final String PATTERN = "yyyy-MM-dd HH:mm:ss";
+
+    @Test
+    public void shouldCountPerMinuteAndHour() {
+        TimeBucketAccumulator accumulator = new TimeBucketAccumulator(PATTERN);
+        accumulator.accumulate(new String[]{"2018-03-13 10:59:58 one two", "2018-03-13 10:59:59 three",
+                "java.lang.IllegalStateException: oops", "\tat Main.main(Main.java:3)", "2018-03-13 11:00:00 four"});
+        accumulator.accumulate(new String[]{"2018-03-13 09:15:00 earlier"});   // before the first minute seen
+        accumulator.summarize();
+
+        // digits alone aren't words (see ScalarTextKernel)
+        assertEquals("{2018-03-13 09:15={lines=1, words=1}, 2018-03-13 10:59={lines=2, words=3}, "
+                + "2018-03-13 11:00={lines=1, words=1}}", accumulator.getBucketCounts(1).toString());
+        assertEquals("{2018-03-13 09:00={lines=1, words=1}, 2018-03-13 10:00={lines=2, words=3}, "
+                + "2018-03-13 11:00={lines=1, words=1}}", accumulator.getBucketCounts(60).toString());
+        assertEquals(2, accumulator.getUntimedLineCount());
+        assertEquals(4L, accumulator.getStatistics().get("timedLineCount"));
+    }
+
+    @Test
+    public void shouldCountConcurrently() {
+        String[][] batches = new String[600][];
+        for (int i = 0; i < batches.length; i++) {
+            batches[i] = new String[100];
+            for (int j = 0; j < batches[i].length; j++) {   // a line per second for ~17 hours, a batch every 100s
+                int second = i * batches[i].length + j;
+                batches[i][j] = String.format("2019-06-30 %02d:%02d:%02d GET /", second / 3600, second / 60 % 60, second % 60);
+            }
+        }
+        TimeBucketAccumulator accumulator = new TimeBucketAccumulator(PATTERN);
+        long start = System.currentTimeMillis();
+        IntStream.range(0, batches.length).parallel().forEach(i -> accumulator.accumulate(batches[i]));
+        System.out.println("60000 lines bucketed in " + (System.currentTimeMillis() - start) + "ms");
+
+        Map<String, Map<String, Long>> perHour = accumulator.getBucketCounts(60);
+        assertEquals(17, perHour.size());
+        assertEquals(3600L, (long) perHour.get("2019-06-30 00:00").get("lines"));
+        assertEquals(2400L, (long) perHour.get("2019-06-30 16:00").get("words"));   // 40 minutes, one word a line
+        assertEquals(1000, accumulator.getBucketCounts(1).size());
+        assertEquals(0, accumulator.getUntimedLineCount());
+    }
+
+    @Test
+    public void shouldMergeWrittenState() throws IOException {
+        TimeBucketAccumulator first = new TimeBucketAccumulator(PATTERN);
+        TimeBucketAccumulator second = new TimeBucketAccumulator(PATTERN);
+        first.accumulate(new String[]{"2018-03-13 10:00:01 alpha", "untimed"});
+        second.accumulate(new String[]{"2018-03-13 10:00:02 beta gamma", "2018-03-12 23:59:59 delta", "untimed"});
+        first.mergeState(new DataInputStream(new ByteArrayInputStream(stateOf(second))));
+        assertEquals("{2018-03-12 23:59={lines=1, words=1}, 2018-03-13 10:00={lines=2, words=3}}",
+                first.getBucketCounts(1).toString());
+        assertEquals(2, first.getUntimedLineCount());
+
+        try {
+            new TimeBucketAccumulator("yyyy-MM-dd'T'HH:mm:ss").mergeState(
+                    new DataInputStream(new ByteArrayInputStream(stateOf(second))));
+            fail("Shouldn't be here!");
+        } catch (IOException e) {
+            e.printStackTrace(); //ok
+        }
+    }
+
+    @Test
+    public void shouldTreatFarOutLinesAsUntimed() {
+        TimeBucketAccumulator accumulator = new TimeBucketAccumulator(PATTERN);
+        accumulator.accumulate(new String[]{"2018-03-13 10:00:00", "1970-01-01 00:00:00", "2018-12-31 23:59:59"});
+        assertEquals(1, accumulator.getUntimedLineCount());
+        assertEquals(2, accumulator.getBucketCounts(1).size());
+    }
+
+    private static byte[] stateOf(TimeBucketAccumulator accumulator) throws IOException {
+        ByteArrayOutputStream state = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(state)) {
+            accumulator.writeState(out);
+        }
+        return state.toByteArray();
+    }
+}
@@ -0,0 +1,70 @@
+package com.phil.oracle.interview.textlinestats.accumulator;
+
+import com.phil.oracle.interview.textlinestats.framework.TestUtil;
+import com.phil.oracle.interview.textlinestats.offheap.TokenDictionary;
+import com.phil.oracle.interview.textlinestats.token.TokenBatch;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class VocabularyAccumulatorTest {
+
+    @Test
+    public void testAccumulate() {
+        VocabularyAccumulator accumulator = new VocabularyAccumulator(2);
+        accumulator.accumulate(new String[]{"the cat and the dog", "The end "});
+        accumulator.accumulate(new String[]{"", "and so on and on"});
+        accumulator.summarize();
+
+        Map<String, Long> top = accumulator.getTopWords();
+        assertEquals(Arrays.asList("and", "on"), Arrays.asList(top.keySet().toArray()));  // "on" and "the" tie on 2
+        assertEquals(Arrays.asList(3L, 2L), Arrays.asList(top.values().toArray()));
+        assertEquals(1, accumulator.getCount("The"));
+        assertEquals(2, accumulator.getCount("on"));  // the last word, see WordTokenizer
+        assertEquals(0, accumulator.getCount("bird"));
+        assertEquals(8, accumulator.getStatistics().get("distinctWordCount"));
+
+        // ties broken by text, not by which word got interned first
+        VocabularyAccumulator tied = new VocabularyAccumulator(2);
+        tied.accumulate(new String[]{"zebra mango apple", "apple mango zebra"});
+        assertEquals(Arrays.asList("apple", "mango"), Arrays.asList(tied.getTopWords().keySet().toArray()));
+    }
+
+    @Test
+    public void tokenBatchesShouldCountTheSame() {
+        VocabularyAccumulator fromLines = new VocabularyAccumulator(5);
+        TokenBatchAdapter<VocabularyAccumulator> fromTokens = new TokenBatchAdapter<>(new VocabularyAccumulator(5));
+        String[][] batches = new String[20][];
+        for (int i = 0; i < batches.length; i++) {
+            batches[i] = new String[]{TestUtil.generateRandomSentence(), "", "the cat, sat; on the  cat", "a",
+                    TestUtil.generateRandomSentence() + " the end"};
+            fromLines.accumulate(batches[i]);
+            fromTokens.accumulate(TokenBatch.tokenize(batches[i]));
+        }
+        assertEquals(fromLines.getStatistics().get("distinctWordCount"), fromTokens.getStatistics().get("distinctWordCount"));
+        for (String[] batch : batches) {
+            for (String word : String.join(" ", batch).split(" +")) {
+                assertEquals(fromLines.getCount(word), fromTokens.getDelegate().getCount(word));
+            }
+        }
+        assertEquals(fromLines.getTopWords(), fromTokens.getDelegate().getTopWords());
+        assertEquals(60, fromTokens.getDelegate().getCount("the"));
+    }
+
+    @Test
+    public void shouldShareTheDictionaryAcrossThreads() {
+        TokenDictionary dictionary = new TokenDictionary();
+        VocabularyAccumulator accumulator = new VocabularyAccumulator(dictionary, 5);
+        String[] batch = {"alpha beta gamma", "beta gamma", "gamma delta"};
+        IntStream.range(0, 1000).parallel().forEach(i -> accumulator.accumulate(batch));
+        assertSame(dictionary, accumulator.getDictionary());
+        assertEquals(4, dictionary.size());
+        assertEquals(3000, accumulator.getCount("gamma"));
+        assertEquals("{gamma=3000, beta=2000, alpha=1000, delta=1000}", accumulator.getTopWords().toString());
+    }
+}
@@ -1,6 +1,8 @@
 package com.phil.oracle.interview.textlinestats.accumulator;
 
 import com.phil.oracle.interview.textlinestats.framework.TestUtil;
+import com.phil.oracle.interview.textlinestats.kernel.TextKernels;
+import com.phil.oracle.interview.textlinestats.token.TokenBatch;
 import org.junit.Test;
 
 import java.util.ArrayList;
@@ -46,6 +48,16 @@ public class WordAccumulatorTest {
         assertEquals(expectedWordCount, accumulator.getTotalWordCount());  // we should tie out on the count
     }
 
+    @Test
+    public void shouldCountTheWordsOfTokenBatches() {
+        WordAccumulator accumulator = new WordAccumulator();
+        String[] lines = {"abc.", ".abc. dfg.", "", "я устал, мне надоело", "1 2 3"};
+        accumulator.accumulateTokens(TokenBatch.tokenize(lines));
+        accumulator.accumulateTokens(TokenBatch.EMPTY);
+        assertEquals(TextKernels.get().countWords(lines), accumulator.getTotalWordCount());
+        assertEquals(2L, accumulator.getStatistics().get("totalItemsProcessed"));
+    }
+
     @Test
     public void testVariousLines() {
         WordAccumulator accumulator = new WordAccumulator();
@@ -0,0 +1,49 @@
+package com.phil.oracle.interview.textlinestats.accumulator;
+
+import com.phil.oracle.interview.textlinestats.framework.TestUtil;
+import com.phil.oracle.interview.textlinestats.token.TokenBatch;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+
+public class WordLengthAccumulatorTest {
+
+    @Test
+    public void testAccumulate() {
+        WordLengthAccumulator accumulator = new WordLengthAccumulator();
+        accumulator.accumulateTokens(TokenBatch.tokenize(new String[]{"one two three", "", "four,"}));
+        accumulator.accumulate(new String[]{"elevenths"});
+        accumulator.accumulateTokens(TokenBatch.EMPTY);
+        accumulator.summarize();
+
+        assertEquals(5, accumulator.getTotalWordCount());
+        assertEquals("elevenths", accumulator.getLongestWord());
+        assertEquals(new BigDecimal("5.0"), accumulator.getAverageWordLength());  // (3 + 3 + 5 + 5 + 9) / 5
+        assertEquals(5L, accumulator.getStatistics().get("totalWordCount"));
+    }
+
+    @Test
+    public void shouldMatchWordAccumulatorConcurrently() {
+        String[][] batches = new String[200][];
+        for (int i = 0; i < batches.length; i++) {
+            batches[i] = new String[50];
+            for (int j = 0; j < batches[i].length; j++) {
+                batches[i][j] = TestUtil.generateRandomSentence();
+            }
+        }
+        WordAccumulator wordAccumulator = new WordAccumulator();
+        WordLengthAccumulator accumulator = new WordLengthAccumulator();
+        IntStream.range(0, batches.length).parallel().forEach(i -> {
+            wordAccumulator.accumulate(batches[i]);
+            if (i % 2 == 0) {
+                accumulator.accumulate(batches[i]);
+            } else {
+                accumulator.accumulateTokens(TokenBatch.tokenize(batches[i]));
+            }
+        });
+        assertEquals(wordAccumulator.getTotalWordCount(), accumulator.getTotalWordCount());
+    }
+}
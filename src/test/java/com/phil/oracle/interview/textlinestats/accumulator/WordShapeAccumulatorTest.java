@@ -0,0 +1,37 @@
+package com.phil.oracle.interview.textlinestats.accumulator;
+
+import com.phil.oracle.interview.textlinestats.accumulator.WordShapeAccumulator.Shape;
+import com.phil.oracle.interview.textlinestats.token.TokenBatch;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class WordShapeAccumulatorTest {
+
+    @Test
+    public void testShapeOf() {
+        assertEquals(Shape.LOWER, shapeOf("hello,"));
+        assertEquals(Shape.CAPITALIZED, shapeOf("\"Hello"));
+        assertEquals(Shape.CAPITALIZED, shapeOf("I"));
+        assertEquals(Shape.UPPER, shapeOf("U.S."));
+        assertEquals(Shape.MIXED, shapeOf("iPhone"));
+        assertEquals(Shape.MIXED, shapeOf("McDonald"));
+    }
+
+    @Test
+    public void testAccumulate() {
+        WordShapeAccumulator accumulator = new WordShapeAccumulator();
+        accumulator.accumulateTokens(TokenBatch.tokenize(new String[]{"The quick brown FOX"}));
+        accumulator.accumulate(new String[]{"jumps over McDonald's dog "});
+        accumulator.summarize();
+        assertEquals(5, accumulator.getWordCount(Shape.LOWER));
+        assertEquals(1, accumulator.getWordCount(Shape.CAPITALIZED));
+        assertEquals(1, accumulator.getWordCount(Shape.UPPER));
+        assertEquals(1, accumulator.getWordCount(Shape.MIXED));
+        assertEquals(1L, accumulator.getStatistics().get("mixedWordCount"));
+    }
+
+    private static Shape shapeOf(String word) {
+        return WordShapeAccumulator.shapeOf(word, 0, word.length());
+    }
+}
@@ -36,9 +36,8 @@ public class AbstractAccumulatingConsumerTest {
         }
         assertTrue(expectedLineCount > 0 && expectedCharCount > 0);
 
-        // also need a poison pill for the consumer to stop
-        final String[] stopSignal = new String[0];
-        buffer.put(stopSignal);
+        // also need to close the buffer for the consumer to stop
+        buffer.close();
 
         final AtomicInteger consumedLineCount = new AtomicInteger(0);
         final AtomicInteger consumedCharCount = new AtomicInteger(0);
@@ -59,10 +58,6 @@ public class AbstractAccumulatingConsumerTest {
         };
         List<Accumulator<String[]>> accumulators = new ArrayList<>(Collections.singletonList(accumulatorStub));
         Consumer consumerStub = new AbstractAccumulatingConsumer<String[]>(buffer, accumulators) {
-            @Override
-            public String[] getStopSignal() {
-                return stopSignal;
-            }
         };
         assertEquals(buffer, consumerStub.getBuffer());
         assertEquals(1, consumerStub.getThreadCount());
@@ -78,10 +73,6 @@ public class AbstractAccumulatingConsumerTest {
         List<Accumulator<Integer>> accumulators = new ArrayList<>();
 
         AbstractAccumulatingConsumer consumerStub = new AbstractAccumulatingConsumer<Integer>(buffer, accumulators) {
-            @Override
-            public Integer getStopSignal() {
-                return -1;
-            }
         };
 
         ExecutorService executorService = Executors.newSingleThreadExecutor();
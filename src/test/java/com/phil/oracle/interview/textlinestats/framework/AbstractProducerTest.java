@@ -13,8 +13,8 @@ public class AbstractProducerTest {
     @Test
     public void shouldProduceToBufferAsExpected() throws InterruptedException {
         BlockingBuffer<Integer> buffer = BlockingBuffer.instance(1000);
-        final int consumerThreadCount = 2, consumerStopSignal = -1;
-        Consumer<Integer> consumerStub = new ConsumerStub<>(consumerThreadCount, buffer, consumerStopSignal);
+        final int consumerThreadCount = 2;
+        Consumer<Integer> consumerStub = new ConsumerStub<>(consumerThreadCount, buffer);
 
         final int itemsToProduce = 101;
         Producer<Integer> producerStub = new AbstractProducer<Integer>(consumerStub) {
@@ -32,8 +32,9 @@ public class AbstractProducerTest {
         // run the producer directly on this thread to fill up the buffer
         producerStub.run();
 
-        // it should add all the items, and a poison pill per consumer thread
-        assertEquals(itemsToProduce + consumerThreadCount, buffer.size());
+        // it should add all the items, and close the buffer
+        assertEquals(itemsToProduce, buffer.size());
+        assertTrue(buffer.isClosed());
 
         // remove all the actual items from the buffer, and tie out with what we expect
         long bufferSum = 0;
@@ -43,9 +44,9 @@ public class AbstractProducerTest {
         long expectedSum = itemsToProduce * (itemsToProduce + 1) / 2; // Gauss formula
         assertEquals(expectedSum, bufferSum);
 
-        // the remaining items should be the poison pills
+        // then every consumer thread gets told there's no more
         for (int i = 0; i < consumerThreadCount; i++) {
-            assertEquals(consumerStub.getStopSignal(), buffer.take());
+            assertNull(buffer.take());
         }
         assertTrue(buffer.isEmpty());
     }
@@ -53,8 +54,8 @@ public class AbstractProducerTest {
     @Test
     public void testInterruptedScenario() throws InterruptedException {
         BlockingBuffer<Integer> buffer = BlockingBuffer.instance(Integer.MAX_VALUE);
-        final int consumerThreadCount = 2, consumerStopSignal = -1;
-        Consumer<Integer> consumer = new ConsumerStub<>(consumerThreadCount, buffer, consumerStopSignal);
+        final int consumerThreadCount = 2;
+        Consumer<Integer> consumer = new ConsumerStub<>(consumerThreadCount, buffer);
 
         final int itemsToProduce = 101, sleepMillis = 50;
         Producer<Integer> producer = new AbstractProducer<Integer>(consumer) {
@@ -73,21 +74,20 @@ public class AbstractProducerTest {
         executorService.shutdown();
         executorService.awaitTermination(20, TimeUnit.MILLISECONDS);
         executorService.shutdownNow();
+        executorService.awaitTermination(1, TimeUnit.SECONDS);   // for the interrupted producer to finish
 
-        // as it stands now, the poison pills won't get added due to the restored interrupt
+        // the buffer gets closed all the same, closing doesn't wait on anything - so consumers don't wait forever
         assertEquals(itemsToProduce, buffer.size());
-        // TODO determine/assert proper flow in this scenario
+        assertTrue(buffer.isClosed());
     }
 
     private static class ConsumerStub<T> implements Consumer<T> {
         private final int threadCount;
         private final BlockingBuffer<T> buffer;
-        private final T stopSignal;
 
-        ConsumerStub(int threadCount, BlockingBuffer<T> buffer, T stopSignal) {
+        ConsumerStub(int threadCount, BlockingBuffer<T> buffer) {
             this.threadCount = threadCount;
             this.buffer = buffer;
-            this.stopSignal = stopSignal;
         }
 
         @Override
@@ -100,11 +100,6 @@ public class AbstractProducerTest {
             return buffer;
         }
 
-        @Override
-        public T getStopSignal() {
-            return stopSignal;
-        }
-
         @Override
         public long consumeFromBuffer(BlockingBuffer<T> buffer) {
             fail("Shouldn't be here!");
@@ -0,0 +1,63 @@
+package com.phil.oracle.interview.textlinestats.framework;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class AbstractTransformingStageTest {
+    @Test
+    public void shouldTransformAndSignalDownstream() throws InterruptedException {
+        AtomicLong totalLength = new AtomicLong();
+        Accumulator<String> lengthAccumulator = new Accumulator<String>() {
+            @Override
+            public void accumulate(String inputItem) {
+                totalLength.addAndGet(inputItem.length());
+            }
+
+            @Override
+            public void summarize() {
+            }
+        };
+        int downstreamThreadCount = 3;
+        BlockingBuffer<String> downstreamBuffer = BlockingBuffer.instance(100);
+        AbstractAccumulatingConsumer<String> downstream = new AbstractAccumulatingConsumer<String>(downstreamBuffer,
+                Collections.singletonList(lengthAccumulator), downstreamThreadCount) {
+        };
+
+        BlockingBuffer<Integer> buffer = BlockingBuffer.instance(100);
+        int stageThreadCount = 2;
+        AbstractTransformingStage<Integer, String> stage = new AbstractTransformingStage<Integer, String>(buffer,
+                stageThreadCount, downstream) {
+            @Override
+            protected String transform(Integer item) {
+                return String.valueOf(item);
+            }
+        };
+
+        for (int i = 1; i <= 20; i++) {
+            buffer.put(i);  // 9 single digit numbers and 11 double digit ones
+        }
+        buffer.close();
+
+        // two stage "threads" in a row: only the second one closes the downstream buffer
+        assertEquals(20, stage.consumeFromBuffer(buffer));
+        assertFalse(downstreamBuffer.isClosed());
+        assertEquals(0, stage.consumeFromBuffer(buffer));
+        assertTrue(downstreamBuffer.isClosed());
+        assertEquals(20, downstreamBuffer.size());
+
+        List<Long> itemCounts = new ArrayList<>();
+        for (int i = 0; i < downstreamThreadCount; i++) {
+            itemCounts.add(downstream.consumeFromBuffer(downstreamBuffer));
+        }
+        assertEquals(Arrays.asList(20L, 0L, 0L), itemCounts);
+        assertEquals(9 + 22, totalLength.get());
+        assertEquals(stageThreadCount, stage.getThreadCount());
+    }
+}
@@ -2,6 +2,7 @@ package com.phil.oracle.interview.textlinestats.framework;
 
 import org.junit.Test;
 
+import java.util.Collections;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
@@ -42,6 +43,162 @@ public class AsyncFlowOrchestratorTest {
         assertEquals(consumer.getThreadCount(), consumer.completedCount.get()); // consumer finished
     }
 
+    @Test
+    public void testRunProducerConsumerOnReusedExecutors() throws InterruptedException {
+        ExecutorService producerExecutor = Executors.newFixedThreadPool(THREAD_COUNT);
+        ExecutorService consumerExecutor = Executors.newFixedThreadPool(THREAD_COUNT);
+
+        // same scenarios as above, but the executors survive both runs
+        FakeProducer producer = new FakeProducer(THREAD_COUNT, PRODUCER_NAME, 10);
+        FakeConsumer consumer = new FakeConsumer(THREAD_COUNT, CONSUMER_NAME, 100);
+        AsyncFlowOrchestrator.runProducerConsumer(90, producer, consumer, producerExecutor, consumerExecutor);
+        assertEquals(producer.getThreadCount(), producer.completedCount.get());
+        assertEquals(0, consumer.completedCount.get()); // consumer did not finish, and got interrupted
+
+        producer = new FakeProducer(THREAD_COUNT, PRODUCER_NAME, 10);
+        consumer = new FakeConsumer(THREAD_COUNT, CONSUMER_NAME, 100);
+        AsyncFlowOrchestrator.runProducerConsumer(150, producer, consumer, producerExecutor, consumerExecutor);
+        assertEquals(producer.getThreadCount(), producer.completedCount.get());
+        assertEquals(consumer.getThreadCount(), consumer.completedCount.get()); // consumer finished
+
+        assertFalse(producerExecutor.isShutdown() || consumerExecutor.isShutdown());
+        producerExecutor.shutdownNow();
+        consumerExecutor.shutdownNow();
+    }
+
+    @Test
+    public void shouldRethrowTaskFailures() {
+        ExecutorService producerExecutor = Executors.newFixedThreadPool(1);
+        ExecutorService consumerExecutor = Executors.newFixedThreadPool(2);
+
+        // an accumulator blowing up half way through
+        long[] total = new long[1];
+        Consumer<Integer> consumer = summingConsumer(total, 50);
+        try {
+            AsyncFlowOrchestrator.runProducerConsumer(10000, countingProducer(consumer, 100, -1), consumer,
+                    producerExecutor, consumerExecutor);
+            fail("Shouldn't be here!");
+        } catch (IllegalStateException e) {
+            assertEquals("Failing at 50", e.getCause().getMessage());
+        }
+
+        // the producer blowing up - the consumers get cancelled, no point in draining a failed run
+        consumer = summingConsumer(total, -1);
+        try {
+            AsyncFlowOrchestrator.runProducerConsumer(10000, countingProducer(consumer, 100, 50), consumer,
+                    producerExecutor, consumerExecutor);
+            fail("Shouldn't be here!");
+        } catch (IllegalStateException e) {
+            assertEquals("Failing at 50", e.getCause().getMessage());
+        }
+
+        // and the pools are good for the next run
+        total[0] = 0;
+        consumer = summingConsumer(total, -1);
+        AsyncFlowOrchestrator.runProducerConsumer(10000, countingProducer(consumer, 100, -1), consumer,
+                producerExecutor, consumerExecutor);
+        assertEquals(5050, total[0]);
+        producerExecutor.shutdownNow();
+        consumerExecutor.shutdownNow();
+    }
+
+    @Test
+    public void shouldWaitForTimedOutTasksToStop() throws InterruptedException {
+        ExecutorService producerExecutor = Executors.newFixedThreadPool(1);
+        ExecutorService consumerExecutor = Executors.newFixedThreadPool(2);
+        AtomicInteger accumulatedCount = new AtomicInteger(0);
+        Consumer<Integer> consumer = new AbstractAccumulatingConsumer<Integer>(BlockingBuffer.instance(1000), Collections.singletonList(new Accumulator<Integer>() {
+            @Override
+            public void accumulate(Integer inputItem) {
+                long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(20);
+                while (System.nanoTime() < end) {
+                    // busy, deaf to interrupts until done with the item
+                }
+                accumulatedCount.incrementAndGet();
+            }
+
+            @Override
+            public void summarize() {
+            }
+        }), 2) {
+        };
+        AsyncFlowOrchestrator.runProducerConsumer(50, countingProducer(consumer, 1000, -1), consumer,
+                producerExecutor, consumerExecutor);
+        int countOnReturn = accumulatedCount.get();
+        assertTrue(countOnReturn < 1000);
+        Thread.sleep(100);
+        assertEquals(countOnReturn, accumulatedCount.get());  // no straggler still at it, e.g. at the next run's buffer
+        producerExecutor.shutdownNow();
+        consumerExecutor.shutdownNow();
+    }
+
+    // produces 1 to count, failing at failAt (unless -1)
+    private static Producer<Integer> countingProducer(Consumer<Integer> consumer, int count, int failAt) {
+        return new AbstractProducer<Integer>(consumer) {
+            @Override
+            public long produceToBuffer(BlockingBuffer<Integer> buffer) throws InterruptedException {
+                for (int i = 1; i <= count; i++) {
+                    buffer.put(i == failAt ? blowUp(i) : i);
+                }
+                return count;
+            }
+        };
+    }
+
+    private static int blowUp(int item) {
+        throw new IllegalStateException("Failing at " + item);
+    }
+
+    // sums up the items on 2 threads, failing at failAt (unless -1)
+    private static Consumer<Integer> summingConsumer(long[] total, int failAt) {
+        return new AbstractAccumulatingConsumer<Integer>(BlockingBuffer.instance(1000), Collections.singletonList(new Accumulator<Integer>() {
+            @Override
+            public void accumulate(Integer inputItem) {
+                synchronized (total) {
+                    total[0] += inputItem == failAt ? blowUp(inputItem) : inputItem;
+                }
+            }
+
+            @Override
+            public void summarize() {
+            }
+        }), 2) {
+        };
+    }
+
+    @Test
+    public void testRunInline() {
+        FakeProducer producer = new FakeProducer(1, PRODUCER_NAME, 10);
+        FakeConsumer consumer = new FakeConsumer(2, CONSUMER_NAME, 10);
+        long millisTaken = AsyncFlowOrchestrator.runInline(producer, consumer);
+        // everything ran to completion, one after the other on this thread
+        assertEquals(1, producer.completedCount.get());
+        assertEquals(2, consumer.completedCount.get());
+        assertTrue(millisTaken >= 30);
+    }
+
+    @Test
+    public void testRunPipeline() {
+        FakeProducer producer = new FakeProducer(THREAD_COUNT, PRODUCER_NAME, 10);
+        FakeConsumer stage = new FakeConsumer(THREAD_COUNT, "Stage", 20);
+        FakeConsumer consumer = new FakeConsumer(THREAD_COUNT, CONSUMER_NAME, 30);
+
+        // every stage runs concurrently on its own pool, so the run takes about as long as the slowest stage
+        long millisTaken = AsyncFlowOrchestrator.runPipeline(500, producer, stage, consumer);
+        assertEquals(producer.getThreadCount(), producer.completedCount.get());
+        assertEquals(stage.getThreadCount(), stage.completedCount.get());
+        assertEquals(consumer.getThreadCount(), consumer.completedCount.get());
+        assertTrue(millisTaken < 500);
+
+        // the last stage gets interrupted when the time is up
+        producer = new FakeProducer(THREAD_COUNT, PRODUCER_NAME, 10);
+        stage = new FakeConsumer(THREAD_COUNT, "Stage", 20);
+        consumer = new FakeConsumer(THREAD_COUNT, CONSUMER_NAME, 200);
+        AsyncFlowOrchestrator.runPipeline(100, producer, stage, consumer);
+        assertEquals(stage.getThreadCount(), stage.completedCount.get());
+        assertEquals(0, consumer.completedCount.get());
+    }
+
     @Test
     public void testProducerConsumerInterrupted() throws InterruptedException {
         FakeProducer producer = new FakeProducer(THREAD_COUNT, PRODUCER_NAME, 100);
@@ -142,12 +299,6 @@ public class AsyncFlowOrchestratorTest {
             throw new UnsupportedOperationException();
         }
 
-        @Override
-        public Object getStopSignal() {
-            fail("Shouldn't be here");
-            throw new UnsupportedOperationException();
-        }
-
         @Override
         public long consumeFromBuffer(BlockingBuffer buffer) {
             fail("Shouldn't be here");
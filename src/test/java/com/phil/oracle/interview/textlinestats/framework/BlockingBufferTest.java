@@ -2,9 +2,15 @@ package com.phil.oracle.interview.textlinestats.framework;
 
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static org.junit.Assert.*;
 
@@ -115,4 +121,101 @@ public class BlockingBufferTest {
         executorService.shutdownNow();
     }
 
-}
\ No newline at end of file
+    @Test
+    public void shouldClear() throws InterruptedException {
+        final BlockingBuffer<String> buffer = BlockingBuffer.instance(2);
+        buffer.put("1");
+        buffer.put("2");
+        buffer.clear();
+        assertTrue(buffer.isEmpty());
+        buffer.put("3");  // doesn't block, there's room again
+        assertEquals("3", buffer.take());
+    }
+
+    @Test
+    public void shouldNumberTheDrainedItemsInOrder() throws InterruptedException {
+        final BlockingBuffer<String> buffer = BlockingBuffer.instance(10);
+        buffer.putAll(Arrays.asList("0", "1", "2", "3", "4"));
+        List<String> items = new ArrayList<>();
+        assertEquals(0, buffer.drainSequenced(items, 2));
+        assertEquals("2", buffer.take());
+        items.clear();
+        assertEquals(3, buffer.drainSequenced(items, 10));
+        assertEquals(Arrays.asList("3", "4"), items);
+        buffer.close();
+        assertEquals(-1, buffer.drainSequenced(items, 10));
+    }
+
+    @Test
+    public void shouldPutAndDrainInBulk() throws InterruptedException {
+        final BlockingBuffer<Integer> buffer = BlockingBuffer.instance(3);
+        List<Integer> items = IntStream.range(0, 10).boxed().collect(Collectors.toList());
+        // more than there's room for: the producer waits for the consumer in between
+        Thread producer = new Thread(() -> {
+            try {
+                buffer.putAll(items);
+                buffer.close();
+            } catch (InterruptedException e) {
+                fail("Unexpected interrupt!");
+            }
+        });
+        producer.start();
+
+        List<Integer> drained = new ArrayList<>();
+        int drainCount = 0;
+        while (buffer.drainTo(drained, 2) > 0) {
+            drainCount++;
+        }
+        producer.join();
+        assertEquals(items, drained);
+        assertTrue(drainCount >= 5);
+        assertTrue(buffer.isClosed());
+    }
+
+    @Test
+    public void closeShouldWakeUpEveryConsumer() throws InterruptedException {
+        final BlockingBuffer<String> buffer = BlockingBuffer.instance(10);
+        final int consumerCount = 4;
+        AtomicInteger stoppedCount = new AtomicInteger();
+        ExecutorService executorService = Executors.newFixedThreadPool(consumerCount);
+        for (int i = 0; i < consumerCount; i++) {
+            executorService.execute(() -> {
+                try {
+                    List<String> items = new ArrayList<>();
+                    while (buffer.drainTo(items, 10) > 0) {
+                        items.clear();
+                    }
+                    stoppedCount.incrementAndGet();
+                } catch (InterruptedException e) {
+                    fail("Unexpected interrupt!");
+                }
+            });
+        }
+        buffer.put("1");
+        long start = System.nanoTime();
+        buffer.close();
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(1, TimeUnit.SECONDS));
+        System.out.println("Consumers stopped in " + TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start) + "us");
+        assertEquals(consumerCount, stoppedCount.get());
+        assertNull(buffer.take());
+
+        // nothing more goes in, until it's cleared
+        try {
+            buffer.put("2");
+            fail("Shouldn't be here!");
+        } catch (IllegalStateException e) {
+            e.printStackTrace(); //ok
+        }
+        try {
+            buffer.drainTo(new ArrayList<>(), 0);
+            fail("Shouldn't be here!");
+        } catch (UnsupportedOperationException e) {
+            e.printStackTrace(); //ok
+        }
+        buffer.clear();
+        assertFalse(buffer.isClosed());
+        buffer.putAll(Arrays.asList("3", "4"));
+        assertEquals("3", buffer.take());
+    }
+}
@@ -0,0 +1,96 @@
+package com.phil.oracle.interview.textlinestats.framework;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.Assert.*;
+
+public class FanOutConsumerTest {
+
+    @Test
+    public void shouldFeedEveryItemToEveryAccumulator() throws InterruptedException {
+        List<AtomicLong> sums = new ArrayList<>();
+        List<Accumulator<Integer>> accumulators = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            AtomicLong sum = new AtomicLong();
+            sums.add(sum);
+            accumulators.add(summing(sum, 0));
+        }
+        BlockingBuffer<Integer> buffer = BlockingBuffer.instance(200);
+        FanOutConsumer<Integer> consumer = new FanOutConsumer<>(buffer, accumulators, new int[]{1, 2, 1});
+        assertEquals(5, consumer.getThreadCount());
+        for (int i = 1; i <= 100; i++) {
+            buffer.put(i);
+        }
+        buffer.close();
+
+        // inline, one "thread" after the other: the dispatcher first, then the branches
+        List<Long> itemCounts = new ArrayList<>();
+        for (int i = 0; i < consumer.getThreadCount(); i++) {
+            itemCounts.add(consumer.consumeFromBuffer(buffer));
+        }
+        assertEquals(Arrays.asList(100L, 100L, 100L, 0L, 100L), itemCounts);
+        sums.forEach(sum -> assertEquals(5050, sum.get()));
+    }
+
+    @Test
+    public void shouldGiveTheExpensiveAccumulatorMoreThreads() {
+        AtomicLong cheapSum = new AtomicLong(), expensiveSum = new AtomicLong();
+        BlockingBuffer<Integer> buffer = BlockingBuffer.instance(50);
+        FanOutConsumer<Integer> consumer = new FanOutConsumer<>(buffer,
+                Arrays.asList(summing(cheapSum, 0), summing(expensiveSum, TimeUnit.MILLISECONDS.toNanos(2))), 6);
+        Producer<Integer> producer = new AbstractProducer<Integer>(consumer) {
+            @Override
+            public long produceToBuffer(BlockingBuffer<Integer> buffer) throws InterruptedException {
+                for (int i = 1; i <= 1000; i++) {
+                    buffer.put(i);
+                }
+                return 1000;
+            }
+        };
+
+        long millis = AsyncFlowOrchestrator.runProducerConsumer(30000, producer, consumer);
+        System.out.println("Fanned out in " + millis + "ms, branch threads " + Arrays.toString(consumer.getBranchThreadCounts()));
+        assertEquals(500500, cheapSum.get());
+        assertEquals(500500, expensiveSum.get());
+        int[] threads = consumer.getBranchThreadCounts();
+        assertEquals(6, threads[0] + threads[1]);
+        assertTrue(threads[1] > threads[0]);
+    }
+
+    @Test
+    public void shouldAllocateThreadsInProportionToTheCosts() {
+        assertArrayEquals(new int[]{1, 3, 4}, FanOutConsumer.allocateThreads(new long[]{10, 30, 40}, 8));
+        assertArrayEquals(new int[]{1, 1, 6}, FanOutConsumer.allocateThreads(new long[]{1, 1, 1000}, 8));
+        assertArrayEquals(new int[]{2, 2, 2}, FanOutConsumer.allocateThreads(new long[]{0, 0, 0}, 6));
+        assertArrayEquals(new int[]{1, 1}, FanOutConsumer.allocateThreads(new long[]{5, 1000}, 2));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void shouldNeedAThreadPerAccumulator() {
+        new FanOutConsumer<>(BlockingBuffer.<Integer>instance(10), Arrays.asList(summing(new AtomicLong(), 0),
+                summing(new AtomicLong(), 0)), 1);
+    }
+
+    private static Accumulator<Integer> summing(AtomicLong sum, long nanosPerItem) {
+        return new Accumulator<Integer>() {
+            @Override
+            public void accumulate(Integer inputItem) {
+                if (nanosPerItem > 0) {
+                    LockSupport.parkNanos(nanosPerItem);
+                }
+                sum.addAndGet(inputItem);
+            }
+
+            @Override
+            public void summarize() {
+            }
+        };
+    }
+}
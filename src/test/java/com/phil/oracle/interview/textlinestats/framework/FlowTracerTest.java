@@ -0,0 +1,64 @@
+package com.phil.oracle.interview.textlinestats.framework;
+
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class FlowTracerTest {
+
+    @Test
+    public void disabledTracerShouldHandOutTheNoOpSpan() {
+        FlowTracer tracer = FlowTracer.load(false);
+        assertSame(FlowTracer.NO_SPAN, tracer.beginBatchProduced(this));
+        assertSame(FlowTracer.NO_SPAN, tracer.beginBatchConsumed(this));
+        assertSame(FlowTracer.NO_SPAN, tracer.beginAccumulate(this));
+        assertSame(FlowTracer.NO_SPAN, tracer.beginBufferStall(true, 10));
+        assertSame(FlowTracer.NO_SPAN, tracer.beginPhase(AsyncFlowOrchestrator.INLINE_FLOW, AsyncFlowOrchestrator.PRODUCE_PHASE));
+        FlowTracer.NO_SPAN.end(42);
+    }
+
+    @Test
+    public void shouldLoadTheJfrTracerWhenBuiltWithIt() {
+        FlowTracer tracer = FlowTracer.load(true);
+        System.out.println("Loaded " + tracer.getClass().getName());
+        if (TestUtil.JAVA16_CLASSES_EXPECTED) {
+            assertTrue(tracer.getClass().getSimpleName().equals("JfrFlowTracer"));
+        }
+    }
+
+    @Test
+    public void tracedFlowShouldRunAsUsual() throws InterruptedException {
+        // with JFR events on Java 16+ (not recording, so none get committed), the no-op tracer otherwise
+        BlockingBuffer<Integer> buffer = BlockingBuffer.instance(2);
+        long[] total = new long[1];
+        Consumer<Integer> consumer = new AbstractAccumulatingConsumer<Integer>(buffer,
+                Collections.singletonList(new Accumulator<Integer>() {
+                    @Override
+                    public void accumulate(Integer inputItem) {
+                        total[0] += inputItem;
+                    }
+
+                    @Override
+                    public void summarize() {
+                    }
+                })) {
+        };
+        Producer<Integer> producer = new AbstractProducer<Integer>(consumer) {
+            @Override
+            public long produceToBuffer(BlockingBuffer<Integer> buffer) throws InterruptedException {
+                for (int i = 1; i <= 100; i++) {
+                    buffer.put(i);   // stalls on the full buffer
+                }
+                return 100;
+            }
+        };
+        long start = System.nanoTime();
+        AsyncFlowOrchestrator.runProducerConsumer(1000, producer, consumer);
+        System.out.println("Traced flow of 100 items run in " + (System.nanoTime() - start) / 1000 + "us");
+        assertEquals(5050, total[0]);
+    }
+}
@@ -0,0 +1,100 @@
+package com.phil.oracle.interview.textlinestats.framework;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class ReorderBufferTest {
+
+    @Test
+    public void shouldHandOverInOrder() throws InterruptedException {
+        List<Integer> handedOver = new ArrayList<>();
+        ReorderBuffer<Integer> reorderBuffer = new ReorderBuffer<>(10, handedOver::add);
+        reorderBuffer.add(2, Arrays.asList(2, 3));
+        reorderBuffer.add(5, Collections.singletonList(5));
+        assertTrue(handedOver.isEmpty());
+        assertEquals(3, reorderBuffer.size());
+
+        reorderBuffer.add(0, Arrays.asList(0, 1));
+        assertEquals(Arrays.asList(0, 1, 2, 3), handedOver);
+        assertEquals(1, reorderBuffer.size());
+        reorderBuffer.add(4, Collections.singletonList(4));
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5), handedOver);
+        assertEquals(0, reorderBuffer.size());
+    }
+
+    @Test
+    public void shouldKeepTheOrderOfManyThreads() throws InterruptedException {
+        final int itemCount = 100000, threadCount = 4;
+        BlockingBuffer<Integer> buffer = BlockingBuffer.instance(1000);
+        AtomicLong next = new AtomicLong(), outOfOrder = new AtomicLong();
+        ReorderBuffer<Integer> reorderBuffer = new ReorderBuffer<>(buffer.capacity(), item -> {
+            if (item != next.getAndIncrement()) {   // never concurrently, so no need for anything atomic really
+                outOfOrder.incrementAndGet();
+            }
+        });
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        long start = System.nanoTime();
+        for (int i = 0; i < threadCount; i++) {
+            executor.execute(() -> {
+                List<Integer> items = new ArrayList<>();
+                try {
+                    for (long sequence; (sequence = buffer.drainSequenced(items, 7)) >= 0; items.clear()) {
+                        reorderBuffer.add(sequence, items);
+                    }
+                } catch (InterruptedException e) {
+                    fail("Unexpected interrupt!");
+                }
+            });
+        }
+        for (int i = 0; i < itemCount; i++) {
+            buffer.put(i);
+        }
+        buffer.close();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        System.out.println("Reordered " + itemCount + " items of " + threadCount + " threads in about "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms");
+
+        assertEquals(itemCount, next.get());
+        assertEquals(0, outOfOrder.get());
+        assertEquals(0, reorderBuffer.size());
+    }
+
+    @Test
+    public void shouldBlockAheadOnceFull() throws InterruptedException {
+        List<Integer> handedOver = Collections.synchronizedList(new ArrayList<>());
+        ReorderBuffer<Integer> reorderBuffer = new ReorderBuffer<>(2, handedOver::add);
+        reorderBuffer.add(1, Arrays.asList(1, 2));
+        Thread ahead = new Thread(() -> {
+            try {
+                reorderBuffer.add(3, Collections.singletonList(3));
+            } catch (InterruptedException e) {
+                fail("Unexpected interrupt!");
+            }
+        });
+        ahead.start();
+        ahead.join(100);
+        assertTrue(ahead.isAlive());    // waiting for the next item
+
+        reorderBuffer.add(0, Collections.singletonList(0));   // never blocks
+        ahead.join(1000);
+        assertFalse(ahead.isAlive());
+        assertEquals(Arrays.asList(0, 1, 2, 3), handedOver);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void shouldRejectNoCapacity() {
+        new ReorderBuffer<Integer>(0, item -> {
+        });
+    }
+}
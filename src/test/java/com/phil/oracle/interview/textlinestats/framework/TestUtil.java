@@ -1,9 +1,12 @@
 package com.phil.oracle.interview.textlinestats.framework;
 
+import java.util.Map;
 import java.util.concurrent.ThreadLocalRandom;
 
 public class TestUtil {
     public static final String SAMPLE_TEXT_FILE_NAME = "war_and_peace.txt";
+    // set by the build when the multi-release classes (src/main/java16) are on the test classpath, see build.gradle
+    public static final boolean JAVA16_CLASSES_EXPECTED = Boolean.getBoolean("textlinestats.java16");
     private static final String DELIMITER = " ";
 
     public static String generateRandomSentence() {
@@ -24,6 +27,11 @@ public class TestUtil {
         return inputBuilder.substring(0, inputBuilder.length() - DELIMITER.length());
     }
 
+    // run times, batch counts and spilled runs depend on how long a run took and how its input was split up
+    public static String withoutRunTimes(Map<String, Object> statistics) {
+        return statistics.toString().replaceAll("(totalRunMillis|totalItemsProcessed|runsSpilled)=\\d+(, )?", "");
+    }
+
 
 
 
@@ -0,0 +1,102 @@
+package com.phil.oracle.interview.textlinestats.kernel;
+
+import com.phil.oracle.interview.textlinestats.framework.TestUtil;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class AhoCorasickTest {
+
+    @Test
+    public void shouldCountOverlappingAndNestedMatches() {
+        AhoCorasick automaton = new AhoCorasick(Arrays.asList("aa", "error", "err", "rro", "he", "she", "his", "hers"));
+        long[] counts = new long[automaton.getPatternCount()];
+        assertEquals(2 + 2 + 1, automaton.countMatches("aaa error", counts));
+        assertArrayEquals(new long[]{2, 1, 1, 1, 0, 0, 0, 0}, counts);
+
+        counts = new long[automaton.getPatternCount()];
+        automaton.countMatches("ushers", counts);
+        assertArrayEquals(new long[]{0, 0, 0, 0, 1, 1, 0, 1}, counts);
+    }
+
+    @Test
+    public void shouldMatchNonAsciiPatterns() {
+        // mixed ASCII and non-ASCII, incl. a failure from a non-ASCII state to an ASCII one and back
+        AhoCorasick automaton = new AhoCorasick(Arrays.asList("caf\u00e9", "\u00e9t\u00e9", "t\u00e9",
+                "\u0444\u0430\u0439\u043b"));
+        long[] counts = new long[automaton.getPatternCount()];
+        assertEquals(6, automaton.countMatches("un caf\u00e9t\u00e9, \u0444\u0430\u0439\u043b \u00e9t\u00e9", counts));
+        assertArrayEquals(new long[]{1, 2, 2, 1}, counts);
+    }
+
+    @Test
+    public void shouldMatchBruteForce() {
+        Random random = new Random(42);
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            lines.add(TestUtil.generateRandomSentence());
+        }
+        // patterns cut out of the text, so most of them occur - plus some that don't
+        LinkedHashSet<String> patternSet = new LinkedHashSet<>();
+        while (patternSet.size() < 500) {
+            String line = lines.get(random.nextInt(lines.size()));
+            if (line.isEmpty()) {
+                continue;
+            }
+            int start = random.nextInt(line.length());
+            String pattern = line.substring(start, Math.min(line.length(), start + 1 + random.nextInt(8)));
+            patternSet.add(random.nextInt(10) == 0 ? pattern + "\u00e9" : pattern);
+        }
+        List<String> patterns = new ArrayList<>(patternSet);
+        Collections.shuffle(patterns, random);
+        AhoCorasick automaton = new AhoCorasick(patterns);
+
+        long start = System.nanoTime();
+        long[] counts = new long[patterns.size()];
+        long total = 0;
+        for (String line : lines) {
+            total += automaton.countMatches(line, counts);
+        }
+        System.out.println("Aho-Corasick with " + patterns.size() + " patterns (" + automaton.getStateCount()
+                + " states) took " + (System.nanoTime() - start) / 1000 + "us");
+
+        start = System.nanoTime();
+        long[] expected = new long[patterns.size()];
+        long expectedTotal = 0;
+        for (String line : lines) {
+            for (int p = 0; p < patterns.size(); p++) {
+                for (int at = line.indexOf(patterns.get(p)); at >= 0; at = line.indexOf(patterns.get(p), at + 1)) {
+                    expected[p]++;
+                    expectedTotal++;
+                }
+            }
+        }
+        System.out.println("Brute force took " + (System.nanoTime() - start) / 1000 + "us");
+        assertArrayEquals(expected, counts);
+        assertEquals(expectedTotal, total);
+    }
+
+    @Test
+    public void testEdgeCases() {
+        for (List<String> invalid : Arrays.asList(Collections.<String>emptyList(), Arrays.asList("a", ""),
+                Arrays.asList("ab", "ab"))) {
+            try {
+                new AhoCorasick(invalid);
+                fail("Shouldn't be here!");
+            } catch (UnsupportedOperationException e) {
+                e.printStackTrace(); //ok
+            }
+        }
+        AhoCorasick automaton = new AhoCorasick(Collections.singletonList("x"));
+        assertEquals(0, automaton.countMatches("", new long[1]));
+        assertEquals(2, automaton.getStateCount());
+        assertEquals("x", automaton.getPattern(0));
+    }
+}
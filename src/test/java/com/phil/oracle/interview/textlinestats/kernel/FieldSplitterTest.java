@@ -0,0 +1,55 @@
+package com.phil.oracle.interview.textlinestats.kernel;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class FieldSplitterTest {
+
+    @Test
+    public void shouldSplitFields() {
+        assertEquals(Arrays.asList("a", "bb", "", "c"), split(',', "a,bb,,c"));
+        assertEquals(Arrays.asList("a b", "", ""), split('\t', "a b\t\t"));
+        assertEquals(Collections.singletonList(" "), split(',', " "));
+        assertEquals(Collections.emptyList(), split(',', ""));
+        assertEquals(Arrays.asList("", ""), split(',', ","));
+    }
+
+    @Test
+    public void shouldSplitQuotedFields() {
+        assertEquals(Arrays.asList("a,b", "say \"hi\"", "c"), split(',', "\"a,b\",\"say \"\"hi\"\"\",c"));
+        assertEquals(Arrays.asList("", "x"), split(',', "\"\",x"));
+        assertEquals(Arrays.asList("a", "c"), split(',', "\"a\"b,c"));   // b after the closing quote is disregarded
+        assertEquals(Collections.singletonList("unterminated, to the end"), split(',', "\"unterminated, to the end"));
+        assertEquals(Arrays.asList("a\"b", "c"), split(',', "a\"b,c"));   // quotes only count at the start of a field
+    }
+
+    @Test
+    public void testEdgeCases() {
+        assertEquals(';', new FieldSplitter(';').getDelimiter());
+        for (char delimiter : new char[]{'"', '\n', '\r'}) {
+            try {
+                new FieldSplitter(delimiter);
+                fail("Shouldn't be here!");
+            } catch (UnsupportedOperationException e) {
+                e.printStackTrace(); //ok
+            }
+        }
+    }
+
+    private static List<String> split(char delimiter, String line) {
+        List<String> fields = new ArrayList<>();
+        int fieldCount = new FieldSplitter(delimiter).split(line, (column, start, end, quoted) -> {
+            assertEquals(fields.size(), column);
+            fields.add(FieldSplitter.unquote(line, start, end, quoted));
+        });
+        assertEquals(fields.size(), fieldCount);
+        return fields;
+    }
+}
@@ -0,0 +1,83 @@
+package com.phil.oracle.interview.textlinestats.kernel;
+
+import com.phil.oracle.interview.textlinestats.framework.TestUtil;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class SwarTextKernelTest {
+    // a mix of letters, ASCII whitespace (including the obscure 0x1C-0x1F), punctuation and non-ASCII lookalikes
+    private static final char[] CHAR_POOL = {'a', 'z', 'A', 'Z', 'm', '@', '[', '`', '{', ' ', '\t', '\n', '\u000b',
+            '\r', '\u001c', '\u001f', '.', '7', '\u007f', '\u0080', '\u00a0', '\u0085', '\u00e9', '\u044f',
+            '\u2028', '\u8061', '\u8020', '\uffff'};
+
+    private final TextKernel reference = new ScalarTextKernel();
+    private final TextKernel kernel = new SwarTextKernel();
+
+    @Test
+    public void shouldMatchScalarKernelOnRandomLines() {
+        Random random = new Random(20180313);
+        for (int batch = 0; batch < 2000; batch++) {
+            String[] lines = new String[1 + random.nextInt(5)];
+            for (int i = 0; i < lines.length; i++) {
+                char[] chars = new char[random.nextInt(40)];
+                for (int j = 0; j < chars.length; j++) {
+                    chars[j] = CHAR_POOL[random.nextInt(CHAR_POOL.length)];
+                }
+                lines[i] = new String(chars);
+            }
+            assertSameResults(lines);
+        }
+    }
+
+    @Test
+    public void shouldMatchScalarKernelOnSentences() {
+        String[] lines = new String[1000];
+        for (int i = 0; i < lines.length; i++) {
+            lines[i] = TestUtil.generateRandomSentence();
+        }
+        assertSameResults(lines);
+    }
+
+    @Test
+    public void testEdgeCases() {
+        // the last character of a line follows different rules, see ScalarTextKernel
+        assertSameResults(new String[]{"", "a", "ab", "a b", "abc.", ".abc. dfg.", "abcé", "wx y z", "abcd efg ", "abcdefgh"});
+        assertEquals(3, kernel.countWords(new String[]{"abc.", ".abc. dfg."}));
+        assertEquals(2, kernel.countWords(new String[]{"wx y z"}));
+    }
+
+    @Test
+    public void shouldCountLineBreaks() {
+        byte[] bytes = "line one\nline two\r\n\n\nя устал\rold mac\r\r\nlast line without a newline".getBytes(StandardCharsets.UTF_8);
+        for (int offset = 0; offset < bytes.length; offset++) {
+            ByteBuffer heap = ByteBuffer.wrap(bytes);
+            heap.position(offset);
+            ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+            direct.put(bytes).position(offset);
+
+            long expected = reference.countLineBreaks(heap);
+            assertEquals(expected, kernel.countLineBreaks(heap));
+            assertEquals(expected, kernel.countLineBreaks(direct));
+            assertEquals(offset, direct.position());  // the position is left alone
+        }
+        assertEquals(7, kernel.countLineBreaks(ByteBuffer.wrap(bytes)));
+        assertEquals(2, kernel.countLineBreaks(ByteBuffer.wrap("\r\r\n".getBytes(StandardCharsets.UTF_8))));
+        // a '\r' right at the limit counts, whatever comes next
+        assertEquals(1, kernel.countLineBreaks(ByteBuffer.wrap("12345678\r\n".getBytes(StandardCharsets.UTF_8), 0, 9)));
+    }
+
+    private void assertSameResults(String[] lines) {
+        long[] expectedLetterCounts = new long[TextKernel.MAX_CHAR_CODE + 1];
+        long[] letterCounts = new long[TextKernel.MAX_CHAR_CODE + 1];
+        reference.countLetters(lines, expectedLetterCounts);
+        kernel.countLetters(lines, letterCounts);
+        assertArrayEquals(expectedLetterCounts, letterCounts);
+        assertEquals(reference.countWords(lines), kernel.countWords(lines));
+    }
+}
@@ -0,0 +1,44 @@
+package com.phil.oracle.interview.textlinestats.kernel;
+
+import com.phil.oracle.interview.textlinestats.framework.TestUtil;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TextKernelsTest {
+
+    @Test
+    public void shouldSelectKernels() {
+        assertTrue(TextKernels.select("scalar") instanceof ScalarTextKernel);
+        assertTrue(TextKernels.select("SWAR") instanceof SwarTextKernel);
+        // the vector kernel is only there in the multi-release jar, with the incubator module added - otherwise SWAR
+        assertNotNull(TextKernels.select("vector"));
+        assertNotNull(TextKernels.select("auto"));
+        assertNotNull(TextKernels.get());
+    }
+
+    @Test
+    public void selectedKernelShouldMatchScalarKernel() {
+        String[] lines = new String[1000];
+        for (int i = 0; i < lines.length; i++) {
+            lines[i] = TestUtil.generateRandomSentence() + (i % 3 == 0 ? " я устал, мне надоело" : "");
+        }
+        TextKernel reference = new ScalarTextKernel();
+        long[] expectedLetterCounts = new long[TextKernel.MAX_CHAR_CODE + 1];
+        long[] letterCounts = new long[TextKernel.MAX_CHAR_CODE + 1];
+        reference.countLetters(lines, expectedLetterCounts);
+        TextKernels.get().countLetters(lines, letterCounts);
+        assertArrayEquals(expectedLetterCounts, letterCounts);
+        assertEquals(reference.countWords(lines), TextKernels.get().countWords(lines));
+    }
+
+    @Test
+    public void testEdgeCases() {
+        try {
+            TextKernels.select("quantum");
+            fail("Shouldn't be here!");
+        } catch (UnsupportedOperationException e) {
+            e.printStackTrace(); //ok
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.phil.oracle.interview.textlinestats.kernel;
+
+import org.junit.Test;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class TimestampParserTest {
+
+    @Test
+    public void shouldParseMinutes() {
+        TimestampParser parser = new TimestampParser("yyyy-MM-dd HH:mm:ss.SSS");
+        long minute = LocalDateTime.of(2018, 3, 13, 9, 41).toEpochSecond(ZoneOffset.UTC) / 60;
+        assertEquals(minute, parser.parseMinute("2018-03-13 09:41:07.123 INFO started"));
+        assertEquals(minute, parser.parseMinute("2018-03-13 09:41:59.999 INFO still the same minute"));
+        assertEquals(minute + 1, parser.parseMinute("2018-03-13 09:42:00.000 INFO next one"));
+        assertEquals(minute + 24 * 60 + 1, parser.parseMinute("2018-03-14 09:42:00.000"));
+        assertEquals(TimestampParser.NO_TIMESTAMP, parser.parseMinute("\tat com.example.Main.main(Main.java:3)"));
+        assertEquals(TimestampParser.NO_TIMESTAMP, parser.parseMinute("2018-03-13"));
+        assertEquals(minute + 24 * 60 + 1, parser.parseMinute("2018-03-14 09:42:31.000 cache still good"));
+        assertEquals(4, parser.getParseCount());
+        assertEquals("2018-03-13 09:41", TimestampParser.formatMinute(minute));
+    }
+
+    @Test
+    public void shouldParseMostLinesFromTheCache() {
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MMM/yyyy:HH:mm:ss Z");
+        String[] lines = new String[1_000_000];
+        LocalDateTime start = LocalDateTime.of(2020, 12, 31, 23, 0);
+        for (int i = 0; i < lines.length; i++) {
+            lines[i] = formatter.format(start.plusNanos(i * 10_000_000L).atOffset(ZoneOffset.UTC)) + " GET /index.html 200";
+        }
+        TimestampParser parser = new TimestampParser("dd/MMM/yyyy:HH:mm:ss Z");
+        long startMillis = System.currentTimeMillis();
+        long firstMinute = parser.parseMinute(lines[0]), lastMinute = 0;
+        for (String line : lines) {
+            lastMinute = parser.parseMinute(line);
+        }
+        System.out.println(lines.length + " timestamps parsed in " + (System.currentTimeMillis() - startMillis) + "ms, "
+                + parser.getParseCount() + " of them by DateTimeFormatter");
+        assertEquals(lines.length / 100 / 60, lastMinute - firstMinute);   // 166 minutes and 40 seconds
+        assertEquals(lines.length / 100 / 60 + 1, parser.getParseCount());
+    }
+
+    @Test
+    public void testEdgeCases() {
+        assertEquals("HH:mm yyyy-MM-dd", new TimestampParser("HH:mm yyyy-MM-dd").getPattern());
+        for (String pattern : new String[]{"yyyy-MM-dd", "HH:mm:ss", "not a pattern {", "EEEE yyyy-MM-dd HH:mm", "d/M/yyyy HH:mm"}) {
+            try {
+                new TimestampParser(pattern);
+                fail("Shouldn't be here!");
+            } catch (UnsupportedOperationException e) {
+                e.printStackTrace(); //ok
+            }
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package com.phil.oracle.interview.textlinestats.kernel;
+
+import com.phil.oracle.interview.textlinestats.framework.TestUtil;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class Utf8LineReaderTest {
+
+    @Test
+    public void shouldDecodeLikeTheJdk() throws IOException {
+        Random random = new Random(20180313);
+        String[] samples = {"plain ascii ", "caf\u00e9 ", "\u0436\u0443\u043a ", "\u20ac\u4e2d ", "\ud83d\ude00 ", "\r\n", "\n", "\r"};
+        for (int round = 0; round < 200; round++) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            for (int i = random.nextInt(300); i > 0; i--) {
+                if (random.nextInt(10) == 0) {
+                    bytes.write(random.nextInt(256));   // most likely malformed
+                } else {
+                    byte[] sample = samples[random.nextInt(samples.length)].getBytes(StandardCharsets.UTF_8);
+                    bytes.write(sample, 0, round % 3 == 0 ? random.nextInt(sample.length + 1) : sample.length);
+                }
+            }
+            byte[] input = bytes.toByteArray();
+            List<String> expected = readWithJdk(input);
+            for (int bufferBytes : new int[]{4, 5, 7, 64 * 1024}) {
+                assertEquals("round " + round + ", " + bufferBytes + " byte buffer", expected, read(input, bufferBytes));
+            }
+        }
+    }
+
+    @Test
+    public void shouldReadBytesInPlace() throws IOException {
+        byte[] bytes = "skipped\ncaf\u00e9\r\nlast".getBytes(StandardCharsets.UTF_8);
+        Utf8LineReader reader = new Utf8LineReader(bytes, 8, bytes.length - 10);   // all but "skipped\n" and "st"
+        assertEquals("caf\u00e9", reader.readLine());
+        assertEquals(0, reader.getLineStart());
+        assertEquals("la", reader.readLine());
+        assertEquals(7, reader.getLineStart());
+        assertNull(reader.readLine());
+        reader.close();   // nothing to close
+    }
+
+    @Test
+    public void shouldTellLinesFollowingLineFeeds() throws IOException {
+        byte[] input = "a\rb\nc\r\nd\r\re".getBytes(StandardCharsets.UTF_8);
+        for (int bufferBytes : new int[]{4, 5, 64 * 1024}) {
+            Utf8LineReader reader = new Utf8LineReader(new ByteArrayInputStream(input), bufferBytes);
+            List<Boolean> following = new ArrayList<>();
+            while (reader.readLine() != null) {
+                following.add(reader.isLineFollowingLineFeed());
+            }
+            assertEquals(Arrays.asList(true, false, true, true, false, false), following);
+        }
+    }
+
+    @Test
+    public void shouldReadLongLinesInFragments() throws IOException {
+        byte[] input = "short\nthe quick brown fox\nabcdefghijklm no pq\n\ud83d\ude00\ud83d\ude00\ud83d\ude00 end"
+                .getBytes(StandardCharsets.UTF_8);
+        Utf8LineReader reader = new Utf8LineReader(new ByteArrayInputStream(input), 4);
+        reader.setMaxLineChars(6);
+        assertEquals("short", reader.readLine());
+        assertFalse(reader.isLineContinued());
+
+        // cut after the last whitespace, the rest of the word carried over to the next fragment
+        assertEquals("the ", reader.readLine());
+        assertTrue(reader.isLineContinued());
+        assertEquals(6, reader.getLineStart());
+        assertEquals("quick ", reader.readLine());
+        assertEquals("brown ", reader.readLine());
+        assertEquals("fox", reader.readLine());
+        assertFalse(reader.isLineContinued());
+        assertEquals(6, reader.getLineStart());   // of the whole line
+
+        // a word longer than the limit is cut right at it, telling whether the part cut off has a letter
+        assertEquals("abcdef", reader.readLine());
+        assertTrue(reader.isLineContinuedInWord());
+        assertFalse(reader.isWordWithLetterContinued());
+        assertEquals("ghijkl", reader.readLine());
+        assertTrue(reader.isLineContinuedInWord());
+        assertTrue(reader.isWordWithLetterContinued());
+        assertEquals("m no pq", reader.readLine());
+        assertFalse(reader.isLineContinued());
+        assertFalse(reader.isLineContinuedInWord());
+        assertTrue(reader.isWordWithLetterContinued());
+
+        // a surrogate pair isn't split though
+        List<String> fragments = new ArrayList<>();
+        for (String fragment = reader.readLine(); fragment != null; fragment = reader.readLine()) {
+            assertFalse(Character.isHighSurrogate(fragment.charAt(fragment.length() - 1)));
+            fragments.add(fragment);
+        }
+        assertEquals("\ud83d\ude00\ud83d\ude00\ud83d\ude00 end", String.join("", fragments));
+        assertFalse(reader.isLineContinued());
+
+        // same lines joined up as read whole, whatever the buffer size
+        String longLines = "lorem ipsum dolor sit amet, consectetur\r\n\u0436\u0443\u043a \u20ac\u4e2d caf\u00e9\n\nx";
+        input = longLines.getBytes(StandardCharsets.UTF_8);
+        for (int bufferBytes : new int[]{4, 5, 64 * 1024}) {
+            reader = new Utf8LineReader(new ByteArrayInputStream(input), bufferBytes);
+            reader.setMaxLineChars(5);
+            List<String> lines = new ArrayList<>();
+            StringBuilder line = new StringBuilder();
+            for (String fragment = reader.readLine(); fragment != null; fragment = reader.readLine()) {
+                line.append(fragment);
+                if (!reader.isLineContinued()) {
+                    lines.add(line.toString());
+                    line.setLength(0);
+                }
+            }
+            assertEquals(read(input, bufferBytes), lines);
+        }
+    }
+
+    @Test
+    public void shouldCountMalformedInput() throws IOException {
+        byte[] input = {'a', (byte) 0xC3, '\n',              // truncated 2-byte sequence
+                (byte) 0xC0, (byte) 0xAF, '\n',              // overlong '/', i.e. two invalid bytes
+                (byte) 0xED, (byte) 0xA0, (byte) 0x80, '\n', // a surrogate: one
+                (byte) 0xF4, (byte) 0x90, (byte) 0x80, (byte) 0x80, '\n',   // beyond U+10FFFF: four
+                (byte) 0xE2, (byte) 0x82, (byte) 0xAC, (byte) 0xF0, (byte) 0x9F, (byte) 0x98};   // euro, truncated 4-byte
+        Utf8LineReader reader = new Utf8LineReader(new ByteArrayInputStream(input), 4);
+        List<String> lines = new ArrayList<>();
+        for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+            lines.add(line);
+        }
+        assertEquals(readWithJdk(input), lines);
+        assertEquals(Arrays.asList("a\ufffd", "\ufffd\ufffd", "\ufffd", "\ufffd\ufffd\ufffd\ufffd", "\u20ac\ufffd"), lines);
+        assertEquals(1 + 2 + 1 + 4 + 1, reader.getMalformedCount());
+        assertNull(reader.readLine());
+
+        try {
+            new Utf8LineReader(new ByteArrayInputStream(input), 3);
+            fail("Shouldn't be here!");
+        } catch (UnsupportedOperationException e) {
+            e.printStackTrace(); //ok
+        }
+    }
+
+    @Test
+    public void shouldReadTheSampleFile() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (InputStream in = getClass().getClassLoader().getResourceAsStream(TestUtil.SAMPLE_TEXT_FILE_NAME)) {
+            byte[] chunk = new byte[64 * 1024];
+            for (int read = in.read(chunk); read >= 0; read = in.read(chunk)) {
+                bytes.write(chunk, 0, read);
+            }
+        }
+        byte[] input = bytes.toByteArray();
+        List<String> expected = null, actual = null;
+        for (int round = 0; round < 5; round++) {   // the last round is warmed up
+            long start = System.nanoTime();
+            expected = readWithJdk(input);
+            long jdkNanos = System.nanoTime() - start;
+            start = System.nanoTime();
+            actual = read(input, 64 * 1024);
+            System.out.println(input.length + " bytes read by BufferedReader in " + jdkNanos / 1_000_000 + "ms, by "
+                    + "Utf8LineReader in " + (System.nanoTime() - start) / 1_000_000 + "ms");
+        }
+        assertEquals(expected, actual);
+    }
+
+    private static List<String> read(byte[] input, int bufferBytes) throws IOException {
+        List<String> lines = new ArrayList<>();
+        try (Utf8LineReader reader = new Utf8LineReader(new ByteArrayInputStream(input), bufferBytes)) {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+
+    private static List<String> readWithJdk(byte[] input) throws IOException {
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(input),
+                StandardCharsets.UTF_8))) {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+}
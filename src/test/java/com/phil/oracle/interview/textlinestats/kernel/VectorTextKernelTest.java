@@ -0,0 +1,102 @@
+package com.phil.oracle.interview.textlinestats.kernel;
+
+import com.phil.oracle.interview.textlinestats.framework.TestUtil;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class VectorTextKernelTest {
+    private static final String VECTOR_KERNEL_CLASS = "VectorTextKernel";
+    // a mix of letters, ASCII whitespace (including the obscure 0x1C-0x1F), punctuation and non-ASCII lookalikes
+    private static final char[] CHAR_POOL = {'a', 'z', 'A', 'Z', 'm', '@', '[', '`', '{', ' ', '\t', '\n', '\u000b',
+            '\r', '\u001c', '\u001f', '.', '7', '\u007f', '\u0080', '\u00a0', '\u0085', '\u00e9', '\u044f',
+            '\u2028', '\u8061', '\u8020', '\uffff'};
+    private static final String[] LINE_BREAKS = {"\n", "\r\n", "\r", "\r\r\n", "\n\r"};
+
+    private final TextKernel scalar = new ScalarTextKernel();
+    private final TextKernel swar = new SwarTextKernel();
+    // SWAR again where the vector kernel isn't on the classpath, e.g. on Java 8
+    private final TextKernel vector = TextKernels.select("vector");
+
+    @Test
+    public void shouldLoadTheVectorKernelWhenBuiltWithIt() {
+        System.out.println("Vector kernel check against " + vector.getClass().getSimpleName());
+        if (TestUtil.JAVA16_CLASSES_EXPECTED) {
+            assertEquals(VECTOR_KERNEL_CLASS, vector.getClass().getSimpleName());
+        }
+    }
+
+    @Test
+    public void kernelsShouldMatchOnRandomBatches() {
+        Random random = new Random(20180320);
+        for (int batch = 0; batch < 2000; batch++) {
+            String[] lines = new String[1 + random.nextInt(5)];
+            for (int i = 0; i < lines.length; i++) {
+                // long enough for several full vectors (up to 64 chars with AVX-512) and a tail
+                char[] chars = new char[random.nextInt(300)];
+                for (int j = 0; j < chars.length; j++) {
+                    chars[j] = CHAR_POOL[random.nextInt(CHAR_POOL.length)];
+                }
+                lines[i] = new String(chars);
+            }
+            assertSameResults(lines);
+        }
+    }
+
+    @Test
+    public void kernelsShouldMatchOnUnicodeBatches() {
+        Random random = new Random(20180321);
+        String[] lines = new String[1000];
+        for (int i = 0; i < lines.length; i++) {
+            StringBuilder line = new StringBuilder(TestUtil.generateRandomSentence());
+            for (int j = random.nextInt(4); j > 0; j--) {
+                line.insert(random.nextInt(line.length() + 1), j % 2 == 0 ? " я устал, мне надоело " : "ça va ");
+            }
+            lines[i] = line.toString();
+        }
+        assertSameResults(lines);
+        assertSameResults(new String[]{"", "a", "ab", "a b", "abc.", ".abc. dfg.", "abcé", "wx y z", "abcd efg ", "abcdefgh"});
+    }
+
+    @Test
+    public void kernelsShouldCountTheSameLineBreaks() {
+        Random random = new Random(20180322);
+        for (int batch = 0; batch < 200; batch++) {
+            StringBuilder text = new StringBuilder();
+            for (int i = random.nextInt(20); i > 0; i--) {
+                text.append(random.nextBoolean() ? TestUtil.generateRandomSentence() : "я устал").append(LINE_BREAKS[random.nextInt(LINE_BREAKS.length)]);
+            }
+            byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+            int offset = bytes.length == 0 ? 0 : random.nextInt(bytes.length);
+            ByteBuffer heap = ByteBuffer.wrap(bytes);
+            heap.position(offset);
+            ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+            direct.put(bytes).position(offset);
+
+            long expected = scalar.countLineBreaks(heap);
+            assertEquals(expected, swar.countLineBreaks(heap));
+            assertEquals(expected, vector.countLineBreaks(heap));
+            assertEquals(expected, vector.countLineBreaks(direct));
+            assertEquals(offset, direct.position());  // the position is left alone
+        }
+    }
+
+    private void assertSameResults(String[] lines) {
+        long[] expectedLetterCounts = new long[TextKernel.MAX_CHAR_CODE + 1];
+        long[] swarLetterCounts = new long[TextKernel.MAX_CHAR_CODE + 1];
+        long[] vectorLetterCounts = new long[TextKernel.MAX_CHAR_CODE + 1];
+        scalar.countLetters(lines, expectedLetterCounts);
+        swar.countLetters(lines, swarLetterCounts);
+        vector.countLetters(lines, vectorLetterCounts);
+        assertArrayEquals(expectedLetterCounts, swarLetterCounts);
+        assertArrayEquals(expectedLetterCounts, vectorLetterCounts);
+        long expectedWordCount = scalar.countWords(lines);
+        assertEquals(expectedWordCount, swar.countWords(lines));
+        assertEquals(expectedWordCount, vector.countWords(lines));
+    }
+}
@@ -0,0 +1,102 @@
+package com.phil.oracle.interview.textlinestats.kernel;
+
+import com.phil.oracle.interview.textlinestats.framework.TestUtil;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class WordTokenizerTest {
+    private static final char[] CHAR_POOL = {'a', 'z', 'A', 'Z', ' ', '\t', '\u001c', '.', '7', '\u00e9', '\u044f', '\u2028'};
+
+    private final TextKernel reference = new ScalarTextKernel();
+
+    @Test
+    public void shouldFindAsManyWordsAsCountWords() {
+        Random random = new Random(20180313);
+        for (int i = 0; i < 20000; i++) {
+            char[] chars = new char[random.nextInt(30)];
+            for (int j = 0; j < chars.length; j++) {
+                chars[j] = CHAR_POOL[random.nextInt(CHAR_POOL.length)];
+            }
+            String line = new String(chars);
+            assertEquals(line, reference.countWords(new String[]{line}), WordTokenizer.tokenize(line, (start, end) -> {
+            }));
+        }
+        for (int i = 0; i < 1000; i++) {
+            String line = TestUtil.generateRandomSentence();
+            assertEquals(reference.countWords(new String[]{line}), WordTokenizer.tokenize(line, (start, end) -> {
+            }));
+        }
+    }
+
+    @Test
+    public void testWordBoundaries() {
+        assertEquals(Arrays.asList(".abc.", "dfg."), tokens(".abc. dfg."));
+        assertEquals(Arrays.asList("wx", "y"), tokens("wx y z"));  // a single letter at the end of the line is no word
+        assertEquals(Arrays.asList("abcd", "efg"), tokens("  abcd\tefg "));
+        assertEquals(Arrays.asList("abc\u00e9"), tokens("abc\u00e9 "));
+        assertEquals(Arrays.asList(), tokens("abc\u00e9"));  // non-ASCII last char, no word (as per countWords)
+        assertEquals(Arrays.asList(), tokens(""));
+        assertEquals(Arrays.asList(), tokens("a"));
+        assertEquals(Arrays.asList("ab"), tokens("ab"));  // the last char terminates the word in progress
+    }
+
+    @Test
+    public void shouldCountWordsCutBetweenFragmentsOnce() throws IOException {
+        Random random = new Random(20180314);
+        for (int i = 0; i < 2000; i++) {
+            char[] chars = new char[random.nextInt(40)];
+            for (int j = 0; j < chars.length; j++) {
+                chars[j] = CHAR_POOL[random.nextInt(CHAR_POOL.length - 1)];     // not the line separator
+            }
+            String line = new String(chars);
+            Utf8LineReader reader = new Utf8LineReader(new ByteArrayInputStream(line.getBytes(StandardCharsets.UTF_8)), 16);
+            reader.setMaxLineChars(1 + random.nextInt(4));
+            List<String> items = new ArrayList<>();
+            for (String fragment = reader.readLine(); fragment != null; fragment = reader.readLine()) {
+                if (reader.isWordWithLetterContinued()) {
+                    items.add(LineFragments.REST_OF_WORD);
+                }
+                items.add(fragment);
+                if (reader.isLineContinued()) {
+                    items.add(reader.isLineContinuedInWord() ? LineFragments.CONTINUED_IN_WORD : LineFragments.CONTINUED);
+                }
+            }
+            String[] lines = items.toArray(new String[0]);
+            int wordCount = 0;
+            for (int j = 0; j < lines.length; j++) {
+                wordCount += WordTokenizer.tokenize(lines, j, (start, end) -> {
+                });
+            }
+            assertEquals(line, reference.countWords(new String[]{line}), wordCount);
+            assertEquals(line, line.isEmpty() ? 0 : 1, LineFragments.countLines(lines));
+        }
+
+        // a word is tokenized where it ends, as the rest of it there
+        String[] lines = {"abc", LineFragments.CONTINUED_IN_WORD, LineFragments.REST_OF_WORD, "de ", LineFragments.CONTINUED,
+                "..", LineFragments.CONTINUED_IN_WORD, ". g"};
+        List<String> tokens = new ArrayList<>();
+        for (int j = 0; j < lines.length; j++) {
+            String line = lines[j];
+            WordTokenizer.tokenize(lines, j, (start, end) -> tokens.add(line.substring(start, end)));
+        }
+        assertEquals(Arrays.asList("de"), tokens);
+        assertEquals(1, LineFragments.countLines(lines));
+        assertTrue(LineFragments.cutsWords(lines));
+    }
+
+    private static List<String> tokens(String line) {
+        List<String> tokens = new ArrayList<>();
+        WordTokenizer.tokenize(line, (start, end) -> tokens.add(line.substring(start, end)));
+        return tokens;
+    }
+}
@@ -0,0 +1,58 @@
+package com.phil.oracle.interview.textlinestats.offheap;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HashCountTableTest {
+
+    @Test
+    public void shouldMatchHashMapWhileGrowing() {
+        Random random = new Random(20180313);
+        Map<Long, Long> expected = new HashMap<>();
+        HashCountTable table = new HashCountTable(16);
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < 500000; i++) {
+            long key = HashCountTable.toKey(random.nextInt(100000));
+            table.add(key, 1, "k" + (key & 0xFF));
+            expected.merge(key, 1L, Long::sum);
+        }
+        System.out.println("500000 adds over " + table.size() + " keys in " + (System.currentTimeMillis() - start) + "ms, "
+                + table.getOffHeapBytes() + " off-heap bytes");
+        assertEquals(expected.size(), table.size());
+        expected.forEach((key, count) -> assertEquals(count.longValue(), table.getCount(key)));
+        assertEquals(0, table.getCount(HashCountTable.toKey(-1)));
+        for (int slot = 0; slot < table.capacity(); slot++) {
+            long key = table.getKey(slot);
+            if (key != 0) {
+                assertEquals("k" + (key & 0xFF), table.getText(slot));  // texts survive growing
+            }
+        }
+    }
+
+    @Test
+    public void testMergeFrom() {
+        HashCountTable first = new HashCountTable(4), second = new HashCountTable(4);
+        first.add(HashCountTable.toKey(1), 2, "one");
+        second.add(HashCountTable.toKey(1), 3, "ignored, the key is known");
+        second.add(HashCountTable.toKey(2), 1, "two");
+        first.mergeFrom(second);
+        assertEquals(2, first.size());
+        assertEquals(5, first.getCount(HashCountTable.toKey(1)));
+        assertEquals(1, first.getCount(HashCountTable.toKey(2)));
+        assertEquals(2, second.size());
+        assertTrue(first.getOffHeapBytes() > 0);
+    }
+
+    @Test
+    public void keysShouldNeverBeZero() {
+        assertNotEquals(0, HashCountTable.toKey(0));
+        assertNotEquals(HashCountTable.toKey(1), HashCountTable.toKey(2));
+    }
+}
@@ -0,0 +1,92 @@
+package com.phil.oracle.interview.textlinestats.offheap;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.*;
+
+public class TokenDictionaryTest {
+
+    @Test
+    public void testIntern() {
+        TokenDictionary dictionary = new TokenDictionary();
+        int hello = dictionary.intern("hello");
+        assertEquals(hello, dictionary.intern("say hello!", 4, 9));
+        assertNotEquals(hello, dictionary.intern("Hello"));
+        assertEquals("hello", dictionary.getToken(hello));
+        assertEquals(2, dictionary.size());
+        assertEquals(10, dictionary.getTokenBytes());
+        assertTrue(dictionary.getOffHeapBytes() > dictionary.getTokenBytes());
+        assertTrue(hello < dictionary.getIdBound());
+
+        assertEquals(-1, dictionary.lookup("unknown"));
+        assertEquals(hello, dictionary.lookup("hello"));
+        assertEquals(2, dictionary.size());
+
+        // non-ASCII tokens round-trip through UTF-8
+        String cyrillic = "я устал", emoji = "😀", lonely = "a\ud83d";
+        assertEquals(cyrillic, dictionary.getToken(dictionary.intern(cyrillic)));
+        assertEquals(emoji, dictionary.getToken(dictionary.intern(emoji)));
+        assertEquals("a?", dictionary.getToken(dictionary.intern(lonely)));
+        assertTrue(dictionary.intern("") >= 0);
+    }
+
+    @Test
+    public void shouldTruncateOverLongTokens() {
+        TokenDictionary dictionary = new TokenDictionary();
+        char[] chars = new char[TokenDictionary.MAX_TOKEN_CHARS + 10];
+        Arrays.fill(chars, 'x');
+        String longToken = new String(chars);
+        int id = dictionary.intern(longToken);
+        assertEquals(TokenDictionary.MAX_TOKEN_CHARS, dictionary.getToken(id).length());
+        assertEquals(id, dictionary.intern(longToken, 5, longToken.length()));
+        assertEquals(id, dictionary.lookup(longToken.substring(0, TokenDictionary.MAX_TOKEN_CHARS)));
+
+        // not between the chars of a surrogate pair
+        chars[TokenDictionary.MAX_TOKEN_CHARS - 1] = '\ud83d';
+        chars[TokenDictionary.MAX_TOKEN_CHARS] = '\ude00';
+        assertEquals(TokenDictionary.MAX_TOKEN_CHARS - 1, dictionary.getToken(dictionary.intern(new String(chars))).length());
+    }
+
+    @Test
+    public void testEncodeUtf8() {
+        for (String text : new String[]{"abc", "éя聡", "😀x", "\ud83d", "\ude00a\ud83d"}) {
+            byte[] bytes = new byte[text.length() * 3];
+            int length = TokenDictionary.encodeUtf8(text, 0, text.length(), bytes);
+            assertArrayEquals(text.getBytes(StandardCharsets.UTF_8), Arrays.copyOf(bytes, length));
+        }
+    }
+
+    @Test
+    public void shouldAssignStableIdsConcurrently() {
+        String[] words = new String[50000];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = (i % 2 == 0 ? "word" : "слово") + i % 20000;  // 20000 distinct words, each seen 2-3 times
+        }
+        TokenDictionary dictionary = new TokenDictionary();
+        Map<String, Integer> ids = new ConcurrentHashMap<>();
+        long start = System.currentTimeMillis();
+        IntStream.range(0, words.length).parallel().forEach(i -> {
+            Integer previous = ids.putIfAbsent(words[i], dictionary.intern(words[i]));
+            if (previous != null) {
+                assertEquals(previous.intValue(), dictionary.intern(words[i]));
+            }
+        });
+        System.out.println("Interned " + dictionary.size() + " distinct words in " + (System.currentTimeMillis() - start)
+                + "ms, " + dictionary.getOffHeapBytes() + " off-heap bytes");
+        assertEquals(ids.size(), dictionary.size());
+        Set<Integer> distinctIds = new HashSet<>(ids.values());
+        assertEquals(ids.size(), distinctIds.size());
+        ids.forEach((word, id) -> {
+            assertEquals(word, dictionary.getToken(id));
+            assertTrue(id < dictionary.getIdBound());
+        });
+    }
+}
@@ -0,0 +1,76 @@
+package com.phil.oracle.interview.textlinestats.sketch;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class HyperLogLogTest {
+
+    @Test
+    public void shouldEstimateDistinctCounts() {
+        for (int distinctCount : new int[]{0, 1, 10, 1000, 100_000, 1_000_000}) {
+            HyperLogLog hyperLogLog = new HyperLogLog();
+            long start = System.currentTimeMillis();
+            for (int repeat = 0; repeat < 2; repeat++) {
+                for (long value = 0; value < distinctCount; value++) {
+                    hyperLogLog.addHash(HyperLogLog.mix(value));
+                }
+            }
+            long estimate = hyperLogLog.estimate();
+            System.out.println(distinctCount + " distinct values estimated as " + estimate + " in "
+                    + (System.currentTimeMillis() - start) + "ms");
+            assertTrue(distinctCount + " vs " + estimate, Math.abs(estimate - distinctCount) <= 0.03 * distinctCount + 1);
+        }
+    }
+
+    @Test
+    public void mergeShouldBeLossless() throws IOException {
+        HyperLogLog all = new HyperLogLog(10);
+        HyperLogLog even = new HyperLogLog(10);
+        HyperLogLog odd = new HyperLogLog(10);
+        for (long value = 0; value < 50_000; value++) {
+            all.addHash(HyperLogLog.mix(value));
+            (value % 2 == 0 ? even : odd).addHash(HyperLogLog.mix(value));
+        }
+        even.merge(odd);
+        assertEquals(all.estimate(), even.estimate());
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            even.write(out);
+        }
+        assertEquals(1 + 1024, bytes.size());
+        HyperLogLog read = HyperLogLog.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        assertEquals(10, read.getPrecision());
+        assertEquals(all.estimate(), read.estimate());
+    }
+
+    @Test
+    public void testEdgeCases() {
+        for (int precision : new int[]{3, 19}) {
+            try {
+                new HyperLogLog(precision);
+                fail("Shouldn't be here!");
+            } catch (UnsupportedOperationException e) {
+                e.printStackTrace(); //ok
+            }
+        }
+        try {
+            new HyperLogLog(10).merge(new HyperLogLog(11));
+            fail("Shouldn't be here!");
+        } catch (UnsupportedOperationException e) {
+            e.printStackTrace(); //ok
+        }
+        HyperLogLog allZeros = new HyperLogLog(4);
+        allZeros.addHash(0);   // no bit set after the index - capped by the sentinel
+        assertEquals(1, allZeros.estimate());
+    }
+}
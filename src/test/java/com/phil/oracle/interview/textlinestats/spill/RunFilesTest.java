@@ -0,0 +1,89 @@
+package com.phil.oracle.interview.textlinestats.spill;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RunFilesTest {
+
+    @Test
+    public void shouldMergeRunsSummingEqualKeys() throws IOException {
+        File directory = Files.createTempDirectory("runs").toFile();
+        directory.deleteOnExit();
+        List<File> runs = new ArrayList<>();
+        runs.add(RunFiles.write(counts("b", 2, "a", 1, "я", 1), directory));
+        runs.add(RunFiles.write(counts("c", 5, "b", 1), directory));
+        runs.add(RunFiles.write(new HashMap<>(), directory));
+
+        Map<String, Long> merged = new LinkedHashMap<>();
+        File mergedRun = RunFiles.merge(runs, directory, merged::put);
+        assertEquals("{a=1, b=3, c=5, я=1}", merged.toString());  // in key order
+        runs.forEach(run -> assertFalse(run.exists()));
+
+        // the merged run is a run like any other
+        Map<String, Long> again = new LinkedHashMap<>();
+        List<File> single = new ArrayList<>();
+        single.add(mergedRun);
+        RunFiles.merge(single, directory, again::put).delete();
+        assertEquals(merged, again);
+    }
+
+    @Test
+    public void shouldMergeMoreRunsThanTheFanIn() throws IOException {
+        File directory = Files.createTempDirectory("runs").toFile();
+        directory.deleteOnExit();
+        List<File> runs = new ArrayList<>();
+        for (int i = 0; i < RunFiles.MAX_FAN_IN * 2 + 3; i++) {
+            runs.add(RunFiles.write(counts("common", 1, "run" + i, i), directory));
+        }
+        long start = System.currentTimeMillis();
+        Map<String, Long> merged = new HashMap<>();
+        File mergedRun = RunFiles.merge(runs, directory, merged::put);
+        System.out.println("Merged " + runs.size() + " runs in " + (System.currentTimeMillis() - start) + "ms");
+        assertEquals(runs.size() + 1, merged.size());
+        assertEquals(runs.size(), merged.get("common").longValue());
+        assertEquals(7L, merged.get("run7").longValue());
+        assertTrue(mergedRun.delete());
+        assertEquals(0, directory.listFiles().length);
+    }
+
+    @Test
+    public void counterShouldSpillPastItsBudget() throws IOException {
+        File directory = Files.createTempDirectory("runs").toFile();
+        directory.deleteOnExit();
+        List<File> runs = new ArrayList<>();
+        // a budget of about 3 entries
+        SpillingCounter counter = new SpillingCounter(3 * (SpillingCounter.ENTRY_OVERHEAD_BYTES + 2), directory, runs::add);
+        for (String key : new String[]{"a", "b", "a", "c", "d", "a"}) {
+            counter.add(key);
+        }
+        assertEquals(1, runs.size());   // a, b, c, d - spilled at d
+        assertEquals(1, counter.size());
+        counter.spill();
+        counter.spill();    // nothing left to spill
+        assertEquals(2, runs.size());
+
+        Map<String, Long> merged = new LinkedHashMap<>();
+        RunFiles.merge(runs, directory, merged::put).delete();
+        assertEquals("{a=3, b=1, c=1, d=1}", merged.toString());
+    }
+
+    private static Map<String, long[]> counts(Object... keysAndCounts) {
+        Map<String, long[]> counts = new HashMap<>();
+        for (int i = 0; i < keysAndCounts.length; i += 2) {
+            counts.put((String) keysAndCounts[i], new long[]{((Number) keysAndCounts[i + 1]).longValue()});
+        }
+        return counts;
+    }
+}
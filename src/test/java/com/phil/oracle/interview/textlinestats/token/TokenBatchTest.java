@@ -0,0 +1,46 @@
+package com.phil.oracle.interview.textlinestats.token;
+
+import com.phil.oracle.interview.textlinestats.framework.TestUtil;
+import com.phil.oracle.interview.textlinestats.kernel.ScalarTextKernel;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class TokenBatchTest {
+
+    @Test
+    public void testTokenize() {
+        String[] lines = {"Hello, world!", "", "no", "  trailing spaces  "};
+        TokenBatch batch = TokenBatch.tokenize(lines);
+        assertSame(lines, batch.getLines());
+        assertEquals(5, batch.getTokenCount());
+        assertEquals("Hello,", batch.getToken(0));
+        assertEquals("world!", batch.getToken(1));
+        assertEquals("no", batch.getToken(2));
+        assertEquals(2, batch.getTokenLine(2));
+        assertEquals("trailing", batch.getToken(3));
+        assertEquals(2, batch.getTokenStart(3));
+        assertEquals(10, batch.getTokenEnd(3));
+        assertEquals(6, batch.getTokenLength(4));
+        assertEquals(0, TokenBatch.EMPTY.getTokenCount());
+    }
+
+    @Test
+    public void shouldGrowWithManyWordsPerLine() {
+        String[] lines = new String[500];
+        StringBuilder longLine = new StringBuilder();
+        for (int i = 0; i < lines.length; i++) {
+            lines[i] = TestUtil.generateRandomSentence();
+            longLine.append(lines[i]).append(' ');
+        }
+        long start = System.currentTimeMillis();
+        TokenBatch batch = TokenBatch.tokenize(lines);
+        System.out.println("Tokenized " + batch.getTokenCount() + " words in " + (System.currentTimeMillis() - start) + "ms");
+        assertEquals(new ScalarTextKernel().countWords(lines), batch.getTokenCount());
+
+        // a single line with hundreds of words outgrows the initial capacity
+        String[] single = {longLine.toString()};
+        assertEquals(new ScalarTextKernel().countWords(single), TokenBatch.tokenize(single).getTokenCount());
+    }
+}